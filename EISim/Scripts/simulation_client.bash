@@ -0,0 +1,13 @@
+#!/usr/bin/env bash
+
+# Runs a simulation as a job of a running simulation daemon, in place of
+#   mvn -q exec:java -Dexec.mainClass="com.github.hennas.eisim.Main" -Dexec.args="<ARGUMENTS>"
+# e.g., from the EISim folder:
+#   Scripts/simulation_client.bash <ARGUMENTS>
+# The relative paths in the arguments are resolved against the current folder.
+# The daemon is stopped with:
+#   Scripts/simulation_client.bash --stop-daemon
+
+EISIM_DIR="$(cd "$(dirname "${BASH_SOURCE[0]}")/.." && pwd)"
+
+java -cp "$EISIM_DIR/target/classes" com.github.hennas.eisim.SimulationClient "$@"
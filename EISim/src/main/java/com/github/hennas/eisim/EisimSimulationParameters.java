@@ -1,7 +1,9 @@
 package com.github.hennas.eisim;
 
 import com.github.hennas.eisim.defaultclasses.EisimSimulationManager;
+import com.github.hennas.eisim.defaultclasses.EisimTaskGenerator;
 import com.github.hennas.eisim.helpers.ArgumentParser;
+import com.github.hennas.eisim.helpers.CpuBudget;
 
 /**
  * Holds the EISim simulation parameters. These specify where the simulation setting files are located, 
@@ -108,7 +110,255 @@ public class EisimSimulationParameters {
 	public static float noiseDecay = 1e-6f;
 	
 	/**
-	 * Stores filenames for all allowed types of pricing agent files.
+	 * Whether the minibatches are sampled from the experience replay in proportion to the TD errors of the 
+	 * experiences (prioritized experience replay), instead of uniformly. Not used with {@link #stackedTraining}.
+	 * 
+	 * @see com.github.hennas.eisim.agents.ddpg.ExperienceReplay
+	 */
+	public static boolean prioritizedReplay = false;
+	
+	/**
+	 * How strongly the TD errors determine the sampling probabilities of the prioritized experience replay. 
+	 * The value 0 samples uniformly.
+	 */
+	public static float priorityAlpha = 0.6f;
+	
+	/**
+	 * How strongly the importance-sampling weights correct the bias of the prioritized sampling. 
+	 * The value 1 corrects it fully.
+	 */
+	public static float priorityBeta = 0.4f;
+	
+	/**
+	 * Whether the tasks are generated lazily during the simulation instead of generating all of them 
+	 * when the simulation starts. Both modes generate the same tasks.
+	 * 
+	 * @see EisimTaskGenerator
+	 */
+	public static boolean lazyTaskGeneration = false;
+	
+	/**
+	 * Whether the finished tasks are folded into streaming statistics instead of keeping them in a list until 
+	 * the end of the simulation. With lazy task generation, the tasks whose life cycle has ended are also reused 
+	 * for new tasks, so the memory used by the tasks depends on the number of tasks in flight.
+	 * 
+	 * @see com.github.hennas.eisim.defaultclasses.TaskStore
+	 */
+	public static boolean compactTaskStore = false;
+	
+	/**
+	 * The number of threads used for generating the workload (tasks and mobility paths) of the edge devices. 
+	 * Every device draws from its own random number streams, so the generated workload is the same for any 
+	 * number of threads.
+	 * 
+	 * @see com.github.hennas.eisim.helpers.WorkloadPool
+	 */
+	public static int generationThreads = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * The number of threads used for training the pricing agents of the cluster heads in parallel at the 
+	 * price updates. The price updates of the cluster heads do not depend on each other, so the results are 
+	 * the same for any number of threads. The default value 1 trains the agents one by one on the simulation thread.
+	 * 
+	 * @see com.github.hennas.eisim.helpers.TrainingPool
+	 */
+	public static int trainingThreads = 1;
+	
+	/**
+	 * How the CPU cores are split between the simulation threads of parallel simulations and the math threads 
+	 * of ND4J in each run. The default balanced split gives one simulation thread to each core, up to the number 
+	 * of scenarios, and divides the remaining cores between the threads that train agents.
+	 * 
+	 * @see com.github.hennas.eisim.helpers.CpuBudget
+	 */
+	public static CpuBudget.Policy cpuPolicy = CpuBudget.Policy.BALANCED;
+	
+	/**
+	 * Whether the pricing agents of the cluster heads are trained together, as one batched computation with 
+	 * the parameters of all the agents stacked along a leading agent dimension. Each agent keeps its own 
+	 * parameters, and the agents are saved into their own model files as usual.
+	 * 
+	 * @see com.github.hennas.eisim.agents.ddpg.StackedDdpgTrainer
+	 */
+	public static boolean stackedTraining = false;
+	
+	/**
+	 * Whether all the cluster heads of a simulation share one DDPG pricing agent (one actor and critic and 
+	 * one experience replay) instead of having their own agents. The shared agent is saved into its own folder 
+	 * under the scenario folder, so models trained with and without parameter sharing can coexist.
+	 * 
+	 * @see com.github.hennas.eisim.agents.ddpg.SharedDdpgPricingAgent
+	 */
+	public static boolean sharedAgent = false;
+	
+	/**
+	 * The size of the cluster-id embedding appended to the states of the cluster heads in the parameter-shared 
+	 * mode. The default value 0 does not use the embedding.
+	 * 
+	 * @see #sharedAgent
+	 */
+	public static int sharedAgentEmbeddingDim = 0;
+	
+	/**
+	 * The number of threads that write the agent states and the price logs in the background at the end of 
+	 * the simulations. The value 0 writes them on the simulation threads.
+	 * 
+	 * @see com.github.hennas.eisim.helpers.CheckpointWriter
+	 */
+	public static int checkpointThreads = 2;
+	
+	/**
+	 * The number of training episodes (simulation runs) run in one JVM. Each episode uses the next seed after 
+	 * the seed of the previous episode. In the training mode, the pricing agents stay in memory between the episodes.
+	 * 
+	 * @see com.github.hennas.eisim.helpers.EpisodeRunner
+	 */
+	public static int episodes = 1;
+	
+	/**
+	 * When several episodes are run in one JVM, the agent states are saved every this many episodes 
+	 * (and after the last episode).
+	 * 
+	 * @see #episodes
+	 */
+	public static int checkpointInterval = 1;
+	
+	/**
+	 * When several episodes are run in one JVM, the number of first episodes in which the agents decide the price 
+	 * randomly {@link #randomDecisionSteps} times. In the later episodes, only the first decision is random. 
+	 * The default value 0 uses {@link #randomDecisionSteps} in every episode.
+	 * 
+	 * @see #episodes
+	 */
+	public static int randomDecisionEpisodes = 0;
+	
+	/**
+	 * When several episodes are run in one JVM in the training mode, the number of last episodes over which the 
+	 * convergence of the training is detected. When the mean profits and mean prices of every cluster head have 
+	 * stayed within {@link #convergenceTolerance} over this many episodes, the agents are saved and the remaining 
+	 * episodes are skipped. The default value 0 runs all the episodes.
+	 * 
+	 * @see com.github.hennas.eisim.helpers.ConvergenceMonitor
+	 */
+	public static int convergenceWindow = 0;
+	
+	/**
+	 * The largest standard deviation of the mean profits and mean prices over the convergence window, relative to 
+	 * their mean, with which the training is considered converged.
+	 * 
+	 * @see #convergenceWindow
+	 */
+	public static float convergenceTolerance = 0.05f;
+	
+	/**
+	 * The number of simulations (rollouts) of each scenario run concurrently in one episode in the training mode, 
+	 * each with a different seed. The cluster heads of the rollouts push their experiences to one learner per 
+	 * cluster head, which trains the agent on its own thread. The default value 1 runs one simulation per episode.
+	 * 
+	 * @see com.github.hennas.eisim.helpers.RolloutRunner
+	 */
+	public static int rollouts = 1;
+	
+	/**
+	 * When several rollouts are run concurrently, the learners publish the updated actor weights to the rollouts 
+	 * every this many experiences.
+	 * 
+	 * @see #rollouts
+	 */
+	public static int weightPublishInterval = 5;
+	
+	/**
+	 * If set, the prices of the cluster heads are decided by a pricing agent running in an external process, 
+	 * with which the states, rewards and prices are exchanged through a memory-mapped file in this directory 
+	 * (e.g., {@code /dev/shm}). The default value null uses the pricing agents of the simulation.
+	 * 
+	 * @see com.github.hennas.eisim.agents.bridge.SharedMemoryPricingAgent
+	 */
+	public static String bridgeDirectory = null;
+	
+	/**
+	 * How long (in seconds) to wait for the external pricing agent to answer a request.
+	 * 
+	 * @see #bridgeDirectory
+	 */
+	public static int bridgeTimeout = 60;
+	
+	/**
+	 * The folder into which the experiences of the cluster heads are recorded during the simulations, so that 
+	 * the pricing agents can be trained from them offline. The default value null does not record the experiences.
+	 * 
+	 * @see com.github.hennas.eisim.helpers.ExperienceRecorder
+	 */
+	public static String recordFolder = null;
+	
+	/**
+	 * The number of passes over the recorded experiences in offline training. One pass trains the agents as 
+	 * many times as they were trained when the experiences were collected, that is, 
+	 * {@link #modelUpdates} times per experience.
+	 * 
+	 * @see com.github.hennas.eisim.agents.ddpg.OfflineTrainer
+	 */
+	public static int offlinePasses = 1;
+	
+	/**
+	 * The search space of the hyperparameter tuning, e.g., {@code "actorlr=0.005,0.001;criticlr=0.005,0.001"}: 
+	 * the values to try for each hyperparameter, which is named by the long name of its command-line option. 
+	 * Every combination of the values is a trial.
+	 * 
+	 * @see com.github.hennas.eisim.helpers.HyperparameterTuner
+	 */
+	public static String tuneSpace = null;
+	
+	/**
+	 * The number of training episodes of every trial in the first rung of the hyperparameter tuning.
+	 */
+	public static int tuneMinEpisodes = 1;
+	
+	/**
+	 * The number of training episodes of the trials in the last rung of the hyperparameter tuning.
+	 */
+	public static int tuneMaxEpisodes = 10;
+	
+	/**
+	 * The reduction factor of the hyperparameter tuning: the top 1 / tuneReduction of the trials of a rung are 
+	 * promoted to the next rung, which trains them tuneReduction times as many episodes.
+	 */
+	public static int tuneReduction = 3;
+	
+	/**
+	 * The number of trials run concurrently in the hyperparameter tuning.
+	 */
+	public static int tuneTrials = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * The number of evaluation episodes with which the trials are ranked at the end of each rung.
+	 */
+	public static int tuneEvalEpisodes = 1;
+	
+	/**
+	 * Whether the runs of the hyperparameter tuning are run in this JVM, each in its own simulation context, 
+	 * instead of in new JVMs. The runs are started in new JVMs only if requested.
+	 * 
+	 * @see SimulationContext
+	 */
+	public static boolean tuneInProcess = true;
+	
+	/**
+	 * The path of the Unix domain socket on which the simulation daemon accepts the simulation jobs.
+	 * 
+	 * @see SimulationDaemon
+	 */
+	public static String daemonSocket = SimulationClient.getDefaultSocket();
+	
+	/**
+	 * The number of simulation jobs run concurrently by the simulation daemon.
+	 */
+	public static int daemonJobs = 1;
+	
+	/**
+	 * Stores filenames for all allowed types of pricing agent files. The experience replay and noise 
+	 * coefficient files are the legacy format of the agent state file; they are only read if the agent 
+	 * state file does not exist.
 	 */
 	public enum AgentFileTypes {
 		ACTOR ("actor.zip"),
@@ -116,7 +366,9 @@ public class EisimSimulationParameters {
 		CRITIC ("critic.zip"), 
 		CRITIC_TARGET ("critic_target.zip"), 
 		EXPERIENCE_REPLAY ("experience_replay.ser"),
-		NOISE_COEFF("noise_coeff.dat");
+		NOISE_COEFF("noise_coeff.dat"),
+		AGENT_STATE("agent_state.bin"),
+		ACTOR_WEIGHTS("actor_weights.bin");
 		
 		private String fileName;
 		
@@ -1,9 +1,19 @@
 package com.github.hennas.eisim;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
 import org.nd4j.linalg.factory.Nd4j;
 
+import com.github.hennas.eisim.agents.bridge.SharedMemoryPricingAgent;
+import com.github.hennas.eisim.agents.ddpg.RolloutLearner;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
 import com.github.hennas.eisim.core.simulationmanager.Simulation;
 import com.github.hennas.eisim.helpers.ArgumentParser;
+import com.github.hennas.eisim.helpers.CheckpointWriter;
+import com.github.hennas.eisim.helpers.EpisodeRunner;
+import com.github.hennas.eisim.helpers.RolloutRunner;
 
 /**
  * The main class for running EISim simulations.
@@ -15,7 +25,11 @@ import com.github.hennas.eisim.helpers.ArgumentParser;
  * <p>
  * After parsing, information about the simulation settings is printed to the user. Then, 
  * a {@code Simulation} instance is created. Custom implementation classes can be set through
- * this instance. Finally, the simulation is launched.
+ * this instance. Finally, the simulation is launched. If several training episodes are run in one JVM, 
+ * a new simulation is launched for each episode (see {@link EpisodeRunner}).
+ * <p>
+ * With {@code --daemon} as the first argument, a {@link SimulationDaemon} is started instead, which keeps 
+ * running and runs the simulations sent to it by {@link SimulationClient}s.
  * 
  * @see ArgumentParser
  * @see Simulation
@@ -26,6 +40,15 @@ import com.github.hennas.eisim.helpers.ArgumentParser;
 public class Main {
 
 	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals("--daemon")) {
+			try {
+				SimulationDaemon.main(Arrays.copyOfRange(args, 1, args.length));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+		
 		ArgumentParser parser = new ArgumentParser();
 		boolean startExecution = parser.parseArguments(args);
 		if (startExecution) {
@@ -34,38 +57,56 @@ public class Main {
 	}
 	
 	private static void start() {
+		PrintStream out = SimLog.getOutput();
 		if (EisimSimulationParameters.useSeed) {
-			System.out.println("Simulation uses the provided seed, the value of which is " + EisimSimulationParameters.seed);
-			System.out.println();
+			out.println("Simulation uses the provided seed, the value of which is " + EisimSimulationParameters.seed);
+			out.println();
 		}
 		
 		if (EisimSimulationParameters.train) {
-			System.out.println("Simulation is run in the training mode with the following hyperparameter values:");
-			System.out.println("randomDecisionSteps: " + EisimSimulationParameters.randomDecisionSteps);
-			System.out.println("replayBufferSize: " + EisimSimulationParameters.replayBufferSize);
-			System.out.println("batchSize: " + EisimSimulationParameters.batchSize);
-			System.out.println("discountFactor: " + EisimSimulationParameters.discountFactor);
-			System.out.println("learningRateActor: " + EisimSimulationParameters.learningRateActor);
-			System.out.println("learningRateCritic: " + EisimSimulationParameters.learningRateCritic);
-			System.out.println("tau: " + EisimSimulationParameters.tau);
-			System.out.println("modelUpdates: " + EisimSimulationParameters.modelUpdates);
-			System.out.println("noiseSD: " + EisimSimulationParameters.noiseSD);
-			System.out.println("noiseDecay: " + EisimSimulationParameters.noiseDecay);
+			out.println("Simulation is run in the training mode with the following hyperparameter values:");
+			out.println("randomDecisionSteps: " + EisimSimulationParameters.randomDecisionSteps);
+			out.println("replayBufferSize: " + EisimSimulationParameters.replayBufferSize);
+			out.println("batchSize: " + EisimSimulationParameters.batchSize);
+			out.println("discountFactor: " + EisimSimulationParameters.discountFactor);
+			out.println("learningRateActor: " + EisimSimulationParameters.learningRateActor);
+			out.println("learningRateCritic: " + EisimSimulationParameters.learningRateCritic);
+			out.println("tau: " + EisimSimulationParameters.tau);
+			out.println("modelUpdates: " + EisimSimulationParameters.modelUpdates);
+			out.println("noiseSD: " + EisimSimulationParameters.noiseSD);
+			out.println("noiseDecay: " + EisimSimulationParameters.noiseDecay);
 		} else {
-			System.out.println("Simulation is run in the evaluation mode");
+			out.println("Simulation is run in the evaluation mode");
 		}
-		System.out.println();
+		out.println();
 		
 		
 		// Loading Nd4j class here avoids the NoAvailableBackendException when running simulations in parallel
-		String backend = Nd4j.getBackend().getEnvironment().isCPU() ? "CPU" : "GPU";
-		System.out.println("Using " + backend + " backend for DL4J and ND4J");
-		System.out.println("maxThreads on backend: " + Nd4j.getBackend().getEnvironment().maxThreads());
-		System.out.println();
+		// In the evaluation mode, the agents use a pure-Java forward pass of their actors, so ND4J is not needed
+		if (EisimSimulationParameters.train) {
+			String backend = Nd4j.getBackend().getEnvironment().isCPU() ? "CPU" : "GPU";
+			out.println("Using " + backend + " backend for DL4J and ND4J");
+			out.println("maxThreads on backend: " + Nd4j.getBackend().getEnvironment().maxThreads());
+			out.println();
+		}
+		
+		out.println("Heap size: " + Runtime.getRuntime().maxMemory());
+		out.println();
 		
-		System.out.println("Heap size: " + Runtime.getRuntime().maxMemory());
-		System.out.println();
+		// Run the simulations (once, unless several training episodes are run in this JVM)
+		EpisodeRunner.run(Main::launchSimulation);
 		
+		// Tell the external pricing agents, if any, that the simulations have ended
+		SharedMemoryPricingAgent.closeAll();
+		RolloutLearner.stopAll();
+		
+		// Wait for the agent states and price logs that are still being written in the background
+		if (!CheckpointWriter.awaitCompletion()) {
+			out.println("Some of the agent states or price logs could not be saved");
+		}
+	}
+	
+	private static void launchSimulation() {
 		// Create a simulation
 		Simulation sim = new Simulation();
 		
@@ -102,8 +143,12 @@ public class Main {
 		// and a custom pricing agent implementation can be set by modifying or extending 
 		// EisimComputingNode class
 		
-		// Finally, launch the simulation
-		sim.launchSimulation();
+		// Finally, launch the simulation (or the concurrent rollouts of each scenario in the training mode)
+		if (RolloutRunner.isEnabled()) {
+			RolloutRunner.launch(sim);
+		} else {
+			sim.launchSimulation();
+		}
 	}
 
 }
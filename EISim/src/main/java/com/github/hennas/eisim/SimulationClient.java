@@ -0,0 +1,102 @@
+package com.github.hennas.eisim;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * A thin client of the {@link SimulationDaemon}, which runs the simulations given by its command-line arguments as
+ * a job of the daemon, and prints the output of the job as it is streamed back. It takes the same arguments as
+ * {@link Main}, so it can be used in place of running {@link Main} through Maven:
+ * <pre>
+ * java -cp target/classes com.github.hennas.eisim.SimulationClient -i &lt;setting_folder&gt; -o &lt;output_folder&gt; -m &lt;model_folder&gt; [OTHER OPTIONS]
+ * </pre>
+ * The client only uses the classes of the JDK, so it starts quickly without the dependencies of the simulator.
+ * The relative paths in the arguments are resolved against the working directory of the client. The client exits
+ * with the status of the job: 0 if the simulations finished, 1 if they failed and 2 if the arguments were not valid.
+ * With the only argument {@value #STOP_OPTION}, the client stops the daemon once its running jobs have finished.
+ * <p>
+ * The client connects to the socket given by the environment variable {@value #SOCKET_VARIABLE}, or by default to
+ * the socket {@code daemon.sock} in the folder {@code eisim-<user name>} in the temporary folder.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class SimulationClient {
+
+	public static final String SOCKET_VARIABLE = "EISIM_SOCKET";
+	public static final String STOP_OPTION = "--stop-daemon";
+
+	public static void main(String[] args) {
+		System.exit(run(args));
+	}
+
+	/**
+	 * Returns the default socket of the daemon.
+	 *
+	 * @return String: The path of the socket
+	 */
+	public static String getDefaultSocket() {
+		String socket = System.getenv(SOCKET_VARIABLE);
+		if (socket != null) {
+			return socket;
+		}
+		// The daemon binds the socket in a folder that only the user can access
+		return Path.of(System.getProperty("java.io.tmpdir"), "eisim-" + System.getProperty("user.name"), "daemon.sock").toString();
+	}
+
+	/**
+	 * Sends the arguments to the daemon as a job, and prints the output of the job until it ends.
+	 *
+	 * @param args	The command-line arguments of the simulation, or {@value #STOP_OPTION}
+	 * @return int:	The status of the job
+	 */
+	public static int run(String[] args) {
+		return run(Path.of(getDefaultSocket()), args);
+	}
+
+	/**
+	 * Sends the arguments to the daemon listening on the given socket as a job, and prints the output of the job
+	 * until it ends.
+	 *
+	 * @param socket	The socket of the daemon
+	 * @param args		The command-line arguments of the simulation, or {@value #STOP_OPTION}
+	 * @return int:		The status of the job
+	 */
+	public static int run(Path socket, String[] args) {
+		try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+			PrintStream request = new PrintStream(Channels.newOutputStream(channel), false, StandardCharsets.UTF_8);
+			if (args.length == 1 && args[0].equals(STOP_OPTION)) {
+				request.println(SimulationDaemon.STOP);
+			} else {
+				request.println(SimulationDaemon.RUN);
+				request.println(Path.of("").toAbsolutePath());
+				request.println(args.length);
+				for (String argument : args) {
+					request.println(argument);
+				}
+			}
+			request.flush();
+
+			BufferedReader response = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+			String line;
+			while ((line = response.readLine()) != null) {
+				if (line.startsWith(SimulationDaemon.OUTPUT)) {
+					System.out.println(line.substring(SimulationDaemon.OUTPUT.length()));
+				} else if (line.startsWith(SimulationDaemon.END)) {
+					return Integer.parseInt(line.substring(SimulationDaemon.END.length()));
+				}
+			}
+			System.out.println("SimulationClient - The daemon closed the connection before the job ended");
+		} catch (IOException e) {
+			System.out.println("SimulationClient - No simulation daemon is listening on " + socket + " (" + e.getMessage() + ")");
+		}
+		return 1;
+	}
+}
@@ -0,0 +1,256 @@
+package com.github.hennas.eisim;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.hennas.eisim.core.scenariomanager.SimulationParameters;
+import com.github.hennas.eisim.core.simulationmanager.SimulationManager;
+import com.github.hennas.eisim.helpers.ArgumentParser;
+
+/**
+ * The configuration of a run of the simulator, isolated from the other runs in the same JVM, so that runs with
+ * different setting folders and hyperparameters can be run concurrently in one JVM (e.g., the trials of the
+ * {@link com.github.hennas.eisim.helpers.HyperparameterTuner}).
+ * <p>
+ * The configuration of the simulator is kept in static fields: {@link SimulationParameters},
+ * {@link EisimSimulationParameters}, and the hyperparameters that the pricing agents copy when their classes are
+ * loaded. A context loads its own copies of the classes of the simulator with its own class loader, so each context
+ * has its own static fields, which the code of the simulator reads as before. The static fields thus remain the
+ * interface to the configuration of the context in which the code runs. The libraries (e.g., ND4J and its native
+ * libraries) and this class are loaded only once and shared by all the contexts, so every context reuses the loaded
+ * native libraries and the JIT-compiled library code of the JVM.
+ * <p>
+ * A context is built from the command-line arguments of {@link Main}, which are parsed by the {@link ArgumentParser}
+ * of the context when the context is created, and it keeps the arguments as its configuration. The simulations are
+ * run with {@link #run()}, which may be called for different contexts from several threads at the same time. The code
+ * running in a context, including the threads it starts, finds its context with {@link #current()}, and every
+ * simulation entity can reach the context of its simulation with {@link SimulationManager#getContext()}.
+ * <p>
+ * Each context has its own log writer ({@link #getLog()}), into which the simulator writes its console output
+ * through {@link com.github.hennas.eisim.core.simulationmanager.SimLog#getOutput()}. The standard output and error of
+ * the JVM are left as they are.
+ * <p>
+ * The thread settings of ND4J are global in the native library, so they remain shared by all the contexts (see
+ * {@link com.github.hennas.eisim.helpers.CpuBudget}). The thread pools of a context are shut down when its run ends
+ * (see {@link #addReleaseAction(Runnable)}), and its class loader is closed after them, so that the classes of
+ * finished contexts can be unloaded. A context is therefore run only once.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class SimulationContext {
+
+	// The classes under this package are loaded by every context itself, except for this class
+	private static final String ISOLATED_PACKAGE = "com.github.hennas.eisim.";
+
+	private static final InheritableThreadLocal<SimulationContext> current = new InheritableThreadLocal<>();
+	// The context of the code that is not run in a context of its own, which uses the classes of the application class loader
+	private static final SimulationContext DEFAULT = new SimulationContext(SimulationContext.class.getClassLoader(), null, new String[0]);
+
+	private final ClassLoader loader;
+	private final String[] arguments;
+	private final PrintStream log;
+	private final List<Runnable> releaseActions = new ArrayList<>();
+	private boolean started;
+
+	/**
+	 * Creates a context with its own copies of the classes of the simulator, and parses the arguments into its
+	 * configuration. The context writes its log into the standard output of the JVM.
+	 *
+	 * @param arguments The command-line arguments of {@link Main}
+	 * @throws IllegalArgumentException If the arguments are not valid
+	 */
+	public SimulationContext(String... arguments) {
+		this(null, arguments);
+	}
+
+	/**
+	 * Creates a context with its own copies of the classes of the simulator and its own log writer, and parses the
+	 * arguments into its configuration. The messages of the parser are already written into the log.
+	 *
+	 * @param log		The log writer of the context, or null to use the standard output of the JVM
+	 * @param arguments The command-line arguments of {@link Main}
+	 * @throws IllegalArgumentException If the arguments are not valid
+	 */
+	public SimulationContext(PrintStream log, String... arguments) {
+		this(new ContextClassLoader(SimulationContext.class.getClassLoader()), log, arguments.clone());
+		SimulationContext previous = current.get();
+		current.set(this);
+		boolean valid;
+		try {
+			Class<?> parserClass = this.loader.loadClass(ArgumentParser.class.getName());
+			Object parser = parserClass.getConstructor().newInstance();
+			valid = (boolean) parserClass.getMethod("parseArguments", String[].class).invoke(parser, (Object) this.arguments);
+		} catch (InvocationTargetException e) {
+			this.release();
+			if (e.getCause() instanceof IllegalArgumentException) {
+				// E.g., a number option that is not a number
+				throw new IllegalArgumentException("SimulationContext - Invalid arguments: " + String.join(" ", this.arguments), e.getCause());
+			}
+			throw new IllegalStateException("SimulationContext - The simulator could not be loaded", e.getCause());
+		} catch (ReflectiveOperationException e) {
+			this.release();
+			throw new IllegalStateException("SimulationContext - The simulator could not be loaded", e);
+		} finally {
+			current.set(previous);
+		}
+		if (!valid) {
+			this.release();
+			throw new IllegalArgumentException("SimulationContext - Invalid arguments: " + String.join(" ", this.arguments));
+		}
+	}
+
+	private SimulationContext(ClassLoader loader, PrintStream log, String[] arguments) {
+		this.loader = loader;
+		this.log = log;
+		this.arguments = arguments;
+	}
+
+	/**
+	 * Returns the context of the calling thread.
+	 *
+	 * @return SimulationContext: The context in which the calling thread runs, or the default context of the JVM
+	 */
+	public static SimulationContext current() {
+		SimulationContext context = current.get();
+		return context != null ? context : DEFAULT;
+	}
+
+	/**
+	 * Runs the simulations of this context on the calling thread, as {@link Main} would, and returns when they
+	 * have finished. The resources of the context are released at the end of the run, so a context can only be run once.
+	 *
+	 * @throws IllegalStateException If the simulations failed with an exception, or the context has already been run
+	 */
+	public void run() {
+		synchronized (this.releaseActions) {
+			if (this.started) {
+				throw new IllegalStateException("SimulationContext - The context has already been run");
+			}
+			this.started = true;
+		}
+		Thread thread = Thread.currentThread();
+		SimulationContext previous = current.get();
+		ClassLoader previousLoader = thread.getContextClassLoader();
+		current.set(this);
+		thread.setContextClassLoader(this.loader);
+		try {
+			this.loader.loadClass(Main.class.getName()).getMethod("main", String[].class).invoke(null, (Object) this.arguments);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException("SimulationContext - The simulations failed", e.getCause());
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("SimulationContext - The simulator could not be loaded", e);
+		} finally {
+			this.release();
+			current.set(previous);
+			thread.setContextClassLoader(previousLoader);
+		}
+	}
+
+	/**
+	 * Checks whether this is an isolated context created for a run, rather than the default context of the JVM.
+	 *
+	 * @return boolean: True if the context is isolated
+	 */
+	public boolean isIsolated() {
+		return this != DEFAULT;
+	}
+
+	/**
+	 * Registers an action that releases a resource of this context, e.g., shuts down a thread pool, when the run
+	 * of the context ends, so that the classes of the context can be unloaded. In the default context, the action
+	 * is run when the JVM exits.
+	 *
+	 * @param action The action
+	 */
+	public void addReleaseAction(Runnable action) {
+		if (!this.isIsolated()) {
+			Runtime.getRuntime().addShutdownHook(new Thread(action, "context-release"));
+			return;
+		}
+		synchronized (this.releaseActions) {
+			this.releaseActions.add(action);
+		}
+	}
+
+	private void release() {
+		List<Runnable> actions;
+		synchronized (this.releaseActions) {
+			actions = new ArrayList<>(this.releaseActions);
+			this.releaseActions.clear();
+		}
+		for (Runnable action : actions) {
+			try {
+				action.run();
+			} catch (RuntimeException e) {
+				e.printStackTrace(this.getLog());
+			}
+		}
+		// The classes already loaded stay usable, but the context loads no more classes once its run has ended
+		if (this.loader instanceof ContextClassLoader) {
+			try {
+				((ContextClassLoader) this.loader).close();
+			} catch (IOException e) {
+				e.printStackTrace(this.getLog());
+			}
+		}
+	}
+
+	/**
+	 * Returns the command-line arguments from which the configuration of this context was parsed.
+	 *
+	 * @return String[]: The arguments, which are empty for the default context
+	 */
+	public String[] getArguments() {
+		return this.arguments.clone();
+	}
+
+	/**
+	 * Returns the log writer of this context, into which the console output of its simulations is written.
+	 *
+	 * @return PrintStream: The log writer, or the current standard output of the JVM if the context has none
+	 */
+	public PrintStream getLog() {
+		return this.log != null ? this.log : System.out;
+	}
+
+	/**
+	 * Loads the classes of the simulator itself (child first), and leaves the other classes to the parent class loader.
+	 */
+	private static class ContextClassLoader extends URLClassLoader {
+
+		static {
+			registerAsParallelCapable();
+		}
+
+		private ContextClassLoader(ClassLoader parent) {
+			super("simulation-context", new URL[] { SimulationContext.class.getProtectionDomain().getCodeSource().getLocation() }, parent);
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (!name.startsWith(ISOLATED_PACKAGE) || name.startsWith(SimulationContext.class.getName())) {
+				return super.loadClass(name, resolve);
+			}
+			synchronized (this.getClassLoadingLock(name)) {
+				Class<?> loaded = this.findLoadedClass(name);
+				if (loaded == null) {
+					try {
+						loaded = this.findClass(name);
+					} catch (ClassNotFoundException e) {
+						loaded = super.loadClass(name, false);
+					}
+				}
+				if (resolve) {
+					this.resolveClass(loaded);
+				}
+				return loaded;
+			}
+		}
+	}
+}
@@ -0,0 +1,312 @@
+package com.github.hennas.eisim;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.cli.ParseException;
+import org.nd4j.linalg.factory.Nd4j;
+
+import com.github.hennas.eisim.helpers.ArgumentParser;
+
+/**
+ * A long-lived simulator process, which accepts simulation jobs from {@link SimulationClient}s over a Unix domain
+ * socket, so that the jobs do not pay for starting Maven and the JVM and loading ND4J and its native libraries.
+ * The daemon is started with {@link Main}:
+ * <pre>
+ * mvn -q exec:java -Dexec.mainClass="com.github.hennas.eisim.Main" -Dexec.args="--daemon [--socket &lt;socket_file&gt;] [--jobs &lt;jobs&gt;]"
+ * </pre>
+ * A job consists of the command-line arguments of {@link Main}, with the relative paths resolved against the working
+ * directory of the client. Every job is run in its own {@link SimulationContext}, so the jobs can have different
+ * settings and hyperparameters, and {@link EisimSimulationParameters#daemonJobs} jobs are run concurrently, the
+ * others waiting in a queue. The output of a job is streamed back to its client while the job runs, followed by
+ * the status of the job.
+ * <p>
+ * Only the warm-up of the JVM and the libraries is kept between the jobs: ND4J and its native libraries are loaded
+ * once, and the libraries keep their JIT-compiled code. No simulation context is kept, not even for the jobs with the
+ * same settings folder, as a context can only be run once (see {@link SimulationContext#run()}). Hence, the classes
+ * of the simulator are loaded again, and the settings are parsed again, for every job.
+ * <p>
+ * The protocol consists of UTF-8 lines. The client sends {@value #RUN}, its working directory, the number of the
+ * arguments and the arguments, one per line, or {@value #STOP} to stop the daemon once the running jobs have
+ * finished. The daemon replies with lines of the output of the job, each prefixed with {@value #OUTPUT}, and
+ * finally with {@value #END} followed by the status of the job (0 if the simulations finished, 1 if they failed
+ * and 2 if the request was not valid).
+ * <p>
+ * The jobs can read and write any files that the user running the daemon can, so the socket must only be accessible
+ * to that user. The socket is therefore bound in a folder that is only accessible to the user (by default, the folder
+ * {@code eisim-<user name>} in the temporary folder). The folder is created with these permissions before the socket
+ * is bound, and if it already exists, the daemon refuses to start unless it is owned by the user and closed to the
+ * others, so that no other user can connect to the socket nor replace it.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class SimulationDaemon {
+
+	public static final String RUN = "RUN";
+	public static final String STOP = "STOP";
+	public static final String OUTPUT = "OUT ";
+	public static final String END = "END ";
+
+	private final Path socket;
+	private final int jobCount;
+	private final ExecutorService jobs;
+	private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> new Thread(runnable, "daemon-connection"));
+	private final AtomicInteger jobIds = new AtomicInteger();
+	private final AtomicInteger unfinished = new AtomicInteger();
+	private ServerSocketChannel server;
+
+	public static void main(String[] args) throws IOException {
+		if (!new ArgumentParser().parseDaemonArguments(args)) {
+			return;
+		}
+		new SimulationDaemon(Path.of(EisimSimulationParameters.daemonSocket), EisimSimulationParameters.daemonJobs).serve();
+	}
+
+	/**
+	 * Creates a daemon.
+	 *
+	 * @param socket	The path of the socket
+	 * @param jobCount	The number of jobs run concurrently
+	 */
+	public SimulationDaemon(Path socket, int jobCount) {
+		this.socket = socket;
+		this.jobCount = jobCount;
+		this.jobs = Executors.newFixedThreadPool(jobCount, runnable -> new Thread(runnable, "daemon-job"));
+	}
+
+	/**
+	 * Accepts and runs the jobs until the daemon is stopped, and waits for the running jobs to finish.
+	 *
+	 * @throws IOException If the socket cannot be opened
+	 */
+	public void serve() throws IOException {
+		UnixDomainSocketAddress address = UnixDomainSocketAddress.of(this.socket);
+		createPrivateFolder(this.socket.toAbsolutePath().getParent());
+		if (Files.exists(this.socket)) {
+			// The socket file of a daemon that was killed is left behind, so it is removed if no daemon answers on it
+			try (SocketChannel probe = SocketChannel.open(address)) {
+				System.out.println("SimulationDaemon - A daemon is already listening on " + this.socket);
+				return;
+			} catch (IOException e) {
+				Files.delete(this.socket);
+			}
+		}
+
+		// ND4J and its native libraries are loaded once for all the jobs
+		System.out.println("SimulationDaemon - Using " + (Nd4j.getBackend().getEnvironment().isCPU() ? "CPU" : "GPU")
+				+ " backend for DL4J and ND4J");
+
+		this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		this.server.bind(address);
+		System.out.println("SimulationDaemon - Listening on " + this.socket + ", running " + this.jobCount + " jobs at a time");
+
+		try {
+			while (true) {
+				SocketChannel channel = this.server.accept();
+				this.connections.execute(() -> this.handle(channel));
+			}
+		} catch (ClosedChannelException e) {
+			// The daemon was stopped
+		} finally {
+			this.server.close();
+			Files.deleteIfExists(this.socket);
+			this.jobs.shutdown();
+			this.connections.shutdown();
+			try {
+				this.jobs.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				this.connections.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			System.out.println("SimulationDaemon - Stopped after " + this.jobIds.get() + " jobs");
+		}
+	}
+
+	/**
+	 * Creates the folder of the socket, accessible only to the user running the daemon, or checks that the existing
+	 * folder is owned by the user and not accessible to the others.
+	 *
+	 * @param folder		The folder of the socket
+	 * @throws IOException	If the folder cannot be created, or it is not private to the user
+	 */
+	static void createPrivateFolder(Path folder) throws IOException {
+		Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rwx------");
+		PosixFileAttributes attributes;
+		try {
+			if (!Files.exists(folder, LinkOption.NOFOLLOW_LINKS)) {
+				Files.createDirectories(folder, PosixFilePermissions.asFileAttribute(ownerOnly));
+			}
+			attributes = Files.readAttributes(folder, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		} catch (UnsupportedOperationException e) {
+			// The file system does not have POSIX permissions
+			Files.createDirectories(folder);
+			return;
+		}
+		UserPrincipal user = folder.getFileSystem().getUserPrincipalLookupService()
+				.lookupPrincipalByName(System.getProperty("user.name"));
+		if (!attributes.isDirectory() || !attributes.owner().equals(user) || !ownerOnly.containsAll(attributes.permissions())) {
+			throw new IOException("SimulationDaemon - The folder of the socket must be a directory owned by " + user.getName()
+					+ " and only accessible to them (permissions rwx------): " + folder);
+		}
+	}
+
+	/**
+	 * Stops accepting new jobs. The daemon stops once the running and queued jobs have finished.
+	 */
+	public void stop() {
+		try {
+			this.server.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Reads the request of a client, runs the job and streams its output back.
+	 */
+	private void handle(SocketChannel channel) {
+		try (SocketChannel client = channel;
+				BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+				PrintStream out = new PrintStream(Channels.newOutputStream(client), true, StandardCharsets.UTF_8)) {
+			String request = in.readLine();
+			if (STOP.equals(request)) {
+				out.println(OUTPUT + "SimulationDaemon - Stopping once the running jobs have finished");
+				out.println(END + 0);
+				this.stop();
+				return;
+			}
+			if (!RUN.equals(request)) {
+				out.println(OUTPUT + "SimulationDaemon - Unknown request: " + request);
+				out.println(END + 2);
+				return;
+			}
+			Path folder = Path.of(in.readLine());
+			String[] arguments = new String[Integer.parseInt(in.readLine())];
+			for (int i = 0; i < arguments.length; i++) {
+				arguments[i] = in.readLine();
+			}
+			List<String> resolved;
+			try {
+				resolved = new ArgumentParser().resolvePaths(arguments, folder);
+			} catch (ParseException e) {
+				out.println(OUTPUT + e.getMessage());
+				out.println(END + 2);
+				return;
+			}
+			out.println(END + this.runJob(resolved, out));
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Runs a job in its own simulation context, and returns its status when it has finished.
+	 */
+	private int runJob(List<String> arguments, PrintStream out) {
+		int id = this.jobIds.incrementAndGet();
+		if (this.unfinished.getAndIncrement() >= this.jobCount) {
+			out.println(OUTPUT + "SimulationDaemon - Job " + id + " is queued");
+		}
+		FramedOutputStream framed = new FramedOutputStream(out);
+		PrintStream jobOutput = new PrintStream(framed, true);
+		long start = System.currentTimeMillis();
+		Future<?> job = this.jobs.submit(() -> {
+			System.out.println("SimulationDaemon - Job " + id + " started: " + String.join(" ", arguments));
+			new SimulationContext(jobOutput, arguments.toArray(new String[0])).run();
+		});
+
+		int status = 0;
+		try {
+			job.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IllegalArgumentException) {
+				// The arguments were not valid, the context has already printed why
+				status = 2;
+				jobOutput.println(e.getCause().getMessage());
+			} else {
+				status = 1;
+				e.getCause().printStackTrace(jobOutput);
+			}
+		} catch (InterruptedException e) {
+			status = 1;
+			Thread.currentThread().interrupt();
+		} finally {
+			this.unfinished.decrementAndGet();
+		}
+		framed.flushLine();
+		System.out.println("SimulationDaemon - Job " + id + (status == 0 ? " finished" : " failed") + " in "
+				+ (System.currentTimeMillis() - start) / 1000 + " seconds");
+		return status;
+	}
+
+	/**
+	 * Writes the output of a job to its client line by line, each line prefixed with {@value SimulationDaemon#OUTPUT}.
+	 */
+	private static class FramedOutputStream extends OutputStream {
+
+		private final PrintStream out;
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+		private FramedOutputStream(PrintStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public synchronized void write(int b) {
+			if (b == '\n') {
+				this.writeLine();
+			} else if (b != '\r') {
+				this.line.write(b);
+			}
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) {
+			for (int i = off; i < off + len; i++) {
+				this.write(b[i]);
+			}
+		}
+
+		/**
+		 * Writes the last line, if it has not ended yet.
+		 */
+		private synchronized void flushLine() {
+			if (this.line.size() > 0) {
+				this.writeLine();
+			}
+		}
+
+		private void writeLine() {
+			this.out.println(OUTPUT + this.line.toString(Charset.defaultCharset()));
+			this.line.reset();
+		}
+	}
+}
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.util.Random;
 
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
 
 import com.github.hennas.eisim.EisimSimulationParameters;
 import com.github.hennas.eisim.core.simulationmanager.SimulationManager;
@@ -46,17 +47,40 @@ public abstract class PricingAgent {
 
 	// Copying the hyperparameters from EisimSimulationParameters (mainly to simplify / shorten references to them)
 	// Note that all pricing agents get the same hyperparameters
-	protected static String modelFolder = EisimSimulationParameters.modelFolder;
-	protected static boolean train = EisimSimulationParameters.train;
-	protected static int replayBufferSize = EisimSimulationParameters.replayBufferSize;
-	protected static int batchSize = EisimSimulationParameters.batchSize;
-	protected static float discountFactor = EisimSimulationParameters.discountFactor;
-	protected static float learningRateActor = EisimSimulationParameters.learningRateActor;
-	protected static float learningRateCritic = EisimSimulationParameters.learningRateCritic;
-	protected static float tau = EisimSimulationParameters.tau;
-	protected static float modelUpdates = EisimSimulationParameters.modelUpdates;
-	protected static float noiseSD = EisimSimulationParameters.noiseSD;
-	protected static float noiseDecay = EisimSimulationParameters.noiseDecay;
+	protected static String modelFolder;
+	protected static boolean train;
+	protected static int replayBufferSize;
+	protected static int batchSize;
+	protected static float discountFactor;
+	protected static float learningRateActor;
+	protected static float learningRateCritic;
+	protected static float tau;
+	protected static float modelUpdates;
+	protected static float noiseSD;
+	protected static float noiseDecay;
+	
+	static {
+		copyHyperparameters();
+	}
+	
+	/**
+	 * Copies the hyperparameters from {@link EisimSimulationParameters}. This is done when the class is loaded, 
+	 * so it only needs to be called again if the parameters are changed afterwards in the same JVM, e.g., 
+	 * when the arguments of another run are parsed.
+	 */
+	public static void copyHyperparameters() {
+		modelFolder = EisimSimulationParameters.modelFolder;
+		train = EisimSimulationParameters.train;
+		replayBufferSize = EisimSimulationParameters.replayBufferSize;
+		batchSize = EisimSimulationParameters.batchSize;
+		discountFactor = EisimSimulationParameters.discountFactor;
+		learningRateActor = EisimSimulationParameters.learningRateActor;
+		learningRateCritic = EisimSimulationParameters.learningRateCritic;
+		tau = EisimSimulationParameters.tau;
+		modelUpdates = EisimSimulationParameters.modelUpdates;
+		noiseSD = EisimSimulationParameters.noiseSD;
+		noiseDecay = EisimSimulationParameters.noiseDecay;
+	}
 	
 	/**
 	 * Initialize a pricing agent.
@@ -68,15 +92,36 @@ public abstract class PricingAgent {
 	 * @param simulationManager The simulation manager that links between the different modules
 	 */
 	public PricingAgent(String serverName, int stateSpaceDim, float minPrice, float maxPrice, SimulationManager simulationManager) {
+		this(serverName, stateSpaceDim, minPrice, maxPrice, (EisimSimulationManager) simulationManager, 
+				((EisimSimulationManager) simulationManager).seedGenerator);
+	}
+	
+	/**
+	 * Initialize a pricing agent outside of a simulation, e.g., for training it offline. The agent has no 
+	 * simulation manager, so the subclass must override {@link #createStateDirectoryForAgent()}, which 
+	 * otherwise forms the state folder from the scenario of the simulation.
+	 * 
+	 * @param serverName		The unique name of the agent
+	 * @param stateSpaceDim		Dimension of the state space
+	 * @param minPrice			Minimum price that can be set by the agent
+	 * @param maxPrice			Maximum price that can be set by the agent
+	 * @param seedGenerator		The random number generator that seeds the agent
+	 */
+	protected PricingAgent(String serverName, int stateSpaceDim, float minPrice, float maxPrice, Random seedGenerator) {
+		this(serverName, stateSpaceDim, minPrice, maxPrice, null, seedGenerator);
+	}
+	
+	private PricingAgent(String serverName, int stateSpaceDim, float minPrice, float maxPrice, 
+			EisimSimulationManager simulationManager, Random seedGenerator) {
 		this.serverName = serverName;
 		this.stateSpaceDim = stateSpaceDim;
 		this.minPrice = minPrice;
 		this.maxPrice = maxPrice;
-		this.simulationManager = (EisimSimulationManager) simulationManager;
+		this.simulationManager = simulationManager;
 		this.directory = createStateDirectoryForAgent();
 		
 		this.random = new Random();
-		this.random.setSeed(this.simulationManager.seedGenerator.nextLong());
+		this.random.setSeed(seedGenerator.nextLong());
 	}
 	
 	/**
@@ -96,6 +141,18 @@ public abstract class PricingAgent {
 	 */
 	public abstract float act(INDArray state);
 	
+	/**
+	 * Decides the action (price) based on the current state given as a plain array. By default, the state is 
+	 * converted into an INDArray and passed to {@link #act(INDArray)}. Implementations can override this to 
+	 * avoid using ND4J when deciding the action.
+	 * 
+	 * @param state 	Current state observation
+	 * @return float: 	The action chosen according to the given state
+	 */
+	public float act(float[] state) {
+		return this.act(Nd4j.create(new float[][] {state}));
+	}
+	
 	/**
 	 * Conducts model training based on the agent's experience (state, action, reward, nextState).
 	 * 
@@ -106,6 +163,19 @@ public abstract class PricingAgent {
 	 */
 	public abstract void learn(INDArray state, float action, float reward, INDArray nextState);
 	
+	/**
+	 * Conducts model training based on the agent's experience, with the states given as plain arrays. 
+	 * By default, the states are converted into INDArrays and passed to {@link #learn(INDArray, float, float, INDArray)}.
+	 * 
+	 * @param state		Initial state
+	 * @param action	The action taken in the initial state
+	 * @param reward	The reward received
+	 * @param nextState The state that followed from the initial state after taking the action
+	 */
+	public void learn(float[] state, float action, float reward, float[] nextState) {
+		this.learn(Nd4j.create(new float[][] {state}), action, reward, Nd4j.create(new float[][] {nextState}));
+	}
+	
 	/**
 	 * Saves the agent's state into files at the end of the simulation.
 	 * 
@@ -113,6 +183,32 @@ public abstract class PricingAgent {
 	 */
 	public abstract void saveAgentState() throws IOException;
 	
+	/**
+	 * Continues with the agent in a new simulation, when the agent stays in memory between training episodes. 
+	 * By default, the agent is linked to the new simulation manager and its random number generator is reseeded, 
+	 * as in the constructor.
+	 * 
+	 * @param simulationManager The simulation manager of the new simulation
+	 * 
+	 * @see com.github.hennas.eisim.helpers.EpisodeRunner
+	 */
+	public void resume(SimulationManager simulationManager) {
+		this.simulationManager = (EisimSimulationManager) simulationManager;
+		this.random.setSeed(this.simulationManager.seedGenerator.nextLong());
+	}
+	
+	public int getStateSpaceDim() {
+		return this.stateSpaceDim;
+	}
+	
+	public float getMinPrice() {
+		return this.minPrice;
+	}
+	
+	public float getMaxPrice() {
+		return this.maxPrice;
+	}
+	
 	/**
 	 * Forms and returns a path to the directory that is used for saving and loading the agent's state.
 	 * Also creates all the directories in the path if they do not already exist.
@@ -127,12 +223,23 @@ public abstract class PricingAgent {
 	 * @return String: Path to the directory that is used for saving and loading states for the agent
 	 */
 	protected String createStateDirectoryForAgent() {
+		return this.createStateDirectory(this.serverName);
+	}
+	
+	/**
+	 * Forms and returns a path to the state folder with the given name under the scenario folder, 
+	 * creating the directories if they do not already exist.
+	 * 
+	 * @param folderName	The name of the state folder
+	 * @return String: 		Path to the state folder
+	 */
+	protected String createStateDirectory(String folderName) {
 		Scenario scenario = this.simulationManager.getScenario();
 		String scenarioName = "scenario_"
 				+ scenario.getStringOrchAlgorithm() + "_" 
 				+ scenario.getStringOrchArchitecture() + "_" 
 				+ scenario.getDevicesCount();
-		String directoryString = modelFolder + "/" + scenarioName + "/" + this.serverName;
+		String directoryString = modelFolder + "/" + scenarioName + "/" + folderName;
 		new File(directoryString).mkdirs(); // Creates the directories only if they do not already exist
 		return directoryString + "/";
 	}
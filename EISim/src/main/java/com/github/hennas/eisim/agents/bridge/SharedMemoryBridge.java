@@ -0,0 +1,416 @@
+package com.github.hennas.eisim.agents.bridge;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A memory-mapped file through which the simulation exchanges the states, rewards and prices of the cluster 
+ * heads with a pricing agent running in an external process. The file is normally placed in {@code /dev/shm}, 
+ * so it is backed by memory only. The simulation side creates the file and sends the requests; the external 
+ * side (the peer) opens the file and answers them. {@link SharedMemoryPeer} is a Java implementation of the peer.
+ * <p>
+ * The protocol works in lockstep: the simulation writes a request, publishes it by incrementing the request 
+ * sequence number, and waits until the peer has written the response and set the response sequence number to the 
+ * same value. Only the sequence numbers are accessed with memory ordering (release on write, acquire on read), so 
+ * every other field must be written before the sequence number that publishes it.
+ * <p>
+ * All the values are little-endian. The file consists of the following regions, where {@code N} is the 
+ * capacity (the maximum number of cluster heads) and {@code D} is the dimension of the states:
+ * <pre>
+ * Header (64 bytes):
+ *   0  int    magic, 0x4549534D ("EISM"), written last when the file is created
+ *   4  int    protocol version, 1
+ *   8  int    capacity N
+ *   12 int    state dimension D
+ *   16 long   request sequence number (simulation -&gt; peer)
+ *   24 long   response sequence number (peer -&gt; simulation)
+ *   32 int    request type: 1 = DECIDE, 2 = EPISODE_END, 3 = CLOSE
+ *   36 int    number of entries in the request
+ *   40 double simulation time of the request
+ *   48 int    number of registered cluster heads
+ *   52 int    flags: bit 0 is set in the training mode
+ *   56 float  minimum price
+ *   60 float  maximum price
+ * Names (N x 64 bytes): 
+ *   the name of each registered cluster head in UTF-8 (at most 63 bytes), padded with zeros; the index of the name 
+ *   identifies the cluster head in the requests, and stays the same for the lifetime of the file
+ * Request entries (N x (8 + 4D) bytes):
+ *   0  int     index of the cluster head
+ *   4  float   reward of the previous slot (NaN if there is none, e.g. in the evaluation mode)
+ *   8  float[] state at the beginning of the new slot (D values)
+ * Response (N x 4 bytes):
+ *   float      price of each request entry, in the order of the entries
+ * </pre>
+ * A DECIDE request contains the entries of all the cluster heads that update their prices at the same 
+ * simulation time, and the peer answers it with the prices. EPISODE_END is sent when a simulation that used 
+ * the file ends, and CLOSE when the simulation process is exiting; they contain no entries, and the peer 
+ * acknowledges them only by setting the response sequence number (no answer is waited for CLOSE).
+ * 
+ * @see SharedMemoryPricingAgent
+ * @see SharedMemoryPeer
+ * 
+ * @author Henna Kokkonen
+ *
+ */
+public class SharedMemoryBridge implements Closeable {
+	
+	public static final int MAGIC = 0x4549534D;
+	public static final int VERSION = 1;
+	
+	public static final int DECIDE = 1;
+	public static final int EPISODE_END = 2;
+	public static final int CLOSE = 3;
+	
+	public static final int FLAG_TRAINING = 1;
+	
+	public static final int HEADER_SIZE = 64;
+	public static final int NAME_SIZE = 64;
+	
+	protected static final int MAGIC_OFFSET = 0;
+	protected static final int VERSION_OFFSET = 4;
+	protected static final int CAPACITY_OFFSET = 8;
+	protected static final int STATE_DIM_OFFSET = 12;
+	protected static final int REQUEST_SEQUENCE_OFFSET = 16;
+	protected static final int RESPONSE_SEQUENCE_OFFSET = 24;
+	protected static final int REQUEST_TYPE_OFFSET = 32;
+	protected static final int COUNT_OFFSET = 36;
+	protected static final int CLOCK_OFFSET = 40;
+	protected static final int REGISTERED_OFFSET = 48;
+	protected static final int FLAGS_OFFSET = 52;
+	protected static final int MIN_PRICE_OFFSET = 56;
+	protected static final int MAX_PRICE_OFFSET = 60;
+	
+	// Spin for this long before starting to park the waiting thread
+	protected static final long SPIN_NANOS = 50_000;
+	protected static final long PARK_NANOS = 20_000;
+	
+	private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	
+	protected final Path path;
+	protected final FileChannel channel;
+	protected final MappedByteBuffer buffer;
+	protected final int capacity;
+	protected final int stateDim;
+	protected final int entrySize;
+	protected long sequence;
+	
+	protected SharedMemoryBridge(Path path, FileChannel channel, MappedByteBuffer buffer) {
+		this.path = path;
+		this.channel = channel;
+		this.buffer = buffer;
+		this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+		this.capacity = buffer.getInt(CAPACITY_OFFSET);
+		this.stateDim = buffer.getInt(STATE_DIM_OFFSET);
+		this.entrySize = 8 + 4 * this.stateDim;
+		this.sequence = (long) LONGS.getAcquire(buffer, REQUEST_SEQUENCE_OFFSET);
+	}
+	
+	/**
+	 * Returns the size of the file with the given capacity and state dimension.
+	 * 
+	 * @param capacity	The maximum number of cluster heads
+	 * @param stateDim	The dimension of the states
+	 * @return long:	The size of the file in bytes
+	 */
+	public static long fileSize(int capacity, int stateDim) {
+		return HEADER_SIZE + (long) capacity * (NAME_SIZE + 8 + 4 * stateDim + 4);
+	}
+	
+	/**
+	 * Creates the file on the simulation side. The file must not exist yet: a peer may still have an existing file 
+	 * mapped, and truncating a file that is mapped by another process makes that process fail.
+	 * 
+	 * @param path			Path to the file
+	 * @param capacity		The maximum number of cluster heads
+	 * @param stateDim		The dimension of the states
+	 * @param minPrice		The minimum price
+	 * @param maxPrice		The maximum price
+	 * @param training		Whether the simulation is run in the training mode
+	 * @return SharedMemoryBridge: The bridge
+	 * @throws IOException	If the file exists already or cannot be created
+	 */
+	public static SharedMemoryBridge create(Path path, int capacity, int stateDim, float minPrice, float maxPrice, 
+			boolean training) throws IOException {
+		Files.createDirectories(path.toAbsolutePath().getParent());
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		} catch (FileAlreadyExistsException e) {
+			throw new IOException("The bridge file " + path + " already exists. Another simulation may be using it, or it was " 
+					+ "left behind by a simulation that did not exit cleanly, in which case it can be removed.", e);
+		}
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(capacity, stateDim));
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(VERSION_OFFSET, VERSION);
+		buffer.putInt(CAPACITY_OFFSET, capacity);
+		buffer.putInt(STATE_DIM_OFFSET, stateDim);
+		buffer.putInt(FLAGS_OFFSET, training ? FLAG_TRAINING : 0);
+		buffer.putFloat(MIN_PRICE_OFFSET, minPrice);
+		buffer.putFloat(MAX_PRICE_OFFSET, maxPrice);
+		// The file is ready for the peer when the magic number is set
+		INTS.setRelease(buffer, MAGIC_OFFSET, MAGIC);
+		return new SharedMemoryBridge(path, channel, buffer);
+	}
+	
+	/**
+	 * Opens the file on the peer side, waiting until the simulation has created it.
+	 * 
+	 * @param path			Path to the file
+	 * @param timeoutNanos	How long to wait for the file
+	 * @return SharedMemoryBridge: The bridge
+	 * @throws IOException			If the file cannot be opened or its version is not supported
+	 * @throws TimeoutException		If the file was not created in time
+	 */
+	public static SharedMemoryBridge open(Path path, long timeoutNanos) throws IOException, TimeoutException {
+		long deadline = System.nanoTime() + timeoutNanos;
+		while (!Files.exists(path) || Files.size(path) < HEADER_SIZE) {
+			waitUntil(deadline, "the file " + path);
+			LockSupport.parkNanos(1_000_000);
+		}
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+		while ((int) INTS.getAcquire(header, MAGIC_OFFSET) != MAGIC) {
+			waitUntil(deadline, "the file " + path);
+			LockSupport.parkNanos(1_000_000);
+		}
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		if (header.getInt(VERSION_OFFSET) != VERSION) {
+			channel.close();
+			throw new IOException("Unsupported bridge protocol version " + header.getInt(VERSION_OFFSET) + " in " + path);
+		}
+		long size = fileSize(header.getInt(CAPACITY_OFFSET), header.getInt(STATE_DIM_OFFSET));
+		return new SharedMemoryBridge(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+	}
+	
+	/**
+	 * Registers a cluster head, or returns its index if it has already been registered.
+	 * 
+	 * @param name		The name of the cluster head, at most {@code NAME_SIZE - 1} bytes in UTF-8
+	 * @return int:		The index of the cluster head
+	 * @throws IllegalArgumentException If the name is too long to be stored in the file
+	 */
+	public synchronized int register(String name) {
+		// A truncated name would not be found again, and could split a character in two
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > NAME_SIZE - 1) {
+			throw new IllegalArgumentException(getClass().getSimpleName() + " - The name " + name + " is longer than " 
+					+ (NAME_SIZE - 1) + " bytes in UTF-8");
+		}
+		int registered = this.getRegisteredCount();
+		for (int i = 0; i < registered; i++) {
+			if (this.getName(i).equals(name)) {
+				return i;
+			}
+		}
+		if (registered == this.capacity) {
+			throw new IllegalStateException(getClass().getSimpleName() + " - Cannot register more than " 
+					+ this.capacity + " cluster heads in " + this.path);
+		}
+		int offset = HEADER_SIZE + registered * NAME_SIZE;
+		for (int i = 0; i < NAME_SIZE; i++) {
+			this.buffer.put(offset + i, i < bytes.length ? bytes[i] : 0);
+		}
+		this.buffer.putInt(REGISTERED_OFFSET, registered + 1);
+		return registered;
+	}
+	
+	/**
+	 * Sends a DECIDE request and waits for the prices.
+	 * 
+	 * @param indices		The indices of the cluster heads
+	 * @param rewards		The rewards of the previous slots
+	 * @param states		The states at the beginning of the new slots
+	 * @param clock			The simulation time
+	 * @param timeoutNanos	How long to wait for the response
+	 * @return float[]:		The prices, in the order of the given cluster heads
+	 * @throws TimeoutException If the peer did not answer in time
+	 */
+	public synchronized float[] decide(int[] indices, float[] rewards, float[][] states, double clock, 
+			long timeoutNanos) throws TimeoutException {
+		int requests = this.requestsOffset();
+		for (int i = 0; i < indices.length; i++) {
+			int offset = requests + i * this.entrySize;
+			this.buffer.putInt(offset, indices[i]);
+			this.buffer.putFloat(offset + 4, rewards[i]);
+			for (int j = 0; j < this.stateDim; j++) {
+				this.buffer.putFloat(offset + 8 + 4 * j, states[i][j]);
+			}
+		}
+		this.request(DECIDE, indices.length, clock, timeoutNanos);
+		
+		float[] prices = new float[indices.length];
+		int responses = this.responsesOffset();
+		for (int i = 0; i < prices.length; i++) {
+			prices[i] = this.buffer.getFloat(responses + 4 * i);
+		}
+		return prices;
+	}
+	
+	/**
+	 * Sends a request without entries (EPISODE_END or CLOSE). CLOSE is not waited for.
+	 * 
+	 * @param type			The request type
+	 * @param clock			The simulation time
+	 * @param timeoutNanos	How long to wait for the acknowledgement
+	 * @throws TimeoutException If the peer did not acknowledge the request in time
+	 */
+	public synchronized void notify(int type, double clock, long timeoutNanos) throws TimeoutException {
+		this.request(type, 0, clock, type == CLOSE ? -1 : timeoutNanos);
+	}
+	
+	protected void request(int type, int count, double clock, long timeoutNanos) throws TimeoutException {
+		this.buffer.putInt(REQUEST_TYPE_OFFSET, type);
+		this.buffer.putInt(COUNT_OFFSET, count);
+		this.buffer.putDouble(CLOCK_OFFSET, clock);
+		long published = ++this.sequence;
+		LONGS.setRelease(this.buffer, REQUEST_SEQUENCE_OFFSET, published);
+		if (timeoutNanos >= 0) {
+			this.await(RESPONSE_SEQUENCE_OFFSET, published, timeoutNanos, "the response of the peer");
+		}
+	}
+	
+	/**
+	 * Waits on the peer side until the next request has been published.
+	 * 
+	 * @param timeoutNanos		How long to wait
+	 * @return long:			The sequence number of the request
+	 * @throws TimeoutException	If no request was published in time
+	 */
+	public long awaitRequest(long timeoutNanos) throws TimeoutException {
+		long next = (long) LONGS.getAcquire(this.buffer, RESPONSE_SEQUENCE_OFFSET) + 1;
+		this.await(REQUEST_SEQUENCE_OFFSET, next, timeoutNanos, "a request from the simulation");
+		return next;
+	}
+	
+	/**
+	 * Writes the prices on the peer side and publishes the response to the given request.
+	 * 
+	 * @param sequence	The sequence number of the request
+	 * @param prices	The prices, in the order of the request entries (can be empty for requests without entries)
+	 */
+	public void respond(long sequence, float[] prices) {
+		int responses = this.responsesOffset();
+		for (int i = 0; i < prices.length; i++) {
+			this.buffer.putFloat(responses + 4 * i, prices[i]);
+		}
+		LONGS.setRelease(this.buffer, RESPONSE_SEQUENCE_OFFSET, sequence);
+	}
+	
+	protected void await(int offset, long value, long timeoutNanos, String what) throws TimeoutException {
+		long start = System.nanoTime();
+		long deadline = start + timeoutNanos;
+		while ((long) LONGS.getAcquire(this.buffer, offset) < value) {
+			long now = System.nanoTime();
+			if (now - start < SPIN_NANOS) {
+				Thread.onSpinWait();
+			} else {
+				waitUntil(deadline, what);
+				LockSupport.parkNanos(PARK_NANOS);
+			}
+		}
+	}
+	
+	private static void waitUntil(long deadline, String what) throws TimeoutException {
+		if (System.nanoTime() - deadline > 0) {
+			throw new TimeoutException(SharedMemoryBridge.class.getSimpleName() + " - Timed out waiting for " + what);
+		}
+	}
+	
+	public int getRequestType() {
+		return this.buffer.getInt(REQUEST_TYPE_OFFSET);
+	}
+	
+	public int getRequestCount() {
+		return this.buffer.getInt(COUNT_OFFSET);
+	}
+	
+	public double getRequestClock() {
+		return this.buffer.getDouble(CLOCK_OFFSET);
+	}
+	
+	public int getEntryIndex(int entry) {
+		return this.buffer.getInt(this.requestsOffset() + entry * this.entrySize);
+	}
+	
+	public float getEntryReward(int entry) {
+		return this.buffer.getFloat(this.requestsOffset() + entry * this.entrySize + 4);
+	}
+	
+	/**
+	 * Reads the state of the given request entry.
+	 * 
+	 * @param entry		The request entry
+	 * @param state		The array into which the state is read
+	 */
+	public void readEntryState(int entry, float[] state) {
+		int offset = this.requestsOffset() + entry * this.entrySize + 8;
+		for (int j = 0; j < this.stateDim; j++) {
+			state[j] = this.buffer.getFloat(offset + 4 * j);
+		}
+	}
+	
+	public int getRegisteredCount() {
+		return this.buffer.getInt(REGISTERED_OFFSET);
+	}
+	
+	public String getName(int index) {
+		int offset = HEADER_SIZE + index * NAME_SIZE;
+		int length = 0;
+		while (length < NAME_SIZE && this.buffer.get(offset + length) != 0) {
+			length++;
+		}
+		byte[] bytes = new byte[length];
+		this.buffer.get(offset, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	public boolean isTraining() {
+		return (this.buffer.getInt(FLAGS_OFFSET) & FLAG_TRAINING) != 0;
+	}
+	
+	public float getMinPrice() {
+		return this.buffer.getFloat(MIN_PRICE_OFFSET);
+	}
+	
+	public float getMaxPrice() {
+		return this.buffer.getFloat(MAX_PRICE_OFFSET);
+	}
+	
+	public int getCapacity() {
+		return this.capacity;
+	}
+	
+	public int getStateDim() {
+		return this.stateDim;
+	}
+	
+	public Path getPath() {
+		return this.path;
+	}
+	
+	protected int requestsOffset() {
+		return HEADER_SIZE + this.capacity * NAME_SIZE;
+	}
+	
+	protected int responsesOffset() {
+		return this.requestsOffset() + this.capacity * this.entrySize;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+}
@@ -0,0 +1,123 @@
+package com.github.hennas.eisim.agents.bridge;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A Java implementation of the external side of the {@link SharedMemoryBridge}. It serves as the reference for 
+ * implementing the protocol in other languages, and can be used for running the simulations with the bridge 
+ * without an external agent.
+ * <p>
+ * The peer answers the DECIDE requests with the prices given by a {@link Policy}, and runs until the simulation 
+ * sends CLOSE. When run from the command line, the policy sets uniformly random prices, and the peer reports 
+ * the number of requests and decisions and the total reward of each simulation.
+ * <p>
+ * Usage: {@code SharedMemoryPeer <bridge file> [seed] [timeout in seconds]}
+ * 
+ * @author Henna Kokkonen
+ *
+ */
+public class SharedMemoryPeer {
+	
+	/**
+	 * Decides the price of a cluster head.
+	 */
+	@FunctionalInterface
+	public interface Policy {
+		/**
+		 * @param name		The name of the cluster head
+		 * @param reward	The reward of the previous slot, or NaN if there is none
+		 * @param state		The state at the beginning of the new slot
+		 * @return float:	The price for the new slot
+		 */
+		float decide(String name, float reward, float[] state);
+	}
+	
+	protected final SharedMemoryBridge bridge;
+	protected final Policy policy;
+	protected long requests = 0;
+	protected long decisions = 0;
+	protected double totalReward = 0;
+	
+	public SharedMemoryPeer(SharedMemoryBridge bridge, Policy policy) {
+		this.bridge = bridge;
+		this.policy = policy;
+	}
+	
+	/**
+	 * Answers the requests until the simulation sends CLOSE.
+	 * 
+	 * @param timeoutNanos		How long to wait for each request
+	 * @throws TimeoutException	If no request was received in time
+	 */
+	public void serve(long timeoutNanos) throws TimeoutException {
+		float[] state = new float[this.bridge.getStateDim()];
+		float[] prices = new float[this.bridge.getCapacity()];
+		String[] names = new String[this.bridge.getCapacity()];
+		while (true) {
+			long sequence = this.bridge.awaitRequest(timeoutNanos);
+			switch (this.bridge.getRequestType()) {
+			case SharedMemoryBridge.DECIDE:
+				int count = this.bridge.getRequestCount();
+				this.requests++;
+				float[] response = count == prices.length ? prices : new float[count];
+				for (int i = 0; i < count; i++) {
+					int index = this.bridge.getEntryIndex(i);
+					if (names[index] == null) {
+						names[index] = this.bridge.getName(index);
+					}
+					float reward = this.bridge.getEntryReward(i);
+					this.bridge.readEntryState(i, state);
+					response[i] = this.policy.decide(names[index], reward, state);
+					this.decisions++;
+					if (!Float.isNaN(reward)) {
+						this.totalReward += reward;
+					}
+				}
+				this.bridge.respond(sequence, response);
+				break;
+			case SharedMemoryBridge.EPISODE_END:
+				this.bridge.respond(sequence, new float[0]);
+				this.onEpisodeEnd();
+				break;
+			case SharedMemoryBridge.CLOSE:
+				this.bridge.respond(sequence, new float[0]);
+				return;
+			default:
+				throw new IllegalStateException(getClass().getSimpleName() + " - Unknown request type " + this.bridge.getRequestType());
+			}
+		}
+	}
+	
+	/**
+	 * Called when a simulation has ended. Reports the decisions and the rewards of the simulation.
+	 */
+	protected void onEpisodeEnd() {
+		System.out.printf("%s - Simulation ended: %d requests, %d decisions, total reward %.4f%n", getClass().getSimpleName(), 
+				this.requests, this.decisions, this.totalReward);
+		this.requests = 0;
+		this.decisions = 0;
+		this.totalReward = 0;
+	}
+	
+	public static void main(String[] args) throws IOException, TimeoutException {
+		if (args.length < 1) {
+			System.out.println("Usage: SharedMemoryPeer <bridge file> [seed] [timeout in seconds]");
+			return;
+		}
+		Random random = new Random(args.length > 1 ? Long.parseLong(args[1]) : 0);
+		long timeoutNanos = TimeUnit.SECONDS.toNanos(args.length > 2 ? Long.parseLong(args[2]) : 600);
+		
+		try (SharedMemoryBridge bridge = SharedMemoryBridge.open(Paths.get(args[0]), timeoutNanos)) {
+			System.out.printf("%s - Connected to %s (%d cluster heads at most, state dimension %d, %s mode)%n", 
+					SharedMemoryPeer.class.getSimpleName(), args[0], bridge.getCapacity(), bridge.getStateDim(), 
+					bridge.isTraining() ? "training" : "evaluation");
+			float minPrice = bridge.getMinPrice();
+			float maxPrice = bridge.getMaxPrice();
+			new SharedMemoryPeer(bridge, (name, reward, state) -> random.nextFloat(minPrice, maxPrice)).serve(timeoutNanos);
+		}
+	}
+}
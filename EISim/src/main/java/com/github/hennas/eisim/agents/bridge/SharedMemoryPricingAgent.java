@@ -0,0 +1,224 @@
+package com.github.hennas.eisim.agents.bridge;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.agents.PricingAgent;
+import com.github.hennas.eisim.core.scenariomanager.Scenario;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
+import com.github.hennas.eisim.core.simulationmanager.SimulationManager;
+
+/**
+ * A pricing agent that decides the prices in an external process, for example, an agent prototyped in Python. 
+ * The states, rewards and prices are exchanged through a {@link SharedMemoryBridge} file in 
+ * {@link EisimSimulationParameters#bridgeDirectory}, one file per scenario, named 
+ * {@code eisim_bridge_<algorithm>_<architecture>_<devices>}.
+ * <p>
+ * The cluster heads that update their prices at the same simulation time send one batched request, so there is 
+ * one round trip per price update instant instead of one per cluster head (see 
+ * {@link com.github.hennas.eisim.defaultclasses.EisimSimulationManager#preparePriceUpdates}). The first 
+ * {@link EisimSimulationParameters#randomDecisionSteps} prices are chosen randomly on the simulation side, as 
+ * with the other agents, and the reward of the previous slot is sent with the state only in the training mode. 
+ * The external agent is responsible for its own training and state, so nothing is saved into the model folder.
+ * 
+ * @see SharedMemoryPeer
+ * 
+ * @author Henna Kokkonen
+ *
+ */
+public class SharedMemoryPricingAgent extends PricingAgent {
+	
+	// The bridges by the path of the file, kept open for all the simulations of the scenario in this JVM
+	private static final Map<Path, Bridge> bridges = new HashMap<>();
+	
+	protected Bridge bridge;
+	protected int index;
+	protected float pendingReward = Float.NaN;
+	
+	/**
+	 * Initializes the agent and registers the cluster head in the bridge of the scenario. The bridge file is 
+	 * created by the first cluster head of the scenario.
+	 * 
+	 * @param serverName		The unique name of the server node to which the PricingAgent instance belongs
+	 * @param stateSpaceDim		Dimension of the state space
+	 * @param minPrice			Minimum price that can be set by the agent
+	 * @param maxPrice			Maximum price that can be set by the agent
+	 * @param simulationManager The simulation manager that links between the different modules
+	 */
+	public SharedMemoryPricingAgent(String serverName, int stateSpaceDim, float minPrice, float maxPrice,
+			SimulationManager simulationManager) {
+		super(serverName, stateSpaceDim, minPrice, maxPrice, simulationManager);
+		Scenario scenario = simulationManager.getScenario();
+		Path path = Paths.get(EisimSimulationParameters.bridgeDirectory, "eisim_bridge_" + scenario.getStringOrchAlgorithm() 
+				+ "_" + scenario.getStringOrchArchitecture() + "_" + scenario.getDevicesCount());
+		synchronized (bridges) {
+			this.bridge = bridges.get(path);
+			if (this.bridge == null) {
+				// All the edge data centers could be cluster heads
+				int capacity = simulationManager.getDataCentersManager().getComputingNodesGenerator().getEdgeOnlyList().size();
+				try {
+					this.bridge = new Bridge(SharedMemoryBridge.create(path, capacity, stateSpaceDim, minPrice, maxPrice, train));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				bridges.put(path, this.bridge);
+				SimLog.println("%s - Exchanging the prices with the external agent through %s", getClass().getSimpleName(), path);
+			}
+			this.bridge.members++;
+		}
+		this.index = this.bridge.file.register(serverName);
+	}
+	
+	/**
+	 * The external agent keeps its own state, so no state folder is needed.
+	 */
+	@Override
+	protected String createStateDirectoryForAgent() {
+		return null;
+	}
+	
+	@Override
+	public float act(INDArray state) {
+		return this.act(state.data().asFloat());
+	}
+	
+	/**
+	 * Asks the external agent for the price of this cluster head only. Used when no other cluster head updates 
+	 * its price at the same time.
+	 * 
+	 * @param state 	Current state observation
+	 * @return float: 	The price decided by the external agent
+	 */
+	@Override
+	public float act(float[] state) {
+		return decide(List.of(this), List.of(state))[0];
+	}
+	
+	/**
+	 * Asks the external agent for the prices of the given cluster heads in one request. The agents must belong 
+	 * to the same simulation.
+	 * 
+	 * @param agents	The agents of the cluster heads
+	 * @param states	The states of the cluster heads at the beginning of the new slot
+	 * @return float[]:	The prices, clipped into the price range
+	 */
+	public static float[] decide(List<SharedMemoryPricingAgent> agents, List<float[]> states) {
+		int[] indices = new int[agents.size()];
+		float[] rewards = new float[agents.size()];
+		for (int i = 0; i < indices.length; i++) {
+			SharedMemoryPricingAgent agent = agents.get(i);
+			indices[i] = agent.index;
+			rewards[i] = agent.pendingReward;
+			agent.pendingReward = Float.NaN;
+		}
+		SharedMemoryPricingAgent first = agents.get(0);
+		float[] prices;
+		try {
+			prices = first.bridge.file.decide(indices, rewards, states.toArray(new float[0][]), 
+					first.simulationManager.getSimulation().clock(), timeoutNanos());
+		} catch (TimeoutException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+		for (int i = 0; i < prices.length; i++) {
+			SharedMemoryPricingAgent agent = agents.get(i);
+			prices[i] = Math.max(agent.minPrice, Math.min(agent.maxPrice, prices[i]));
+		}
+		return prices;
+	}
+	
+	@Override
+	public void learn(INDArray state, float action, float reward, INDArray nextState) {
+		this.pendingReward = reward;
+	}
+	
+	/**
+	 * Keeps the reward of the previous slot, so that it is sent to the external agent with the next state.
+	 */
+	@Override
+	public void learn(float[] state, float action, float reward, float[] nextState) {
+		this.pendingReward = reward;
+	}
+	
+	/**
+	 * Notifies the external agent that the simulation has ended, when the last cluster head of the simulation 
+	 * saves its state.
+	 * 
+	 * @throws IOException If the external agent does not acknowledge the notification
+	 */
+	@Override
+	public void saveAgentState() throws IOException {
+		boolean last;
+		synchronized (bridges) {
+			last = ++this.bridge.saved == this.bridge.members;
+			if (last) {
+				this.bridge.saved = 0;
+				this.bridge.members = 0;
+			}
+		}
+		if (last) {
+			try {
+				this.bridge.file.notify(SharedMemoryBridge.EPISODE_END, this.simulationManager.getSimulation().clock(), timeoutNanos());
+			} catch (TimeoutException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+		}
+	}
+	
+	/**
+	 * Continues with the cluster head in a new simulation of the same scenario.
+	 */
+	@Override
+	public void resume(SimulationManager simulationManager) {
+		super.resume(simulationManager);
+		this.pendingReward = Float.NaN;
+		synchronized (bridges) {
+			this.bridge.members++;
+		}
+	}
+	
+	/**
+	 * Sends CLOSE to the external agents and removes the bridge files. Called when the simulations have ended.
+	 */
+	public static void closeAll() {
+		synchronized (bridges) {
+			for (Bridge bridge : bridges.values()) {
+				try {
+					bridge.file.notify(SharedMemoryBridge.CLOSE, 0, 0);
+					bridge.file.close();
+					Files.deleteIfExists(bridge.file.getPath());
+				} catch (IOException | TimeoutException e) {
+					e.printStackTrace(SimLog.getOutput());
+				}
+			}
+			bridges.clear();
+		}
+	}
+	
+	private static long timeoutNanos() {
+		return TimeUnit.SECONDS.toNanos(EisimSimulationParameters.bridgeTimeout);
+	}
+	
+	/**
+	 * The bridge file of a scenario and the bookkeeping of the cluster heads using it.
+	 */
+	protected static class Bridge {
+		protected final SharedMemoryBridge file;
+		protected int members = 0; // The number of cluster heads in the running simulation
+		protected int saved = 0; // The number of cluster heads that have saved their state at the end of the simulation
+		
+		protected Bridge(SharedMemoryBridge file) {
+			this.file = file;
+		}
+	}
+}
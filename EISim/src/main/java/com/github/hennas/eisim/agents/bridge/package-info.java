@@ -0,0 +1,7 @@
+/**
+ * Contains the shared-memory bridge for pricing agents that run in an external process, and a Java 
+ * reference implementation of the external side of the bridge.
+ *
+ * @author Henna Kokkonen
+ */
+package com.github.hennas.eisim.agents.bridge;
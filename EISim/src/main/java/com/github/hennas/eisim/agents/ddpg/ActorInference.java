@@ -0,0 +1,215 @@
+package com.github.hennas.eisim.agents.ddpg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import com.github.hennas.eisim.EisimSimulationParameters.AgentFileTypes;
+
+/**
+ * A pure-Java forward pass of a trained DDPG actor network, used for making the price decisions
+ * in the evaluation mode.
+ * <p>
+ * The actor is a small stack of dense layers (ReLU activations in the hidden layers and a tanh
+ * activation in the output layer), so evaluating it with ND4J costs more in native calls and array
+ * allocations than in arithmetic. This class holds the weights of the layers in plain {@code float[]}
+ * arrays, each weight matrix stored row by row with one row per output unit, and evaluates the network
+ * with simple loops into preallocated buffers. The weights are extracted from a {@link MultiLayerNetwork}
+ * or read from the actor weights file, so an evaluation run that finds the weights file does not
+ * need to initialize the ND4J backend at all.
+ * <p>
+ * The actor weights file consists of a fixed-size header, the layer sizes, and the weights and biases of
+ * each layer, all in little-endian byte order:
+ * <pre>
+ * int   magic       ("EISW")
+ * int   version
+ * int   layers      (the number of dense layers)
+ * int   reserved
+ * int   sizes[layers + 1]  (the input size followed by the output size of each layer)
+ * for each layer:
+ *   float weights[nOut * nIn]  (row by row, one row per output unit)
+ *   float biases[nOut]
+ * </pre>
+ * The results may differ from the DL4J forward pass in the last bits of the floats, as the sums are
+ * computed in a different order.
+ * <p>
+ * An instance is not thread-safe, as the layer outputs are written into shared buffers (see {@link #copy()}).
+ *
+ * @see AgentFileTypes#ACTOR_WEIGHTS
+ * @see DdpgPricingAgent
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class ActorInference {
+
+	public static final int MAGIC = 0x45495357; // "EISW"
+	public static final int VERSION = 1;
+	public static final int HEADER_BYTES = 16;
+
+	protected final int[] sizes;
+	protected final float[][] weights;
+	protected final float[][] biases;
+	protected final float[][] outputs; // The output buffer of each layer
+
+	protected ActorInference(int[] sizes, float[][] weights, float[][] biases) {
+		this.sizes = sizes;
+		this.weights = weights;
+		this.biases = biases;
+		this.outputs = new float[biases.length][];
+		for (int l = 0; l < biases.length; l++) {
+			this.outputs[l] = new float[sizes[l + 1]];
+		}
+	}
+
+	/**
+	 * Extracts the weights of an actor network. The network must consist only of dense layers.
+	 *
+	 * @param actor 				The actor network
+	 * @return ActorInference:		The forward pass of the network
+	 */
+	public static ActorInference fromNetwork(MultiLayerNetwork actor) {
+		int layers = actor.getnLayers();
+		int[] sizes = new int[layers + 1];
+		float[][] weights = new float[layers][];
+		float[][] biases = new float[layers][];
+		for (int l = 0; l < layers; l++) {
+			INDArray w = actor.getLayer(l).getParam("W"); // nIn x nOut
+			int nIn = (int) w.size(0);
+			int nOut = (int) w.size(1);
+			sizes[l] = nIn;
+			sizes[l + 1] = nOut;
+			// Transposed, so that the weights of one output unit are contiguous
+			weights[l] = w.transpose().dup('c').data().asFloat();
+			biases[l] = actor.getLayer(l).getParam("b").data().asFloat();
+		}
+		return new ActorInference(sizes, weights, biases);
+	}
+
+	/**
+	 * Returns a forward pass that shares the weights of this one but has its own output buffers, so that the 
+	 * same weights can be evaluated on several threads. The weights must not be modified afterwards.
+	 *
+	 * @return ActorInference:	The copy
+	 */
+	public ActorInference copy() {
+		return new ActorInference(this.sizes, this.weights, this.biases);
+	}
+
+	/**
+	 * Computes the output of the network for the given input. The returned array is reused by the next call.
+	 *
+	 * @param input 		The input of the network (the state)
+	 * @return float[]:		The output of the network
+	 */
+	public float[] output(float[] input) {
+		float[] in = input;
+		int last = this.biases.length - 1;
+		for (int l = 0; l <= last; l++) {
+			int nIn = this.sizes[l];
+			float[] w = this.weights[l];
+			float[] b = this.biases[l];
+			float[] out = this.outputs[l];
+			for (int j = 0; j < out.length; j++) {
+				float sum = 0;
+				int row = j * nIn;
+				for (int i = 0; i < nIn; i++) {
+					sum += in[i] * w[row + i];
+				}
+				sum += b[j];
+				out[j] = l < last ? Math.max(0f, sum) : (float) Math.tanh(sum);
+			}
+			in = out;
+		}
+		return in;
+	}
+
+	/**
+	 * Writes the weights into an actor weights file. The file is first written into a temporary file,
+	 * which then replaces the previous file.
+	 *
+	 * @param path			The path of the file
+	 * @throws IOException	If the file cannot be written
+	 */
+	public void write(Path path) throws IOException {
+		int floats = 0;
+		for (int l = 0; l < this.biases.length; l++) {
+			floats += this.weights[l].length + this.biases[l].length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + Integer.BYTES * this.sizes.length + Float.BYTES * floats)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(this.biases.length).putInt(0);
+		for (int size : this.sizes) {
+			buffer.putInt(size);
+		}
+		FloatBuffer columns = buffer.asFloatBuffer();
+		for (int l = 0; l < this.biases.length; l++) {
+			columns.put(this.weights[l]);
+			columns.put(this.biases[l]);
+		}
+		buffer.rewind();
+
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads the weights from an actor weights file.
+	 *
+	 * @param path					The path of the file
+	 * @return ActorInference:		The forward pass of the network
+	 * @throws IOException			If the file cannot be read or it is not a valid actor weights file
+	 */
+	public static ActorInference read(Path path) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.limit() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+			throw new IOException(path + " is not an actor weights file");
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported actor weights file version " + version + " in " + path);
+		}
+		int layers = buffer.getInt();
+		buffer.getInt(); // reserved
+		if (layers <= 0 || buffer.remaining() < Integer.BYTES * (layers + 1)) {
+			throw new IOException("The actor weights file " + path + " is truncated");
+		}
+		int[] sizes = new int[layers + 1];
+		long floats = 0;
+		for (int l = 0; l <= layers; l++) {
+			sizes[l] = buffer.getInt();
+			if (l > 0) {
+				floats += (long) sizes[l] * sizes[l - 1] + sizes[l];
+			}
+		}
+		if (buffer.remaining() != Float.BYTES * floats) {
+			throw new IOException("The actor weights file " + path + " is truncated");
+		}
+
+		FloatBuffer columns = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+		float[][] weights = new float[layers][];
+		float[][] biases = new float[layers][];
+		for (int l = 0; l < layers; l++) {
+			weights[l] = new float[sizes[l + 1] * sizes[l]];
+			biases[l] = new float[sizes[l + 1]];
+			columns.get(weights[l]);
+			columns.get(biases[l]);
+		}
+		return new ActorInference(sizes, weights, biases);
+	}
+}
@@ -0,0 +1,244 @@
+package com.github.hennas.eisim.agents.ddpg;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.factory.Nd4j;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.EisimSimulationParameters.AgentFileTypes;
+
+/**
+ * A command-line tool for converting the legacy agent state files (the serialized experience replay and the
+ * noise coefficient file) into the binary agent state file, and for comparing the save and load times of
+ * the two formats. The conversion also exports the weights of the actor into the actor weights file used in
+ * the evaluation mode (see {@link ActorInference}).
+ * <p>
+ * Usage:
+ * <pre>
+ * AgentStateConverter &lt;model_folder&gt;
+ * AgentStateConverter --benchmark [agents] [buffer_size]
+ * </pre>
+ * The conversion goes through every agent folder under the given model folder and writes the agent state file
+ * next to the legacy files, which are left in place. Agent folders that already have an agent state file are
+ * skipped. Likewise, the actor weights file is written for every agent folder with an actor model file but no
+ * actor weights file. The benchmark saves and loads a full experience replay of the given size (by default
+ * {@link EisimSimulationParameters#replayBufferSize}) for the given number of agents (by default 100) in both
+ * formats, using temporary files.
+ *
+ * @see AgentStateFile
+ * @see DdpgPricingAgent
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class AgentStateConverter {
+
+	private static final int BENCHMARK_STATE_DIM = 2;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.out.println("Usage: AgentStateConverter <model_folder> | --benchmark [agents] [buffer_size]");
+			return;
+		}
+		if (args[0].equals("--benchmark")) {
+			int agents = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+			int bufferSize = args.length > 2 ? Integer.parseInt(args[2]) : EisimSimulationParameters.replayBufferSize;
+			benchmark(agents, bufferSize);
+		} else {
+			convertAll(Path.of(args[0]));
+		}
+	}
+
+	/**
+	 * Converts the legacy files of every agent folder under the given model folder.
+	 *
+	 * @param modelFolder	The model folder
+	 * @throws IOException	If the folder cannot be walked
+	 */
+	public static void convertAll(Path modelFolder) throws IOException {
+		List<Path> memoryFiles;
+		try (Stream<Path> paths = Files.walk(modelFolder)) {
+			memoryFiles = paths.filter(p -> p.getFileName().toString().equals(AgentFileTypes.EXPERIENCE_REPLAY.getFileName()))
+					.collect(Collectors.toList());
+		}
+		int converted = 0;
+		for (Path memoryFile : memoryFiles) {
+			Path agentFolder = memoryFile.getParent();
+			Path stateFile = agentFolder.resolve(AgentFileTypes.AGENT_STATE.getFileName());
+			if (Files.exists(stateFile)) {
+				System.out.println("Skipping " + agentFolder + " (agent state file exists)");
+				continue;
+			}
+			try {
+				convert(memoryFile, agentFolder.resolve(AgentFileTypes.NOISE_COEFF.getFileName()), stateFile);
+				converted++;
+				System.out.println("Converted " + agentFolder);
+			} catch (IOException e) {
+				System.out.println("Could not convert " + agentFolder + ": " + e.getMessage());
+			}
+		}
+		System.out.println("Converted " + converted + " of " + memoryFiles.size() + " agent folders");
+
+		List<Path> actorFiles;
+		try (Stream<Path> paths = Files.walk(modelFolder)) {
+			actorFiles = paths.filter(p -> p.getFileName().toString().equals(AgentFileTypes.ACTOR.getFileName()))
+					.collect(Collectors.toList());
+		}
+		int exported = 0;
+		for (Path actorFile : actorFiles) {
+			Path weightsFile = actorFile.resolveSibling(AgentFileTypes.ACTOR_WEIGHTS.getFileName());
+			if (Files.exists(weightsFile)) {
+				continue;
+			}
+			try {
+				ActorInference.fromNetwork(MultiLayerNetwork.load(actorFile.toFile(), false)).write(weightsFile);
+				exported++;
+			} catch (IOException e) {
+				System.out.println("Could not export the actor weights of " + actorFile.getParent() + ": " + e.getMessage());
+			}
+		}
+		System.out.println("Exported the actor weights of " + exported + " agent folders");
+	}
+
+	/**
+	 * Converts the legacy files of one agent into an agent state file.
+	 *
+	 * @param memoryFile		The serialized experience replay
+	 * @param noiseCoeffFile	The noise coefficient file (the default value 1 is used if it does not exist)
+	 * @param stateFile			The agent state file to write
+	 * @throws IOException		If the files cannot be read or written, or the experience replay cannot be deserialized
+	 */
+	public static void convert(Path memoryFile, Path noiseCoeffFile, Path stateFile) throws IOException {
+		List<ExperienceTuple> memory = readLegacyMemory(memoryFile);
+		float noiseCoeff = 1f;
+		if (Files.exists(noiseCoeffFile)) {
+			try (DataInputStream dis = new DataInputStream(new FileInputStream(noiseCoeffFile.toFile()))) {
+				noiseCoeff = dis.readFloat();
+			}
+		}
+		writeStateFile(stateFile, memory, noiseCoeff);
+	}
+
+	/**
+	 * Compares the save and load times of the legacy and binary formats for a full experience replay.
+	 *
+	 * @param agents		The number of agents
+	 * @param bufferSize	The number of experiences per agent
+	 * @throws IOException	If the temporary files cannot be written or read
+	 */
+	public static void benchmark(int agents, int bufferSize) throws IOException {
+		Random random = new Random(0);
+		List<ExperienceTuple> memory = new ArrayList<>(bufferSize);
+		for (int i = 0; i < bufferSize; i++) {
+			memory.add(new ExperienceTuple(Nd4j.create(new float[][] {{random.nextFloat(), random.nextFloat()}}),
+					Nd4j.create(new float[][] {{random.nextFloat()}}), Nd4j.create(new float[][] {{random.nextFloat()}}),
+					Nd4j.create(new float[][] {{random.nextFloat(), random.nextFloat()}})));
+		}
+
+		Path folder = Files.createTempDirectory("agent_state_benchmark");
+		try {
+			long start = System.nanoTime();
+			for (int a = 0; a < agents; a++) {
+				try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(folder.resolve(a + ".ser").toFile()))) {
+					oos.writeObject(memory);
+				}
+			}
+			long legacySave = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int a = 0; a < agents; a++) {
+				readLegacyMemory(folder.resolve(a + ".ser"));
+			}
+			long legacyLoad = System.nanoTime() - start;
+
+			// The conversion into columns is not part of the timing, as the experience replay already holds the columns
+			float[][] columns = toColumns(memory);
+			start = System.nanoTime();
+			for (int a = 0; a < agents; a++) {
+				AgentStateFile.write(folder.resolve(a + ".bin"), BENCHMARK_STATE_DIM, bufferSize, 0, 1f,
+						columns[0], columns[1], columns[2], columns[3]);
+			}
+			long binarySave = System.nanoTime() - start;
+
+			float[] states = new float[bufferSize * BENCHMARK_STATE_DIM];
+			start = System.nanoTime();
+			for (int a = 0; a < agents; a++) {
+				// Copy the states as the experience replay does, so that the pages are actually read
+				AgentStateFile.read(folder.resolve(a + ".bin")).getStates().get(0, states);
+			}
+			long binaryLoad = System.nanoTime() - start;
+
+			System.out.println("Agents: " + agents + ", experiences per agent: " + bufferSize);
+			System.out.printf("Serialized experience replay: save %.1f ms, load %.1f ms, %d bytes per agent%n",
+					legacySave / 1e6, legacyLoad / 1e6, Files.size(folder.resolve("0.ser")));
+			System.out.printf("Agent state file:             save %.1f ms, load %.1f ms, %d bytes per agent%n",
+					binarySave / 1e6, binaryLoad / 1e6, Files.size(folder.resolve("0.bin")));
+		} finally {
+			try (Stream<Path> paths = Files.list(folder)) {
+				for (Path p : (Iterable<Path>) paths::iterator) {
+					Files.delete(p);
+				}
+			}
+			Files.delete(folder);
+		}
+	}
+
+	private static List<ExperienceTuple> readLegacyMemory(Path memoryFile) throws IOException {
+		try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(memoryFile.toFile()))) {
+			Object content = ois.readObject();
+			List<ExperienceTuple> memory = new ArrayList<>();
+			if (!(content instanceof ArrayList)) {
+				throw new IOException(memoryFile + " does not contain an experience replay");
+			}
+			for (Object member : (ArrayList<?>) content) {
+				if (!(member instanceof ExperienceTuple)) {
+					throw new IOException(memoryFile + " does not contain an experience replay");
+				}
+				memory.add((ExperienceTuple) member);
+			}
+			return memory;
+		} catch (ClassNotFoundException e) {
+			throw new IOException(memoryFile + " does not contain an experience replay", e);
+		}
+	}
+
+	private static void writeStateFile(Path stateFile, List<ExperienceTuple> memory, float noiseCoeff) throws IOException {
+		int stateDim = memory.isEmpty() ? 0 : (int) memory.get(0).getState().length();
+		float[][] columns = toColumns(memory);
+		AgentStateFile.write(stateFile, stateDim, memory.size(), 0, noiseCoeff, columns[0], columns[1], columns[2], columns[3]);
+	}
+
+	/**
+	 * Copies the experiences into (states, actions, rewards, nextStates) columns, oldest first.
+	 */
+	private static float[][] toColumns(List<ExperienceTuple> memory) {
+		int stateDim = memory.isEmpty() ? 0 : (int) memory.get(0).getState().length();
+		float[] states = new float[memory.size() * stateDim];
+		float[] actions = new float[memory.size()];
+		float[] rewards = new float[memory.size()];
+		float[] nextStates = new float[memory.size() * stateDim];
+		for (int i = 0; i < memory.size(); i++) {
+			ExperienceTuple e = memory.get(i);
+			for (int j = 0; j < stateDim; j++) {
+				states[i * stateDim + j] = e.getState().getFloat(j);
+				nextStates[i * stateDim + j] = e.getNextState().getFloat(j);
+			}
+			actions[i] = e.getAction().getFloat(0);
+			rewards[i] = e.getReward().getFloat(0);
+		}
+		return new float[][] {states, actions, rewards, nextStates};
+	}
+}
@@ -0,0 +1,182 @@
+package com.github.hennas.eisim.agents.ddpg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import com.github.hennas.eisim.EisimSimulationParameters.AgentFileTypes;
+
+/**
+ * Reads and writes the binary agent state file of a DDPG pricing agent, which holds the content of the
+ * agent's experience replay and its noise coefficient.
+ * <p>
+ * The file consists of a fixed-size header followed by the experience replay columns, all in little-endian
+ * byte order:
+ * <pre>
+ * int   magic       ("EISA")
+ * int   version
+ * int   stateDim    (the dimension of the state space)
+ * int   size        (the number of experiences)
+ * int   oldest      (the slot of the oldest experience; the experiences are stored as a ring)
+ * float noiseCoeff
+ * long  reserved
+ * float states[size * stateDim]
+ * float actions[size]
+ * float rewards[size]
+ * float nextStates[size * stateDim]
+ * </pre>
+ * The file is written sequentially through a {@link FileChannel} into a temporary file, which then replaces
+ * the previous file, so a failed save does not corrupt the previous state. The file is loaded by memory-mapping
+ * it, and the columns are copied into the experience replay in bulk.
+ *
+ * @see AgentFileTypes#AGENT_STATE
+ * @see AgentStateConverter
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class AgentStateFile {
+
+	public static final int MAGIC = 0x45495341; // "EISA"
+	public static final int VERSION = 1;
+	public static final int HEADER_BYTES = 32;
+
+	protected final int stateDim;
+	protected final int size;
+	protected final int oldest;
+	protected final float noiseCoeff;
+	protected final FloatBuffer states;
+	protected final FloatBuffer actions;
+	protected final FloatBuffer rewards;
+	protected final FloatBuffer nextStates;
+
+	protected AgentStateFile(int stateDim, int size, int oldest, float noiseCoeff, FloatBuffer states,
+			FloatBuffer actions, FloatBuffer rewards, FloatBuffer nextStates) {
+		this.stateDim = stateDim;
+		this.size = size;
+		this.oldest = oldest;
+		this.noiseCoeff = noiseCoeff;
+		this.states = states;
+		this.actions = actions;
+		this.rewards = rewards;
+		this.nextStates = nextStates;
+	}
+
+	/**
+	 * Writes an agent state file. The columns hold the experiences in ring order, starting from slot 0,
+	 * and only their first {@code size} (or {@code size * stateDim}) values are written.
+	 *
+	 * @param path			The path of the file
+	 * @param stateDim		The dimension of the state space
+	 * @param size			The number of experiences
+	 * @param oldest		The slot of the oldest experience
+	 * @param noiseCoeff	The noise coefficient of the agent
+	 * @param states		The states column
+	 * @param actions		The actions column
+	 * @param rewards		The rewards column
+	 * @param nextStates	The next states column
+	 * @throws IOException	If the file cannot be written
+	 */
+	public static void write(Path path, int stateDim, int size, int oldest, float noiseCoeff, float[] states,
+			float[] actions, float[] rewards, float[] nextStates) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(HEADER_BYTES + Float.BYTES * (2 * size * stateDim + 2 * size))
+				.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(stateDim).putInt(size).putInt(oldest).putFloat(noiseCoeff).putLong(0);
+
+		FloatBuffer columns = buffer.asFloatBuffer();
+		columns.put(states, 0, size * stateDim);
+		columns.put(actions, 0, size);
+		columns.put(rewards, 0, size);
+		columns.put(nextStates, 0, size * stateDim);
+		buffer.rewind();
+
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Memory-maps an agent state file for reading.
+	 *
+	 * @param path					The path of the file
+	 * @return AgentStateFile:		The content of the file
+	 * @throws IOException			If the file cannot be read or it is not a valid agent state file
+	 */
+	public static AgentStateFile read(Path path) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.limit() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+			throw new IOException(path + " is not an agent state file");
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported agent state file version " + version + " in " + path);
+		}
+		int stateDim = buffer.getInt();
+		int size = buffer.getInt();
+		int oldest = buffer.getInt();
+		float noiseCoeff = buffer.getFloat();
+		buffer.getLong(); // reserved
+		if (buffer.limit() != HEADER_BYTES + Float.BYTES * (2L * size * stateDim + 2L * size)) {
+			throw new IOException("The agent state file " + path + " is truncated");
+		}
+
+		FloatBuffer columns = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+		int position = 0;
+		FloatBuffer states = columns.slice(position, size * stateDim);
+		position += size * stateDim;
+		FloatBuffer actions = columns.slice(position, size);
+		position += size;
+		FloatBuffer rewards = columns.slice(position, size);
+		position += size;
+		FloatBuffer nextStates = columns.slice(position, size * stateDim);
+		return new AgentStateFile(stateDim, size, oldest, noiseCoeff, states, actions, rewards, nextStates);
+	}
+
+	public int getStateDim() {
+		return this.stateDim;
+	}
+
+	public int getSize() {
+		return this.size;
+	}
+
+	public int getOldest() {
+		return this.oldest;
+	}
+
+	public float getNoiseCoeff() {
+		return this.noiseCoeff;
+	}
+
+	public FloatBuffer getStates() {
+		return this.states;
+	}
+
+	public FloatBuffer getActions() {
+		return this.actions;
+	}
+
+	public FloatBuffer getRewards() {
+		return this.rewards;
+	}
+
+	public FloatBuffer getNextStates() {
+		return this.nextStates;
+	}
+}
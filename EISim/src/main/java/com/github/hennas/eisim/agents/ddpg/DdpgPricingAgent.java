@@ -1,16 +1,17 @@
 package com.github.hennas.eisim.agents.ddpg;
 
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
@@ -20,14 +21,23 @@ import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.nn.weights.WeightInit;
 import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
 import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.learning.config.AMSGrad;
 
 import com.github.hennas.eisim.EisimSimulationParameters.AgentFileTypes;
 import com.github.hennas.eisim.agents.PricingAgent;
 import com.github.hennas.eisim.core.simulationmanager.SimulationManager;
 import com.github.hennas.eisim.defaultclasses.EisimComputingNode;
+import com.github.hennas.eisim.helpers.CheckpointWriter;
+import com.github.hennas.eisim.helpers.CpuBudget;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
 
 /**
  * Implements a DDPG based pricing agent. This class hold the agent's models and experience memory.
@@ -45,8 +55,18 @@ public class DdpgPricingAgent extends PricingAgent {
 	protected MultiLayerNetwork actorTarget;
 	protected MultiLayerNetwork criticTarget;
 	
+	// The pure-Java forward pass of the actor, used in the evaluation mode instead of the actor network
+	protected ActorInference actorInference;
+	
 	protected ExperienceReplay memory;
 	
+	// The trainer that holds the current state of the networks when the agent is trained together with other agents
+	protected StackedDdpgTrainer stackedTrainer;
+	
+	// The trainer that trains the networks of this agent alone in place, and whether the networks must be trained with DL4J instead
+	protected StackedDdpgTrainer trainer;
+	protected boolean dl4jTraining = false;
+	
 	// File names for saving and loading the agent's state
 	protected String actorFilePath;
 	protected String actorTargetFilePath;
@@ -54,6 +74,8 @@ public class DdpgPricingAgent extends PricingAgent {
 	protected String criticTargetFilePath;
 	protected String memoryFilePath;
 	protected String noiseCoeffFilePath;
+	protected String agentStateFilePath;
+	protected String actorWeightsFilePath;
 	
 	/* Min and max values for actor output, used in scaling the actor output into pricing range. 
 	 * All PricingAgents have the same actor structure, so these values are shared between all instances of this class.
@@ -72,6 +94,28 @@ public class DdpgPricingAgent extends PricingAgent {
 	 * is conducted over multiple simulation runs for the same simulation scenario).
 	 */
 	protected float noiseCoeff = 1f;
+	
+	/* The workspace in which the target networks write their outputs during training. The workspace memory is 
+	 * reused by every training step (and by all the agents of the same simulation thread).
+	 */
+	protected static final String TRAINING_WORKSPACE_ID = "DDPG_TRAINING_WS";
+	protected static final WorkspaceConfiguration TRAINING_WORKSPACE_CONFIG = WorkspaceConfiguration.builder()
+			.policyAllocation(AllocationPolicy.STRICT)
+			.policyLearning(LearningPolicy.FIRST_LOOP)
+			.build();
+	
+	// Training buffers, allocated once before the first training step and reused by every step after that
+	protected INDArray statesAndActions; // Critic input [batchSize, stateSpaceDim + actionSpaceDim]
+	protected INDArray nextStatesAndPredNextActions;
+	protected INDArray statesAndPredActions;
+	protected INDArray[] statesAndActionsViews; // (state columns, action column) views of the critic inputs above
+	protected INDArray[] nextStatesAndPredNextActionsViews;
+	protected INDArray[] statesAndPredActionsViews;
+	protected INDArray targetForCritic; // rewards + discountFactor * predictedQvalues
+	protected INDArray criticErrorForActorLoss; // dL/dQval for each sample in minibatch
+	protected INDArray epsilonAction; // dL/da for each sample in minibatch
+	protected INDArray actorParamsBuffer; // tau * actor params, for the soft update of the target network
+	protected INDArray criticParamsBuffer;
 
 	/**
 	 * Initializes a DDPG pricing agent for an edge server node. 
@@ -80,14 +124,18 @@ public class DdpgPricingAgent extends PricingAgent {
 	 * it is first checked whether actor and critic networks and their target counterparts can be found in 
 	 * the agent's state folder under {@link EisimSimulationParameters#modelFolder}. If <b>all</b> model files 
 	 * are found and successfully loaded, the PricingAgent instance is initialized with the loaded models. 
-	 * Otherwise new networks with randomly initialized weights are created. Then, if experience memory file 
+	 * Otherwise new networks with randomly initialized weights are created. Then, if the agent state file 
+	 * exists, an experience replay is initialized with the memory content of the file, and the noise coefficient 
+	 * is loaded from the file. Otherwise the legacy files are used: if experience memory file 
 	 * exists and its content is what expected, an experience replay is initialized with the loaded memory
 	 * content. Otherwise a new, empty experience replay is initialized. Finally, the value for noise coefficient
 	 * is loaded from the corresponding file in case the file exists. Otherwise the noise coefficient uses the 
 	 * default value of 1.
 	 * <p>
-	 * If the simulation is run in the evaluation mode, only actor model is loaded from the corresponding file. 
-	 * If the actor model file is not found or successfully loaded, an exception is thrown.
+	 * If the simulation is run in the evaluation mode, only the actor is needed, and the price decisions are 
+	 * made with a pure-Java forward pass of it (see {@link ActorInference}). The actor weights are read from 
+	 * the actor weights file if it exists, so that ND4J is not needed. Otherwise they are extracted from the 
+	 * actor model file. If the actor model file is not found or successfully loaded, an exception is thrown.
 	 * 
 	 * @param serverName		The unique name of the server node to which the PricingAgent instance belongs
 	 * @param stateSpaceDim		Dimension of the state space
@@ -98,7 +146,31 @@ public class DdpgPricingAgent extends PricingAgent {
 	public DdpgPricingAgent(String serverName, int stateSpaceDim, float minPrice, float maxPrice,
 			SimulationManager simulationManager) {
 		super(serverName, stateSpaceDim, minPrice, maxPrice, simulationManager);
-		
+		this.initialize(this.simulationManager.seedGenerator);
+	}
+	
+	/**
+	 * Initializes a DDPG pricing agent outside of a simulation, e.g., for training it offline, as 
+	 * {@link #DdpgPricingAgent(String, int, float, float, SimulationManager)} does in a simulation. The agent has no 
+	 * simulation manager, so the subclass must override {@link #createStateDirectoryForAgent()}.
+	 * 
+	 * @param name				The unique name of the agent
+	 * @param stateSpaceDim		Dimension of the state space
+	 * @param minPrice			Minimum price that can be set by the agent
+	 * @param maxPrice			Maximum price that can be set by the agent
+	 * @param seedGenerator		The random number generator that seeds the networks and the experience replay
+	 */
+	protected DdpgPricingAgent(String name, int stateSpaceDim, float minPrice, float maxPrice, Random seedGenerator) {
+		super(name, stateSpaceDim, minPrice, maxPrice, seedGenerator);
+		this.initialize(seedGenerator);
+	}
+	
+	/**
+	 * Loads or creates the networks, the experience replay and the noise coefficient of the agent.
+	 * 
+	 * @param seedGenerator The random number generator that seeds the new networks and the experience replay
+	 */
+	private void initialize(Random seedGenerator) {
 		this.scaleFunDerivative = (this.maxPrice - this.minPrice) / (maxActorOut - minActorOut);
 		
 		this.actorFilePath = this.directory + AgentFileTypes.ACTOR.getFileName();
@@ -107,14 +179,16 @@ public class DdpgPricingAgent extends PricingAgent {
 		this.criticTargetFilePath = this.directory + AgentFileTypes.CRITIC_TARGET.getFileName();
 		this.memoryFilePath = this.directory + AgentFileTypes.EXPERIENCE_REPLAY.getFileName();
 		this.noiseCoeffFilePath = this.directory + AgentFileTypes.NOISE_COEFF.getFileName();
+		this.agentStateFilePath = this.directory + AgentFileTypes.AGENT_STATE.getFileName();
+		this.actorWeightsFilePath = this.directory + AgentFileTypes.ACTOR_WEIGHTS.getFileName();
 		
 		if (train) {
 			// Check whether all model files can be found and try to load the models from them
 			boolean filesFound = this.checkAndLoadModelFiles();
 			// If all the files were not found, initialize new models
 			if (!filesFound) {
-				long actorSeed = this.simulationManager.seedGenerator.nextLong();
-				long criticSeed = this.simulationManager.seedGenerator.nextLong();
+				long actorSeed = seedGenerator.nextLong();
+				long criticSeed = seedGenerator.nextLong();
 				
 				// Same seed guarantees that the actor and its target model are initialized with the exactly same parameters
 				this.actor = this.getActorModel(actorSeed, 64, 64); // Initialize actor network
@@ -125,20 +199,23 @@ public class DdpgPricingAgent extends PricingAgent {
 				this.criticTarget = this.getCriticModel(criticSeed, 64, 64); // Initialize target critic network with the same params as the critic network
 			}
 			
-			// Initialize experience replay
-			ArrayList<ExperienceTuple> loadedMemoryContent = this.getMemoryContentFromFile(); // Deserialize experience replay content from file
-			// If the file existed, create a new experience replay with the loaded memory content, otherwise create a new, empty experience replay
-			this.memory = loadedMemoryContent != null 
-					? new ExperienceReplay(replayBufferSize, batchSize, loadedMemoryContent, this.simulationManager)
-					: new ExperienceReplay(replayBufferSize, batchSize, this.simulationManager);
-			
-			// Load noise coefficient
-			this.noiseCoeff = this.getNoiseCoeffFromFile();
+			// Initialize experience replay and load the noise coefficient from the agent state file, if it exists
+			if (!this.loadAgentStateFile(seedGenerator)) {
+				// Otherwise, use the legacy files
+				ArrayList<ExperienceTuple> loadedMemoryContent = this.getMemoryContentFromFile(); // Deserialize experience replay content from file
+				// If the file existed, create a new experience replay with the loaded memory content, otherwise create a new, empty experience replay
+				this.memory = loadedMemoryContent != null 
+						? new ExperienceReplay(replayBufferSize, batchSize, stateSpaceDim, loadedMemoryContent, seedGenerator)
+						: new ExperienceReplay(replayBufferSize, batchSize, stateSpaceDim, seedGenerator);
+				
+				// Load noise coefficient
+				this.noiseCoeff = this.getNoiseCoeffFromFile();
+			}
 			
 		} else {
 			// If the simulation is run in the evaluation mode, only the actor network is needed
-			// The method on the following line will try to load the actor model from the file and will throw an exception if it does not succeed.
-			this.actor = this.loadModelFromFile(new File(actorFilePath), false);
+			// The method on the following line will try to load the actor weights or model from the file and will throw an exception if it does not succeed.
+			this.actorInference = this.loadActorInference();
 		}
 	}
 
@@ -152,16 +229,67 @@ public class DdpgPricingAgent extends PricingAgent {
 	 */
 	@Override
 	public float act(INDArray state) {
+		// Use the pure-Java forward pass in the evaluation mode
+		if (this.actorInference != null) {
+			return this.act(state.data().asFloat());
+		}
+		
 		// Input the state into actor network
 		INDArray actorOutput = this.actor.output(state);
 		
-		// Get the output as float
-		float actorOutputScalar = actorOutput.data().getFloat(0);
-		
+		// Get the output as float and turn it into a price
+		return this.actorOutputToPrice(actorOutput.data().getFloat(0));
+	}
+	
+	/**
+	 * Uses the actor to decide the action in the current state given as a plain array. In the evaluation mode, 
+	 * the action is decided with the pure-Java forward pass of the actor without ND4J. Otherwise this is the 
+	 * same as {@link #act(INDArray)}.
+	 * 
+	 * @param state 	Current state observation
+	 * @return float: 	The action chosen according to the given state
+	 */
+	@Override
+	public float act(float[] state) {
+		return this.actorOutputToPrice(this.actorOutput(state));
+	}
+	
+	/**
+	 * Computes the output of the actor for the given state, without noise.
+	 * 
+	 * @param state 	Current state observation
+	 * @return float: 	The output of the actor
+	 */
+	protected float actorOutput(float[] state) {
+		if (this.actorInference == null) {
+			return this.actor.output(Nd4j.create(new float[][] {state})).data().getFloat(0);
+		}
+		return this.actorInference.output(state)[0];
+	}
+	
+	/**
+	 * Adds noise to the actor output in the training mode, and scales the output into a price.
+	 * 
+	 * @param actorOutputScalar	The output of the actor
+	 * @return float:			The price
+	 */
+	protected float actorOutputToPrice(float actorOutputScalar) {
+		return this.actorOutputToPrice(actorOutputScalar, this.random);
+	}
+	
+	/**
+	 * Adds noise sampled with the given random number generator to the actor output in the training mode, 
+	 * and scales the output into a price.
+	 * 
+	 * @param actorOutputScalar	The output of the actor
+	 * @param random			The random number generator for the noise
+	 * @return float:			The price
+	 */
+	protected float actorOutputToPrice(float actorOutputScalar, Random random) {
 		// If training mode, add noise
 		if (train) {
 			// Sampling noise from normal distribution with zero mean and standard deviation of noiseSD
-			double noise = this.random.nextGaussian() * noiseSD * this.noiseCoeff;
+			double noise = random.nextGaussian() * noiseSD * this.noiseCoeff;
 			actorOutputScalar += noise;
 			
 			// Clip the noisy output to activation range
@@ -183,22 +311,60 @@ public class DdpgPricingAgent extends PricingAgent {
 	 */
 	@Override
 	public void learn(INDArray state, float action, float reward, INDArray nextState) {
-		// Transform action and reward into 2D INDArray
-		INDArray actionAsArray = Nd4j.create(new float[][] {{action}});
-		INDArray rewardAsArray = Nd4j.create(new float[][] {{reward}});
-		
+		this.learn(state.data().asFloat(), action, reward, nextState.data().asFloat());
+	}
+	
+	/**
+	 * Adds the agent's experience tuple into experience replay and conducts model training.
+	 * 
+	 * @param state		Initial state
+	 * @param action	The action taken in the initial state
+	 * @param reward	The reward received
+	 * @param nextState The state that followed from the initial state after taking the action
+	 */
+	@Override
+	public void learn(float[] state, float action, float reward, float[] nextState) {
 		// Add experience to memory
-		memory.addExperience(new ExperienceTuple(state, actionAsArray, rewardAsArray, nextState));
+		memory.addExperience(state, action, reward, nextState);
 		
 		// If time to update
 		if (this.memory.size() >= batchSize) {
-			// Update models specified number of times with random experience batches
-			for (int i = 0; i < modelUpdates; i++) {
-				// Sample a batch
-				ArrayList<ExperienceTuple> batch = memory.getBatch();
-				// Train using the batch
-				train(batch);
-			}
+			this.update();
+		}
+	}
+	
+	/**
+	 * Updates the models the number of times specified by {@link EisimSimulationParameters#modelUpdates}, 
+	 * each time with a random minibatch from the experience replay.
+	 */
+	protected void update() {
+		long start = System.nanoTime();
+		// Update models specified number of times with random experience batches
+		for (int i = 0; i < modelUpdates; i++) {
+			// Sample a batch
+			ExperienceBatch batch = memory.getBatch();
+			// Train using the batch
+			train(batch);
+		}
+		CpuBudget.recordTraining(System.nanoTime() - start);
+	}
+
+	/**
+	 * Continues with the agent in a new simulation. The networks, the experience replay and the noise coefficient 
+	 * are kept, and the random number generators are reseeded in the same order as when the agent is loaded from its 
+	 * files, so the agent continues as if it had been saved and loaded. If the agent was trained together with
+	 * other agents, the state of its networks is first copied back from the trainer of the previous simulation.
+	 * 
+	 * @param simulationManager The simulation manager of the new simulation
+	 */
+	@Override
+	public void resume(SimulationManager simulationManager) {
+		if (this.stackedTrainer != null) {
+			this.stackedTrainer.release();
+		}
+		super.resume(simulationManager);
+		if (this.memory != null) {
+			this.memory.restart(this.simulationManager);
 		}
 	}
 
@@ -207,7 +373,12 @@ public class DdpgPricingAgent extends PricingAgent {
 	 * Saving is only done if the simulation is run in the training mode as specified by {@link EisimSimulationParameters#train}.
 	 * <p>
 	 * An agent's state consists of its models (actor, critic, actorTarget, criticTarget), experience replay content, and 
-	 * noise coefficient.
+	 * noise coefficient. The experience replay content and the noise coefficient are saved into the binary agent state 
+	 * file (see {@link AgentStateFile}). The weights of the actor are also saved into the actor weights file, which 
+	 * is used in the evaluation mode (see {@link ActorInference}).
+	 * <p>
+	 * The state is copied here, and the files are written from the copies by the {@link CheckpointWriter}. Each file is 
+	 * first written into a temporary file, which then replaces the previous file.
 	 * 
 	 * @throws IOException
 	 */
@@ -215,39 +386,58 @@ public class DdpgPricingAgent extends PricingAgent {
 	public void saveAgentState() throws IOException {
 		// The saving is only done if the simulation is run in training mode
 		if (train) {
-			// Save the networks
-			File actorFile = new File(this.actorFilePath);
-			File criticFile = new File(this.criticFilePath);
-			File actorTargetFile = new File(this.actorTargetFilePath);
-			File criticTargetFile = new File(this.criticTargetFilePath);
-			
-			try {
-				this.actor.save(actorFile, true); // true = save also updater state
-				this.critic.save(criticFile, true);
-				this.actorTarget.save(actorTargetFile, false); // false = do not save updater state as it is not needed for target networks
-				this.criticTarget.save(criticTargetFile, false);
-			} catch (IOException e) {
-				throw new IOException("IOException occurred while saving models for agent " + this.serverName, e);
+			// If the agent is trained together with other agents, get the current state of the networks first
+			if (this.stackedTrainer != null) {
+				this.stackedTrainer.copyToAgent(this);
 			}
 			
-			// Save the experience memory
-			ArrayList<ExperienceTuple> memoryContent = this.memory.getMemoryContent();
+			// Take snapshots of the networks and the memory
+			MultiLayerNetwork actor = this.actor.clone();
+			MultiLayerNetwork critic = this.critic.clone();
+			MultiLayerNetwork actorTarget = this.actorTarget.clone();
+			MultiLayerNetwork criticTarget = this.criticTarget.clone();
+			ActorInference actorWeights = ActorInference.fromNetwork(this.actor);
+			CheckpointWriter.Write memoryWrite = this.memory.snapshot(Path.of(this.agentStateFilePath), this.noiseCoeff);
 			
-			try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(this.memoryFilePath))) {
-				oos.writeObject(memoryContent);
-			} catch (IOException e) {
-				throw new IOException("IOException occurred while saving the experience memory for agent " + this.serverName, e);
-			}
+			// Save the networks
+			CheckpointWriter.submit(() -> {
+				try {
+					saveModel(actor, this.actorFilePath, true); // true = save also updater state
+					saveModel(critic, this.criticFilePath, true);
+					saveModel(actorTarget, this.actorTargetFilePath, false); // false = do not save updater state as it is not needed for target networks
+					saveModel(criticTarget, this.criticTargetFilePath, false);
+					actorWeights.write(Path.of(this.actorWeightsFilePath));
+				} catch (IOException e) {
+					throw new IOException("IOException occurred while saving models for agent " + this.serverName, e);
+				}
+			});
 			
-			// Save the noise coefficient
-			try (DataOutputStream dos = new DataOutputStream(new FileOutputStream(this.noiseCoeffFilePath))) {
-				dos.writeFloat(this.noiseCoeff);
-			} catch (IOException e) {
-				throw new IOException("IOException occurred while saving the noise coefficient for agent " + this.serverName, e);
-			}
+			// Save the experience memory and the noise coefficient
+			CheckpointWriter.submit(() -> {
+				try {
+					memoryWrite.run();
+				} catch (IOException e) {
+					throw new IOException("IOException occurred while saving the agent state file for agent " + this.serverName, e);
+				}
+			});
 			
 		}
 	}
+	
+	/**
+	 * Saves a model into a file. The model is first saved into a temporary file, which then replaces the previous file.
+	 * 
+	 * @param net			The model
+	 * @param filePath		The path of the file
+	 * @param saveUpdater	Whether to also save the state of the model's updater
+	 * @throws IOException	If the file cannot be written
+	 */
+	protected static void saveModel(MultiLayerNetwork net, String filePath, boolean saveUpdater) throws IOException {
+		Path path = Path.of(filePath);
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		net.save(tmp.toFile(), saveUpdater);
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
 
 	/**
 	 * Loads actor and critic networks, as well as their target network counterparts from files. 
@@ -283,11 +473,57 @@ public class DdpgPricingAgent extends PricingAgent {
 		try {
 			net = MultiLayerNetwork.load(file, loadUpdater);
 		} catch (IOException e) {
-			e.printStackTrace();
+			e.printStackTrace(SimLog.getOutput());
 		}
 		return net;
 	}
 	
+	/**
+	 * Loads the pure-Java forward pass of the actor. The weights are read from the actor weights file if it 
+	 * exists and is valid. Otherwise the weights are extracted from the actor model, which is loaded from the 
+	 * actor model file (the loading is synchronized between the agents, as it initializes ND4J).
+	 * 
+	 * @return ActorInference: The forward pass of the actor
+	 */
+	protected ActorInference loadActorInference() {
+		Path path = Path.of(this.actorWeightsFilePath);
+		if (Files.exists(path)) {
+			try {
+				return ActorInference.read(path);
+			} catch (IOException e) {
+				e.printStackTrace(SimLog.getOutput());
+			}
+		}
+		synchronized (DdpgPricingAgent.class) {
+			this.actor = this.loadModelFromFile(new File(this.actorFilePath), false);
+			return ActorInference.fromNetwork(this.actor);
+		}
+	}
+	
+	/**
+	 * Initializes the experience replay and the noise coefficient from the agent state file if the file exists.
+	 * 
+	 * @param seedGenerator	The random number generator that seeds the experience replay
+	 * @return boolean: 	True if the file existed and was loaded successfully, otherwise false
+	 */
+	protected boolean loadAgentStateFile(Random seedGenerator) {
+		Path path = Path.of(this.agentStateFilePath);
+		if (!Files.exists(path)) {
+			return false;
+		}
+		try {
+			AgentStateFile file = AgentStateFile.read(path);
+			ExperienceReplay replay = new ExperienceReplay(replayBufferSize, batchSize, stateSpaceDim, seedGenerator);
+			replay.addExperiences(file);
+			this.memory = replay;
+			this.noiseCoeff = file.getNoiseCoeff();
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace(SimLog.getOutput());
+			return false;
+		}
+	}
+	
 	/**
 	 * Deserializes experience replay content from the memory file if the file exists.
 	 * 
@@ -316,7 +552,7 @@ public class DdpgPricingAgent extends PricingAgent {
 		} catch (FileNotFoundException e) {
 			return null;
 		} catch (IOException | ClassNotFoundException e) {
-			e.printStackTrace();
+			e.printStackTrace(SimLog.getOutput());
 		}
 		return memoryContent;
 	}
@@ -334,7 +570,7 @@ public class DdpgPricingAgent extends PricingAgent {
 		} catch (FileNotFoundException e) {
 			return noiseCoeff;
 		} catch (IOException e) {
-			e.printStackTrace();
+			e.printStackTrace(SimLog.getOutput());
 		}
 		return noiseCoeff;
 	}
@@ -416,43 +652,80 @@ public class DdpgPricingAgent extends PricingAgent {
 	/**
 	 * Performs one iteration of training with the given minibatch.
 	 * <p>
+	 * The networks of the agent consist of dense layers with one AMSGrad updater, so the training step is done 
+	 * by a single-agent {@link StackedDdpgTrainer}, whose forward and backward passes work on preallocated buffers 
+	 * and on views of the networks' own parameters and optimizer state. This avoids the activation and gradient 
+	 * arrays that DL4J allocates for every pass, which at the default minibatch size halves both the time and the 
+	 * heap allocated per step. (The remaining allocations are the objects that ND4J creates for each operation, 
+	 * so they cannot be avoided with ND4J operations.) If the networks cannot be trained by the trainer, for 
+	 * example when a subclass uses other layers, the step is done with DL4J as in {@link #trainWithDl4j(ExperienceBatch)}.
+	 * 
+	 * @param batch The (states, actions, rewards, nextStates) arrays of a minibatch
+	 */
+	protected void train(ExperienceBatch batch) {
+		if (!this.dl4jTraining && (this.trainer == null || !this.trainer.trainsInPlace(this))) {
+			try {
+				this.trainer = new StackedDdpgTrainer(this);
+			} catch (IllegalArgumentException e) {
+				this.trainer = null;
+				this.dl4jTraining = true;
+			}
+		}
+		if (this.dl4jTraining) {
+			this.trainWithDl4j(batch);
+		} else {
+			this.trainer.train(batch);
+		}
+	}
+	
+	/**
+	 * Performs one iteration of training with the given minibatch using the DL4J forward and backward passes.
+	 * <p>
 	 * The method first updates the actor and critic networks over one minibatch, 
 	 * then updates the actor and critic target networks according to {@link EisimSimulationParameters#tau}, 
 	 * as well as the noise process according to {@link EisimSimulationParameters#noiseDecay}.
+	 * If the minibatch was sampled from a prioritized experience replay, the critic loss is weighted by the 
+	 * importance-sampling weights of the minibatch, and the priorities are updated from the TD errors.
+	 * <p>
+	 * The outputs of the target networks are computed inside a memory workspace, and the other buffers of 
+	 * the step are allocated before the first step, so repeated steps reuse the same memory. The networks 
+	 * are updated in-place. (The forward and backward passes of the trained networks cannot be run inside an 
+	 * external workspace, but the networks use their own training workspaces for them.)
 	 * 
-	 * @param batch An ArrayList of ExperienceTuples that forms a minibatch
+	 * @param batch The (states, actions, rewards, nextStates) arrays of a minibatch
 	 */
-	protected void train(ArrayList<ExperienceTuple> batch) {
-		/**************EXTRACTING STATES, ACTIONS, REWARDS AND NEXTSTATES FROM THE MINIBATCH**************/
-		// Get states, actions, rewards, nextStates from the experience batch
-		INDArray[] statesArray = batch.stream().map(e -> e.getState()).toArray(INDArray[]::new);
-		INDArray states = Nd4j.concat(0, statesArray);
-		
-		INDArray[] actionsArray = batch.stream().map(e -> e.getAction()).toArray(INDArray[]::new);
-		INDArray actions = Nd4j.concat(0, actionsArray);
-		
-		INDArray[] rewardsArray = batch.stream().map(e -> e.getReward()).toArray(INDArray[]::new);
-		INDArray rewards = Nd4j.concat(0, rewardsArray);
+	protected void trainWithDl4j(ExperienceBatch batch) {
+		if (this.statesAndActions == null) {
+			this.allocateTrainingBuffers();
+		}
 		
-		INDArray[] nextStatesArray = batch.stream().map(e -> e.getNextState()).toArray(INDArray[]::new);
-		INDArray nextStates = Nd4j.concat(0, nextStatesArray);
+		/**************EXTRACTING STATES, ACTIONS, REWARDS AND NEXTSTATES FROM THE MINIBATCH**************/
+		// The experience replay has already written the minibatch into contiguous arrays
+		INDArray states = batch.getStates();
+		INDArray actions = batch.getActions();
+		INDArray rewards = batch.getRewards();
+		INDArray nextStates = batch.getNextStates();
 		
-		INDArray statesAndActions = Nd4j.hstack(states, actions);
+		this.statesAndActionsViews[0].assign(states);
+		this.statesAndActionsViews[1].assign(actions);
 		
 		/**************USING TARGET NETWORKS TO CALCULATE THE CRITIC TARGET**************/
-		// Predicting nextActions for the nextStates using the actor target network
-		INDArray predictedNextActions = this.actorTarget.output(nextStates);
-		scaleToPriceRange(predictedNextActions);
-		INDArray nextStatesAndPredNextActions = Nd4j.hstack(nextStates, predictedNextActions);
-		
-		// Predicting the Q values for the nextStates + nextActions with the critic target network
-		INDArray predictedNextQvalues = this.criticTarget.output(nextStatesAndPredNextActions);
-		
-		// The target for updating the critic network is rewards + discountFactor * predictedQvalues
-		INDArray targetForCritic = predictedNextQvalues.muli(discountFactor).addi(rewards);
+		try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().getAndActivateWorkspace(TRAINING_WORKSPACE_CONFIG, TRAINING_WORKSPACE_ID)) {
+			// Predicting nextActions for the nextStates using the actor target network
+			INDArray predictedNextActions = this.actorTarget.output(nextStates, false, ws);
+			scaleToPriceRange(predictedNextActions);
+			this.nextStatesAndPredNextActionsViews[0].assign(nextStates);
+			this.nextStatesAndPredNextActionsViews[1].assign(predictedNextActions);
+			
+			// Predicting the Q values for the nextStates + nextActions with the critic target network
+			INDArray predictedNextQvalues = this.criticTarget.output(this.nextStatesAndPredNextActions, false, ws);
+			
+			// The target for updating the critic network is rewards + discountFactor * predictedQvalues
+			this.targetForCritic.assign(predictedNextQvalues).muli(discountFactor).addi(rewards);
+		}
 		
 		/**************CRITIC UPDATE**************/
-		this.critic.setInput(statesAndActions);
+		this.critic.setInput(this.statesAndActions);
 		
 		// Doing a forward pass through critic without clearing input activations as they are needed to calculate gradients
 		List<INDArray> activationsCritic = this.critic.feedForward(true, false); // true = training mode, false = do not clear inputs
@@ -460,7 +733,15 @@ public class DdpgPricingAgent extends PricingAgent {
 		// The loss L for the critic is L = MSE(predictedQvalues, targetForCritic), where predictedQvalues = critic(states, actions)
 		// The following line calculates the error signal for the critic, which is needed in backpropGradient() method 
 		// The error signal is the gradient of the MSE loss with regard to critic output (Q-values), that is, dL/dQvals
-		INDArray errorForCritic = activationsCritic.get(activationsCritic.size()-1).subi(targetForCritic).muli(2); // shape [batchSize, nOut], nOut = 1
+		INDArray errorForCritic = activationsCritic.get(activationsCritic.size()-1).subi(this.targetForCritic); // shape [batchSize, nOut], nOut = 1
+		
+		// With a prioritized experience replay, the TD errors (predictedQvalues - targetForCritic) become the new priorities of the sampled 
+		// experiences, and the error signal of each experience is scaled by its importance-sampling weight
+		if (batch.getWeights() != null) {
+			this.memory.updatePriorities(errorForCritic);
+			errorForCritic.muli(batch.getWeights());
+		}
+		errorForCritic.muli(2);
 		
 		// Do backpropagation (calculate gradients) based on the error signal
 		Gradient gradientForCritic = this.critic.backpropGradient(errorForCritic, null).getFirst();
@@ -483,7 +764,8 @@ public class DdpgPricingAgent extends PricingAgent {
         // Scaling the actor outputs to [minPrice, maxPrice] (predicting pricing actions for the given states; predictedActions = scaleFun(actor(states)))
         INDArray predictedActions = activationsActor.get(activationsActor.size()-1);
         scaleToPriceRange(predictedActions);
-        INDArray statesAndPredActions = Nd4j.hstack(states, predictedActions);
+        this.statesAndPredActionsViews[0].assign(states);
+        this.statesAndPredActionsViews[1].assign(predictedActions);
         
         // The loss L for actor is L = -1 * mean(critic(states, predictedActions)) = -1 * mean(Qvalues)
         // Need to calculate dL/da (error signal for backpropGradient() method), 'a' being the final activation output from the actor
@@ -498,10 +780,10 @@ public class DdpgPricingAgent extends PricingAgent {
          * Not a problem for the networks in the current implementation, but it should be remembered that the following is not a 
          * working solution for every type of network configuration.)
          */
-        this.critic.setInput(statesAndPredActions);
+        this.critic.setInput(this.statesAndPredActions);
         this.critic.feedForward(true, false);
-        INDArray criticErrorForActorLoss = Nd4j.valueArrayOf(batchSize, 1, -1); // dL/dQval for each sample in minibatch
-        INDArray epsilonInput = this.critic.backpropGradient(criticErrorForActorLoss, null).getSecond(); //dL/dSa
+        this.criticErrorForActorLoss.assign(-1); // dL/dQval for each sample in minibatch
+        INDArray epsilonInput = this.critic.backpropGradient(this.criticErrorForActorLoss, null).getSecond(); //dL/dSa
         /* 
          * epsilonInput corresponds to the gradient of the actor loss with regard to critic input, 
          * that is, epsilonInput = dL/dSa, where Sa is the state variables + action variable input to the critic. 
@@ -510,11 +792,11 @@ public class DdpgPricingAgent extends PricingAgent {
          * The length of the critic input is stateSpaceDim + actionSpaceDim, and actionSpaceDim = 1 (cannot be anything else in 
          * this implementation); hence getting the column from index 'stateSpaceDim' corresponds to the action variable column.
          */
-        INDArray epsilonAction = epsilonInput.getColumns(stateSpaceDim); // dL/da_scaled
-        epsilonAction.muli(this.scaleFunDerivative); //dL/da; scaleFunDerivative = da_scaled/da
+        this.epsilonAction.assign(epsilonInput.getColumn(stateSpaceDim, true)); // dL/da_scaled
+        this.epsilonAction.muli(this.scaleFunDerivative); //dL/da; scaleFunDerivative = da_scaled/da
         
         // Do backpropagation (calculate gradients) based on the error signal for actor (based on dL/da)
-        Gradient gradientForActor = this.actor.backpropGradient(epsilonAction, null).getFirst();
+        Gradient gradientForActor = this.actor.backpropGradient(this.epsilonAction, null).getFirst();
      		
      	// Updating the gradient for actor: applying learning rate, momentum, etc. (the Gradient object is modified in-place)
         this.actor.getUpdater().update(this.actor, gradientForActor, iteration, epoch, batchSize, LayerWorkspaceMgr.noWorkspaces());
@@ -524,13 +806,48 @@ public class DdpgPricingAgent extends PricingAgent {
         this.actor.params().subi(updateVectorForActor);
 		
         /**************UPDATING TARGET NETWORKS**************/
-		this.actorTarget.params().muli(1-tau).addi(this.actor.params().dup().muli(tau));
-		this.criticTarget.params().muli(1-tau).addi(this.critic.params().dup().muli(tau));
+		// Soft updates in-place: target = (1 - tau) * target + tau * params
+		this.actorParamsBuffer.assign(this.actor.params()).muli(tau);
+		this.actorTarget.params().muli(1-tau).addi(this.actorParamsBuffer);
+		this.criticParamsBuffer.assign(this.critic.params()).muli(tau);
+		this.criticTarget.params().muli(1-tau).addi(this.criticParamsBuffer);
         
         /**************UPDATING NOISE ACCORDING TO DECAY**************/
 		this.noiseCoeff -= noiseDecay;
 	}
 	
+	/**
+	 * Allocates the buffers reused by every training step: the critic inputs, the error signals and the 
+	 * buffers for the soft updates of the target networks.
+	 */
+	protected void allocateTrainingBuffers() {
+		int inputDim = stateSpaceDim + actionSpaceDim;
+		this.statesAndActions = Nd4j.create(DataType.FLOAT, batchSize, inputDim);
+		this.nextStatesAndPredNextActions = Nd4j.create(DataType.FLOAT, batchSize, inputDim);
+		this.statesAndPredActions = Nd4j.create(DataType.FLOAT, batchSize, inputDim);
+		this.statesAndActionsViews = stateAndActionViews(this.statesAndActions);
+		this.nextStatesAndPredNextActionsViews = stateAndActionViews(this.nextStatesAndPredNextActions);
+		this.statesAndPredActionsViews = stateAndActionViews(this.statesAndPredActions);
+		this.targetForCritic = Nd4j.create(DataType.FLOAT, batchSize, 1);
+		this.criticErrorForActorLoss = Nd4j.valueArrayOf(batchSize, 1, -1);
+		this.epsilonAction = Nd4j.create(DataType.FLOAT, batchSize, actionSpaceDim);
+		this.actorParamsBuffer = Nd4j.create(this.actor.params().dataType(), this.actor.params().shape());
+		this.criticParamsBuffer = Nd4j.create(this.critic.params().dataType(), this.critic.params().shape());
+	}
+	
+	/**
+	 * Creates the views of the state columns and the action column of a critic input array.
+	 * 
+	 * @param criticInput	A critic input array [batchSize, stateSpaceDim + actionSpaceDim]
+	 * @return INDArray[]:	The state view and the action view
+	 */
+	protected INDArray[] stateAndActionViews(INDArray criticInput) {
+		return new INDArray[] {
+				criticInput.get(NDArrayIndex.all(), NDArrayIndex.interval(0, stateSpaceDim)),
+				criticInput.get(NDArrayIndex.all(), NDArrayIndex.interval(stateSpaceDim, stateSpaceDim + actionSpaceDim))
+		};
+	}
+	
 	/**
 	 * Scales the actor output from the range [minActorOut, maxActorOut] to the price range [minPrice, maxPrice]. 
 	 * The scaling is done in-place to the referenced array.
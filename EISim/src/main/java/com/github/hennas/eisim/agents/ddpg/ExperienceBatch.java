@@ -0,0 +1,56 @@
+package com.github.hennas.eisim.agents.ddpg;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Encapsulates one minibatch of agent experiences as contiguous training arrays of the form
+ * (states, actions, rewards, nextStates), one row per experience.
+ * <p>
+ * The arrays are owned by the {@link ExperienceReplay} that samples the minibatch, and they are
+ * overwritten by the next sampled minibatch. A minibatch sampled from a prioritized experience replay
+ * also has the importance-sampling weights of the experiences; otherwise the weights are null.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class ExperienceBatch {
+
+	private final INDArray states;
+	private final INDArray actions;
+	private final INDArray rewards;
+	private final INDArray nextStates;
+	private final INDArray weights;
+
+	public ExperienceBatch(INDArray states, INDArray actions, INDArray rewards, INDArray nextStates) {
+		this(states, actions, rewards, nextStates, null);
+	}
+
+	public ExperienceBatch(INDArray states, INDArray actions, INDArray rewards, INDArray nextStates, INDArray weights) {
+		this.states = states;
+		this.actions = actions;
+		this.rewards = rewards;
+		this.nextStates = nextStates;
+		this.weights = weights;
+	}
+
+	public INDArray getStates() {
+		return this.states;
+	}
+
+	public INDArray getActions() {
+		return this.actions;
+	}
+
+	public INDArray getRewards() {
+		return this.rewards;
+	}
+
+	public INDArray getNextStates() {
+		return this.nextStates;
+	}
+
+	public INDArray getWeights() {
+		return this.weights;
+	}
+
+}
@@ -1,121 +1,448 @@
 package com.github.hennas.eisim.agents.ddpg;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Random;
 
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
 import com.github.hennas.eisim.defaultclasses.EisimSimulationManager;
+import com.github.hennas.eisim.helpers.CheckpointWriter;
 
 /**
  * Implements an experience replay for an agent.
- * 
+ * <p>
+ * The experiences are stored as a ring buffer in preallocated primitive columns: one {@code float[]} for
+ * the states, actions, rewards and next states each, the states being stored row by row. When the memory
+ * limit has been reached, a new experience overwrites the oldest one. The sampled minibatches are written
+ * into the same reusable training arrays every time (see {@link ExperienceBatch}).
+ * <p>
+ * If {@link EisimSimulationParameters#prioritizedReplay} is set, the minibatches are sampled in proportion
+ * to the priorities of the experiences, which are kept in a {@link SumTree}. A new experience gets the highest
+ * priority seen so far, and the priorities of a sampled minibatch are updated from the TD errors of the critic
+ * with {@link #updatePriorities(INDArray)}. The priorities are not saved into the agent state file: a loaded
+ * or restarted memory starts with equal priorities.
+ *
  * @author Henna Kokkonen
  *
  */
 public class ExperienceReplay {
-	
+
+	// Keeps the priorities of the experiences with zero TD error above zero
+	private static final float PRIORITY_EPSILON = 1e-3f;
+
 	private int limit;
 	private int batchSize;
-	private ArrayList<ExperienceTuple> memory;
-	
+	private int stateDim;
+
+	// The memory columns
+	private float[] states; // limit x stateDim
+	private float[] actions;
+	private float[] rewards;
+	private float[] nextStates; // limit x stateDim
+	private int next = 0; // The slot into which the next experience is written
+	private int size = 0;
+
+	/**
+	 * The slots of the memory in a random order. The first {@code batchSize} elements are shuffled
+	 * for each minibatch, which keeps the array a permutation of the occupied slots.
+	 *
+	 * @see #getBatch()
+	 */
+	private int[] slots;
+
+	// Staging arrays and the reusable training arrays of a minibatch
+	private float[] batchStates;
+	private float[] batchActions;
+	private float[] batchRewards;
+	private float[] batchNextStates;
+	private ExperienceBatch batch;
+
 	/**
 	 * Used for sampling random minibatches
-	 * 
+	 *
 	 * @see #getBatch()
 	 */
 	private Random random;
 
+	// The priorities of the slots, or null if the minibatches are sampled uniformly
+	private SumTree priorities;
+	private float maxPriority = 1;
+	private int[] batchSlots; // The slots of the last prioritized minibatch
+	private float[] batchWeights;
+
 	/**
 	 * Initialize empty experience replay.
-	 * 
+	 *
 	 * @param limit		The maximum size of experience replay
 	 * @param batchSize The size for a minibatch
+	 * @param stateDim	The dimension of the state space
 	 */
-	public ExperienceReplay(int limit, int batchSize, EisimSimulationManager EisimSimulationManager) {
+	public ExperienceReplay(int limit, int batchSize, int stateDim, EisimSimulationManager EisimSimulationManager) {
+		this(limit, batchSize, stateDim, EisimSimulationManager.seedGenerator);
+	}
+
+	/**
+	 * Initialize empty experience replay, seeded from the given random number generator instead of the seed
+	 * generator of a simulation (e.g., for training offline).
+	 *
+	 * @param limit			The maximum size of experience replay
+	 * @param batchSize		The size for a minibatch
+	 * @param stateDim		The dimension of the state space
+	 * @param seedGenerator	The random number generator that seeds the sampling of the minibatches
+	 */
+	public ExperienceReplay(int limit, int batchSize, int stateDim, Random seedGenerator) {
 		this.limit = limit;
 		this.batchSize = batchSize;
-		this.memory = new ArrayList<>(limit);
-		
+		this.stateDim = stateDim;
+
+		this.states = new float[limit * stateDim];
+		this.actions = new float[limit];
+		this.rewards = new float[limit];
+		this.nextStates = new float[limit * stateDim];
+		this.slots = new int[limit];
+
+		this.batchStates = new float[batchSize * stateDim];
+		this.batchActions = new float[batchSize];
+		this.batchRewards = new float[batchSize];
+		this.batchNextStates = new float[batchSize * stateDim];
+		if (EisimSimulationParameters.prioritizedReplay) {
+			this.priorities = new SumTree(limit);
+			this.batchSlots = new int[batchSize];
+			this.batchWeights = new float[batchSize];
+		}
+		this.batch = new ExperienceBatch(Nd4j.create(batchStates, new int[] {batchSize, stateDim}),
+				Nd4j.create(batchActions, new int[] {batchSize, 1}), Nd4j.create(batchRewards, new int[] {batchSize, 1}),
+				Nd4j.create(batchNextStates, new int[] {batchSize, stateDim}),
+				this.priorities != null ? Nd4j.create(batchWeights, new int[] {batchSize, 1}) : null);
+
 		this.random = new Random();
-		this.random.setSeed(EisimSimulationManager.seedGenerator.nextInt());
+		this.random.setSeed(seedGenerator.nextInt());
 	}
-	
+
 	/**
-	 * Initialize experience replay with existing experience tuples. 
+	 * Initialize experience replay with existing experience tuples.
 	 * If there are more experiences in the given list of tuples than the specified memory limit, excess ones are removed.
-	 * 
+	 *
 	 * @param limit		The maximum size of experience replay
 	 * @param batchSize The size for a minibatch
+	 * @param stateDim	The dimension of the state space
 	 * @param memory	A list of existing experience tuples that are used to initialize the experience memory
 	 */
-	public ExperienceReplay(int limit, int batchSize, ArrayList<ExperienceTuple> memory, EisimSimulationManager EisimSimulationManager) {
-		this(limit, batchSize, EisimSimulationManager);
-		while (memory.size() > limit) {
-			memory.remove(0);
+	public ExperienceReplay(int limit, int batchSize, int stateDim, ArrayList<ExperienceTuple> memory, EisimSimulationManager EisimSimulationManager) {
+		this(limit, batchSize, stateDim, memory, EisimSimulationManager.seedGenerator);
+	}
+
+	/**
+	 * Initialize experience replay with existing experience tuples, seeded from the given random number generator.
+	 *
+	 * @param limit			The maximum size of experience replay
+	 * @param batchSize		The size for a minibatch
+	 * @param stateDim		The dimension of the state space
+	 * @param memory		A list of existing experience tuples that are used to initialize the experience memory
+	 * @param seedGenerator	The random number generator that seeds the sampling of the minibatches
+	 */
+	public ExperienceReplay(int limit, int batchSize, int stateDim, ArrayList<ExperienceTuple> memory, Random seedGenerator) {
+		this(limit, batchSize, stateDim, seedGenerator);
+		for (int i = Math.max(0, memory.size() - limit); i < memory.size(); i++) {
+			this.addExperience(memory.get(i));
 		}
-		this.memory = memory;
 	}
-	
+
 	/**
-	 * Adds an experience tuple into the memory. 
+	 * Adds an experience tuple into the memory.
 	 * If the memory limit has been reached, deletes the oldest experience before adding the new one.
-	 * 
+	 *
 	 * @param e	ExperienceTuple object that encapsulates one (state, action, reward, nextState) experience
 	 */
 	public void addExperience(ExperienceTuple e) {
-		if (this.size() == this.limit) {
-			this.memory.remove(0);
+		this.addExperience(e.getState(), e.getAction().getFloat(0), e.getReward().getFloat(0), e.getNextState());
+	}
+
+	/**
+	 * Adds an experience into the memory, overwriting the oldest experience if the memory limit has
+	 * been reached.
+	 *
+	 * @param state		Initial state
+	 * @param action	The action taken in the initial state
+	 * @param reward	The reward received
+	 * @param nextState The state that followed from the initial state after taking the action
+	 */
+	public void addExperience(INDArray state, float action, float reward, INDArray nextState) {
+		int offset = this.next * this.stateDim;
+		for (int j = 0; j < this.stateDim; j++) {
+			this.states[offset + j] = state.getFloat(j);
+			this.nextStates[offset + j] = nextState.getFloat(j);
 		}
-		this.memory.add(e);
-		
+		this.actions[this.next] = action;
+		this.rewards[this.next] = reward;
+		this.advance();
 	}
-	
+
 	/**
-	 * Get the current content of the experience replay.
-	 * 
+	 * Adds an experience into the memory, overwriting the oldest experience if the memory limit has
+	 * been reached.
+	 *
+	 * @param state		Initial state
+	 * @param action	The action taken in the initial state
+	 * @param reward	The reward received
+	 * @param nextState The state that followed from the initial state after taking the action
+	 */
+	public void addExperience(float[] state, float action, float reward, float[] nextState) {
+		int offset = this.next * this.stateDim;
+		System.arraycopy(state, 0, this.states, offset, this.stateDim);
+		System.arraycopy(nextState, 0, this.nextStates, offset, this.stateDim);
+		this.actions[this.next] = action;
+		this.rewards[this.next] = reward;
+		this.advance();
+	}
+
+	/**
+	 * Adds the experiences of an agent state file into the memory, from the oldest experience to the newest.
+	 * If there are more experiences in the file than the memory limit, the oldest ones are skipped.
+	 *
+	 * @param file			The agent state file
+	 * @throws IOException	If the state dimension of the file does not match the memory
+	 */
+	public void addExperiences(AgentStateFile file) throws IOException {
+		if (file.getStateDim() != this.stateDim) {
+			throw new IOException("The state dimension " + file.getStateDim() + " of the agent state file does not match the "
+					+ "state dimension " + this.stateDim + " of the experience replay");
+		}
+		int fileSize = file.getSize();
+		for (int i = Math.max(0, fileSize - this.limit); i < fileSize; i++) {
+			int slot = (file.getOldest() + i) % fileSize;
+			file.getStates().get(slot * this.stateDim, this.states, this.next * this.stateDim, this.stateDim);
+			file.getNextStates().get(slot * this.stateDim, this.nextStates, this.next * this.stateDim, this.stateDim);
+			this.actions[this.next] = file.getActions().get(slot);
+			this.rewards[this.next] = file.getRewards().get(slot);
+			this.advance();
+		}
+	}
+
+	/**
+	 * Prepares the memory for a new simulation, as if it had been saved into an agent state file and loaded
+	 * from it: the experiences are reordered from the oldest to the newest, the priorities are reset, and the
+	 * random number generator used for sampling the minibatches is reseeded as in the constructor.
+	 *
+	 * @param simulationManager The simulation manager of the new simulation
+	 */
+	public void restart(EisimSimulationManager simulationManager) {
+		int oldest = this.size < this.limit ? 0 : this.next;
+		if (oldest != 0) {
+			rotate(this.states, oldest * this.stateDim);
+			rotate(this.nextStates, oldest * this.stateDim);
+			rotate(this.actions, oldest);
+			rotate(this.rewards, oldest);
+		}
+		this.next = this.size % this.limit;
+		for (int i = 0; i < this.size; i++) {
+			this.slots[i] = i;
+		}
+		if (this.priorities != null) {
+			this.maxPriority = 1;
+			this.priorities.reset(this.size, this.maxPriority);
+		}
+		this.random.setSeed(simulationManager.seedGenerator.nextInt());
+	}
+
+	/**
+	 * Rotates the array to the left so that the element at the given index becomes the first one.
+	 */
+	private static void rotate(float[] column, int first) {
+		float[] head = Arrays.copyOf(column, first);
+		System.arraycopy(column, first, column, 0, column.length - first);
+		System.arraycopy(head, 0, column, column.length - first, first);
+	}
+
+	/**
+	 * Saves the content of the memory and the given noise coefficient into an agent state file.
+	 *
+	 * @param path			The path of the file
+	 * @param noiseCoeff	The noise coefficient of the agent
+	 * @throws IOException	If the file cannot be written
+	 */
+	public void save(Path path, float noiseCoeff) throws IOException {
+		int oldest = this.size < this.limit ? 0 : this.next;
+		AgentStateFile.write(path, this.stateDim, this.size, oldest, noiseCoeff, this.states, this.actions,
+				this.rewards, this.nextStates);
+	}
+
+	/**
+	 * Copies the content of the memory, and returns a write of the copy and the given noise coefficient into
+	 * an agent state file. The memory can be modified after this, without affecting the write.
+	 *
+	 * @param path						The path of the file
+	 * @param noiseCoeff				The noise coefficient of the agent
+	 * @return CheckpointWriter.Write:	The write of the copied content
+	 */
+	public CheckpointWriter.Write snapshot(Path path, float noiseCoeff) {
+		int oldest = this.size < this.limit ? 0 : this.next;
+		int size = this.size;
+		int stateDim = this.stateDim;
+		float[] states = Arrays.copyOf(this.states, size * stateDim);
+		float[] actions = Arrays.copyOf(this.actions, size);
+		float[] rewards = Arrays.copyOf(this.rewards, size);
+		float[] nextStates = Arrays.copyOf(this.nextStates, size * stateDim);
+		return () -> AgentStateFile.write(path, stateDim, size, oldest, noiseCoeff, states, actions, rewards, nextStates);
+	}
+
+	/**
+	 * Moves the write position to the next slot after an experience has been written.
+	 */
+	private void advance() {
+		if (this.priorities != null) {
+			this.priorities.set(this.next, this.maxPriority);
+		}
+		if (this.size < this.limit) {
+			this.slots[this.size] = this.next;
+			this.size++;
+		}
+		this.next = (this.next + 1) % this.limit;
+	}
+
+	/**
+	 * Get the current content of the experience replay, from the oldest experience to the newest.
+	 *
 	 * @return ArrayList<ExperienceTuple>: The memory content
 	 */
 	public ArrayList<ExperienceTuple> getMemoryContent() {
-		return this.memory;
+		ArrayList<ExperienceTuple> content = new ArrayList<>(this.size);
+		int oldest = this.size < this.limit ? 0 : this.next;
+		for (int i = 0; i < this.size; i++) {
+			int slot = (oldest + i) % this.limit;
+			int offset = slot * this.stateDim;
+			float[] state = new float[this.stateDim];
+			float[] nextState = new float[this.stateDim];
+			System.arraycopy(this.states, offset, state, 0, this.stateDim);
+			System.arraycopy(this.nextStates, offset, nextState, 0, this.stateDim);
+			content.add(new ExperienceTuple(Nd4j.create(new float[][] {state}), Nd4j.create(new float[][] {{this.actions[slot]}}),
+					Nd4j.create(new float[][] {{this.rewards[slot]}}), Nd4j.create(new float[][] {nextState})));
+		}
+		return content;
 	}
-	
+
 	/**
 	 * Samples a random minibatch from the memory.
 	 * <p>
-	 * The returned minibatch is sampled uniformly at random from the memory.
-	 * 
-	 * @return ArrayList<ExperienceTuple>: A list of ExperienceTuple objects that encapsulate (state, action, reward, nextState) experiences
-	 */
-	public ArrayList<ExperienceTuple> getBatch() {
-		ArrayList<ExperienceTuple> minibatch = new ArrayList<>(this.batchSize); 
-		ArrayList<Integer> indices = getListOfIndices(); // A list of indices for current memory objects
-		
-		Collections.shuffle(indices, this.random); // Create a random permutation of the indices using the given Random object
+	 * If the memory is prioritized, the minibatch is sampled as described in {@link #samplePrioritized()}.
+	 * Otherwise the returned minibatch is sampled uniformly at random from the memory, without replacement. Only
+	 * {@code batchSize} random numbers are drawn, by shuffling the first {@code batchSize} elements of the
+	 * slot permutation (a partial Fisher-Yates shuffle). The sampled experiences are written into the
+	 * training arrays of the returned batch, which are reused by the next call.
+	 *
+	 * @return ExperienceBatch: The (states, actions, rewards, nextStates) arrays of the minibatch
+	 */
+	public ExperienceBatch getBatch() {
+		if (this.priorities != null) {
+			this.samplePrioritized();
+			this.batch.getWeights().data().setData(this.batchWeights);
+		} else {
+			this.sample(this.batchStates, this.batchActions, this.batchRewards, this.batchNextStates, 0);
+		}
+		this.batch.getStates().data().setData(this.batchStates);
+		this.batch.getActions().data().setData(this.batchActions);
+		this.batch.getRewards().data().setData(this.batchRewards);
+		this.batch.getNextStates().data().setData(this.batchNextStates);
+		return this.batch;
+	}
+
+	/**
+	 * Samples a random minibatch from the memory into the given arrays, starting from the given row.
+	 * The minibatch is sampled uniformly as described in {@link #getBatch()}, regardless of the priorities.
+	 *
+	 * @param states		The array for the states, stateDim values per row
+	 * @param actions		The array for the actions
+	 * @param rewards		The array for the rewards
+	 * @param nextStates	The array for the next states, stateDim values per row
+	 * @param row			The row at which the minibatch starts in the arrays
+	 */
+	public void sample(float[] states, float[] actions, float[] rewards, float[] nextStates, int row) {
 		for (int i = 0; i < this.batchSize; i++) {
-			minibatch.add(this.memory.get(indices.get(i))); // indices.get(i) gives the index for a randomly chosen memory object
+			int j = i + this.random.nextInt(this.size - i);
+			int slot = this.slots[j];
+			this.slots[j] = this.slots[i];
+			this.slots[i] = slot;
+
+			System.arraycopy(this.states, slot * this.stateDim, states, (row + i) * this.stateDim, this.stateDim);
+			System.arraycopy(this.nextStates, slot * this.stateDim, nextStates, (row + i) * this.stateDim, this.stateDim);
+			actions[row + i] = this.actions[slot];
+			rewards[row + i] = this.rewards[slot];
 		}
-		return minibatch;
 	}
-	
+
 	/**
-	 * Get the current size of the experience replay.
-	 * 
-	 * @return int: The size of the memory
+	 * Samples a minibatch into the staging arrays in proportion to the priorities of the experiences. The
+	 * total priority is split into {@code batchSize} equal segments, and one experience is sampled from each
+	 * segment, so an experience can be sampled more than once. The importance-sampling weight of each sampled
+	 * experience, {@code (size * P(i))^-beta} normalized by the largest weight of the minibatch, is written
+	 * into the weight array.
+	 *
+	 * @see EisimSimulationParameters#priorityBeta
 	 */
-	public int size() {
-		return this.memory.size();
+	private void samplePrioritized() {
+		double total = this.priorities.total();
+		double segment = total / this.batchSize;
+		float beta = EisimSimulationParameters.priorityBeta;
+		float maxWeight = 0;
+		for (int i = 0; i < this.batchSize; i++) {
+			double value = Math.min((i + this.random.nextDouble()) * segment, Math.nextDown(total));
+			// Rounding may end the search at an empty slot past the occupied ones
+			int slot = Math.min(this.priorities.find(value), this.size - 1);
+			this.batchSlots[i] = slot;
+
+			System.arraycopy(this.states, slot * this.stateDim, this.batchStates, i * this.stateDim, this.stateDim);
+			System.arraycopy(this.nextStates, slot * this.stateDim, this.batchNextStates, i * this.stateDim, this.stateDim);
+			this.batchActions[i] = this.actions[slot];
+			this.batchRewards[i] = this.rewards[slot];
+
+			float weight = (float) Math.pow(this.size * this.priorities.get(slot) / total, -beta);
+			this.batchWeights[i] = weight;
+			maxWeight = Math.max(maxWeight, weight);
+		}
+		for (int i = 0; i < this.batchSize; i++) {
+			this.batchWeights[i] /= maxWeight;
+		}
 	}
-	
+
 	/**
-	 * Creates an index list according to the current memory size.
-	 * 
-	 * @return ArrayList<Integer>: A list of indices 
+	 * Updates the priorities of the experiences of the last minibatch from their TD errors: the priority of an
+	 * experience is {@code (|error| + epsilon)^alpha}. Does nothing if the memory is not prioritized.
+	 *
+	 * @param tdErrors	The TD errors of the last minibatch [batchSize, 1]
+	 *
+	 * @see EisimSimulationParameters#priorityAlpha
 	 */
-	private ArrayList<Integer> getListOfIndices() {
-		ArrayList<Integer> indices = new ArrayList<>(this.size());
-		for (int i = 0; i < this.size(); i++) {
-			indices.add(i);
+	public void updatePriorities(INDArray tdErrors) {
+		if (this.priorities == null) {
+			return;
+		}
+		for (int i = 0; i < this.batchSize; i++) {
+			float priority = (float) Math.pow(Math.abs(tdErrors.getFloat(i)) + PRIORITY_EPSILON, EisimSimulationParameters.priorityAlpha);
+			this.priorities.set(this.batchSlots[i], priority);
+			this.maxPriority = Math.max(this.maxPriority, priority);
 		}
-		return indices;
+	}
+
+	/**
+	 * Checks whether the minibatches are sampled in proportion to the priorities of the experiences.
+	 *
+	 * @return boolean: True if the memory is prioritized
+	 */
+	public boolean isPrioritized() {
+		return this.priorities != null;
+	}
+
+	/**
+	 * Get the current size of the experience replay.
+	 *
+	 * @return int: The size of the memory
+	 */
+	public int size() {
+		return this.size;
 	}
 }
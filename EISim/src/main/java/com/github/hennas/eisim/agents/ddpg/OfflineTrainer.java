@@ -0,0 +1,204 @@
+package com.github.hennas.eisim.agents.ddpg;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
+import com.github.hennas.eisim.helpers.ArgumentParser;
+import com.github.hennas.eisim.helpers.CheckpointWriter;
+import com.github.hennas.eisim.helpers.ExperienceRecorder;
+import com.github.hennas.eisim.helpers.ExperienceRecorder.Recording;
+import com.github.hennas.eisim.helpers.TrainingPool;
+
+/**
+ * Trains the DDPG pricing agents from the experiences recorded by the {@link ExperienceRecorder}, without
+ * running the simulation.
+ * <p>
+ * Usage:
+ * <pre>
+ * OfflineTrainer -Y &lt;record_folder&gt; -m &lt;model_folder&gt; [OTHER OPTIONS]
+ * </pre>
+ * The options are the same as in {@link com.github.hennas.eisim.Main}, and the hyperparameters of the agents
+ * (e.g., the batch size, the learning rates, tau and the discount factor) are used as in the training mode of
+ * the simulation. For every cluster head found in the record folder, all its recordings are loaded into its
+ * experience replay, which has the configured capacity, and the agent is trained {@link EisimSimulationParameters#offlinePasses} times
+ * {@link EisimSimulationParameters#modelUpdates} times per recorded experience, each time with a minibatch
+ * sampled from the replay.
+ * <p>
+ * The agents are saved into the model folder as in the training mode of the simulation, under the same scenario
+ * and cluster head folders as in the record folder, so the trained models can be evaluated with the simulation.
+ * If the model folder already has the networks of a cluster head, their training is continued. The agents of
+ * different cluster heads are trained in parallel on {@link EisimSimulationParameters#trainingThreads} threads.
+ *
+ * @see EisimSimulationParameters#recordFolder
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class OfflineTrainer {
+
+	public static void main(String[] args) throws IOException {
+		if (!new ArgumentParser().parseOfflineArguments(args)) {
+			return;
+		}
+		// The pricing agents copy the parameters when their class is loaded, so this must be set first
+		EisimSimulationParameters.train = true;
+
+		long start = System.currentTimeMillis();
+		Path recordFolder = Path.of(EisimSimulationParameters.recordFolder);
+		List<Path> agentFolders = findAgentFolders(recordFolder);
+		if (agentFolders.isEmpty()) {
+			SimLog.println("%s - No recorded experiences were found in the folder: %s", OfflineTrainer.class.getSimpleName(), recordFolder);
+			return;
+		}
+
+		// The agents are created one by one, so that they get different seeds from the seed generator
+		Random seedGenerator = new Random();
+		if (EisimSimulationParameters.useSeed) {
+			seedGenerator.setSeed(EisimSimulationParameters.seed);
+		}
+		List<OfflineAgent> agents = new ArrayList<>();
+		for (Path agentFolder : agentFolders) {
+			OfflineAgent agent = loadAgent(agentFolder, seedGenerator);
+			if (agent != null) {
+				agents.add(agent);
+			}
+		}
+
+		TrainingPool.forEach(agents, OfflineTrainer::train);
+
+		for (OfflineAgent agent : agents) {
+			agent.saveAgentState();
+		}
+		if (!CheckpointWriter.awaitCompletion()) {
+			SimLog.println("%s - Some of the agent states could not be saved", OfflineTrainer.class.getSimpleName());
+		}
+		SimLog.println("%s - Training %d agents took %d seconds, the models were saved to the folder: %s", 
+				OfflineTrainer.class.getSimpleName(), agents.size(), (System.currentTimeMillis() - start) / 1000, 
+				EisimSimulationParameters.modelFolder);
+	}
+
+	/**
+	 * Finds the folders of the cluster heads, that is, the folders {@code scenario_<...>/<cluster head>} under the
+	 * record folder.
+	 */
+	private static List<Path> findAgentFolders(Path recordFolder) throws IOException {
+		List<Path> agentFolders = new ArrayList<>();
+		if (!Files.isDirectory(recordFolder)) {
+			return agentFolders;
+		}
+		for (Path scenarioFolder : listSorted(recordFolder)) {
+			if (Files.isDirectory(scenarioFolder) && scenarioFolder.getFileName().toString().startsWith("scenario_")) {
+				for (Path agentFolder : listSorted(scenarioFolder)) {
+					if (Files.isDirectory(agentFolder)) {
+						agentFolders.add(agentFolder);
+					}
+				}
+			}
+		}
+		return agentFolders;
+	}
+
+	private static List<Path> listSorted(Path folder) throws IOException {
+		try (Stream<Path> paths = Files.list(folder)) {
+			return paths.sorted().collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Creates the agent of a cluster head, and adds all the recorded experiences of the cluster head into its
+	 * experience replay. The replay has the configured capacity ({@link EisimSimulationParameters#replayBufferSize}),
+	 * so if there are more experiences, only the latest ones are kept, as in the simulation.
+	 *
+	 * @param agentFolder		The record folder of the cluster head
+	 * @param seedGenerator		The random number generator that seeds the agent
+	 * @return OfflineAgent:	The agent, or null if there are fewer experiences than the batch size
+	 * @throws IOException		If the recordings cannot be read, or they do not have the same state space and price range
+	 */
+	private static OfflineAgent loadAgent(Path agentFolder, Random seedGenerator) throws IOException {
+		String name = agentFolder.getParent().getFileName() + "/" + agentFolder.getFileName();
+		List<Recording> recordings = new ArrayList<>();
+		int size = 0;
+		for (Path file : listSorted(agentFolder)) {
+			if (file.getFileName().toString().endsWith(ExperienceRecorder.FILE_EXTENSION)) {
+				Recording recording = ExperienceRecorder.read(file);
+				if (!recordings.isEmpty() && (recording.getStateDim() != recordings.get(0).getStateDim()
+						|| recording.getMinPrice() != recordings.get(0).getMinPrice()
+						|| recording.getMaxPrice() != recordings.get(0).getMaxPrice())) {
+					throw new IOException("The state space or the price range of the recording file " + file
+							+ " does not match the other recordings of " + name);
+				}
+				recordings.add(recording);
+				size += recording.getSize();
+			}
+		}
+		if (size < EisimSimulationParameters.batchSize) {
+			SimLog.println("%s - Skipping %s, which has only %d recorded experiences", OfflineTrainer.class.getSimpleName(), name, size);
+			return null;
+		}
+
+		Recording first = recordings.get(0);
+		int stateDim = first.getStateDim();
+		OfflineAgent agent = new OfflineAgent(name, stateDim, first.getMinPrice(), first.getMaxPrice(), seedGenerator);
+		agent.recorded = size;
+		float[] state = new float[stateDim];
+		float[] nextState = new float[stateDim];
+		for (Recording recording : recordings) {
+			FloatBuffer rows = recording.getRows();
+			for (int i = 0; i < recording.getSize(); i++) {
+				rows.get(state);
+				float action = rows.get();
+				float reward = rows.get();
+				rows.get(nextState);
+				agent.memory.addExperience(state, action, reward, nextState);
+			}
+		}
+		return agent;
+	}
+
+	/**
+	 * Trains an agent with minibatches sampled from its experience replay.
+	 */
+	private static void train(OfflineAgent agent) {
+		long start = System.currentTimeMillis();
+		long steps = (long) EisimSimulationParameters.offlinePasses * agent.recorded * EisimSimulationParameters.modelUpdates;
+		for (long i = 0; i < steps; i++) {
+			agent.train(agent.memory.getBatch());
+		}
+		SimLog.println("%s - %s: %d recorded experiences, %d in the experience replay, %d training steps, %d seconds", 
+				OfflineTrainer.class.getSimpleName(), agent.name, agent.recorded, agent.memory.size(), steps, 
+				(System.currentTimeMillis() - start) / 1000);
+	}
+
+	/**
+	 * A DDPG pricing agent trained outside of a simulation, whose state folder is given by its name, relative to the
+	 * model folder. If the folder has the agent state of an earlier training, the recorded experiences are added
+	 * after the experiences of that state.
+	 */
+	protected static class OfflineAgent extends DdpgPricingAgent {
+
+		protected final String name;
+		protected int recorded; // The number of recorded experiences
+
+		protected OfflineAgent(String name, int stateSpaceDim, float minPrice, float maxPrice, Random seedGenerator) {
+			super(name, stateSpaceDim, minPrice, maxPrice, seedGenerator);
+			this.name = name;
+		}
+
+		@Override
+		protected String createStateDirectoryForAgent() {
+			String directoryString = modelFolder + "/" + this.serverName;
+			new File(directoryString).mkdirs();
+			return directoryString + "/";
+		}
+	}
+}
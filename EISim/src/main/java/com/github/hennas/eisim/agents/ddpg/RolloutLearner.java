@@ -0,0 +1,261 @@
+package com.github.hennas.eisim.agents.ddpg;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
+import com.github.hennas.eisim.core.simulationmanager.SimulationManager;
+
+/**
+ * The learner of one cluster head when several rollouts (simulations with different seeds) are run concurrently 
+ * (see {@link EisimSimulationParameters#rollouts}). The learner owns the {@link DdpgPricingAgent} of the cluster 
+ * head, that is, its networks and its experience replay, and trains it on its own thread. The cluster heads with the 
+ * same name in the rollouts use {@link RolloutPricingAgent}s, which push their experiences to the learner and decide 
+ * the prices with the actor weights published by the learner.
+ * <p>
+ * The learner adds the pushed experiences into the experience replay in the order they arrive, and updates the 
+ * models after each of them, as {@link DdpgPricingAgent#learn(float[], float, float, float[])} does, so the number of 
+ * model updates per experience is the same as without the rollouts. The actor weights are published every 
+ * {@link EisimSimulationParameters#weightPublishInterval} experiences. The rollouts never wait for the learner: 
+ * if the learner falls behind, the experiences queue up, and the rollouts keep acting with the last published weights. 
+ * Hence, the training is not deterministic even with a seed.
+ * <p>
+ * The learners stay resident for the rest of the run, so the next episodes continue with them. Between the episodes, 
+ * when the rollouts have ended, {@link #awaitAll()} waits until all the learners have processed their experiences, 
+ * after which the agents can be saved.
+ * 
+ * @see com.github.hennas.eisim.helpers.RolloutRunner
+ * 
+ * @author Henna Kokkonen
+ *
+ */
+public class RolloutLearner {
+	
+	// The learners by the scenario and the name of the cluster head
+	private static final Map<String, RolloutLearner> learners = new LinkedHashMap<>();
+	
+	protected final String name;
+	protected final DdpgPricingAgent agent;
+	protected final LinkedBlockingQueue<Experience> queue = new LinkedBlockingQueue<>();
+	protected final Thread thread;
+	
+	protected volatile Weights published;
+	protected volatile Throwable failure; // The error that stopped the learner, if any
+	protected long pending = 0; // The number of pushed experiences that have not been processed yet (guarded by this)
+	protected long experiences = 0;
+	protected long publications = 0;
+	protected long publishedExperiences = 0; // The number of experiences processed when the weights were last published
+	
+	/**
+	 * An experience pushed by a rollout.
+	 */
+	protected static class Experience {
+		protected final float[] state;
+		protected final float action;
+		protected final float reward;
+		protected final float[] nextState;
+		
+		protected Experience(float[] state, float action, float reward, float[] nextState) {
+			this.state = state;
+			this.action = action;
+			this.reward = reward;
+			this.nextState = nextState;
+		}
+	}
+	
+	/**
+	 * A version of the actor weights published by the learner.
+	 */
+	protected static class Weights {
+		protected final ActorInference actor;
+		protected final long version;
+		
+		protected Weights(ActorInference actor, long version) {
+			this.actor = actor;
+			this.version = version;
+		}
+	}
+	
+	protected RolloutLearner(String name, DdpgPricingAgent agent) {
+		this.name = name;
+		this.agent = agent;
+		this.published = new Weights(ActorInference.fromNetwork(agent.actor), 0);
+		this.thread = new Thread(this::run, "rollout-learner-" + name);
+		this.thread.setDaemon(true); // The learners are waited for between the episodes instead
+		this.thread.start();
+	}
+	
+	/**
+	 * Returns the learner of the given cluster head, creating it if it does not exist yet.
+	 * 
+	 * @param key				The scenario and the name of the cluster head
+	 * @param agentFactory		Creates the agent of a new learner
+	 * @return RolloutLearner:	The learner
+	 */
+	public static RolloutLearner get(String key, Supplier<DdpgPricingAgent> agentFactory) {
+		synchronized (learners) {
+			RolloutLearner learner = learners.get(key);
+			if (learner == null) {
+				learner = new RolloutLearner(key.substring(key.lastIndexOf('/') + 1), agentFactory.get());
+				learners.put(key, learner);
+			}
+			return learner;
+		}
+	}
+	
+	/**
+	 * Pushes an experience to the learner.
+	 * 
+	 * @param state		Initial state
+	 * @param action	The action taken in the initial state
+	 * @param reward	The reward received
+	 * @param nextState The state that followed from the initial state after taking the action
+	 */
+	public void push(float[] state, float action, float reward, float[] nextState) {
+		this.checkFailure();
+		synchronized (this) {
+			this.pending++;
+		}
+		this.queue.add(new Experience(state.clone(), action, reward, nextState.clone()));
+	}
+	
+	protected void run() {
+		while (true) {
+			Experience experience;
+			try {
+				experience = this.queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			try {
+				// Adds the experience into the experience replay and updates the models
+				this.agent.learn(experience.state, experience.action, experience.reward, experience.nextState);
+				if (++this.experiences % Math.max(1, EisimSimulationParameters.weightPublishInterval) == 0) {
+					this.publish();
+				}
+			} catch (RuntimeException e) {
+				e.printStackTrace(SimLog.getOutput());
+			} catch (Throwable e) {
+				// After an error (e.g., ND4J running out of memory), the agent cannot be trusted anymore, so the learner 
+				// stops, and the rollouts and the waiting callers fail with the error instead of waiting for it forever
+				e.printStackTrace(SimLog.getOutput());
+				synchronized (this) {
+					this.failure = e;
+					this.notifyAll();
+				}
+				return;
+			} finally {
+				synchronized (this) {
+					if (--this.pending == 0) {
+						this.notifyAll();
+					}
+				}
+			}
+		}
+	}
+	
+	protected void publish() {
+		this.publishedExperiences = this.experiences;
+		this.published = new Weights(ActorInference.fromNetwork(this.agent.actor), ++this.publications);
+	}
+	
+	/**
+	 * Waits until the learner has processed all the pushed experiences, and publishes the latest weights.
+	 * 
+	 * @throws InterruptedException If interrupted while waiting
+	 * @throws IllegalStateException If the learner has stopped because of an error
+	 */
+	protected synchronized void await() throws InterruptedException {
+		while (this.pending > 0 && this.failure == null) {
+			this.wait();
+		}
+		this.checkFailure();
+		if (this.publishedExperiences != this.experiences) {
+			this.publish();
+		}
+	}
+	
+	/**
+	 * Throws an exception if the learner has stopped because of an error.
+	 * 
+	 * @throws IllegalStateException If the learner has stopped, with the error as the cause
+	 */
+	protected void checkFailure() {
+		Throwable failure = this.failure;
+		if (failure != null) {
+			throw new IllegalStateException(this.getClass().getSimpleName() + " - The learner of " + this.name + " has stopped", failure);
+		}
+	}
+	
+	/**
+	 * Waits until all the learners have processed their experiences, and reports their progress.
+	 * 
+	 * @throws IllegalStateException If a learner has stopped because of an error
+	 */
+	public static void awaitAll() {
+		for (RolloutLearner learner : getLearners()) {
+			try {
+				learner.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			SimLog.println("%s - %s: %d experiences learned, %d weight publications", RolloutLearner.class.getSimpleName(), 
+					learner.name, learner.experiences, learner.publications);
+		}
+	}
+	
+	/**
+	 * Continues with the learners of the given scenario in a new episode. Must only be called when the learners 
+	 * are idle (see {@link #awaitAll()}).
+	 * 
+	 * @param scenarioKey		The prefix of the keys of the learners of the scenario
+	 * @param simulationManager The simulation manager of the first rollout of the new episode
+	 */
+	public static void resumeAll(String scenarioKey, SimulationManager simulationManager) {
+		synchronized (learners) {
+			learners.forEach((key, learner) -> {
+				if (key.startsWith(scenarioKey)) {
+					learner.agent.resume(simulationManager);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Saves the agents of all the learners. Must only be called when the learners are idle (see {@link #awaitAll()}).
+	 */
+	public static void saveAll() {
+		for (RolloutLearner learner : getLearners()) {
+			try {
+				learner.agent.saveAgentState();
+			} catch (IOException e) {
+				e.printStackTrace(SimLog.getOutput());
+			}
+		}
+	}
+	
+	/**
+	 * Stops the learner threads and removes the learners.
+	 */
+	public static void stopAll() {
+		for (RolloutLearner learner : getLearners()) {
+			learner.thread.interrupt();
+		}
+		synchronized (learners) {
+			learners.clear();
+		}
+	}
+	
+	private static List<RolloutLearner> getLearners() {
+		synchronized (learners) {
+			return new ArrayList<>(learners.values());
+		}
+	}
+}
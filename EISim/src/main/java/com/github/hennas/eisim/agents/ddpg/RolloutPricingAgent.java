@@ -0,0 +1,106 @@
+package com.github.hennas.eisim.agents.ddpg;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.agents.PricingAgent;
+import com.github.hennas.eisim.core.scenariomanager.Scenario;
+import com.github.hennas.eisim.core.simulationmanager.SimulationManager;
+
+/**
+ * The pricing agent of a cluster head in one of the concurrent rollouts (see {@link EisimSimulationParameters#rollouts}). 
+ * The agent pushes its experiences to the {@link RolloutLearner} of the cluster head, which is shared by the cluster 
+ * heads with the same name in all the rollouts, and decides the prices with the actor weights last published by the 
+ * learner. The exploration noise is sampled with the random number generator of this agent, so each rollout 
+ * explores independently.
+ * <p>
+ * The agent itself has no state to save; the learners are saved between the episodes by 
+ * {@link com.github.hennas.eisim.helpers.RolloutRunner}.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class RolloutPricingAgent extends PricingAgent {
+	
+	protected RolloutLearner learner;
+	protected ActorInference actor; // The copy of the published actor used by this agent
+	protected long version = -1;
+	
+	/**
+	 * Initializes the agent of a cluster head in a rollout. The learner of the cluster head (and its agent) is 
+	 * created by the first rollout that reaches the cluster head.
+	 * 
+	 * @param serverName		The unique name of the server node to which the PricingAgent instance belongs
+	 * @param stateSpaceDim		Dimension of the state space
+	 * @param minPrice			Minimum price that can be set by the agent
+	 * @param maxPrice			Maximum price that can be set by the agent
+	 * @param simulationManager The simulation manager that links between the different modules
+	 */
+	public RolloutPricingAgent(String serverName, int stateSpaceDim, float minPrice, float maxPrice,
+			SimulationManager simulationManager) {
+		super(serverName, stateSpaceDim, minPrice, maxPrice, simulationManager);
+		this.learner = RolloutLearner.get(getLearnerKey(simulationManager.getScenario(), serverName), 
+				() -> new DdpgPricingAgent(serverName, stateSpaceDim, minPrice, maxPrice, simulationManager));
+	}
+	
+	/**
+	 * Returns the key of the learners of the given scenario, followed by the name of the cluster head if given.
+	 * 
+	 * @param scenario		The scenario
+	 * @param serverName	The name of the cluster head, or an empty string for the prefix of the scenario
+	 * @return String:		The key
+	 */
+	public static String getLearnerKey(Scenario scenario, String serverName) {
+		return scenario.getStringOrchAlgorithm() + "_" + scenario.getStringOrchArchitecture() + "_" 
+				+ scenario.getDevicesCount() + "/" + serverName;
+	}
+	
+	/**
+	 * The agent state is saved by the learner, into the state folder of the cluster head.
+	 */
+	@Override
+	protected String createStateDirectoryForAgent() {
+		return null;
+	}
+	
+	@Override
+	public float act(INDArray state) {
+		return this.act(state.data().asFloat());
+	}
+	
+	/**
+	 * Decides the price with the latest actor weights published by the learner, adding exploration noise.
+	 * 
+	 * @param state 	Current state observation
+	 * @return float: 	The price
+	 */
+	@Override
+	public float act(float[] state) {
+		RolloutLearner.Weights published = this.learner.published;
+		if (published.version != this.version) {
+			this.actor = published.actor.copy();
+			this.version = published.version;
+		}
+		return this.learner.agent.actorOutputToPrice(this.actor.output(state)[0], this.random);
+	}
+	
+	@Override
+	public void learn(INDArray state, float action, float reward, INDArray nextState) {
+		this.learn(state.data().asFloat(), action, reward, nextState.data().asFloat());
+	}
+	
+	/**
+	 * Pushes the experience to the learner.
+	 */
+	@Override
+	public void learn(float[] state, float action, float reward, float[] nextState) {
+		this.learner.push(state, action, reward, nextState);
+	}
+	
+	/**
+	 * Nothing to save, the learners are saved between the episodes.
+	 */
+	@Override
+	public void saveAgentState() {
+	}
+}
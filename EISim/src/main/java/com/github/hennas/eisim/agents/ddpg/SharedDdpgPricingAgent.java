@@ -0,0 +1,220 @@
+package com.github.hennas.eisim.agents.ddpg;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.agents.PricingAgent;
+import com.github.hennas.eisim.core.simulationmanager.SimulationManager;
+import com.github.hennas.eisim.defaultclasses.EisimComputingNode;
+
+/**
+ * Implements the parameter-shared mode of the DDPG pricing agents. All the cluster heads of a simulation
+ * use one shared {@link DdpgPricingAgent}, that is, one actor and critic (with their target networks) and
+ * one experience replay, so the memory usage and the training time do not grow with the number of clusters.
+ * An instance of this class only holds the per-cluster-head state: the random number generator of the
+ * exploration noise and the cluster-id embedding.
+ * <p>
+ * If {@link EisimSimulationParameters#sharedAgentEmbeddingDim} is greater than zero, a fixed cluster-id
+ * embedding of that size is appended to the state of every cluster head before it is input into the shared
+ * networks, so that the shared actor can set different prices for different clusters. The embedding is a
+ * random vector in [-1, 1) that depends only on the name of the server, so it stays the same between
+ * simulation runs.
+ * <p>
+ * The experiences of all the cluster heads are added into the shared experience replay, and the shared
+ * networks are trained once per price update, after the experiences of every cluster head have been added.
+ * The shared agent saves its state into its own folder under the scenario folder (see
+ * {@link #getSharedFolderName()}), next to the folders of the agents trained without parameter sharing,
+ * so models of both modes can be kept for the same scenario.
+ *
+ * @see EisimSimulationParameters#sharedAgent
+ * @see EisimComputingNode
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class SharedDdpgPricingAgent extends PricingAgent {
+
+	// The shared agent of each running simulation
+	private static final Map<SimulationManager, SharedModel> sharedModels = new HashMap<>();
+
+	protected SharedModel shared;
+	protected float[] embedding;
+	// Buffers for the states extended with the embedding
+	protected float[] stateBuffer;
+	protected float[] nextStateBuffer;
+
+	/**
+	 * Initializes a cluster head in the parameter-shared mode. The shared agent is created (and its state
+	 * loaded) by the first cluster head of the simulation.
+	 *
+	 * @param serverName		The unique name of the server node to which the PricingAgent instance belongs
+	 * @param stateSpaceDim		Dimension of the state space
+	 * @param minPrice			Minimum price that can be set by the agent
+	 * @param maxPrice			Maximum price that can be set by the agent
+	 * @param simulationManager The simulation manager that links between the different modules
+	 */
+	public SharedDdpgPricingAgent(String serverName, int stateSpaceDim, float minPrice, float maxPrice,
+			SimulationManager simulationManager) {
+		super(serverName, stateSpaceDim, minPrice, maxPrice, simulationManager);
+
+		int embeddingDim = EisimSimulationParameters.sharedAgentEmbeddingDim;
+		this.embedding = new float[embeddingDim];
+		Random embeddingRandom = new Random(serverName.hashCode());
+		for (int i = 0; i < embeddingDim; i++) {
+			this.embedding[i] = embeddingRandom.nextFloat() * 2 - 1;
+		}
+		this.stateBuffer = new float[stateSpaceDim + embeddingDim];
+		this.nextStateBuffer = new float[stateSpaceDim + embeddingDim];
+
+		synchronized (sharedModels) {
+			this.shared = sharedModels.get(simulationManager);
+			if (this.shared == null) {
+				this.shared = new SharedModel(new DdpgPricingAgent(getSharedFolderName(), stateSpaceDim + embeddingDim,
+						minPrice, maxPrice, simulationManager), simulationManager);
+				sharedModels.put(simulationManager, this.shared);
+			}
+			this.shared.members++;
+		}
+	}
+
+	/**
+	 * Returns the name of the state folder of the shared agent. The folder name includes the size of the
+	 * cluster-id embedding, as the networks trained with different embedding sizes are not compatible.
+	 *
+	 * @return String: The name of the state folder of the shared agent
+	 */
+	public static String getSharedFolderName() {
+		int embeddingDim = EisimSimulationParameters.sharedAgentEmbeddingDim;
+		return embeddingDim > 0 ? "shared_agent_embedding" + embeddingDim : "shared_agent";
+	}
+
+	/**
+	 * The cluster heads do not have their own state folders; the state is saved into the folder of the shared agent.
+	 */
+	@Override
+	protected String createStateDirectoryForAgent() {
+		return this.createStateDirectory(getSharedFolderName());
+	}
+
+	/**
+	 * Uses the shared actor to decide the action in the current state of this cluster head. In the training mode,
+	 * noise is added to the action with the random number generator of this cluster head.
+	 *
+	 * @param state 	Current state observation
+	 * @return float: 	The action chosen according to the given state
+	 */
+	@Override
+	public float act(INDArray state) {
+		return this.act(state.data().asFloat());
+	}
+
+	@Override
+	public float act(float[] state) {
+		DdpgPricingAgent agent = this.shared.agent;
+		return agent.actorOutputToPrice(agent.actorOutput(this.withEmbedding(state, this.stateBuffer)), this.random);
+	}
+
+	@Override
+	public void learn(INDArray state, float action, float reward, INDArray nextState) {
+		this.learn(state.data().asFloat(), action, reward, nextState.data().asFloat());
+	}
+
+	/**
+	 * Adds the experience of this cluster head into the shared experience replay. The shared networks are
+	 * trained when every cluster head of the simulation has added its experience.
+	 *
+	 * @param state		Initial state
+	 * @param action	The action taken in the initial state
+	 * @param reward	The reward received
+	 * @param nextState The state that followed from the initial state after taking the action
+	 */
+	@Override
+	public void learn(float[] state, float action, float reward, float[] nextState) {
+		DdpgPricingAgent agent = this.shared.agent;
+		agent.memory.addExperience(this.withEmbedding(state, this.stateBuffer), action, reward,
+				this.withEmbedding(nextState, this.nextStateBuffer));
+
+		// If every cluster head has added its experience and it is time to update
+		if (++this.shared.pendingExperiences >= this.shared.members) {
+			this.shared.pendingExperiences = 0;
+			if (agent.memory.size() >= batchSize) {
+				agent.update();
+			}
+		}
+	}
+
+	/**
+	 * Continues with this cluster head and the shared agent in a new simulation. The shared agent is resumed by
+	 * the first cluster head that continues in the new simulation.
+	 *
+	 * @param simulationManager The simulation manager of the new simulation
+	 */
+	@Override
+	public void resume(SimulationManager simulationManager) {
+		super.resume(simulationManager);
+		synchronized (sharedModels) {
+			if (this.shared.simulationManager != simulationManager) {
+				sharedModels.remove(this.shared.simulationManager);
+				this.shared.simulationManager = simulationManager;
+				this.shared.agent.resume(simulationManager);
+			}
+		}
+	}
+
+	/**
+	 * Saves the state of the shared agent when the last cluster head of the simulation saves its state.
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void saveAgentState() throws IOException {
+		boolean last;
+		synchronized (sharedModels) {
+			last = ++this.shared.saved == this.shared.members;
+			if (last) {
+				this.shared.saved = 0;
+				sharedModels.remove(this.shared.simulationManager);
+			}
+		}
+		if (last) {
+			this.shared.agent.saveAgentState();
+		}
+	}
+
+	/**
+	 * Appends the cluster-id embedding to the given state.
+	 *
+	 * @param state 	The state
+	 * @param buffer	The buffer for the extended state
+	 * @return float[]: The extended state, or the state itself if the embedding is not used
+	 */
+	protected float[] withEmbedding(float[] state, float[] buffer) {
+		if (this.embedding.length == 0) {
+			return state;
+		}
+		System.arraycopy(state, 0, buffer, 0, this.stateSpaceDim);
+		System.arraycopy(this.embedding, 0, buffer, this.stateSpaceDim, this.embedding.length);
+		return buffer;
+	}
+
+	/**
+	 * The shared agent of a simulation and the bookkeeping of the cluster heads using it.
+	 */
+	protected static class SharedModel {
+		protected final DdpgPricingAgent agent;
+		protected SimulationManager simulationManager; // The simulation in which the agent is used
+		protected int members = 0; // The number of cluster heads using the agent
+		protected int pendingExperiences = 0; // The number of experiences added since the last training
+		protected int saved = 0; // The number of cluster heads that have saved their state at the end of the simulation
+
+		protected SharedModel(DdpgPricingAgent agent, SimulationManager simulationManager) {
+			this.agent = agent;
+			this.simulationManager = simulationManager;
+		}
+	}
+}
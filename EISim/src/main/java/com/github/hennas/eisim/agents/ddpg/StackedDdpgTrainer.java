@@ -0,0 +1,615 @@
+package com.github.hennas.eisim.agents.ddpg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.deeplearning4j.nn.conf.layers.BaseLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.updater.BaseMultiLayerUpdater;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastAddOp;
+import org.nd4j.linalg.api.ops.impl.updaters.AmsGradUpdater;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.learning.config.AMSGrad;
+import org.nd4j.linalg.learning.config.IUpdater;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.helpers.CpuBudget;
+
+/**
+ * Trains the DDPG pricing agents of several cluster heads together, as one batched computation over all
+ * the agents, used when {@link EisimSimulationParameters#stackedTraining} is enabled.
+ * <p>
+ * All the agents have networks of the same architecture, and they are trained at the same price updates.
+ * Instead of updating each agent's small networks one by one, the trainer stacks the parameters of each
+ * network type (actor, critic and their targets) of all the agents into one array with a leading agent
+ * dimension, and performs the training step of {@link DdpgPricingAgent#train(ExperienceBatch)} for all
+ * the agents at once with batched matrix multiplications. Each agent still has its own parameters,
+ * optimizer state and minibatches, so the training is the same as when the agents are trained one by one
+ * (on the CPU backend, the batched matrix multiplications give the same sums as the per-agent ones).
+ * <p>
+ * Each row of a stacked parameter array holds the flattened parameters of one agent's network in the layout
+ * used by DL4J, so the parameters are copied between the trainer and the agents' networks row by row. While
+ * the trainer is in use, it holds the current state of the networks: only the actor parameters are copied
+ * back to the agents after each round of training (the agents need them for their price decisions), and
+ * the rest is copied back when an agent saves its state or the trainer is released.
+ * <p>
+ * A trainer can also be created for a single agent (see {@link #StackedDdpgTrainer(DdpgPricingAgent)}), which
+ * is how {@link DdpgPricingAgent#train(ExperienceBatch)} trains the agent's networks: the stacked arrays are
+ * then views of the agent's own networks, so the networks are trained in place without copying.
+ *
+ * @see DdpgPricingAgent
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class StackedDdpgTrainer {
+
+	protected final List<DdpgPricingAgent> agents;
+	protected final int agentCount;
+	protected final int batchSize;
+	protected final int stateDim;
+	protected final DdpgPricingAgent reference; // Used for scaling the actor outputs; all the agents have the same price range
+	protected boolean released = false;
+
+	protected final StackedNetwork actor;
+	protected final StackedNetwork critic;
+	protected final StackedNetwork actorTarget;
+	protected final StackedNetwork criticTarget;
+
+	// The minibatches of all the agents, [agentCount, batchSize, stateDim] or [agentCount, batchSize, 1]
+	// (for a single agent, views of the arrays of the last minibatch given to train(ExperienceBatch) instead)
+	protected final float[] statesData;
+	protected final float[] actionsData;
+	protected final float[] rewardsData;
+	protected final float[] nextStatesData;
+	protected INDArray states;
+	protected INDArray actions;
+	protected INDArray rewards;
+	protected INDArray nextStates;
+	protected INDArray weights; // The importance-sampling weights of a prioritized minibatch, or null
+	protected ExperienceBatch batch;
+
+	// Training buffers, as in DdpgPricingAgent but with the leading agent dimension
+	protected final INDArray statesAndActions; // Critic input [agentCount, batchSize, stateDim + 1]
+	protected final INDArray nextStatesAndPredNextActions;
+	protected final INDArray statesAndPredActions;
+	protected final INDArray[] statesAndActionsViews; // (state columns, action column) views of the critic inputs above
+	protected final INDArray[] nextStatesAndPredNextActionsViews;
+	protected final INDArray[] statesAndPredActionsViews;
+	protected final INDArray targetForCritic;
+	protected final INDArray criticErrorForActorLoss;
+	protected final INDArray epsilonAction;
+
+	/**
+	 * Creates a trainer for the given agents and copies the current state of their networks into it.
+	 *
+	 * @param agents The agents, which must have the same network architecture and price range
+	 * @throws IllegalArgumentException If the networks of the agents cannot be stacked
+	 */
+	public StackedDdpgTrainer(List<DdpgPricingAgent> agents) {
+		this(agents, false);
+	}
+
+	/**
+	 * Creates a trainer for one agent, which trains the agent's networks in place with the minibatches given 
+	 * to {@link #train(ExperienceBatch)}. The stacked parameter and optimizer state arrays of the trainer are 
+	 * views of those of the agent's networks, so no state is copied between the trainer and the agent, and 
+	 * the agent is not attached to the trainer. Unlike the trainer for several agents, this trainer also 
+	 * supports the minibatches of a prioritized experience replay.
+	 *
+	 * @param agent The agent
+	 * @throws IllegalArgumentException If the networks of the agent cannot be trained by the trainer
+	 */
+	public StackedDdpgTrainer(DdpgPricingAgent agent) {
+		this(List.of(agent), true);
+	}
+
+	/**
+	 * Creates a trainer for the given agents.
+	 *
+	 * @param agents	The agents
+	 * @param inPlace	Whether the trainer works on the arrays of the networks of the only agent
+	 */
+	private StackedDdpgTrainer(List<DdpgPricingAgent> agents, boolean inPlace) {
+		this.agents = new ArrayList<>(agents);
+		this.agentCount = agents.size();
+		this.batchSize = EisimSimulationParameters.batchSize;
+		this.reference = agents.get(0);
+		this.stateDim = this.reference.getStateSpaceDim();
+		for (DdpgPricingAgent agent : agents) {
+			if (agent.getMinPrice() != this.reference.getMinPrice() || agent.getMaxPrice() != this.reference.getMaxPrice()
+					|| agent.getStateSpaceDim() != this.stateDim) {
+				throw new IllegalArgumentException("The agents must have the same price range and state space to be trained together");
+			}
+		}
+
+		List<MultiLayerNetwork> actors = new ArrayList<>(this.agentCount);
+		List<MultiLayerNetwork> critics = new ArrayList<>(this.agentCount);
+		List<MultiLayerNetwork> actorTargets = new ArrayList<>(this.agentCount);
+		List<MultiLayerNetwork> criticTargets = new ArrayList<>(this.agentCount);
+		for (DdpgPricingAgent agent : agents) {
+			actors.add(agent.actor);
+			critics.add(agent.critic);
+			actorTargets.add(agent.actorTarget);
+			criticTargets.add(agent.criticTarget);
+		}
+		this.actor = new StackedNetwork(actors, this.batchSize, true, inPlace);
+		this.critic = new StackedNetwork(critics, this.batchSize, true, inPlace);
+		this.actorTarget = new StackedNetwork(actorTargets, this.batchSize, false, inPlace);
+		this.criticTarget = new StackedNetwork(criticTargets, this.batchSize, false, inPlace);
+
+		if (inPlace) {
+			this.statesData = null;
+			this.actionsData = null;
+			this.rewardsData = null;
+			this.nextStatesData = null;
+		} else {
+			int rows = this.agentCount * this.batchSize;
+			this.statesData = new float[rows * this.stateDim];
+			this.actionsData = new float[rows];
+			this.rewardsData = new float[rows];
+			this.nextStatesData = new float[rows * this.stateDim];
+			this.states = Nd4j.create(DataType.FLOAT, this.agentCount, this.batchSize, this.stateDim);
+			this.actions = Nd4j.create(DataType.FLOAT, this.agentCount, this.batchSize, 1);
+			this.rewards = Nd4j.create(DataType.FLOAT, this.agentCount, this.batchSize, 1);
+			this.nextStates = Nd4j.create(DataType.FLOAT, this.agentCount, this.batchSize, this.stateDim);
+		}
+
+		this.statesAndActions = Nd4j.create(DataType.FLOAT, this.agentCount, this.batchSize, this.stateDim + 1);
+		this.nextStatesAndPredNextActions = Nd4j.create(DataType.FLOAT, this.agentCount, this.batchSize, this.stateDim + 1);
+		this.statesAndPredActions = Nd4j.create(DataType.FLOAT, this.agentCount, this.batchSize, this.stateDim + 1);
+		this.statesAndActionsViews = this.stateAndActionViews(this.statesAndActions);
+		this.nextStatesAndPredNextActionsViews = this.stateAndActionViews(this.nextStatesAndPredNextActions);
+		this.statesAndPredActionsViews = this.stateAndActionViews(this.statesAndPredActions);
+		this.targetForCritic = Nd4j.create(DataType.FLOAT, this.agentCount, this.batchSize, 1);
+		this.criticErrorForActorLoss = Nd4j.valueArrayOf(new long[] {this.agentCount, this.batchSize, 1}, -1f);
+		this.epsilonAction = Nd4j.create(DataType.FLOAT, this.agentCount, this.batchSize, 1);
+
+		if (inPlace) {
+			this.released = true; // Nothing to copy back to the agent
+		} else {
+			for (DdpgPricingAgent agent : agents) {
+				agent.stackedTrainer = this;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether this trainer trains the current networks of the given agent in place.
+	 *
+	 * @param agent			The agent
+	 * @return boolean:		True if the trainer was created for the agent alone, and the agent still has the same networks
+	 */
+	public boolean trainsInPlace(DdpgPricingAgent agent) {
+		return this.statesData == null && this.reference == agent && this.actor.network == agent.actor
+				&& this.critic.network == agent.critic && this.actorTarget.network == agent.actorTarget
+				&& this.criticTarget.network == agent.criticTarget;
+	}
+
+	/**
+	 * Performs one training step for the agent of a single-agent trainer with the given minibatch, as 
+	 * {@link DdpgPricingAgent#train(ExperienceBatch)}. If the minibatch was sampled from a prioritized experience 
+	 * replay, the critic loss is weighted by the importance-sampling weights, and the priorities are updated.
+	 *
+	 * @param batch The (states, actions, rewards, nextStates) arrays of a minibatch
+	 */
+	public void train(ExperienceBatch batch) {
+		if (batch != this.batch) {
+			// The experience replay reuses the arrays of its minibatch, so the views are created once
+			this.batch = batch;
+			this.states = batch.getStates().reshape(1, this.batchSize, this.stateDim);
+			this.actions = batch.getActions().reshape(1, this.batchSize, 1);
+			this.rewards = batch.getRewards().reshape(1, this.batchSize, 1);
+			this.nextStates = batch.getNextStates().reshape(1, this.batchSize, this.stateDim);
+			this.weights = batch.getWeights() == null ? null : batch.getWeights().reshape(1, this.batchSize, 1);
+		}
+		this.trainingStep();
+	}
+
+	/**
+	 * Checks whether this trainer trains exactly the given agents, in the given order.
+	 *
+	 * @param agents		The agents
+	 * @return boolean:		True if the trainer trains the given agents and it has not been released
+	 */
+	public boolean trains(List<DdpgPricingAgent> agents) {
+		return !this.released && this.agents.equals(agents);
+	}
+
+	/**
+	 * Adds the experience of each agent into its experience replay and trains all the agents together, as
+	 * {@link DdpgPricingAgent#learn(float[], float, float, float[])} would do for each of them. The arrays
+	 * are indexed by the order of the agents given to the trainer.
+	 * <p>
+	 * If only some of the agents have enough experiences for a minibatch, the trainer copies the state of
+	 * the networks back to the agents and releases itself, and the ready agents are trained one by one.
+	 *
+	 * @param states		The initial state of each agent
+	 * @param actions		The action of each agent
+	 * @param rewards		The reward of each agent
+	 * @param nextStates	The next state of each agent
+	 */
+	public void learn(float[][] states, float[] actions, float[] rewards, float[][] nextStates) {
+		int ready = 0;
+		for (int a = 0; a < this.agentCount; a++) {
+			ExperienceReplay memory = this.agents.get(a).memory;
+			memory.addExperience(states[a], actions[a], rewards[a], nextStates[a]);
+			if (memory.size() >= this.batchSize) {
+				ready++;
+			}
+		}
+		if (ready == 0) {
+			return;
+		}
+		if (ready < this.agentCount) {
+			this.release();
+			for (DdpgPricingAgent agent : this.agents) {
+				if (agent.memory.size() >= this.batchSize) {
+					agent.update();
+				}
+			}
+			return;
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < EisimSimulationParameters.modelUpdates; i++) {
+			// Sample a minibatch for each agent
+			for (int a = 0; a < this.agentCount; a++) {
+				this.agents.get(a).memory.sample(this.statesData, this.actionsData, this.rewardsData, this.nextStatesData,
+						a * this.batchSize);
+			}
+			this.states.data().setData(this.statesData);
+			this.actions.data().setData(this.actionsData);
+			this.rewards.data().setData(this.rewardsData);
+			this.nextStates.data().setData(this.nextStatesData);
+			this.trainingStep();
+		}
+
+		// The agents need the updated actors for their price decisions
+		for (int a = 0; a < this.agentCount; a++) {
+			this.actor.copyParamsTo(a, this.agents.get(a).actor);
+		}
+		CpuBudget.recordTraining(System.nanoTime() - start);
+	}
+
+	/**
+	 * Performs one training step for all the agents, following {@link DdpgPricingAgent#train(ExperienceBatch)}.
+	 */
+	protected void trainingStep() {
+		float discountFactor = EisimSimulationParameters.discountFactor;
+		float tau = EisimSimulationParameters.tau;
+
+		this.statesAndActionsViews[0].assign(this.states);
+		this.statesAndActionsViews[1].assign(this.actions);
+
+		/**************USING TARGET NETWORKS TO CALCULATE THE CRITIC TARGET**************/
+		INDArray predictedNextActions = this.actorTarget.output(this.nextStates);
+		this.reference.scaleToPriceRange(predictedNextActions);
+		this.nextStatesAndPredNextActionsViews[0].assign(this.nextStates);
+		this.nextStatesAndPredNextActionsViews[1].assign(predictedNextActions);
+		INDArray predictedNextQvalues = this.criticTarget.output(this.nextStatesAndPredNextActions);
+		this.targetForCritic.assign(predictedNextQvalues).muli(discountFactor).addi(this.rewards);
+
+		/**************CRITIC UPDATE**************/
+		INDArray errorForCritic = this.critic.output(this.statesAndActions).subi(this.targetForCritic);
+		if (this.weights != null) {
+			this.reference.memory.updatePriorities(errorForCritic);
+			errorForCritic.muli(this.weights);
+		}
+		errorForCritic.muli(2);
+		this.critic.backprop(errorForCritic, true);
+		this.critic.update(this.batchSize);
+
+		/**************ACTOR UPDATE**************/
+		INDArray predictedActions = this.actor.output(this.states);
+		this.reference.scaleToPriceRange(predictedActions);
+		this.statesAndPredActionsViews[0].assign(this.states);
+		this.statesAndPredActionsViews[1].assign(predictedActions);
+
+		// Unlike with DL4J, the gradients for the critic parameters are not needed here, so they are not computed
+		this.critic.output(this.statesAndPredActions);
+		this.criticErrorForActorLoss.assign(-1);
+		INDArray epsilonInput = this.critic.backprop(this.criticErrorForActorLoss, false);
+		this.epsilonAction.assign(epsilonInput.get(NDArrayIndex.all(), NDArrayIndex.all(),
+				NDArrayIndex.interval(this.stateDim, this.stateDim + 1)));
+		this.epsilonAction.muli(this.reference.scaleFunDerivative);
+		this.actor.backprop(this.epsilonAction, true);
+		this.actor.update(this.batchSize);
+
+		/**************UPDATING TARGET NETWORKS**************/
+		this.actorTarget.softUpdate(this.actor, tau);
+		this.criticTarget.softUpdate(this.critic, tau);
+
+		/**************UPDATING NOISE ACCORDING TO DECAY**************/
+		for (DdpgPricingAgent agent : this.agents) {
+			agent.noiseCoeff -= EisimSimulationParameters.noiseDecay;
+		}
+	}
+
+	/**
+	 * Copies the current state of the networks (parameters and optimizer state) of the given agent
+	 * from the trainer to the agent's networks.
+	 *
+	 * @param agent The agent
+	 */
+	public void copyToAgent(DdpgPricingAgent agent) {
+		int a = this.agents.indexOf(agent);
+		if (this.released || a < 0) {
+			return;
+		}
+		this.actor.copyTo(a, agent.actor);
+		this.critic.copyTo(a, agent.critic);
+		this.actorTarget.copyTo(a, agent.actorTarget);
+		this.criticTarget.copyTo(a, agent.criticTarget);
+	}
+
+	/**
+	 * Copies the current state of the networks back to all the agents and detaches the agents from the
+	 * trainer, after which the trainer cannot be used anymore.
+	 */
+	public void release() {
+		if (this.released) {
+			return;
+		}
+		for (DdpgPricingAgent agent : this.agents) {
+			this.copyToAgent(agent);
+			agent.stackedTrainer = null;
+		}
+		this.released = true;
+	}
+
+	/**
+	 * Creates the views of the state columns and the action column of a stacked critic input array.
+	 */
+	protected INDArray[] stateAndActionViews(INDArray criticInput) {
+		return new INDArray[] {
+				criticInput.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.interval(0, this.stateDim)),
+				criticInput.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.interval(this.stateDim, this.stateDim + 1))
+		};
+	}
+
+	/**
+	 * The networks of one type (e.g., the actors) of all the agents, stacked along a leading agent dimension.
+	 * The networks consist of dense layers, and they are evaluated with batched matrix multiplications, using
+	 * the activation functions and the AMSGrad updater configured for the DL4J networks. A single network can
+	 * also be wrapped in place, in which case the stacked arrays are views of the network's own arrays.
+	 */
+	protected static class StackedNetwork {
+
+		protected final MultiLayerNetwork network; // The wrapped network, or null if the arrays are copies
+		protected final int layers;
+		protected final long paramCount;
+		protected final IActivation[] activations;
+
+		protected final INDArray params; // [agentCount, paramCount], one row per agent in the DL4J layout
+		protected final INDArray[] weights; // Views [agentCount, nOut, nIn] (DL4J stores the [nIn, nOut] weights in 'f' order)
+		protected final INDArray[] biases; // Views [agentCount, nOut]
+
+		// Forward pass buffers [agentCount, batchSize, nOut]
+		protected final INDArray[] preOutputs;
+		protected final INDArray[] outputs;
+		protected INDArray input;
+
+		// Backward pass buffers, only for the trained networks
+		protected INDArray gradient; // [agentCount, paramCount]
+		protected INDArray[] weightGradients; // Views of the gradient
+		protected INDArray[] biasGradients;
+		protected INDArray[] weightGradientBuffers; // [agentCount, nOut, nIn]
+		protected INDArray[] biasGradientBuffers; // [agentCount, nOut]
+		protected INDArray[] inputEpsilons; // [agentCount, batchSize, nIn]
+
+		// AMSGrad
+		protected AMSGrad updater;
+		protected INDArray m;
+		protected INDArray v;
+		protected INDArray vHat;
+
+		protected INDArray softUpdateBuffer; // tau * source params, only for the target networks
+
+		protected StackedNetwork(List<MultiLayerNetwork> networks, int batchSize, boolean trained, boolean inPlace) {
+			MultiLayerNetwork first = networks.get(0);
+			int agentCount = networks.size();
+			this.network = inPlace ? first : null;
+			this.layers = first.getnLayers();
+			this.paramCount = first.numParams();
+			this.activations = new IActivation[this.layers];
+			if (inPlace) {
+				INDArray params = first.params();
+				if (networks.size() != 1 || params.dataType() != DataType.FLOAT || params.length() != this.paramCount) {
+					throw new IllegalArgumentException("Only the float parameters of a single network can be trained in place");
+				}
+				this.params = Nd4j.create(params.data(), new long[] {1, this.paramCount}, new long[] {this.paramCount, 1}, params.offset(), 'c');
+			} else {
+				this.params = Nd4j.create(DataType.FLOAT, agentCount, this.paramCount);
+			}
+			this.weights = new INDArray[this.layers];
+			this.biases = new INDArray[this.layers];
+			this.preOutputs = new INDArray[this.layers];
+			this.outputs = new INDArray[this.layers];
+			if (trained) {
+				this.gradient = Nd4j.create(DataType.FLOAT, agentCount, this.paramCount);
+				this.weightGradients = new INDArray[this.layers];
+				this.biasGradients = new INDArray[this.layers];
+				this.weightGradientBuffers = new INDArray[this.layers];
+				this.biasGradientBuffers = new INDArray[this.layers];
+				this.inputEpsilons = new INDArray[this.layers];
+			}
+
+			long offset = 0;
+			for (int l = 0; l < this.layers; l++) {
+				if (!(first.getLayer(l).conf().getLayer() instanceof BaseLayer)) {
+					throw new IllegalArgumentException("Only networks of dense layers can be trained together");
+				}
+				BaseLayer conf = (BaseLayer) first.getLayer(l).conf().getLayer();
+				this.activations[l] = conf.getActivationFn();
+				long nIn = first.getLayer(l).getParam("W").size(0);
+				long nOut = first.getLayer(l).getParam("W").size(1);
+
+				this.weights[l] = this.view(this.params, offset, nOut, nIn);
+				this.biases[l] = this.view(this.params, offset + nIn * nOut, nOut);
+				this.preOutputs[l] = Nd4j.create(DataType.FLOAT, agentCount, batchSize, nOut);
+				this.outputs[l] = Nd4j.create(DataType.FLOAT, agentCount, batchSize, nOut);
+				if (trained) {
+					this.weightGradients[l] = this.view(this.gradient, offset, nOut, nIn);
+					this.biasGradients[l] = this.view(this.gradient, offset + nIn * nOut, nOut);
+					this.weightGradientBuffers[l] = Nd4j.create(DataType.FLOAT, agentCount, nOut, nIn);
+					this.biasGradientBuffers[l] = Nd4j.create(DataType.FLOAT, agentCount, nOut);
+					this.inputEpsilons[l] = Nd4j.create(DataType.FLOAT, agentCount, batchSize, nIn);
+				}
+				offset += nIn * nOut + nOut;
+			}
+			if (offset != this.paramCount) {
+				throw new IllegalArgumentException("Only networks of dense layers can be trained together");
+			}
+
+			if (trained) {
+				IUpdater config = ((BaseLayer) first.getLayer(0).conf().getLayer()).getIUpdater();
+				if (!(config instanceof AMSGrad) || ((BaseMultiLayerUpdater<?>) first.getUpdater(true)).getUpdaterBlocks().size() != 1) {
+					throw new IllegalArgumentException("Only networks with one AMSGrad updater for all the layers can be trained together");
+				}
+				this.updater = (AMSGrad) config;
+				if (inPlace) {
+					INDArray state = this.updaterState(first);
+					this.m = state.getRow(0, true);
+					this.v = state.getRow(1, true);
+					this.vHat = state.getRow(2, true);
+				} else {
+					this.m = Nd4j.create(DataType.FLOAT, agentCount, this.paramCount);
+					this.v = Nd4j.create(DataType.FLOAT, agentCount, this.paramCount);
+					this.vHat = Nd4j.create(DataType.FLOAT, agentCount, this.paramCount);
+				}
+			}
+			if (inPlace) {
+				return;
+			}
+
+			for (int a = 0; a < agentCount; a++) {
+				MultiLayerNetwork network = networks.get(a);
+				if (network.numParams() != this.paramCount) {
+					throw new IllegalArgumentException("The networks must have the same architecture to be trained together");
+				}
+				this.params.getRow(a, true).assign(network.params());
+				if (trained) {
+					INDArray state = this.updaterState(network);
+					this.m.getRow(a, true).assign(state.getRow(0, true));
+					this.v.getRow(a, true).assign(state.getRow(1, true));
+					this.vHat.getRow(a, true).assign(state.getRow(2, true));
+				}
+			}
+		}
+
+		/**
+		 * Creates a view [agentCount, shape...] of the given stacked array, starting from the given offset
+		 * in each row.
+		 */
+		protected INDArray view(INDArray stacked, long offset, long... shape) {
+			long[] viewShape = new long[shape.length + 1];
+			long[] viewStride = new long[shape.length + 1];
+			viewShape[0] = stacked.size(0);
+			viewStride[0] = stacked.size(1);
+			long stride = 1;
+			for (int i = shape.length - 1; i >= 0; i--) {
+				viewShape[i + 1] = shape[i];
+				viewStride[i + 1] = stride;
+				stride *= shape[i];
+			}
+			return Nd4j.create(stacked.data(), viewShape, viewStride, stacked.offset() + offset, 'c');
+		}
+
+		/**
+		 * Gets the updater state of the network as a [3, paramCount] view: the rows are the m, v and vHat
+		 * states of AMSGrad.
+		 */
+		protected INDArray updaterState(MultiLayerNetwork network) {
+			INDArray state = network.getUpdater(true).getStateViewArray();
+			return Nd4j.create(state.data(), new long[] {3, this.paramCount}, new long[] {this.paramCount, 1}, state.offset(), 'c');
+		}
+
+		/**
+		 * Computes the outputs of the networks for the given input. The returned array is reused by the next call.
+		 *
+		 * @param input			The inputs of the networks [agentCount, batchSize, nIn]
+		 * @return INDArray:	The outputs of the networks [agentCount, batchSize, nOut]
+		 */
+		protected INDArray output(INDArray input) {
+			this.input = input;
+			INDArray in = input;
+			for (int l = 0; l < this.layers; l++) {
+				Nd4j.matmul(in, this.weights[l], this.preOutputs[l], false, true, false);
+				Nd4j.getExecutioner().exec(new BroadcastAddOp(this.preOutputs[l], this.biases[l], this.preOutputs[l], 0, 2));
+				this.outputs[l].assign(this.preOutputs[l]);
+				INDArray activated = this.activations[l].getActivation(this.outputs[l], true);
+				if (activated != this.outputs[l]) {
+					this.outputs[l].assign(activated);
+				}
+				in = this.outputs[l];
+			}
+			return in;
+		}
+
+		/**
+		 * Backpropagates the given error signal through the networks, after a call to {@link #output(INDArray)}.
+		 *
+		 * @param epsilon			The gradient of the loss with regard to the network outputs
+		 * @param paramGradients	Whether to compute the gradients for the parameters
+		 * @return INDArray:		The gradient of the loss with regard to the network inputs
+		 */
+		protected INDArray backprop(INDArray epsilon, boolean paramGradients) {
+			INDArray eps = epsilon;
+			for (int l = this.layers - 1; l >= 0; l--) {
+				INDArray layerInput = l > 0 ? this.outputs[l - 1] : this.input;
+				// Overwrites the pre-outputs with the gradient with regard to them
+				INDArray delta = this.activations[l].backprop(this.preOutputs[l], eps).getFirst();
+				if (paramGradients) {
+					Nd4j.matmul(delta, layerInput, this.weightGradientBuffers[l], true, false, false);
+					this.weightGradients[l].assign(this.weightGradientBuffers[l]);
+					delta.sum(this.biasGradientBuffers[l], 1);
+					this.biasGradients[l].assign(this.biasGradientBuffers[l]);
+				}
+				Nd4j.matmul(delta, this.weights[l], this.inputEpsilons[l], false, false, false);
+				eps = this.inputEpsilons[l];
+			}
+			return eps;
+		}
+
+		/**
+		 * Updates the parameters with the gradients, as the DL4J updater does: the gradients are divided
+		 * by the minibatch size, and AMSGrad is applied to them.
+		 */
+		protected void update(int batchSize) {
+			this.gradient.divi(batchSize);
+			Nd4j.exec(new AmsGradUpdater(this.gradient, this.v, this.m, this.vHat, this.updater.getLearningRate(0, 0),
+					this.updater.getBeta1(), this.updater.getBeta2(), this.updater.getEpsilon(), 0));
+			this.params.subi(this.gradient);
+		}
+
+		/**
+		 * Soft update in-place: target = (1 - tau) * target + tau * source
+		 */
+		protected void softUpdate(StackedNetwork source, float tau) {
+			if (this.softUpdateBuffer == null) {
+				this.softUpdateBuffer = Nd4j.create(DataType.FLOAT, this.params.shape());
+			}
+			this.softUpdateBuffer.assign(source.params).muli(tau);
+			this.params.muli(1 - tau).addi(this.softUpdateBuffer);
+		}
+
+		protected void copyParamsTo(int agent, MultiLayerNetwork network) {
+			network.params().assign(this.params.getRow(agent, true));
+		}
+
+		protected void copyTo(int agent, MultiLayerNetwork network) {
+			this.copyParamsTo(agent, network);
+			if (this.updater != null) {
+				INDArray state = this.updaterState(network);
+				state.getRow(0, true).assign(this.m.getRow(agent, true));
+				state.getRow(1, true).assign(this.v.getRow(agent, true));
+				state.getRow(2, true).assign(this.vHat.getRow(agent, true));
+			}
+		}
+	}
+}
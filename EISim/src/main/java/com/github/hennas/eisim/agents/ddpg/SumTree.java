@@ -0,0 +1,100 @@
+package com.github.hennas.eisim.agents.ddpg;
+
+import java.util.Arrays;
+
+/**
+ * An array-backed sum-tree over a fixed number of non-negative priorities, used by the prioritized
+ * {@link ExperienceReplay}.
+ * <p>
+ * The priorities are the leaves of a binary tree stored in one array: the leaf of the slot {@code i}
+ * is at the index {@code capacity + i}, and every inner node {@code n} holds the sum of its children
+ * {@code 2n} and {@code 2n + 1}, so the root (index 1) holds the total priority. Updating a priority
+ * and finding the slot of a given prefix sum both take O(log n) time.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class SumTree {
+
+	private final int capacity;
+	private final double[] tree;
+
+	/**
+	 * Initializes a tree with all the priorities set to zero.
+	 *
+	 * @param capacity	The number of slots
+	 */
+	public SumTree(int capacity) {
+		this.capacity = capacity;
+		this.tree = new double[2 * capacity];
+	}
+
+	/**
+	 * Sets the priority of a slot.
+	 *
+	 * @param slot		The slot
+	 * @param priority	The new priority of the slot
+	 */
+	public void set(int slot, double priority) {
+		int node = this.capacity + slot;
+		this.tree[node] = priority;
+		// The sums are recomputed instead of adding the difference, so that rounding errors do not accumulate
+		for (node >>= 1; node >= 1; node >>= 1) {
+			this.tree[node] = this.tree[2 * node] + this.tree[2 * node + 1];
+		}
+	}
+
+	/**
+	 * Sets the priority of the given number of first slots to the same value, and the rest to zero.
+	 *
+	 * @param slots		The number of slots to set
+	 * @param priority	The priority of the slots
+	 */
+	public void reset(int slots, double priority) {
+		Arrays.fill(this.tree, 0);
+		Arrays.fill(this.tree, this.capacity, this.capacity + slots, priority);
+		for (int node = this.capacity - 1; node >= 1; node--) {
+			this.tree[node] = this.tree[2 * node] + this.tree[2 * node + 1];
+		}
+	}
+
+	/**
+	 * Returns the priority of a slot.
+	 *
+	 * @param slot		The slot
+	 * @return double:	The priority of the slot
+	 */
+	public double get(int slot) {
+		return this.tree[this.capacity + slot];
+	}
+
+	/**
+	 * Returns the sum of all the priorities.
+	 *
+	 * @return double: The total priority
+	 */
+	public double total() {
+		return this.capacity == 0 ? 0 : this.tree[1];
+	}
+
+	/**
+	 * Finds the slot in which the given prefix sum of the priorities falls, that is, a slot is found
+	 * with a probability proportional to its priority when the value is uniform in [0, total).
+	 *
+	 * @param value	The prefix sum, in [0, total)
+	 * @return int:	The slot
+	 */
+	public int find(double value) {
+		int node = 1;
+		while (node < this.capacity) {
+			int left = 2 * node;
+			if (value < this.tree[left]) {
+				node = left;
+			} else {
+				value -= this.tree[left];
+				node = left + 1;
+			}
+		}
+		return node - this.capacity;
+	}
+}
@@ -108,7 +108,7 @@ public class DataCentersManager {
 			computingNodesGenerator = (ComputingNodesGenerator) computingNodesGeneratorConstructor.newInstance(simulationManager,
 					mobilityModelClass, computingNodeClass);
 		} catch (Exception e) {
-			e.printStackTrace();
+			e.printStackTrace(SimLog.getOutput());
 		}
 		computingNodesGenerator.generateDatacentersAndDevices();
 	}
@@ -128,7 +128,7 @@ public class DataCentersManager {
 			topologyCreator = (TopologyCreator) topologyCreatorConstructor.newInstance(simulationManager,
 					computingNodesGenerator);
 		} catch (Exception e) {
-			e.printStackTrace();
+			e.printStackTrace(SimLog.getOutput());
 		}
 		topologyCreator.generateTopologyGraph();
 	}
@@ -40,6 +40,7 @@ import com.github.hennas.eisim.core.locationmanager.MobilityModel;
 import com.github.hennas.eisim.core.scenariomanager.SimulationParameters;
 import com.github.hennas.eisim.core.scenariomanager.SimulationParameters.TYPES;
 import com.github.hennas.eisim.core.simulationmanager.SimulationManager;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
 
 public class DefaultComputingNodesGenerator extends ComputingNodesGenerator {
 
@@ -100,7 +101,7 @@ public class DefaultComputingNodesGenerator extends ComputingNodesGenerator {
 				}
 			}
 		} catch (Exception e) {
-			e.printStackTrace();
+			e.printStackTrace(SimLog.getOutput());
 		}
 
 	}
@@ -141,7 +142,7 @@ public class DefaultComputingNodesGenerator extends ComputingNodesGenerator {
 				insertEdgeDevice(createComputingNode(type, SimulationParameters.TYPES.EDGE_DEVICE));
 			} catch (NoSuchMethodException | InstantiationException | IllegalAccessException | 
 					IllegalArgumentException | InvocationTargetException e) {
-				e.printStackTrace();
+				e.printStackTrace(SimLog.getOutput());
 			}
 
 		}
@@ -187,7 +188,7 @@ public class DefaultComputingNodesGenerator extends ComputingNodesGenerator {
 				edgeAndCloudList.add(computingNode);
 			}
 		} catch (Exception e) {
-			e.printStackTrace();
+			e.printStackTrace(SimLog.getOutput());
 		}
 
 	}
@@ -46,6 +46,7 @@ import com.github.hennas.eisim.core.network.NetworkLinkWifiDown;
 import com.github.hennas.eisim.core.network.NetworkLinkWifiUp;
 import com.github.hennas.eisim.core.scenariomanager.SimulationParameters;
 import com.github.hennas.eisim.core.simulationmanager.SimulationManager;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
 
 public class DefaultTopologyCreator extends TopologyCreator {
 	public DefaultTopologyCreator(SimulationManager simulationManager,
@@ -165,7 +166,7 @@ public class DefaultTopologyCreator extends TopologyCreator {
 				createNetworkLink(networkLink);
 			}
 		} catch (SAXException | IOException | ParserConfigurationException e) {
-			e.printStackTrace();
+			e.printStackTrace(SimLog.getOutput());
 		}
 	}
 
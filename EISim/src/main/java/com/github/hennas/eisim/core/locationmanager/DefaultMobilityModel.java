@@ -1,19 +1,19 @@
 package com.github.hennas.eisim.core.locationmanager;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import com.github.hennas.eisim.core.scenariomanager.SimulationParameters;
 import com.github.hennas.eisim.core.simulationmanager.SimulationManager;
-import com.github.hennas.eisim.defaultclasses.EisimSimulationManager;
 
 public class DefaultMobilityModel extends MobilityModel {
 	/**
-	 * Used to generate random values.
+	 * Used to generate random values. The stream is given with {@link #setRandom(SplittableRandom)}, so that the 
+	 * path depends only on the seed of the scenario and the node.
 	 * 
 	 * @see #pause
 	 * @see #reoriontate(double, double)
 	 */
-	protected Random random;
+	protected SplittableRandom random;
 	protected boolean pause = false;
 	protected double pauseDuration = -1;
 	protected double mobilityDuration;
@@ -21,11 +21,35 @@ public class DefaultMobilityModel extends MobilityModel {
 
 	public DefaultMobilityModel(SimulationManager simulationManager, Location currentLocation) {
 		super(simulationManager, currentLocation);
-		random = new Random();
-		random.setSeed(((EisimSimulationManager) simulationManager).seedGenerator.nextLong());
+	}
+	
+	/**
+	 * Sets the random number stream of this mobility model and draws the initial orientation from it. 
+	 * Must be called before the path of a mobile node is generated.
+	 * 
+	 * @param random The random number stream of the node that this model moves
+	 * 
+	 * @see com.github.hennas.eisim.helpers.RandomStreams
+	 */
+	public void setRandom(SplittableRandom random) {
+		this.random = random;
 		orientationAngle = random.nextInt(359);
 	}
 
+	/**
+	 * Generates the path of the node.
+	 * 
+	 * @throws IllegalStateException If the node is mobile and its random number stream has not been set
+	 */
+	@Override
+	public void generatePath() {
+		if (isMobile() && random == null) {
+			throw new IllegalStateException("DefaultMobilityModel - The random number stream of a mobile node must be set "
+					+ "with setRandom() before its path is generated");
+		}
+		super.generatePath();
+	}
+
 	@Override
 	protected Location getNextLocation(Location newLocation) {
 		double xPosition = newLocation.getXPos(); // Get the initial X coordinate assigned to this device
@@ -49,6 +49,7 @@ public abstract class MobilityModel {
 	protected double speed;
 	protected SimulationManager simulationManager;
 	protected ComputingNode closestEdgeDataCenter = ComputingNode.NULL;
+	protected boolean pathGenerated = false;
 	Map<Integer, Location> path = new LinkedHashMap<>(
 			(int) (SimulationParameters.simulationDuration / SimulationParameters.updateInterval));
 	Map<Integer, ComputingNode> datacentersMap = new LinkedHashMap<>(
@@ -151,6 +152,10 @@ public abstract class MobilityModel {
 	}
 
 	public void generatePath() {
+		// The path may have been generated already before the simulation started
+		if (pathGenerated)
+			return;
+		pathGenerated = true;
 
 		closestEdgeDataCenter = getDataCenter();
 
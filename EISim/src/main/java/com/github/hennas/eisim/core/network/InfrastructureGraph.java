@@ -26,6 +26,7 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.jgrapht.GraphPath;
+import org.jgrapht.alg.interfaces.ShortestPathAlgorithm.SingleSourcePaths;
 import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
 import org.jgrapht.alg.shortestpath.FloydWarshallShortestPaths;
 import org.jgrapht.graph.DirectedWeightedMultigraph;
@@ -86,13 +87,17 @@ public class InfrastructureGraph {
 		try {
 			return assertNotNull(algorithm.getPath(computingNode, node));
 		} catch (IllegalArgumentException e) {
-			throw new IllegalArgumentException("Cannot get a path from node " + computingNode.getId() + " (Class: "
-					+ computingNode.getClass().getSimpleName() + " type: " + computingNode.getType() + ") to "
-					+ node.getId() + " (Class: " + node.getClass().getSimpleName() + " type: " + node.getType()
-					+ "). Possible solutions : add links in edge_datacenter.xml file (see examples), Or check your topology creator class.");
+			throw noPathException(computingNode, node);
 		}
 	}
 
+	protected IllegalArgumentException noPathException(final ComputingNode computingNode, final ComputingNode node) {
+		return new IllegalArgumentException("Cannot get a path from node " + computingNode.getId() + " (Class: "
+				+ computingNode.getClass().getSimpleName() + " type: " + computingNode.getType() + ") to "
+				+ node.getId() + " (Class: " + node.getClass().getSimpleName() + " type: " + node.getType()
+				+ "). Possible solutions : add links in edge_datacenter.xml file (see examples), Or check your topology creator class.");
+	}
+
 	protected GraphPath<ComputingNode, NetworkLink> assertNotNull(GraphPath<ComputingNode, NetworkLink> path) {
 		if (null == path)
 			throw new IllegalArgumentException();
@@ -151,9 +156,19 @@ public class InfrastructureGraph {
 		// Save shortest paths in map to use them later
 		for (int i = 0; i < list.size(); i++) {
 			ComputingNode from = list.get(i);
+			// One search from each node gives the same paths as searching each pair separately
+			SingleSourcePaths<ComputingNode, NetworkLink> paths;
+			try {
+				paths = new DijkstraShortestPath<>(graph).getPaths(from);
+			} catch (IllegalArgumentException e) {
+				throw noPathException(from, list.get(0));
+			}
 			for (int j = 0; j < list.size(); j++) { 
 				ComputingNode to = list.get(j);
-				pathsMap.put(getUniqueId(from.getId(), to.getId()), this.getPath(from, to));
+				GraphPath<ComputingNode, NetworkLink> path = paths.getPath(to);
+				if (path == null)
+					throw noPathException(from, to);
+				pathsMap.put(getUniqueId(from.getId(), to.getId()), path);
 			}
 		}
 	}
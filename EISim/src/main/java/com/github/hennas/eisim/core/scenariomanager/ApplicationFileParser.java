@@ -119,7 +119,7 @@ public class ApplicationFileParser extends XmlFileParser {
 
 		} catch (Exception e) {
 			SimLog.println("%s - Applications XML file cannot be parsed!", this.getClass().getSimpleName());
-			e.printStackTrace();
+			e.printStackTrace(SimLog.getOutput());
 			return false;
 		}
 
@@ -38,7 +38,7 @@ public abstract class ComputingNodesParser extends XmlFileParser {
 			typeSpecificChecking(xmlDoc);
 		} catch (Exception e) {
 			SimLog.println("%s - Failed to load %s file!",getClass().getSimpleName(), file);
-			e.printStackTrace();
+			e.printStackTrace(SimLog.getOutput());
 			return false;
 		}
 		SimLog.println("%s - %s file successfully Loaded!",getClass().getSimpleName(),file);
@@ -19,6 +19,12 @@ public class DatacentersParser extends ComputingNodesParser {
 	@Override
 	protected boolean typeSpecificChecking(Document xmlDoc) {
 		NodeList datacenterList = xmlDoc.getElementsByTagName("datacenter");
+		// The counts are reset, as the files are parsed again for each simulation launched in the same JVM
+		if (type == TYPES.CLOUD) {
+			SimulationParameters.numberOfCloudDataCenters = 0;
+		} else {
+			SimulationParameters.numberOfEdgeDataCenters = 0;
+		}
 		for (int i = 0; i < datacenterList.getLength(); i++) {
 			Node datacenterNode = datacenterList.item(i);
 			Element datacenterElement = (Element) datacenterNode;
@@ -151,7 +151,7 @@ public class ParametersParser extends FileParserAbstract {
 			result = true;
 			SimLog.println("%s - Properties file successfully Loaded propoerties file!",getClass().getSimpleName());
 		} catch (IOException ex) {
-			ex.printStackTrace();
+			ex.printStackTrace(SimLog.getOutput());
 		}
 		return result;
 
@@ -24,6 +24,7 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
 
 import com.github.hennas.eisim.core.simulationmanager.DefaultSimulationManager;
 
@@ -103,13 +104,58 @@ public class PureEdgeSim {
 	 */
 	public void start() {
 		// Notify all entities that the simulation has started.
-		entitiesList.forEach(SimEntity::startInternal);
+		startEntities();
 
 		while (runClockTickAndProcessFutureEvents(Double.MAX_VALUE) && isRunning) {
 			// All the processing happens inside the method called above
 		}
 
 		// Iteration finished, notify all entities and clear their list
+		endSimulation();
+	}
+
+	/**
+	 * Notifies all simulation entities that the simulation has started, so that
+	 * they schedule their first events. Used instead of {@link #start()} when the
+	 * simulation is advanced step by step with {@link #runUntil(Predicate)}.
+	 * 
+	 * @see #runUntil(Predicate)
+	 * @see #endSimulation()
+	 */
+	public void startEntities() {
+		entitiesList.forEach(SimEntity::startInternal);
+	}
+
+	/**
+	 * Processes the events one by one, in the same order as {@link #start()}, until
+	 * the next event matches the given condition. The matching event is left in the
+	 * queue.
+	 * 
+	 * @param stopBefore the condition for the event before which to stop.
+	 * @return true if a matching event was reached, false if the simulation ended
+	 *         (the events queue became empty or the simulation was terminated).
+	 * 
+	 * @see #startEntities()
+	 */
+	public boolean runUntil(Predicate<Event> stopBefore) {
+		while (isRunning && !getEventsQueue().isEmpty()) {
+			final Event first = events.first();
+			if (stopBefore.test(first)) {
+				return true;
+			}
+			processEvent(first);
+			events.remove(first);
+		}
+		return false;
+	}
+
+	/**
+	 * Notifies all simulation entities that the simulation has ended, and clears
+	 * the entities list.
+	 * 
+	 * @see #startEntities()
+	 */
+	public void endSimulation() {
 		entitiesList.forEach(SimEntity::onSimulationEnd);
 		entitiesList.clear();
 	}
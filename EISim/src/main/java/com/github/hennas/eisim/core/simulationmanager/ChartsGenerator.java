@@ -142,7 +142,7 @@ public class ChartsGenerator {
 			BitmapEncoder.saveBitmapWithDPI(chart, file.getPath() + "/" + name.replace("/", " per "), BitmapFormat.PNG,
 					300);
 		} catch (IOException e) {
-			e.printStackTrace();
+			e.printStackTrace(SimLog.getOutput());
 		}
 
 	}
@@ -187,7 +187,7 @@ public class DefaultSimulationManager extends SimulationManager {
 
 		case TRANSFER_RESULTS_TO_ORCH:
 			// Task execution finished, transfer the results to the orchestrator.
-			finishedTasks.add(task);
+			taskFinished(task);
 			sendResultsToOchestrator(task);
 			break;
 
@@ -198,6 +198,7 @@ public class DefaultSimulationManager extends SimulationManager {
 
 			edgeOrchestrator.resultsReturned(task);
 			tasksCount++;
+			taskReleased(task);
 			break;
 
 		case SHOW_PROGRESS:
@@ -250,11 +251,11 @@ public class DefaultSimulationManager extends SimulationManager {
 					if (SimulationParameters.saveCharts)
 						simulationVisualizer.saveCharts();
 				} catch (IOException e) {
-					e.printStackTrace();
+					e.printStackTrace(SimLog.getOutput());
 				}
 			}
 			// Show results and stop the simulation.
-			simLog.showIterationResults(finishedTasks);
+			simLog.showIterationResults(getFinishedTasksCount());
 
 			// Terminate the simulation.
 			simulation.terminate();
@@ -304,6 +305,7 @@ public class DefaultSimulationManager extends SimulationManager {
 				task.setFailureReason(Task.FailureReason.NO_OFFLOADING_DESTINATIONS);
 				simLog.incrementTasksFailedLackOfRessources(task);
 				tasksCount++;
+				taskReleased(task);
 				return;
 			}
 
@@ -430,9 +432,29 @@ public class DefaultSimulationManager extends SimulationManager {
 		// orchestrator previously.
 		if (phase > 1)
 			edgeOrchestrator.resultsReturned(task);
+		taskReleased(task);
 		return true;
 	}
 
+	/**
+	 * Keeps record of a task whose execution has finished.
+	 *
+	 * @param task The task that has been executed.
+	 */
+	protected void taskFinished(Task task) {
+		finishedTasks.add(task);
+	}
+
+	/**
+	 * Called when the life cycle of a task has ended, i.e., its results have been
+	 * returned or it has failed. The task is not used by the simulation anymore.
+	 *
+	 * @param task The task whose life cycle has ended.
+	 */
+	protected void taskReleased(Task task) {
+		// Nothing to do by default.
+	}
+
 	/**
 	 * Checks if computing nodes can communicate directly (1 hop).
 	 * 
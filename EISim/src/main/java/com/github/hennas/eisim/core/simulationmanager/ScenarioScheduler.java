@@ -0,0 +1,215 @@
+package com.github.hennas.eisim.core.simulationmanager;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.hennas.eisim.core.scenariomanager.Scenario;
+import com.github.hennas.eisim.core.scenariomanager.SimulationParameters;
+
+/**
+ * Runs the scenarios of a parallel simulation on a number of threads, longest expected scenario first.
+ * Replaces the fixed striding of the scenarios between the {@link SimulationThread}s, with which the threads
+ * that got the small scenarios finished early and stayed idle while the others still had large scenarios left.
+ * <p>
+ * The scenarios are put into one queue in the descending order of their expected wall time, and every thread
+ * takes the next scenario from the queue whenever it has finished the previous one (greedy longest-processing-
+ * time-first scheduling). The expected wall time of a scenario is its wall time measured earlier in this JVM
+ * (e.g., in the previous training episode). A scenario that has not been run yet is expected to take time in
+ * proportion to its number of devices, at the measured rate per device of the scenarios with the same
+ * orchestration algorithm and architecture, or else of all the measured scenarios.
+ * <p>
+ * The results do not depend on the order of execution. Each scenario gets the same simulation ID, iteration
+ * and result file as with the striding ({@code Parallel_simulation_<scenario % threads + 1>}), and the results
+ * of the scenarios are kept in memory until the results of the earlier scenarios of the same file have been
+ * saved, so the result files have their rows in the same order as before.
+ *
+ * @see Simulation#launchParallelSimulations()
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class ScenarioScheduler {
+
+	// The measured wall times of the scenarios in seconds, with their device counts, by the scenario
+	private static final Map<String, double[]> wallTimes = new ConcurrentHashMap<>();
+
+	protected final Simulation simulation;
+	protected final List<Scenario> scenarios;
+	protected final int threads;
+	protected final String startTime;
+	// The finished scenarios whose results have not been saved yet (null if the scenario failed)
+	protected final Map<Integer, SimLog> unsaved = new HashMap<>();
+	// The next scenario whose results are saved into each result file
+	protected final int[] nextToSave;
+
+	/**
+	 * Creates a scheduler for the scenarios of the given simulation.
+	 *
+	 * @param simulation The simulation, with the scenarios loaded.
+	 * @param threads    The number of threads.
+	 */
+	public ScenarioScheduler(Simulation simulation, int threads) {
+		this.simulation = simulation;
+		this.scenarios = simulation.getScenarios();
+		this.threads = Math.max(1, Math.min(threads, this.scenarios.size()));
+		this.startTime = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date());
+		this.nextToSave = new int[this.threads];
+		for (int file = 0; file < this.threads; file++) {
+			this.nextToSave[file] = file;
+		}
+	}
+
+	/**
+	 * Runs all the scenarios and returns when they have finished.
+	 */
+	public void run() {
+		if (SimulationParameters.cleanOutputFolder) {
+			try {
+				new SimLog(this.startTime, true).cleanOutputFolder();
+			} catch (IOException e) {
+				e.printStackTrace(SimLog.getOutput());
+			}
+		}
+
+		List<Integer> order = this.getExecutionOrder();
+		SimLog.println("%s - Running %d scenarios on %d threads, longest expected first: %s", getClass().getSimpleName(),
+				this.scenarios.size(), this.threads, order);
+		AtomicInteger next = new AtomicInteger();
+		SimulationThread factory = new SimulationThread(this.simulation, 0, this.threads);
+		List<Thread> workers = new ArrayList<>(this.threads);
+		for (int t = 0; t < this.threads; t++) {
+			Thread worker = new Thread(() -> {
+				int i;
+				while ((i = next.getAndIncrement()) < order.size()) {
+					this.runScenario(factory, order.get(i));
+				}
+			}, "simulation-" + (t + 1));
+			workers.add(worker);
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		SimLog.println("%s - Simulation Finished!", getClass().getSimpleName());
+	}
+
+	/**
+	 * Returns the indices of the scenarios in the descending order of their expected wall times. The scenarios
+	 * with equal expected wall times keep their original order.
+	 *
+	 * @return the order of execution.
+	 */
+	protected List<Integer> getExecutionOrder() {
+		List<Integer> order = new ArrayList<>(this.scenarios.size());
+		double[] costs = new double[this.scenarios.size()];
+		for (int i = 0; i < this.scenarios.size(); i++) {
+			order.add(i);
+			costs[i] = getExpectedWallTime(this.scenarios.get(i));
+		}
+		order.sort(Comparator.comparingDouble(i -> -costs[i]));
+		return order;
+	}
+
+	/**
+	 * Returns the expected wall time of a scenario, in seconds, or in devices if no scenario has been measured yet.
+	 *
+	 * @param scenario The scenario.
+	 * @return the expected wall time.
+	 */
+	protected static double getExpectedWallTime(Scenario scenario) {
+		double[] measured = wallTimes.get(getKey(scenario));
+		if (measured != null) {
+			return measured[1];
+		}
+		double rate = getRatePerDevice(getKey(scenario, ""));
+		if (Double.isNaN(rate)) {
+			rate = getRatePerDevice("");
+		}
+		return (Double.isNaN(rate) ? 1 : rate) * scenario.getDevicesCount();
+	}
+
+	/**
+	 * Returns the mean wall time per device of the measured scenarios whose keys start with the given prefix,
+	 * or NaN if there are none.
+	 */
+	private static double getRatePerDevice(String prefix) {
+		double seconds = 0;
+		double devices = 0;
+		for (Map.Entry<String, double[]> entry : wallTimes.entrySet()) {
+			if (entry.getKey().startsWith(prefix)) {
+				devices += entry.getValue()[0];
+				seconds += entry.getValue()[1];
+			}
+		}
+		return devices > 0 ? seconds / devices : Double.NaN;
+	}
+
+	private static String getKey(Scenario scenario) {
+		return getKey(scenario, String.valueOf(scenario.getDevicesCount()));
+	}
+
+	private static String getKey(Scenario scenario, String devices) {
+		return scenario.getStringOrchAlgorithm() + "_" + scenario.getStringOrchArchitecture() + "_" + devices;
+	}
+
+	/**
+	 * Runs one scenario, measures its wall time and saves its results in order.
+	 *
+	 * @param factory The simulation thread used for creating the simulations.
+	 * @param index   The index of the scenario.
+	 */
+	protected void runScenario(SimulationThread factory, int index) {
+		Scenario scenario = this.scenarios.get(index);
+		SimLog simLog = new SimLog(this.startTime, index < this.threads);
+		simLog.setSavingDeferred(true);
+		boolean finished = false;
+		try {
+			long start = System.nanoTime();
+			SimulationManager simulationManager = factory.createSimulation(scenario, simLog, index % this.threads + 1,
+					index / this.threads + 1);
+			simulationManager.startSimulation();
+			wallTimes.put(getKey(scenario), new double[] { scenario.getDevicesCount(), (System.nanoTime() - start) / 1e9 });
+			finished = true;
+			SimLog.println("");
+			SimLog.println(getClass().getSimpleName() + " - Iteration finished...");
+			SimLog.println("");
+			SimLog.println(
+					"######################################################################################################################################################################");
+		} catch (Exception e) {
+			e.printStackTrace(SimLog.getOutput());
+			SimLog.println("%s - The scenario %s has been terminated due to an unexpected error", getClass().getSimpleName(),
+					getKey(scenario));
+		}
+		this.save(index, finished ? simLog : null);
+	}
+
+	/**
+	 * Saves the results of the finished scenario, and of the scenarios waiting for it, when the results of the
+	 * earlier scenarios of the same result file have been saved.
+	 */
+	private synchronized void save(int index, SimLog simLog) {
+		this.unsaved.put(index, simLog);
+		int file = index % this.threads;
+		while (this.unsaved.containsKey(this.nextToSave[file])) {
+			SimLog next = this.unsaved.remove(this.nextToSave[file]);
+			if (next != null) {
+				next.setSavingDeferred(false);
+				next.saveLog();
+			}
+			this.nextToSave[file] += this.threads;
+		}
+	}
+}
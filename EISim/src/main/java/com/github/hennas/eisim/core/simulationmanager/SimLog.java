@@ -24,6 +24,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
@@ -37,6 +38,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.stream.Collectors;
 
+import com.github.hennas.eisim.SimulationContext;
 import com.github.hennas.eisim.core.datacentersmanager.ComputingNode;
 import com.github.hennas.eisim.core.energy.EnergyModelNetworkLink;
 import com.github.hennas.eisim.core.network.NetworkLink;
@@ -57,6 +59,8 @@ public class SimLog {
 	protected String simStartTime;
 	protected SimulationManager simulationManager;
 	protected boolean isFirstIteration;
+	// Whether the results are kept in memory when the simulation ends, to be saved later in the order of the scenarios
+	protected boolean savingDeferred = false;
 
 	// Tasks execution results
 	protected int generatedTasksCount = 0;
@@ -120,15 +124,19 @@ public class SimLog {
 	}
 
 	public void showIterationResults(List<Task> finishedTasks) {
+		showIterationResults(finishedTasks.size());
+	}
+
+	public void showIterationResults(int finishedTasksCount) {
 		printTasksRelatedResults();
 		printNetworkRelatedResults();
 		printCPUutilizationResults();
-		printPowerConsumptionResults(finishedTasks);
+		printPowerConsumptionResults(finishedTasksCount);
 		StringBuilder s = new StringBuilder("\n");
 		for (String value : log) {
 			s.append(value).append("\n");
 		}
-		System.out.print(s);
+		SimLog.getOutput().print(s);
 		// update the log
 		saveLog();
 	}
@@ -279,6 +287,10 @@ public class SimLog {
 	}
 
 	public void printPowerConsumptionResults(List<Task> finishedTasks) {
+		printPowerConsumptionResults(finishedTasks.size());
+	}
+
+	public void printPowerConsumptionResults(int finishedTasksCount) {
 		int deadEdgeDevicesCount = 0;
 		double energyConsumption = 0;
 		double cloudEnConsumption = 0;
@@ -365,7 +377,7 @@ public class SimLog {
 								+ simulationManager.getScenario().getDevicesCount()))
 				+ " Wh/data center(or device))");
 		print("                                                                        :" + padLeftSpaces("", 19)
-				+ "     (Average: " + decimalFormat.format(energyConsumption / (double) finishedTasks.size())
+				+ "     (Average: " + decimalFormat.format(energyConsumption / (double) finishedTasksCount)
 				+ " Wh/task)");
 		print("Energy Consumption per level                                            :Cloud= "
 				+ padLeftSpaces(decimalFormat.format(cloudEnConsumption), 13) + " Wh (Average: "
@@ -450,7 +462,22 @@ public class SimLog {
 		}
 	}
 
+	/**
+	 * Sets whether {@link #saveLog()} keeps the results in memory instead of saving them. The results are saved
+	 * by calling {@link #saveLog()} again once saving is no longer deferred.
+	 * 
+	 * @see ScenarioScheduler
+	 * 
+	 * @param savingDeferred whether saving the results is deferred.
+	 */
+	public void setSavingDeferred(boolean savingDeferred) {
+		this.savingDeferred = savingDeferred;
+	}
+
 	public void saveLog() {
+		if (savingDeferred)
+			return;
+
 		// writing results in csv file
 		writeFile(getFileName(".csv"), getResultsList());
 
@@ -475,7 +502,7 @@ public class SimLog {
 			}
 			Lines.clear();
 		} catch (IOException e) {
-			e.printStackTrace();
+			e.printStackTrace(SimLog.getOutput());
 		}
 	}
 
@@ -495,7 +522,7 @@ public class SimLog {
 			newLine= String.format(newLine, args);
 		
 		if (simulationManager == null) {
-			System.out.format("    0.0 : %s \n", newLine, args);
+			SimLog.getOutput().format("    0.0 : %s \n", newLine, args);
 		} else {
 			switch (flag) {
 			case DEFAULT:
@@ -521,14 +548,26 @@ public class SimLog {
 		print(DEFAULT, line, args);
 	}
 
+	/**
+	 * Returns the log writer of the simulation context in which the calling thread
+	 * runs, into which the console output of the simulator is written.
+	 * 
+	 * @see com.github.hennas.eisim.SimulationContext#getLog()
+	 * 
+	 * @return The log writer.
+	 */
+	public static PrintStream getOutput() {
+		return SimulationContext.current().getLog();
+	}
+
 	public static void println(String line, Object... args) {
-		System.out.format(line + "\n", args);
+		SimLog.getOutput().format(line + "\n", args);
 	}
 
 	public void deepLog(String line, Object... args) {
 		if (SimulationParameters.deepLoggingEnabled) {
 			print(DEFAULT, line, args);
-			System.out.format(line, args);
+			SimLog.getOutput().format(line, args);
 		}
 	}
 
@@ -544,13 +583,13 @@ public class SimLog {
 
 	public void printSameLine(String line, String color) {
 		if ("red".equalsIgnoreCase(color))
-			System.err.print(line);
+			SimLog.getOutput().print(line);
 		else
-			System.out.print(line);
+			SimLog.getOutput().print(line);
 	}
 
 	public void printSameLine(String line) {
-		System.out.print(line);
+		SimLog.getOutput().print(line);
 	}
 
 	public int getGeneratedTasks() {
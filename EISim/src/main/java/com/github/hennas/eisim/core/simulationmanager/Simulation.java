@@ -33,6 +33,7 @@ import com.github.hennas.eisim.core.scenariomanager.SimulationParameters.TYPES;
 import com.github.hennas.eisim.core.scenariomanager.ApplicationFileParser;
 import com.github.hennas.eisim.core.scenariomanager.DatacentersParser;
 import com.github.hennas.eisim.core.scenariomanager.EdgeDevicesParser;
+import com.github.hennas.eisim.helpers.CpuBudget;
 
 /**
  * The {@code Simulation} class represents the main class of PureEdgeSim. By
@@ -96,8 +97,8 @@ import com.github.hennas.eisim.core.scenariomanager.EdgeDevicesParser;
 public class Simulation extends SimulationAbstract {
 
 	/**
-	 * The number of CPU cores on this machine. It is used to launch parallel
-	 * simulations.
+	 * The number of CPU cores given to the simulation threads (see
+	 * {@link CpuBudget}). It is used to launch parallel simulations.
 	 * 
 	 * @see #launchParallelSimulations()
 	 */
@@ -150,8 +151,10 @@ public class Simulation extends SimulationAbstract {
 			launchParallelSimulations();
 		} else {
 			// Sequential execution.
+			CpuBudget.allocate(1);
 			new SimulationThread(this, 0, 1).startSimulation();
 		}
+		CpuBudget.release();
 
 		// At this point, the simulation has finished. So, save the finish time.
 		Date finishTime = Calendar.getInstance().getTime();
@@ -163,6 +166,22 @@ public class Simulation extends SimulationAbstract {
 
 	}
 
+	/**
+	 * Checks the input files and loads the simulation scenarios without launching
+	 * the simulations, for running them step by step.
+	 * 
+	 * @return true if the input files are correct.
+	 * 
+	 * @see #getScenarios()
+	 */
+	public boolean loadSimulation() {
+		if (!checkFiles())
+			return false;
+		iterations.clear();
+		loadScenarios();
+		return true;
+	}
+
 	/**
 	 * Checks the input files.
 	 */
@@ -176,27 +195,19 @@ public class Simulation extends SimulationAbstract {
 
 	/**
 	 * Allows to run parallel simulations to take advantage of available CPU cores,
-	 * when this option is enabled in the simulation settings.
+	 * when this option is enabled in the simulation settings. The scenarios are
+	 * run longest expected first by a {@link ScenarioScheduler}.
 	 * 
 	 * @see com.github.hennas.eisim.core.simulationmanager.SimulationAbstract
 	 */
 	protected void launchParallelSimulations() {
 
-		// Get the number of CPU cores
-		cpuCores = Runtime.getRuntime().availableProcessors();
-
-		// Initialize the list of parallel simulations
-		List<SimulationThread> simulationList = new ArrayList<>(cpuCores);
-
-		// Generate the parallel simulations.
-		for (int fromIteration = 0; fromIteration < Math.min(cpuCores, iterations.size()); fromIteration++) {
-			// The number of parallel simulations will be limited by the minimum value
-			// between CPU cores and number of scenarios.
-			simulationList.add(new SimulationThread(this, fromIteration, cpuCores));
-		}
+		// Get the number of CPU cores given to the simulation threads
+		cpuCores = CpuBudget.allocate(iterations.size());
 
-		// Finally, run them.
-		simulationList.parallelStream().forEach(SimulationThread::startSimulation);
+		// The number of parallel simulations will be limited by the minimum value
+		// between CPU cores and number of scenarios.
+		new ScenarioScheduler(this, cpuCores).run();
 
 	}
 
@@ -23,6 +23,7 @@ package com.github.hennas.eisim.core.simulationmanager;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.github.hennas.eisim.SimulationContext;
 import com.github.hennas.eisim.core.datacentersmanager.DataCentersManager;
 import com.github.hennas.eisim.core.network.NetworkModel;
 import com.github.hennas.eisim.core.scenariomanager.Scenario;
@@ -70,6 +71,7 @@ public abstract class SimulationManager extends SimEntity {
 	protected List<Task> finishedTasks = new ArrayList<>();
 	protected Scenario scenario;
 	protected FutureQueue<Task> taskList;
+	protected SimulationContext context;
 
 	/**
 	 * Initializes the simulation manager.
@@ -92,6 +94,7 @@ public abstract class SimulationManager extends SimEntity {
 		this.scenario = scenario;
 		this.simulationId = simulationId;
 		this.iteration = iteration;
+		this.context = SimulationContext.current();
 
 	}
 
@@ -135,6 +138,15 @@ public abstract class SimulationManager extends SimEntity {
 	public List<Task> getFinishedTaskList() {
 		return this.finishedTasks; 
 	}
+	
+	/**
+	 * Returns the number of finished tasks.
+	 * 
+	 * @return the number of finished tasks.
+	 */
+	public int getFinishedTasksCount() {
+		return this.finishedTasks.size(); 
+	}
 
 	/**
 	 * Sets the orchestrator that is used in this simulation. Used when offloading
@@ -208,6 +220,18 @@ public abstract class SimulationManager extends SimEntity {
 		return simLog;
 	}
 
+	/**
+	 * Returns the context in which this simulation runs, that is, the
+	 * configuration of the simulation.
+	 * 
+	 * @see com.github.hennas.eisim.SimulationContext
+	 * 
+	 * @return The simulation context.
+	 */
+	public SimulationContext getContext() {
+		return context;
+	}
+
 	/**
 	 * Returns the data centers manager that is used in this simulation.
 	 * 
@@ -48,6 +48,10 @@ import com.github.hennas.eisim.core.taskgenerator.TaskGenerator;
  * {@link Simulation#launchParallelSimulations() launchParallelSimulations()}.
  * Once done, the {@link #startSimulation()} method is called to initialize the
  * different modules and then launch the discrete event simulation.
+ * <p>
+ * In EISim, the parallel simulations are run by a {@link ScenarioScheduler}
+ * instead, which uses {@link #createSimulation(Scenario, SimLog, int, int)} to
+ * create the simulation of each scenario.
  * 
  * @see #startSimulation()
  * @see com.github.hennas.eisim.core.simulationmanager.Simulation#launchParallelSimulations()
@@ -118,20 +122,8 @@ public class SimulationThread {
 				}
 				isFirstIteration = false;
 
-				// New instance of the PureEdgeSim simulation engine.
-				PureEdgeSim pureEdgeSim = new PureEdgeSim();
-
-				// Initialize the simulation manager.
-				Constructor<?> simulationManagerConstructor = simulation.simulationManager.getConstructor(SimLog.class,
-						PureEdgeSim.class, int.class, int.class, Scenario.class);
-				simulationManager = (SimulationManager) simulationManagerConstructor.newInstance(simLog, pureEdgeSim,
-						simulationId, iteration, simulation.getScenarios().get(it));
-				simLog.initialize(simulationManager, simulation.getScenarios().get(it).getDevicesCount(),
-						simulation.getScenarios().get(it).getOrchAlgorithm(),
-						simulation.getScenarios().get(it).getOrchArchitecture());
-
-				// Load custom classes and models.
-				loadModels(simulationManager);
+				// Create the simulation manager and the modules.
+				simulationManager = createSimulation(simulation.getScenarios().get(it), simLog, simulationId, iteration);
 
 				// Finally, launch the simulation.
 				simulationManager.startSimulation();
@@ -153,13 +145,42 @@ public class SimulationThread {
 			generateCharts(simLog);
 
 		} catch (Exception e) {
-			e.printStackTrace();
+			e.printStackTrace(SimLog.getOutput());
 			SimLog.println(
 					getClass().getSimpleName() + " - The simulation has been terminated due to an unexpected error");
 			Thread.currentThread().interrupt();
 		}
 	}
 
+	/**
+	 * Creates a new instance of the simulation engine and the simulation manager for the
+	 * given scenario, and loads the custom models and classes. The simulation is not started.
+	 * 
+	 * @param scenario     The scenario to simulate.
+	 * @param simLog       The simulation logger.
+	 * @param simulationId The simulation ID.
+	 * @param iteration    Which simulation run.
+	 * @return the simulation manager of the new simulation.
+	 * @throws Exception if the custom classes cannot be instantiated.
+	 */
+	public SimulationManager createSimulation(Scenario scenario, SimLog simLog, int simulationId, int iteration)
+			throws Exception {
+		// New instance of the PureEdgeSim simulation engine.
+		PureEdgeSim pureEdgeSim = new PureEdgeSim();
+
+		// Initialize the simulation manager.
+		Constructor<?> simulationManagerConstructor = simulation.simulationManager.getConstructor(SimLog.class,
+				PureEdgeSim.class, int.class, int.class, Scenario.class);
+		SimulationManager simulationManager = (SimulationManager) simulationManagerConstructor.newInstance(simLog,
+				pureEdgeSim, simulationId, iteration, scenario);
+		simLog.initialize(simulationManager, scenario.getDevicesCount(), scenario.getOrchAlgorithm(),
+				scenario.getOrchArchitecture());
+
+		// Load custom classes and models.
+		loadModels(simulationManager);
+		return simulationManager;
+	}
+
 	/**
 	 * A pause of a few seconds between iterations. The duration of the pause is
 	 * defined in the simulation parameters.
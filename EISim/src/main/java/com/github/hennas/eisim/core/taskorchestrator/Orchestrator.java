@@ -134,7 +134,7 @@ public abstract class Orchestrator extends SimEntity {
 			try {
 				checkComputingNode(node);
 			} catch (Exception e) {
-				e.printStackTrace();
+				e.printStackTrace(SimLog.getOutput());
 			}
 
 			// Send this task to this computing node
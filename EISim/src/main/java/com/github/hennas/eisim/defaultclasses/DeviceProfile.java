@@ -0,0 +1,56 @@
+package com.github.hennas.eisim.defaultclasses;
+
+import com.github.hennas.eisim.core.scenariomanager.SimulationParameters;
+
+/**
+ * Holds the per-device values that the orchestration logic needs for every task of an edge device:
+ * the device's importance weights and the network parameters of its connectivity type.
+ * <p>
+ * The profile is resolved once when the device generates its weights, so that orchestrating a task
+ * does not need to box the values into lists or compare the connectivity type string.
+ *
+ * @param latencyWeight				The importance of latency in the offloading decision
+ * @param energyWeight				The importance of energy consumption in the offloading decision
+ * @param paymentWeight				The importance of the payment in the offloading decision
+ * @param dataRate					The data rate in bits per second
+ * @param transmissionEnergyPerBit	The energy consumed when transmitting data in joules per bit
+ * @param receptionEnergyPerBit		The energy consumed when receiving data in joules per bit
+ *
+ * @see EisimComputingNode#generateDeviceWeights()
+ * @see EisimOrchestrator
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public record DeviceProfile(double latencyWeight, double energyWeight, double paymentWeight,
+		double dataRate, double transmissionEnergyPerBit, double receptionEnergyPerBit) {
+
+	/**
+	 * Creates a device profile from the given weights and the network parameters that correspond to
+	 * the given connectivity type (cellular, wifi or ethernet).
+	 *
+	 * @param latencyWeight		The importance of latency in the offloading decision
+	 * @param energyWeight		The importance of energy consumption in the offloading decision
+	 * @param paymentWeight		The importance of the payment in the offloading decision
+	 * @param connectivity		The connectivity type of the edge device
+	 * @return DeviceProfile:	The resolved profile
+	 */
+	public static DeviceProfile of(double latencyWeight, double energyWeight, double paymentWeight, String connectivity) {
+		if ("cellular".equals(connectivity)) {
+			return new DeviceProfile(latencyWeight, energyWeight, paymentWeight,
+					SimulationParameters.cellularBandwidthBitsPerSecond,
+					SimulationParameters.cellularDeviceTransmissionWattHourPerBit * 3600,
+					SimulationParameters.cellularDeviceReceptionWattHourPerBit * 3600);
+		} else if ("wifi".equals(connectivity)) {
+			return new DeviceProfile(latencyWeight, energyWeight, paymentWeight,
+					SimulationParameters.wifiBandwidthBitsPerSecond,
+					SimulationParameters.wifiDeviceTransmissionWattHourPerBit * 3600,
+					SimulationParameters.wifiDeviceReceptionWattHourPerBit * 3600);
+		} else {
+			return new DeviceProfile(latencyWeight, energyWeight, paymentWeight,
+					SimulationParameters.ethernetBandwidthBitsPerSecond,
+					SimulationParameters.ethernetWattHourPerBit / 2 * 3600,
+					SimulationParameters.ethernetWattHourPerBit / 2 * 3600);
+		}
+	}
+}
@@ -5,22 +5,28 @@ import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
-
-import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.factory.Nd4j;
+import java.util.SplittableRandom;
 
 import com.github.hennas.eisim.agents.PricingAgent;
+import com.github.hennas.eisim.agents.bridge.SharedMemoryPricingAgent;
 import com.github.hennas.eisim.agents.ddpg.DdpgPricingAgent;
+import com.github.hennas.eisim.agents.ddpg.RolloutPricingAgent;
+import com.github.hennas.eisim.agents.ddpg.SharedDdpgPricingAgent;
 import com.github.hennas.eisim.core.datacentersmanager.DefaultComputingNode;
 import com.github.hennas.eisim.core.datacentersmanager.ComputingNode;
+import com.github.hennas.eisim.core.scenariomanager.Scenario;
 import com.github.hennas.eisim.core.scenariomanager.SimulationParameters;
 import com.github.hennas.eisim.core.simulationengine.Event;
 import com.github.hennas.eisim.core.simulationmanager.SimLog;
 import com.github.hennas.eisim.core.simulationmanager.SimulationManager;
 import com.github.hennas.eisim.core.taskgenerator.Task;
 import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.helpers.ConvergenceMonitor;
+import com.github.hennas.eisim.helpers.EpisodeRunner;
+import com.github.hennas.eisim.helpers.ExperienceRecorder;
 import com.github.hennas.eisim.helpers.PriceLogger;
+import com.github.hennas.eisim.helpers.RandomStreams.Purpose;
+import com.github.hennas.eisim.helpers.RolloutRunner;
 
 /**
  * Extends the {@link DefaultComputingNode} class by adding in clustering and pricing capabilities 
@@ -57,12 +63,12 @@ import com.github.hennas.eisim.helpers.PriceLogger;
  *
  */
 public class EisimComputingNode extends DefaultComputingNode {
-	// The name of the currently simulated orchestration algorithm
-	protected String algorithm;
+	// The currently simulated orchestration algorithm
+	protected OrchestrationAlgorithm algorithm;
 	
 	// The following are only used for EDGE_DEVICE type nodes
-	protected Random random; // Used to generate random weight values for edge devices
-	protected List<Double> deviceWeights;
+	protected SplittableRandom random; // Used to generate random weight values for edge devices
+	protected DeviceProfile deviceProfile; // The device weights and network parameters used in orchestration
 	
 	// The following are only used for EDGE_DATACENTER type nodes
 	protected boolean isAP = false;
@@ -86,6 +92,7 @@ public class EisimComputingNode extends DefaultComputingNode {
 	protected PricingAgent agent; // Encapsulates the neural networks and experience memory, 
 								  // carries out training and makes action decisions
 	protected PriceLogger priceLog; // Used for logging prices and profits
+	protected ExperienceRecorder experienceRecorder; // Used for recording the experiences, if they are recorded
 	protected int pricingSteps = 0; // Records how many pricing decisions have been made since the beginning of the simulation
 	protected float rewardScale; // Used to scale the profit in order to produce reward for the agents
 	protected float queueScale; // Used to scale the avg queue length state variable
@@ -94,8 +101,13 @@ public class EisimComputingNode extends DefaultComputingNode {
 	protected double currentQueueTimeEstimate; // An estimate of queue time for whole cluster during a slot 
 											   // (needed in decentralized and hybrid control topologies)
 	protected double queueDelayEstimate; // An estimate of a queue time for one edge server (needed in centralized control topology)
-	protected INDArray previousState; // Records the previous state, which is needed during training at the beginning of a new slot 
+	protected float[] previousState; // Records the previous state, which is needed during training at the beginning of a new slot 
 									  // to save the experience tuple (state, action, reward, newState)
+	// The observations and the decision of the current price update, see updatePrice()
+	protected float slotReward;
+	protected float[] newState;
+	protected float newPrice;
+	protected boolean priceUpdatePrepared = false; // Whether the price update has been prepared together with other cluster heads
 	// Updating the following total counts is the responsibility of the EisimOrchestrator
 	protected int totalTasksArrivedInSlot = 0; // Needed when observing the new state at the beginning of a slot (see getNewState())
 	protected int totalMIsInSlot = 0; // Needed when calculating the profit for a slot (see getProfit())
@@ -152,9 +164,8 @@ public class EisimComputingNode extends DefaultComputingNode {
 	public EisimComputingNode(SimulationManager simulationManager, double mipsPerCore, int numberOfCPUCores,
 			double storage, double ram) {
 		super(simulationManager, mipsPerCore, numberOfCPUCores, storage, ram);
-		this.algorithm = simulationManager.getScenario().getStringOrchAlgorithm();
-		this.random = new Random();
-		this.random.setSeed(((EisimSimulationManager) simulationManager).seedGenerator.nextLong());
+		this.algorithm = OrchestrationAlgorithm.fromName(simulationManager.getScenario().getStringOrchAlgorithm());
+		this.random = ((EisimSimulationManager) simulationManager).randomStreams.forNode(this.getId(), Purpose.DEVICE_WEIGHTS);
 	}
 	
 	/**
@@ -167,6 +178,15 @@ public class EisimComputingNode extends DefaultComputingNode {
 		pricingAgentClass = agentClass;
 	}
 	
+	/**
+	 * Returns the pricing agent class used in the simulation.
+	 * 
+	 * @return Class: The pricing agent class
+	 */
+	public static Class<? extends PricingAgent> getCustomPricingAgentClass() {
+		return pricingAgentClass;
+	}
+	
 	@Override
 	public void startInternal() {
 		// Only for computing nodes that are not APs
@@ -186,7 +206,7 @@ public class EisimComputingNode extends DefaultComputingNode {
 				 * information from the edge servers only at the beginning of each price slot, and then use this 
 				 * information when it decides task execution locations.
 				 */
-				if ("CENTRALIZED".equals(this.algorithm)) {
+				if (this.algorithm == OrchestrationAlgorithm.CENTRALIZED) {
 					scheduleNow(this, RECORD_QUEUE_DELAY_ESTIMATE);
 				}
 				
@@ -210,6 +230,9 @@ public class EisimComputingNode extends DefaultComputingNode {
 	public void processEvent(Event e) {
 		switch (e.getTag()) {
 		case PRICE_UPDATE:
+			if (usesBatchedPriceUpdate() && !this.priceUpdatePrepared) {
+				((EisimSimulationManager) this.simulationManager).preparePriceUpdates(e);
+			}
 			updatePrice();
 			// No need to do price updates anymore if we are just waiting for the tasks to finish (simClock > simDuration)
 			if (this.simulationManager.getSimulation().clock() < SimulationParameters.simulationDuration) {
@@ -229,21 +252,62 @@ public class EisimComputingNode extends DefaultComputingNode {
 		}
 	}
 	
+	/**
+	 * Checks whether the price updates of the cluster heads at the same instant are prepared together by 
+	 * {@link EisimSimulationManager#preparePriceUpdates(Event)}, instead of each cluster head updating its 
+	 * price on its own.
+	 * 
+	 * @return boolean: True if the price update of this cluster head is prepared in a group
+	 */
+	protected boolean usesBatchedPriceUpdate() {
+		// The external agent decides the prices of all the cluster heads in one request
+		if (this.agent instanceof SharedMemoryPricingAgent) {
+			return true;
+		}
+		// The shared agent of the parameter-shared mode is updated by the cluster heads one by one
+		if (EisimSimulationParameters.sharedAgent) {
+			return false;
+		}
+		// Separate agents are trained in parallel on the training pool, or all at once by the stacked trainer
+		return EisimSimulationParameters.trainingThreads > 1 || EisimSimulationParameters.stackedTraining;
+	}
+	
 	@Override
 	public void onSimulationEnd() {
-		// Save the price log, models and experience replay for the edge servers that are also cluster heads
+		// Save the price log, recorded experiences, models and experience replay for the edge servers that are also cluster heads
 		if (this.getType() == SimulationParameters.TYPES.EDGE_DATACENTER && this.isClusterHead()) {
 			SimLog.println(this.getClass().getSimpleName() 
 					+ " - Saving price log and agent state for edge server " + this.getName());
+			if (ConvergenceMonitor.isEnabled()) {
+				ConvergenceMonitor.report(this.getScenarioKey(), this.priceLog);
+			}
 			try {
 				this.priceLog.saveLog();
-				this.agent.saveAgentState();
+				// When the agents stay resident between training episodes, they are only saved at the checkpoints
+				if (EpisodeRunner.isCheckpointEpisode()) {
+					this.agent.saveAgentState();
+				}
+				if (this.experienceRecorder != null) {
+					this.experienceRecorder.close();
+				}
 			} catch (IOException e) {
-				e.printStackTrace();
+				e.printStackTrace(SimLog.getOutput());
 			}	
 		}
 	}
 	
+	/**
+	 * Returns the key that identifies this cluster head between the simulations of different episodes: 
+	 * the scenario and the name of the node.
+	 * 
+	 * @return String: The key of the cluster head
+	 */
+	protected String getScenarioKey() {
+		Scenario scenario = this.simulationManager.getScenario();
+		return scenario.getStringOrchAlgorithm() + "_" + scenario.getStringOrchArchitecture() + "_" 
+				+ scenario.getDevicesCount() + "/" + this.getName();
+	}
+	
 	/**
 	 * Returns true if the node is an AP.
 	 * 
@@ -332,12 +396,13 @@ public class EisimComputingNode extends DefaultComputingNode {
 	}
 	
 	/**
-	 * Gets an edge device's weights for offloading decision making.
+	 * Gets an edge device's profile for offloading decision making. The profile holds the device's 
+	 * weights and the network parameters of its connectivity type.
 	 * 
-	 * @return List<Double>: A list of weight values
+	 * @return DeviceProfile: The profile of the edge device
 	 */
-	public List<Double> getDeviceWeights() {
-		return this.deviceWeights;
+	public DeviceProfile getDeviceProfile() {
+		return this.deviceProfile;
 	}
 	
 	/**
@@ -445,10 +510,11 @@ public class EisimComputingNode extends DefaultComputingNode {
 	 * (0,0,1) inside a unit cube. 
 	 * The coordinates of each point on the triangle correspond to the weight values. 
 	 * This method generates the weight values by randomly sampling a point from the triangle.
+	 * <p>
+	 * The weights are stored in the device's {@link DeviceProfile} together with the network parameters 
+	 * of the device's connectivity type.
 	 */
 	protected void generateDeviceWeights() {
-		this.deviceWeights = new ArrayList<>(3);
-		
 		double[] randomValues = {this.random.nextDouble(), this.random.nextDouble()}; // Two random values both uniformly sampled from [0,1)
         Arrays.sort(randomValues); // Sorting the random values in ascending order
         
@@ -456,9 +522,8 @@ public class EisimComputingNode extends DefaultComputingNode {
         double weight2 = 1 - randomValues[1]; // The second weight is the larger random value subtracted from 1
         double weight3 = randomValues[1] - randomValues[0]; // The final weight is the difference between the larger and smaller random values
 		
-		this.deviceWeights.add(weight1); // Weight for latency
-		this.deviceWeights.add(weight2); // Weight for energy consumption
-		this.deviceWeights.add(weight3); // Weight for payment
+		// Weights for latency, energy consumption and payment
+		this.deviceProfile = DeviceProfile.of(weight1, weight2, weight3, this.getEnergyModel().getConnectivityType());
 	}
 	
 	/**
@@ -466,18 +531,46 @@ public class EisimComputingNode extends DefaultComputingNode {
 	 * EDGE_DATACENTER type nodes that are also cluster heads. 
 	 * Also the scales for the reward and state variables are initialized according to the used 
 	 * orchestration algorithm.
+	 * <p>
+	 * When several training episodes are run in one JVM, the cluster head continues with the agent of 
+	 * the cluster head with the same name in the previous episode, if there is one.
+	 * 
+	 * @see EpisodeRunner
 	 */
 	protected void initializeAgent() {
-		// Creating the agent instance
-		Constructor<?> pricingAgentConstructor;
-		try {
-			pricingAgentConstructor = pricingAgentClass.getConstructor(String.class, int.class, 
-					float.class, float.class, SimulationManager.class);
-
-			this.agent = (PricingAgent) pricingAgentConstructor.newInstance(this.getName(), 
-					stateSpaceDim, minPrice, maxPrice, this.simulationManager);
-		} catch (Exception e) {
-			e.printStackTrace();
+		// With the bridge, the default agent is replaced by the external agent, with concurrent rollouts by the 
+		// rollout agent, and in the parameter-shared mode, the cluster heads use the shared version of the default agent
+		Class<? extends PricingAgent> agentClass = pricingAgentClass;
+		if (EisimSimulationParameters.bridgeDirectory != null && pricingAgentClass == DdpgPricingAgent.class) {
+			agentClass = SharedMemoryPricingAgent.class;
+		} else if (RolloutRunner.isEnabled() && pricingAgentClass == DdpgPricingAgent.class) {
+			agentClass = RolloutPricingAgent.class;
+		} else if (EisimSimulationParameters.sharedAgent && pricingAgentClass == DdpgPricingAgent.class) {
+			agentClass = SharedDdpgPricingAgent.class;
+		}
+		
+		// Continuing with the agent of the previous episode, if the agents stay resident between episodes 
+		// (the learners of the rollouts stay resident instead of the agents)
+		String residentKey = this.getScenarioKey();
+		boolean resident = EpisodeRunner.keepsAgentsResident() && agentClass != RolloutPricingAgent.class;
+		this.agent = resident ? EpisodeRunner.getResidentAgent(residentKey) : null;
+		if (this.agent != null) {
+			this.agent.resume(this.simulationManager);
+		} else {
+			// Creating the agent instance
+			Constructor<?> pricingAgentConstructor;
+			try {
+				pricingAgentConstructor = agentClass.getConstructor(String.class, int.class, 
+						float.class, float.class, SimulationManager.class);
+	
+				this.agent = (PricingAgent) pricingAgentConstructor.newInstance(this.getName(), 
+						stateSpaceDim, minPrice, maxPrice, this.simulationManager);
+			} catch (Exception e) {
+				e.printStackTrace(SimLog.getOutput());
+			}
+			if (resident && this.agent != null) {
+				EpisodeRunner.addResidentAgent(residentKey, this.agent);
+			}
 		}
 		//this.agent = new PricingAgent(this.getName(), stateSpaceDim, minPrice, maxPrice, this.simulationManager);
 		
@@ -485,18 +578,22 @@ public class EisimComputingNode extends DefaultComputingNode {
 		this.priceLog = new PriceLogger(this.simulationManager, this.getName());
 		
 		// Initialize scales based on the algorithm
-		if ("DECENTRALIZED".equals(this.algorithm)) {
+		switch (this.algorithm) {
+		case DECENTRALIZED:
 			this.rewardScale = 1e-3f;
 			this.queueScale = 1e-3f;
 			this.arrivalRateScale = 1e-2f;
-		} else if ("HYBRID".equals(this.algorithm)) {
+			break;
+		case HYBRID:
 			this.rewardScale = 1e-4f;
 			this.queueScale = 1e-2f;
 			this.arrivalRateScale = 1e-3f;
-		} else if ("CENTRALIZED".equals(this.algorithm)) {
+			break;
+		case CENTRALIZED:
 			this.rewardScale = 1e-4f;
 			this.queueScale = 1e-1f;
 			this.arrivalRateScale = 1e-3f;
+			break;
 		}
 	}
 	
@@ -504,9 +601,24 @@ public class EisimComputingNode extends DefaultComputingNode {
 	 * Updates the price at the beginning of a new slot.
 	 * <p>
 	 * This method is called at the beginning of every new slot when handling the {@code PRICE_UPDATE} 
-	 * event (only edge servers that are also cluster head execute this).
+	 * event (only edge servers that are also cluster head execute this). If the slot has already been 
+	 * observed and the new price decided together with the other cluster heads (see 
+	 * {@link EisimSimulationManager#preparePriceUpdates(Event)}), only the decision is applied.
 	 */
 	protected void updatePrice() {
+		if (!this.priceUpdatePrepared) {
+			this.observeSlot();
+			this.decidePrice();
+		}
+		this.priceUpdatePrepared = false;
+		this.applyPrice();
+	}
+	
+	/**
+	 * Observes the profit of the previous slot and the state at the beginning of the new slot, 
+	 * and logs the previous slot.
+	 */
+	protected void observeSlot() {
 		// Get the profit for the previous slot
 		double profit = getProfit(); 
 		
@@ -514,30 +626,134 @@ public class EisimComputingNode extends DefaultComputingNode {
 		this.priceLog.addLine(this.simulationManager.getSimulation().clock(), this.getPrice(), profit, this.previousState); 
 		
 		//float reward = (float) (Math.signum(profit)*Math.log(1 + Math.abs(profit)));
-		float reward = (float) (this.rewardScale * profit);
+		this.slotReward = (float) (this.rewardScale * profit);
 		
 		// Observe the new state at the beginning of a new slot
-		INDArray newState = getNewState();
+		this.newState = getNewState();
 		
+		// Record the experience of the previous slot, if a price decision has already been made
+		if (EisimSimulationParameters.recordFolder != null && this.pricingSteps > 0) {
+			this.recordSlot();
+		}
+	}
+	
+	/**
+	 * Records the experience of the previous slot with the experience recorder of this cluster head, 
+	 * which is created when the first experience is recorded.
+	 */
+	protected void recordSlot() {
+		try {
+			if (this.experienceRecorder == null) {
+				this.experienceRecorder = ExperienceRecorder.create(this.simulationManager, this.getName(), 
+						stateSpaceDim, minPrice, maxPrice);
+			}
+			this.experienceRecorder.record(this.previousState, this.getPrice(), this.slotReward, this.newState);
+		} catch (IOException e) {
+			e.printStackTrace(SimLog.getOutput());
+		}
+	}
+	
+	/**
+	 * Trains the agent with the experience of the previous slot (in the training mode) and decides the 
+	 * price for the new slot. Only touches the state of this cluster head and its agent, so the decisions 
+	 * of different cluster heads can be made in parallel.
+	 */
+	protected void decidePrice() {
 		// If the simulation is run in training mode, the experience tuple is saved and the models updated
-		if (EisimSimulationParameters.train && this.pricingSteps > 0) {
-			agent.learn(this.previousState, this.getPrice(), reward, newState);
+		if (this.learnsFromSlot()) {
+			agent.learn(this.previousState, this.getPrice(), this.slotReward, this.newState);
 		}
-		
+		this.choosePrice();
+	}
+	
+	/**
+	 * Checks whether the agent is trained with the experience of the previous slot, i.e., whether the 
+	 * simulation is run in the training mode and a price decision has already been made.
+	 * 
+	 * @return boolean: True if the agent learns from the previous slot
+	 */
+	protected boolean learnsFromSlot() {
+		return EisimSimulationParameters.train && this.pricingSteps > 0;
+	}
+	
+	/**
+	 * Decides the price for the new slot with the agent.
+	 */
+	protected void choosePrice() {
 		// Make the price decision for the new slot
-		float newPrice = this.pricingSteps >= EisimSimulationParameters.randomDecisionSteps // If the number of random pricing steps 
-																							 // specified in the settings has been exceeded
-				? agent.act(newState) // then get the new price by inputting the state into actor network
+		this.newPrice = this.pricingSteps >= EisimSimulationParameters.randomDecisionSteps // If the number of random pricing steps 
+																						    // specified in the settings has been exceeded
+				? agent.act(this.newState) // then get the new price by inputting the state into actor network
 				: agent.act(); // otherwise get a price that is uniformly sampled from the price range.
-		this.setPrice(newPrice); // Set the decision as the current price
+	}
+	
+	/**
+	 * Checks whether the given event is a {@code PRICE_UPDATE} event of a cluster head whose new price 
+	 * has not been decided yet. Used for stopping the simulation before the price decisions when the 
+	 * prices are decided outside the simulation.
+	 * 
+	 * @param e			The event
+	 * @return boolean:	True if the event is a price update that still needs a decision
+	 * 
+	 * @see com.github.hennas.eisim.environment.PricingEnvironment
+	 */
+	public static boolean awaitsPriceDecision(Event e) {
+		return e.getTag() == PRICE_UPDATE && e.getSimEntity() instanceof EisimComputingNode
+				&& !((EisimComputingNode) e.getSimEntity()).priceUpdatePrepared;
+	}
+	
+	/**
+	 * Observes the slot that ends at the pending {@code PRICE_UPDATE} event, so that the new price can be 
+	 * decided outside the simulation with {@link #setDecidedPrice(float)}. The observed reward and state 
+	 * are available from {@link #getSlotReward()} and {@link #getSlotState()}.
+	 */
+	public void observePriceUpdate() {
+		this.observeSlot();
+	}
+	
+	/**
+	 * Returns the reward of the slot observed last.
+	 * 
+	 * @return float: The scaled profit of the slot
+	 */
+	public float getSlotReward() {
+		return this.slotReward;
+	}
+	
+	/**
+	 * Returns the state observed at the beginning of the new slot.
+	 * 
+	 * @return float[]: The state
+	 */
+	public float[] getSlotState() {
+		return this.newState;
+	}
+	
+	/**
+	 * Sets the price decided outside the simulation for the new slot. The agent of the cluster head is 
+	 * not used, and the price is applied when the pending {@code PRICE_UPDATE} event is processed. The 
+	 * price is clipped into the price range of the agent.
+	 * 
+	 * @param price The price for the new slot
+	 */
+	public void setDecidedPrice(float price) {
+		this.newPrice = Math.max(agent.getMinPrice(), Math.min(agent.getMaxPrice(), price));
+		this.priceUpdatePrepared = true;
+	}
+	
+	/**
+	 * Sets the decided price for the new slot and resets the slot counts.
+	 */
+	protected void applyPrice() {
+		this.setPrice(this.newPrice); // Set the decision as the current price
 		this.pricingSteps++; // Record the number of pricing steps done
 		
 		// Store the current state for the next slot
-		this.previousState = newState; 
+		this.previousState = this.newState; 
 		
 		// Calculate and set the queue time estimate for the new slot 
 		// (only needed if the orchestration algorithm is DECENTRALIZED or HYBRID)
-		if ("DECENTRALIZED".equals(this.algorithm) || "HYBRID".equals(this.algorithm)) {
+		if (this.algorithm.offloadsToClusterHeads()) {
 			this.setQueueTimeEstimate(this.calculateQueueTimeEstimateForSlot()); 
 		}
 		
@@ -549,10 +765,10 @@ public class EisimComputingNode extends DefaultComputingNode {
 	/**
 	 * Gets the new state at the beginning of a slot. This state is used to make the next price decision.
 	 * 
-	 * @return INDArray: INDArray presentation of the state
+	 * @return float[]: Array presentation of the state
 	 */
-	protected INDArray getNewState() {
-		float[][] state = new float[1][stateSpaceDim];
+	protected float[] getNewState() {
+		float[] state = new float[stateSpaceDim];
 		
 		int totalQueueLength = 0;
 		for (EisimComputingNode node : this.getClusterMembers()) {
@@ -562,10 +778,10 @@ public class EisimComputingNode extends DefaultComputingNode {
 		// Average CPU utilization? this.totalMIsInSlot / (this.getTotalMipsCapacity() * this.clusterSize * PRICE_UPDATE_INTERVAL)
 		double avgTaskQueueLength = (double) (totalQueueLength + this.getTasksQueue().size()) / this.clusterSize; // Average task queue length in the cluster
 		double avgArrivalRate = (double) this.totalTasksArrivedInSlot / PRICE_UPDATE_INTERVAL; // Average arrival rate of tasks
-		state[0][0] = (float) (this.queueScale * avgTaskQueueLength);
-		//state[0][1] = this.getPrice(); // Pricing decision from previous slot
-		state[0][1] = (float) (this.arrivalRateScale * avgArrivalRate);
-		return Nd4j.create(state);
+		state[0] = (float) (this.queueScale * avgTaskQueueLength);
+		//state[1] = this.getPrice(); // Pricing decision from previous slot
+		state[1] = (float) (this.arrivalRateScale * avgArrivalRate);
+		return state;
 	}
 	
 	/**
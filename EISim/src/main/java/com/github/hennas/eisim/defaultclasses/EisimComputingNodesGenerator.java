@@ -4,7 +4,7 @@ import java.io.FileInputStream;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -16,11 +16,16 @@ import org.w3c.dom.NodeList;
 
 import com.github.hennas.eisim.core.datacentersmanager.ComputingNode;
 import com.github.hennas.eisim.core.datacentersmanager.DefaultComputingNodesGenerator;
+import com.github.hennas.eisim.core.locationmanager.DefaultMobilityModel;
 import com.github.hennas.eisim.core.locationmanager.MobilityModel;
 import com.github.hennas.eisim.core.simulationmanager.SimulationManager;
 import com.github.hennas.eisim.core.energy.EnergyModelComputingNode;
 import com.github.hennas.eisim.core.locationmanager.Location;
 import com.github.hennas.eisim.core.scenariomanager.SimulationParameters;
+import com.github.hennas.eisim.helpers.RandomStreams;
+import com.github.hennas.eisim.helpers.RandomStreams.Purpose;
+import com.github.hennas.eisim.helpers.WorkloadPool;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
 
 /**
  * Generates all the nodes from the setting files.
@@ -31,11 +36,12 @@ import com.github.hennas.eisim.core.scenariomanager.SimulationParameters;
 public class EisimComputingNodesGenerator extends DefaultComputingNodesGenerator {
 
 	/**
-	 * Used for randomly locating the edge devices on the simulation map
+	 * Used to derive the random number streams of the nodes, e.g., for randomly locating the edge devices 
+	 * on the simulation map and for their mobility
 	 * 
 	 * @see #createComputingNode
 	 */
-	protected Random random;
+	protected RandomStreams randomStreams;
 	
 	/**
 	 * Initializes the Computing nodes generator.
@@ -48,8 +54,7 @@ public class EisimComputingNodesGenerator extends DefaultComputingNodesGenerator
 	public EisimComputingNodesGenerator(SimulationManager simulationManager,
 			Class<? extends MobilityModel> mobilityModelClass, Class<? extends ComputingNode> computingNodeClass) {
 		super(simulationManager, mobilityModelClass, computingNodeClass);
-		random = new Random();
-		random.setSeed(((EisimSimulationManager) simulationManager).seedGenerator.nextLong());
+		randomStreams = ((EisimSimulationManager) simulationManager).randomStreams;
 	}
 	
 	@Override
@@ -63,12 +68,28 @@ public class EisimComputingNodesGenerator extends DefaultComputingNodesGenerator
 		
 		// Generate edge devices.
 		generateEdgeDevices();
+		
+		// Generate the mobility paths of the edge devices
+		generateMobilityPaths();
 
 		getSimulationManager().getSimulationLogger()
 				.print(getClass().getSimpleName() + " - Datacenters and devices were generated");
 
 	}
 	
+	/**
+	 * Generates the mobility paths of all the edge devices in parallel. 
+	 * <p>
+	 * Each device moves according to its own random number stream, so the paths are the same regardless 
+	 * of the number of threads. Without this, the paths would be generated one by one when the simulation 
+	 * starts.
+	 * 
+	 * @see WorkloadPool
+	 */
+	protected void generateMobilityPaths() {
+		WorkloadPool.forEach(mistOnlyList.size(), i -> mistOnlyList.get(i).getMobilityModel().generatePath());
+	}
+	
 	/**
 	 * Generates edge data centers and access points from the edge_datacenters.xml file.
 	 * 
@@ -95,7 +116,7 @@ public class EisimComputingNodesGenerator extends DefaultComputingNodesGenerator
 				edgeAndCloudList.add(computingNode);
 			}
 		} catch (Exception e) {
-			e.printStackTrace();
+			e.printStackTrace(SimLog.getOutput());
 		}
 	}
 	
@@ -151,6 +172,7 @@ public class EisimComputingNodesGenerator extends DefaultComputingNodesGenerator
 				.setMaxMobilityDuration(maxMobilityDuration);
 		
 		String name = datacenterElement.getAttribute("name");
+		ComputingNode computingNode;
 		
 		if (StringUtils.containsIgnoreCase(name, "dc")) {
 			double idleConsumption = Double
@@ -167,7 +189,7 @@ public class EisimComputingNodesGenerator extends DefaultComputingNodesGenerator
 			
 			Constructor<?> datacenterConstructor = computingNodeClass.getConstructor(SimulationManager.class, double.class,
 					int.class, double.class, double.class, int.class, boolean.class);
-			ComputingNode computingNode = (ComputingNode) datacenterConstructor.newInstance(getSimulationManager(), mips,
+			computingNode = (ComputingNode) datacenterConstructor.newInstance(getSimulationManager(), mips,
 					numOfCores, storage, ram, cluster, clusterHead);
 			
 			computingNode.setEnergyModel(new EnergyModelComputingNode(maxConsumption, idleConsumption));
@@ -187,11 +209,9 @@ public class EisimComputingNodesGenerator extends DefaultComputingNodesGenerator
 			.deepLog("ComputingNodesGenerator - Edge data center: " + name + "    location: ( "
 					+ datacenterLocation.getXPos() + "," + datacenterLocation.getYPos() + " )	cluster: " + cluster + "	head: " + clusterHead);
 			
-			return computingNode;
-			
 		} else {
 			Constructor<?> datacenterConstructor = computingNodeClass.getConstructor(SimulationManager.class);
-			ComputingNode computingNode = (ComputingNode) datacenterConstructor.newInstance(getSimulationManager());
+			computingNode = (ComputingNode) datacenterConstructor.newInstance(getSimulationManager());
 			computingNode.setName(name);
 			computingNode.setPeriphery(true);
 			computingNode.setType(SimulationParameters.TYPES.EDGE_DATACENTER);
@@ -201,10 +221,22 @@ public class EisimComputingNodesGenerator extends DefaultComputingNodesGenerator
 			getSimulationManager().getSimulationLogger()
 			.deepLog("ComputingNodesGenerator - AP: " + name + "    location: ( "
 					+ datacenterLocation.getXPos() + "," + datacenterLocation.getYPos() + " )");
-			
-			return computingNode;
 		}
 		
+		setMobilityRandom(computingNode, mobilityModel);
+		return computingNode;
+	}
+	
+	/**
+	 * Gives the mobility model of a node its own random number stream, if the model supports it.
+	 * 
+	 * @param computingNode	The node that the mobility model moves
+	 * @param mobilityModel	The mobility model of the node
+	 */
+	protected void setMobilityRandom(ComputingNode computingNode, MobilityModel mobilityModel) {
+		if (mobilityModel instanceof DefaultMobilityModel) {
+			((DefaultMobilityModel) mobilityModel).setRandom(randomStreams.forNode(computingNode.getId(), Purpose.MOBILITY));
+		}
 	}
 	
 	/* Creates cloud data center and edge device nodes*/
@@ -265,6 +297,7 @@ public class EisimComputingNodesGenerator extends DefaultComputingNodesGenerator
 			computingNode.enableTaskGeneration(Boolean
 					.parseBoolean(datacenterElement.getElementsByTagName("generateTasks").item(0).getTextContent()));
 			// Generate random location for edge devices
+			SplittableRandom random = randomStreams.forNode(computingNode.getId(), Purpose.DEVICE_LOCATION);
 			datacenterLocation = new Location(random.nextInt(SimulationParameters.simulationMapWidth),
 					random.nextInt(SimulationParameters.simulationMapLength));
 			getSimulationManager().getSimulationLogger()
@@ -279,6 +312,7 @@ public class EisimComputingNodesGenerator extends DefaultComputingNodesGenerator
 				.setMaxMobilityDuration(maxMobilityDuration);
 
 		computingNode.setMobilityModel(mobilityModel);
+		setMobilityRandom(computingNode, mobilityModel);
 
 		return computingNode;
 	}
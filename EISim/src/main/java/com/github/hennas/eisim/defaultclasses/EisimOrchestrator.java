@@ -1,11 +1,11 @@
 package com.github.hennas.eisim.defaultclasses;
 
-import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.jgrapht.alg.shortestpath.FloydWarshallShortestPaths;
+import org.jgrapht.alg.interfaces.ShortestPathAlgorithm.SingleSourcePaths;
+import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
 
 import com.github.hennas.eisim.core.simulationengine.Event;
 import com.github.hennas.eisim.core.simulationmanager.SimulationManager;
@@ -17,6 +17,7 @@ import com.github.hennas.eisim.core.network.InfrastructureGraph;
 import com.github.hennas.eisim.core.network.NetworkLink;
 import com.github.hennas.eisim.core.scenariomanager.SimulationParameters;
 import com.github.hennas.eisim.core.simulationmanager.DefaultSimulationManager;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
 
 /**
  * Implements the default task orchestration logic used in EISim.
@@ -49,13 +50,16 @@ public class EisimOrchestrator extends Orchestrator {
 
 	protected EisimComputingNode centralOrchestrator; // Only needed when algorithm = CENTRALIZED
 	protected Map<Long, Double> delayMap = new LinkedHashMap<>();
+	protected OrchestrationPlan plan; // Resolved once per scenario, used for every orchestrated task
 
 	public EisimOrchestrator(SimulationManager simulationManager) {
 		super(simulationManager);
 		// Creating a map of delays between edge nodes
 		saveMANdelaysToMap();
+		// Compiling the orchestration plan (fails here already if the algorithm is unknown)
+		this.plan = createOrchestrationPlan();
 		
-		if ("CENTRALIZED".equals(this.algorithmName)) {
+		if (this.plan.getAlgorithm() == OrchestrationAlgorithm.CENTRALIZED) {
 			/* 
 			 * If the algorithm in this simulation scenario is CENTRALIZED, it is assumed that the edge platform 
 			 * has only one edge server for which isClusterHead == true. This server is the central orchestrator 
@@ -123,8 +127,10 @@ public class EisimOrchestrator extends Orchestrator {
 			((EisimTask) task).setIntermediateOffloadingDestination(task.getEdgeDevice());
 			task.setOffloadingDestination(task.getEdgeDevice());
 			
-			simLog.deepLog(simulationManager.getSimulation().clock() + ": " + this.getClass() + " Task: " + task.getId()
-			+ " assigned to be locally computed by EDGE_DEVICE " + task.getEdgeDevice().getId());
+			if (SimulationParameters.deepLoggingEnabled) {
+				simLog.deepLog(simulationManager.getSimulation().clock() + ": " + this.getClass() + " Task: " + task.getId()
+				+ " assigned to be locally computed by EDGE_DEVICE " + task.getEdgeDevice().getId());
+			}
 			
 		} else if (nodeIndex != -1) {
 			// The task is computed by an edge server
@@ -132,7 +138,7 @@ public class EisimOrchestrator extends Orchestrator {
 			try {
 				checkComputingNode(node);
 			} catch (Exception e) {
-				e.printStackTrace();
+				e.printStackTrace(SimLog.getOutput());
 			}
 
 			// Send this task to this computing node
@@ -151,28 +157,31 @@ public class EisimOrchestrator extends Orchestrator {
 			
 			// In decentralized and hybrid control topology, the offloading destination server chosen at 
 			// this phase is the cluster head for which the task arrival must be recorded
-			if ("DECENTRALIZED".equals(this.algorithmName)) {
-				
+			switch (this.plan.getAlgorithm()) {
+			case DECENTRALIZED:
 				node.addTaskArrivalInSlot(task);
 				
 				// Setting the final offloading destination to be the same as the chosen node
 				task.setOffloadingDestination(node);
-				
-			} else if ("HYBRID".equals(this.algorithmName)) {
-				
+				break;
+			case HYBRID:
 				node.addTaskArrivalInSlot(task);
-				
-			} else if ("CENTRALIZED".equals(this.algorithmName)) {
+				break;
+			case CENTRALIZED:
 				// In centralized control topology, the task arrivals are recorded for the central orchestrator
 				this.centralOrchestrator.addTaskArrivalInSlot(task);
 				
 				// Setting the final offloading destination to be the same as the chosen node
 				task.setOffloadingDestination(node);
+				break;
 			}
 			
-			simLog.deepLog(simulationManager.getSimulation().clock() + ": " + this.getClass() + " Task: " + task.getId()
-			+ " assigned to " + node.getType() + " Computing Node: " + node.getId() 
-			+ " Distance from device to server: " + task.getEdgeDevice().getMobilityModel().distanceTo(node));
+			// The message (and the distance in it) is only formed when deep logging is enabled
+			if (SimulationParameters.deepLoggingEnabled) {
+				simLog.deepLog(simulationManager.getSimulation().clock() + ": " + this.getClass() + " Task: " + task.getId()
+				+ " assigned to " + node.getType() + " Computing Node: " + node.getId() 
+				+ " Distance from device to server: " + task.getEdgeDevice().getMobilityModel().distanceTo(node));
+			}
 		}
 	}
 
@@ -191,18 +200,30 @@ public class EisimOrchestrator extends Orchestrator {
 	
 	/**
 	 * Finds the task execution location for an edge device's task. The logic for finding the location depends 
-	 * on the algorithm defined in the simulation_parameters.properties file.
+	 * on the algorithm defined in the simulation_parameters.properties file, which has been resolved into 
+	 * the orchestration plan when this orchestrator was created.
 	 */
 	@Override
 	protected int findComputingNode(String[] architectureLayers, Task task) {
-		if ("DECENTRALIZED".equals(this.algorithmName) || "HYBRID".equals(this.algorithmName)) {
-			return decentralizedAndHybridOrchestration(task);
-		} else if ("CENTRALIZED".equals(this.algorithmName)) {
+		if (this.plan.getAlgorithm() == OrchestrationAlgorithm.CENTRALIZED) {
 			return centralizedOrchestration(task);
-		} else {
-			throw new IllegalArgumentException(getClass().getSimpleName() + " - Unknown orchestration algorithm '"
-					+ this.algorithmName + "', please check the simulation parameters file.");
 		}
+		return decentralizedAndHybridOrchestration(task);
+	}
+	
+	/**
+	 * Compiles the orchestration plan of the scenario. Called once when the orchestrator is created, 
+	 * after the MAN delays have been saved into the delay map.
+	 * 
+	 * @return OrchestrationPlan: The orchestration plan used for every task in the scenario
+	 * @throws IllegalArgumentException If the orchestration algorithm is unknown
+	 */
+	protected OrchestrationPlan createOrchestrationPlan() {
+		OrchestrationAlgorithm algorithm = OrchestrationAlgorithm.fromName(this.algorithmName);
+		List<ComputingNode> edgeList = this.simulationManager.getDataCentersManager().getComputingNodesGenerator()
+				.getEdgeOnlyList();
+		InfrastructureGraph graph = this.simulationManager.getDataCentersManager().getMANTopology();
+		return new OrchestrationPlan(algorithm, this.nodeList, edgeList, this.delayMap, graph);
 	}
 	
 	/**
@@ -225,16 +246,15 @@ public class EisimOrchestrator extends Orchestrator {
 	 */
 	protected int decentralizedAndHybridOrchestration(Task task) {
 		EisimComputingNode device = (EisimComputingNode) task.getEdgeDevice();
-		List<Double> deviceWeights = device.getDeviceWeights();
-		double minCost = getLocalExecutionCost(task, device, deviceWeights);
+		DeviceProfile profile = device.getDeviceProfile();
+		double minCost = getLocalExecutionCost(task, device, profile);
 		int selected = minCost < Double.POSITIVE_INFINITY
 				? this.nodeList.size()
 				: -1;
 		
-		List<Double> networkParams = getNetworkParamsForDevice(device);
-		double rate = networkParams.get(0); // bits per second
-		double transmissionEnergyPerBit = networkParams.get(1); // joules per bit
-		double receptionEnergyPerBit = networkParams.get(2); // joules per bit
+		double rate = profile.dataRate(); // bits per second
+		double transmissionEnergyPerBit = profile.transmissionEnergyPerBit(); // joules per bit
+		double receptionEnergyPerBit = profile.receptionEnergyPerBit(); // joules per bit
 		
 		/****OFFLOADING ENERGY COST****/
 		// Note that energy cost is the same for every server, as it only depends on the attributes of 
@@ -245,47 +265,47 @@ public class EisimOrchestrator extends Orchestrator {
 		double delayConstraint = task.getMaxLatency();
 		double energyConstraint = device.getEnergyModel().getBatteryLevelWattHour() * 3600; // Battery level in joules
 		
-		for (int i = 0; i < this.nodeList.size(); i++) {
-			EisimComputingNode server = (EisimComputingNode) this.nodeList.get(i);
+		// The orchestration plan holds only the edge servers that are cluster heads
+		double[] manDelays = this.plan.getManDelaysFrom(device.getCurrentUpLink().getDst());
+		for (int c = 0; c < this.plan.getCandidateCount(); c++) {
+			EisimComputingNode server = this.plan.getCandidate(c);
 			
-			// Only checking edge nodes that are servers and cluster heads
-			if (!server.isAP() && server.isClusterHead()) {
-				/****OFFLOADING DELAY COST****/
-				// transmissionDelay = input data size / uplink rate + output data size / downlink rate
-				// (Uplink and downlink rates have the same value)
-				double transmissionDelay = task.getFileSizeInBits() / rate 
-						+ task.getOutputSizeInBits() / rate;
-				// Two-way propagation delay between the edge device and server i
-				double propagationDelay = calculatePropagationDelay(device, server);
-				double processingDelay = task.getLength() / server.getMipsPerCore();
-				double queuingDelay = server.getQueueTimeEstimate();
-				double taskExecutionDelay = transmissionDelay + propagationDelay + processingDelay + queuingDelay;
-				
-				/****MONETARY COST****/
-				// payment = price per MI * task length in MIs
-				//double payment = server.getPrice() * task.getLength();
-				
-				// The total cost of task execution at the server i is: 
-				// delay weight * task execution delay + energy weight * energy consumption + price weight * payment
-				double totalCost = deviceWeights.get(0) * taskExecutionDelay / delayConstraint
-						+ deviceWeights.get(1) * energyConsumption / energyConstraint
-						+ deviceWeights.get(2) * server.getPrice() / 0.01; // payment / (0.01 * task.getLength()); 
-																		  // Importance is relative to how much user prefers 
-																		  // to pay per MI, here 0.01 per MI for all users
-				// Unit agreement; taskExecutionDelay is divided with delayConstraint and energyConsumption with
-				// energyConstraint. For payment, there is no strict constraint that should be satisfied, but it 
-				// can be assumed that the importance of payment is relative to how much the user prefers to pay per MI.
-				// (Importance of delay value is relative to the delay constraint and importance of energy value is 
-				// relative to the energy constraint. If the values are not divided by the constraints, importance of
-				// delay would be relative to 1 second and importance of energy would be relative to 1 joule)
-				
-				// If the totalCost is smaller than the current minCost and this option satisfies the constraint,
-				// server i is selected as the offloading destination
-				if (totalCost < minCost && energyConsumption <= energyConstraint) {
-					minCost = totalCost;
-					selected = i;
-				}
-				
+			/****OFFLOADING DELAY COST****/
+			// transmissionDelay = input data size / uplink rate + output data size / downlink rate
+			// (Uplink and downlink rates have the same value)
+			double transmissionDelay = task.getFileSizeInBits() / rate 
+					+ task.getOutputSizeInBits() / rate;
+			// Two-way propagation delay between the edge device and the server
+			double propagationDelay = manDelays != null
+					? 2 * (manDelays[c] + device.getCurrentUpLink().getLatency())
+					: calculatePropagationDelay(device, server);
+			double processingDelay = task.getLength() / server.getMipsPerCore();
+			double queuingDelay = server.getQueueTimeEstimate();
+			double taskExecutionDelay = transmissionDelay + propagationDelay + processingDelay + queuingDelay;
+			
+			/****MONETARY COST****/
+			// payment = price per MI * task length in MIs
+			//double payment = server.getPrice() * task.getLength();
+			
+			// The total cost of task execution at the server is: 
+			// delay weight * task execution delay + energy weight * energy consumption + price weight * payment
+			double totalCost = profile.latencyWeight() * taskExecutionDelay / delayConstraint
+					+ profile.energyWeight() * energyConsumption / energyConstraint
+					+ profile.paymentWeight() * server.getPrice() / 0.01; // payment / (0.01 * task.getLength()); 
+																	  // Importance is relative to how much user prefers 
+																	  // to pay per MI, here 0.01 per MI for all users
+			// Unit agreement; taskExecutionDelay is divided with delayConstraint and energyConsumption with
+			// energyConstraint. For payment, there is no strict constraint that should be satisfied, but it 
+			// can be assumed that the importance of payment is relative to how much the user prefers to pay per MI.
+			// (Importance of delay value is relative to the delay constraint and importance of energy value is 
+			// relative to the energy constraint. If the values are not divided by the constraints, importance of
+			// delay would be relative to 1 second and importance of energy would be relative to 1 joule)
+			
+			// If the totalCost is smaller than the current minCost and this option satisfies the constraint,
+			// the server is selected as the offloading destination
+			if (totalCost < minCost && energyConsumption <= energyConstraint) {
+				minCost = totalCost;
+				selected = this.plan.getCandidateIndex(c);
 			}
 		}
 		
@@ -311,8 +331,8 @@ public class EisimOrchestrator extends Orchestrator {
 	 */
 	protected int centralizedOrchestration(Task task) {
 		EisimComputingNode device = (EisimComputingNode) task.getEdgeDevice();
-		List<Double> deviceWeights = device.getDeviceWeights();
-		double minCost = getLocalExecutionCost(task, device, deviceWeights);
+		DeviceProfile profile = device.getDeviceProfile();
+		double minCost = getLocalExecutionCost(task, device, profile);
 		int selected = minCost < Double.POSITIVE_INFINITY
 				? this.nodeList.size()
 				: -1;
@@ -320,10 +340,9 @@ public class EisimOrchestrator extends Orchestrator {
 		double delayConstraint = task.getMaxLatency();
 		double energyConstraint = device.getEnergyModel().getBatteryLevelWattHour() * 3600; // Battery level in joules
 		
-		List<Double> networkParams = getNetworkParamsForDevice(device);
-		double rate = networkParams.get(0); // bits per second
-		double transmissionEnergyPerBit = networkParams.get(1); // joules per bit
-		double receptionEnergyPerBit = networkParams.get(2); // joules per bit
+		double rate = profile.dataRate(); // bits per second
+		double transmissionEnergyPerBit = profile.transmissionEnergyPerBit(); // joules per bit
+		double receptionEnergyPerBit = profile.receptionEnergyPerBit(); // joules per bit
 		
 		/****OFFLOADING ENERGY COST****/
 		// Energy cost only depends on the attributes of the device and the task
@@ -336,8 +355,8 @@ public class EisimOrchestrator extends Orchestrator {
 		//double payment = this.centralOrchestrator.getPrice() * task.getLength();
 		
 		// Adding energy and monetary cost into total cost
-		double partialCost = deviceWeights.get(1) * energyConsumption / energyConstraint 
-				+ deviceWeights.get(2) * this.centralOrchestrator.getPrice() / 0.01; // payment / (0.01 * task.getLength());
+		double partialCost = profile.energyWeight() * energyConsumption / energyConstraint 
+				+ profile.paymentWeight() * this.centralOrchestrator.getPrice() / 0.01; // payment / (0.01 * task.getLength());
 		
 		// If the partialCost in this stage is already larger than the minCost (cost of local execution),
 		// there is no need to check the delay cost for offloading as it only adds to the totalCost
@@ -362,35 +381,35 @@ public class EisimOrchestrator extends Orchestrator {
 		
 		double partialTaskExecutionDelay = transmissionDelay + processingDelay;
 		
-		for (int i = 0; i < this.nodeList.size(); i++) {
-			EisimComputingNode server = (EisimComputingNode) this.nodeList.get(i);
+		// The orchestration plan holds all the edge servers
+		double[] manDelays = this.plan.getManDelaysFrom(device.getCurrentUpLink().getDst());
+		for (int c = 0; c < this.plan.getCandidateCount(); c++) {
+			EisimComputingNode server = this.plan.getCandidate(c);
 			
-			// Only checking edge nodes that are servers
-			if (!server.isAP()) {
-				// User could estimate and report its two-way latency to the AP, 
-				// central orchestrator could estimate delays inside the platform
-				double propagationDelay = calculatePropagationDelay(device, server);
+			// User could estimate and report its two-way latency to the AP, 
+			// central orchestrator could estimate delays inside the platform
+			double propagationDelay = manDelays != null
+					? 2 * (manDelays[c] + device.getCurrentUpLink().getLatency())
+					: calculatePropagationDelay(device, server);
+			
+			// Central orchestrator uses the queue delays calculated at the beginning of the current price slot 
+			// as estimates of the queuing time at the server
+			double queuingDelay = server.getQueueDelay();
 				
-				// Central orchestrator uses the queue delays calculated at the beginning of the current price slot 
-				// as estimates of the queuing time at the server
-				double queuingDelay = server.getQueueDelay();
-					
-				// Central orchestrator can calculate the total delay for this server option
-				double totalTaskExecutionDelay = partialTaskExecutionDelay + propagationDelay + queuingDelay;
-					
-				double totalCost = partialCost + deviceWeights.get(0) * totalTaskExecutionDelay / delayConstraint;
-				// If the totalCost is smaller than the current minCost
-				if (totalCost < minCost) {
-					minCost = totalCost;
-					selected = i;
-				}
-				// Note that in practice the idea here would be that the central orchestrator returns the
-				// server that has the lowest estimated task execution delay along with the estimated
-				// delay so the orchestrator does not need to know the device weights of the user
-				// (after receiving the delay and server info, the user can check by itself whether the
-				// cost of the offloading is larger than that of local execution)
-			}
+			// Central orchestrator can calculate the total delay for this server option
+			double totalTaskExecutionDelay = partialTaskExecutionDelay + propagationDelay + queuingDelay;
 				
+			double totalCost = partialCost + profile.latencyWeight() * totalTaskExecutionDelay / delayConstraint;
+			// If the totalCost is smaller than the current minCost
+			if (totalCost < minCost) {
+				minCost = totalCost;
+				selected = this.plan.getCandidateIndex(c);
+			}
+			// Note that in practice the idea here would be that the central orchestrator returns the
+			// server that has the lowest estimated task execution delay along with the estimated
+			// delay so the orchestrator does not need to know the device weights of the user
+			// (after receiving the delay and server info, the user can check by itself whether the
+			// cost of the offloading is larger than that of local execution)
 		}
 		
 		return selected;
@@ -405,18 +424,20 @@ public class EisimOrchestrator extends Orchestrator {
 	 * 
 	 * @param task				The task being orchestrated
 	 * @param device			The edge device to which the task belongs
-	 * @param deviceWeights		A list of importance weights for the edge device
+	 * @param profile			The profile of the edge device, holding its importance weights
 	 * @return double:			The cost of the local task execution
 	 */
-	protected double getLocalExecutionCost(Task task, EisimComputingNode device, List<Double> deviceWeights) {
+	protected double getLocalExecutionCost(Task task, EisimComputingNode device, DeviceProfile profile) {
 		double delayConstraint = task.getMaxLatency();
 		double energyConstraint = device.getEnergyModel().getBatteryLevelWattHour() * 3600;
 		
 		/****LOCAL DELAY COST****/
 		// Calculating the total sum of task lengths (MIs) over all the tasks currently in the device's queue
+		// (The queue is an array list, so it is indexed to avoid creating an iterator for every task)
 		int totalMIs = 0;
-		for (Task t : device.getTasksQueue()) {
-			totalMIs += t.getLength();
+		List<Task> queue = device.getTasksQueue();
+		for (int i = 0; i < queue.size(); i++) {
+			totalMIs += queue.get(i).getLength();
 		}
 		// local task execution delay = time it takes to execute the task + estimated queue time
 		double localTaskExecutionDelay = task.getLength() / device.getMipsPerCore() + totalMIs / device.getTotalMipsCapacity();
@@ -428,8 +449,8 @@ public class EisimOrchestrator extends Orchestrator {
 		
 		// The monetary cost of local execution is zero
 		// Hence, the total cost of local execution is delay weight * local task execution delay + energy weight * local energy consumption
-		double localCost = deviceWeights.get(0) * localTaskExecutionDelay / delayConstraint
-				+ deviceWeights.get(1) * localEnergyConsumption / energyConstraint;
+		double localCost = profile.latencyWeight() * localTaskExecutionDelay / delayConstraint
+				+ profile.energyWeight() * localEnergyConsumption / energyConstraint;
 		
 		// If the constraint is satisfied, return localCost; 
 		// otherwise the task cannot be processed locally and hence the cost of local execution is infinity (as the task would be dropped)
@@ -438,44 +459,13 @@ public class EisimOrchestrator extends Orchestrator {
 				: Double.POSITIVE_INFINITY;
 	}
 	
-	/**
-	 * Gets a list of network parameters for an edge device.
-	 * <p>
-	 * The returned list of network parameters contains three parameters in the following order:
-	 * <ol>
-	 * 	<li>The data rate in bits per second</li>
-	 *  <li>The energy consumed when transmitting data in joules per bit</li>
-	 *  <li>The energy consumed when receiving data in joules per bit</li>
-	 * </ol>
-	 * The parameter values depend on the connectivity type of the edge device (cellular, wifi or ethernet).
-	 * 
-	 * @param device		 An edge device
-	 * @return List<Double>: The network parameters for the edge device
-	 */
-	protected List<Double> getNetworkParamsForDevice(EisimComputingNode device) {
-		String connectivity = device.getEnergyModel().getConnectivityType();
-		List<Double> networkParams = new ArrayList<>(3);
-		
-		if ("cellular".equals(connectivity)) {
-			networkParams.add(SimulationParameters.cellularBandwidthBitsPerSecond);
-			networkParams.add(SimulationParameters.cellularDeviceTransmissionWattHourPerBit * 3600);
-			networkParams.add(SimulationParameters.cellularDeviceReceptionWattHourPerBit * 3600);
-		} else if ("wifi".equals(connectivity)) {
-			networkParams.add(SimulationParameters.wifiBandwidthBitsPerSecond);
-			networkParams.add(SimulationParameters.wifiDeviceTransmissionWattHourPerBit * 3600);
-			networkParams.add(SimulationParameters.wifiDeviceReceptionWattHourPerBit * 3600);
-		} else {
-			networkParams.add(SimulationParameters.ethernetBandwidthBitsPerSecond);
-			networkParams.add(SimulationParameters.ethernetWattHourPerBit / 2 * 3600);
-			networkParams.add(SimulationParameters.ethernetWattHourPerBit / 2 * 3600);
-		}
-		return networkParams;
-	}
-	
 	/**
 	 * Calculates the propagation delay between an end device and an edge server. 
 	 * Note that the returned delay is the two-way delay between the device and the server, 
 	 * accounting for both sending the task and receiving the result.
+	 * <p>
+	 * The orchestration logic reads the MAN delays from the orchestration plan, and this method is 
+	 * only used for access points that the plan does not cover.
 	 * 
 	 * @param device	An edge device
 	 * @param server	An edge server
@@ -497,12 +487,13 @@ public class EisimOrchestrator extends Orchestrator {
 		List<ComputingNode> edgeList = this.simulationManager.getDataCentersManager().getComputingNodesGenerator()
 				.getEdgeOnlyList(); // A list of edge nodes (APs and edge servers)
 		InfrastructureGraph graph = this.simulationManager.getDataCentersManager().getMANTopology();
-		FloydWarshallShortestPaths<ComputingNode, NetworkLink> FWalgorithm = new FloydWarshallShortestPaths<>(graph.getGraph());
 		for (int i = 0; i < edgeList.size(); i++) {
 			ComputingNode from = edgeList.get(i);
+			// One search from each node is much cheaper than the all-pairs matrix, which dominated the setup time
+			SingleSourcePaths<ComputingNode, NetworkLink> paths = new DijkstraShortestPath<>(graph.getGraph()).getPaths(from);
 			for (int j = 0; j < edgeList.size(); j++) { 
 				ComputingNode to = edgeList.get(j);
-				double delay = FWalgorithm.getPathWeight(from, to);
+				double delay = paths.getWeight(to);
 				this.delayMap.put(graph.getUniqueId(from.getId(), to.getId()), delay);
 			}
 		}
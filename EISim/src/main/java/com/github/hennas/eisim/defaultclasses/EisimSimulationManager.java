@@ -1,8 +1,14 @@
 package com.github.hennas.eisim.defaultclasses;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
 
 import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.agents.bridge.SharedMemoryPricingAgent;
+import com.github.hennas.eisim.agents.ddpg.DdpgPricingAgent;
+import com.github.hennas.eisim.agents.ddpg.StackedDdpgTrainer;
 import com.github.hennas.eisim.core.scenariomanager.Scenario;
 import com.github.hennas.eisim.core.simulationengine.PureEdgeSim;
 import com.github.hennas.eisim.core.simulationmanager.DefaultSimulationManager;
@@ -11,6 +17,8 @@ import com.github.hennas.eisim.core.datacentersmanager.ComputingNode;
 import com.github.hennas.eisim.core.network.NetworkModel;
 import com.github.hennas.eisim.core.simulationengine.Event;
 import com.github.hennas.eisim.core.taskgenerator.Task;
+import com.github.hennas.eisim.helpers.RandomStreams;
+import com.github.hennas.eisim.helpers.TrainingPool;
 
 /**
  * Extends the {@link DefaultSimulationManager} class by adding in functionalities needed by the 
@@ -94,6 +102,26 @@ public class EisimSimulationManager extends DefaultSimulationManager {
 	 */
 	public Random seedGenerator;
 	
+	/**
+	 * Derives the per-node random number streams (e.g., for task and mobility generation) from the 
+	 * scenario seed, which is drawn from the seed generator.
+	 */
+	public RandomStreams randomStreams;
+	
+	/**
+	 * The compact task store, or null if the finished tasks are kept in a list as usual.
+	 * 
+	 * @see EisimSimulationParameters#compactTaskStore
+	 */
+	public TaskStore taskStore;
+	
+	/**
+	 * The trainer of the cluster head agents when they are trained together, or null.
+	 * 
+	 * @see EisimSimulationParameters#stackedTraining
+	 */
+	protected StackedDdpgTrainer stackedTrainer;
+	
 	/**
 	 * Initializes the EISim simulation manager.
 	 * 
@@ -112,6 +140,11 @@ public class EisimSimulationManager extends DefaultSimulationManager {
 		if (EisimSimulationParameters.useSeed) {
 			seedGenerator.setSeed(EisimSimulationParameters.seed);
 		}
+		randomStreams = new RandomStreams(seedGenerator.nextLong());
+		if (EisimSimulationParameters.compactTaskStore) {
+			// Released tasks can only be reused if the tasks are created during the simulation
+			taskStore = new TaskStore(EisimSimulationParameters.lazyTaskGeneration);
+		}
 	}
 	
 	@Override
@@ -128,6 +161,178 @@ public class EisimSimulationManager extends DefaultSimulationManager {
 
 	}
 	
+	/**
+	 * Prepares the price updates of the cluster heads whose {@code PRICE_UPDATE} events directly follow each 
+	 * other at the current simulation time, starting from the given event, and trains their agents in parallel.
+	 * <p>
+	 * First, every cluster head of the group observes its slot, in the order of the events. Then the agents 
+	 * are trained and the new prices decided on the {@link TrainingPool}, and the simulation thread waits until 
+	 * all of them are done. The events themselves are processed as usual, one by one, and each of them only 
+	 * applies the decided price. Between the {@code PRICE_UPDATE} events, only the {@code RECORD_QUEUE_DELAY_ESTIMATE} 
+	 * events of the servers are allowed, as they neither affect nor depend on the price updates. Hence, the results 
+	 * are the same as when the price updates are done one by one. If the cluster heads use the external pricing 
+	 * agent, the new prices are decided with one request instead (see {@link #decidePricesBridged(List)}).
+	 * 
+	 * @param current The {@code PRICE_UPDATE} event being processed
+	 * 
+	 * @see EisimComputingNode#updatePrice()
+	 */
+	protected void preparePriceUpdates(Event current) {
+		List<EisimComputingNode> group = new ArrayList<>();
+		boolean found = false;
+		Iterator<Event> events = simulation.getEventsQueue().iterator();
+		while (events.hasNext()) {
+			Event ev = events.next();
+			if (!found) {
+				// The event being processed is still in the queue
+				found = ev == current;
+				if (found) {
+					group.add((EisimComputingNode) ev.getSimEntity());
+				}
+				continue;
+			}
+			if (ev.getTime() != current.getTime() || !(ev.getSimEntity() instanceof EisimComputingNode)) {
+				break;
+			}
+			if (ev.getTag() == EisimComputingNode.PRICE_UPDATE) {
+				group.add((EisimComputingNode) ev.getSimEntity());
+			} else if (ev.getTag() != EisimComputingNode.RECORD_QUEUE_DELAY_ESTIMATE) {
+				break;
+			}
+		}
+		
+		if (group.size() > 1 || EisimSimulationParameters.stackedTraining) {
+			for (EisimComputingNode node : group) {
+				node.observeSlot();
+				node.priceUpdatePrepared = true;
+			}
+			if (this.decidePricesBridged(group)) {
+				return;
+			}
+			if (!EisimSimulationParameters.stackedTraining || !this.decidePricesStacked(group)) {
+				TrainingPool.forEach(group, EisimComputingNode::decidePrice);
+			}
+		}
+	}
+	
+	/**
+	 * Decides the new prices of the given cluster heads with one request to the external pricing agent, if 
+	 * the cluster heads use the {@link SharedMemoryPricingAgent}. The rewards are passed to the agents first 
+	 * (in the training mode), and the random decisions are made on the simulation side as usual.
+	 * 
+	 * @param group		The cluster heads whose slots have been observed
+	 * @return boolean:	False if the cluster heads do not use the external agent, in which case nothing was done
+	 */
+	protected boolean decidePricesBridged(List<EisimComputingNode> group) {
+		List<EisimComputingNode> deciding = new ArrayList<>();
+		List<SharedMemoryPricingAgent> agents = new ArrayList<>();
+		List<float[]> states = new ArrayList<>();
+		for (EisimComputingNode node : group) {
+			if (!(node.agent instanceof SharedMemoryPricingAgent)) {
+				return false;
+			}
+		}
+		
+		for (EisimComputingNode node : group) {
+			if (node.learnsFromSlot()) {
+				node.agent.learn(node.previousState, node.getPrice(), node.slotReward, node.newState);
+			}
+			if (node.pricingSteps >= EisimSimulationParameters.randomDecisionSteps) {
+				deciding.add(node);
+				agents.add((SharedMemoryPricingAgent) node.agent);
+				states.add(node.newState);
+			} else {
+				node.choosePrice();
+			}
+		}
+		if (!deciding.isEmpty()) {
+			float[] prices = SharedMemoryPricingAgent.decide(agents, states);
+			for (int i = 0; i < prices.length; i++) {
+				deciding.get(i).newPrice = prices[i];
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Trains the agents of the given cluster heads together with the {@link StackedDdpgTrainer} and decides 
+	 * their new prices. The trainer is kept for as long as the same agents are trained together.
+	 * 
+	 * @param group		The cluster heads whose slots have been observed
+	 * @return boolean:	False if the agents cannot be trained together, in which case nothing was done
+	 */
+	protected boolean decidePricesStacked(List<EisimComputingNode> group) {
+		if (EisimSimulationParameters.prioritizedReplay) {
+			return false; // The stacked trainer samples the minibatches uniformly
+		}
+		List<EisimComputingNode> learning = new ArrayList<>();
+		List<DdpgPricingAgent> agents = new ArrayList<>();
+		for (EisimComputingNode node : group) {
+			if (!(node.agent instanceof DdpgPricingAgent)) {
+				return false;
+			}
+			if (node.learnsFromSlot()) {
+				learning.add(node);
+				agents.add((DdpgPricingAgent) node.agent);
+			}
+		}
+		
+		if (!learning.isEmpty()) {
+			if (this.stackedTrainer == null || !this.stackedTrainer.trains(agents)) {
+				if (this.stackedTrainer != null) {
+					this.stackedTrainer.release();
+				}
+				this.stackedTrainer = new StackedDdpgTrainer(agents);
+			}
+			float[][] states = new float[learning.size()][];
+			float[] actions = new float[learning.size()];
+			float[] rewards = new float[learning.size()];
+			float[][] nextStates = new float[learning.size()][];
+			for (int i = 0; i < learning.size(); i++) {
+				EisimComputingNode node = learning.get(i);
+				states[i] = node.previousState;
+				actions[i] = node.getPrice();
+				rewards[i] = node.slotReward;
+				nextStates[i] = node.newState;
+			}
+			this.stackedTrainer.learn(states, actions, rewards, nextStates);
+		}
+		
+		for (EisimComputingNode node : group) {
+			node.choosePrice();
+		}
+		return true;
+	}
+	
+	@Override
+	protected void taskFinished(Task task) {
+		if (taskStore != null) {
+			taskStore.finished(task);
+		} else {
+			super.taskFinished(task);
+		}
+	}
+	
+	@Override
+	protected void taskReleased(Task task) {
+		if (taskStore != null) {
+			taskStore.release(task);
+		}
+	}
+	
+	@Override
+	public void onSimulationEnd() {
+		if (taskStore != null && taskStore.isRecycling()) {
+			simLog.print("%s - Task store: %d task objects created, at most %d tasks in flight", 
+					getClass().getSimpleName(), taskStore.getCreatedTasks(), taskStore.getPeakInFlight());
+		}
+	}
+	
+	@Override
+	public int getFinishedTasksCount() {
+		return taskStore != null ? taskStore.getFinishedTasks() : super.getFinishedTasksCount();
+	}
+	
 	@Override
 	public boolean taskFailed(Task task, int phase) {
 		if (phase == 0 && task.getEdgeDevice().isDead()) {
@@ -153,6 +358,7 @@ public class EisimSimulationManager extends DefaultSimulationManager {
 			task.setFailureReason(Task.FailureReason.NO_OFFLOADING_DESTINATIONS);
 			simLog.incrementTasksFailedLackOfRessources(task);
 			tasksCount++;
+			taskReleased(task);
 			return;
 		}
 		
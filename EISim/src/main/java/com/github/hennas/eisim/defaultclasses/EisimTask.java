@@ -29,4 +29,36 @@ public class EisimTask extends DefaultTask {
 	public void setIntermediateOffloadingDestination(ComputingNode intermediatePlacementLocation) {
 		this.intermediateComputingNode = intermediatePlacementLocation;
 	}
+	
+	/**
+	 * Resets the task to the state of a newly created task with the given id, so that the task object can 
+	 * be reused for a new task.
+	 * 
+	 * @param id The id of the new task
+	 * 
+	 * @see TaskStore
+	 */
+	public void reset(int id) {
+		this.setId(id);
+		this.serial = 0;
+		this.maxLatency = 0;
+		this.actualNetworkTime = 0;
+		this.execFinishTime = 0;
+		this.execStartTime = 0;
+		this.arrivalTime = 0;
+		this.length = 0;
+		this.offloadingTime = 0;
+		this.device = ComputingNode.NULL;
+		this.containerSize = 0;
+		this.registry = ComputingNode.NULL;
+		this.applicationID = 0;
+		this.failureReason = null;
+		this.status = Status.SUCCESS;
+		this.fileSize = 0;
+		this.computingNode = ComputingNode.NULL;
+		this.outputSize = 0;
+		this.type = null;
+		this.orchestrator = ComputingNode.NULL;
+		this.intermediateComputingNode = ComputingNode.NULL;
+	}
 }
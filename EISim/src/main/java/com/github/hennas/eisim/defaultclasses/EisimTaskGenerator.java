@@ -1,33 +1,67 @@
 package com.github.hennas.eisim.defaultclasses;
 
 import java.lang.reflect.Constructor;
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 
+import com.github.hennas.eisim.EisimSimulationParameters;
 import com.github.hennas.eisim.core.simulationengine.FutureQueue;
 import com.github.hennas.eisim.core.simulationmanager.SimulationManager;
 import com.github.hennas.eisim.core.datacentersmanager.ComputingNode;
 import com.github.hennas.eisim.core.scenariomanager.SimulationParameters;
 import com.github.hennas.eisim.core.taskgenerator.Task;
 import com.github.hennas.eisim.core.taskgenerator.TaskGenerator;
+import com.github.hennas.eisim.helpers.RandomStreams;
+import com.github.hennas.eisim.helpers.RandomStreams.Purpose;
+import com.github.hennas.eisim.helpers.WorkloadPool;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
 
 /**
  * Generates all the tasks according to the application types and usage percentages specified in
  * applications.xml setting file.
+ * <p>
+ * By default, all the tasks of the simulation are generated when the simulation starts. If 
+ * {@link EisimSimulationParameters#lazyTaskGeneration} is enabled, the tasks are generated lazily 
+ * instead: the returned task list is a {@link LazyTaskQueue} that only holds the next task of each 
+ * device and generates the following task of a device when the previous one is taken into the simulation. 
+ * The generated tasks are the same in both modes.
+ * <p>
+ * Every device draws its task arrival times and task attributes from its own random number streams 
+ * (see {@link RandomStreams}), so the tasks of the devices are generated in parallel with 
+ * {@link WorkloadPool} and the generated tasks do not depend on the number of threads.
  *     
  * @author Henna Kokkonen
  * 
  */
 public class EisimTaskGenerator extends TaskGenerator {
 
-	protected Random random;
+	protected RandomStreams randomStreams;
 	protected int id = 0;
+	protected Constructor<?> taskConstructor; // Resolved once for the task class
+	protected LazyTaskQueue lazyTaskList; // Only used when the tasks are generated lazily
+	protected TaskStore taskStore; // Only used when the tasks are stored compactly
+	
+	/**
+	 * Holds the randomly drawn attributes of a task.
+	 */
+	protected static class TaskAttributes {
+		protected long taskLength; // MIs
+		protected long requestSize; // bits
+		protected long containerSize; // bits
+		protected long outputSize; // bits
+	}
 	
 	public EisimTaskGenerator(SimulationManager simulationManager) {
 		super(simulationManager);
-		random = new Random();
-		random.setSeed(((EisimSimulationManager) simulationManager).seedGenerator.nextLong());
+		randomStreams = ((EisimSimulationManager) simulationManager).randomStreams;
+		taskStore = ((EisimSimulationManager) simulationManager).taskStore;
 		// Setting own custom task model
 		setCustomTaskClass(EisimTask.class);
+		if (EisimSimulationParameters.lazyTaskGeneration) {
+			lazyTaskList = new LazyTaskQueue();
+		}
 	}
 
 	@Override
@@ -41,6 +75,11 @@ public class EisimTaskGenerator extends TaskGenerator {
 				dev++;
 		}
 		int devicesCount = devicesList.size();
+		
+		// The generating devices and their application types, in the order in which the task ids are given
+		List<ComputingNode> devices = new ArrayList<>(devicesCount);
+		int[] apps = new int[devicesCount];
+		SplittableRandom random = randomStreams.forScenario(Purpose.APPLICATION_ASSIGNMENT);
 
 		// Browse all applications
 		for (int app = 0; app < SimulationParameters.applicationList.size() - 1; app++) {
@@ -54,74 +93,153 @@ public class EisimTaskGenerator extends TaskGenerator {
 
 				// Assign this application to that device
 				devicesList.get(dev).setApplicationType(app);
-
-				generateTasksForDevice(devicesList.get(dev), app);
+				apps[devices.size()] = app;
+				devices.add(devicesList.get(dev));
 
 				// Remove this device from the list
 				devicesList.remove(dev);
 			}
 		}
-		for (int j = 0; j < devicesList.size(); j++)
-			generateTasksForDevice(devicesList.get(j), SimulationParameters.applicationList.size() - 1);
-
+		for (int j = 0; j < devicesList.size(); j++) {
+			apps[devices.size()] = SimulationParameters.applicationList.size() - 1;
+			devices.add(devicesList.get(j));
+		}
+		
+		resolveTaskConstructor();
+		if (lazyTaskList != null) {
+			generateTaskStreams(devices, apps);
+			return lazyTaskList;
+		}
+		
+		// Each device generates its tasks from its own random number streams, possibly in parallel
+		@SuppressWarnings("unchecked")
+		List<Task>[] deviceTasks = new List[devices.size()];
+		WorkloadPool.forEach(devices.size(), i -> deviceTasks[i] = generateTasksForDevice(devices.get(i), apps[i]));
+		
+		// The task ids are given in the device order, so they do not depend on the number of threads
+		for (List<Task> tasks : deviceTasks) {
+			for (Task task : tasks) {
+				task.setId(++id);
+				taskList.add(task);
+				logTask(task);
+			}
+		}
 		return this.getTaskList();
 	}
 
-	protected void generateTasksForDevice(ComputingNode dev, int app) {
+	/**
+	 * Generates all the tasks of an edge device. The ids of the tasks are given afterwards in 
+	 * {@link #generate()}. Only touches the state of the given device, so the tasks of different devices 
+	 * can be generated in parallel.
+	 * 
+	 * @param dev			The edge device that generates the tasks
+	 * @param app			The application type of the device
+	 * @return List<Task>:	The tasks of the device in the order of their arrival times
+	 */
+	protected List<Task> generateTasksForDevice(ComputingNode dev, int app) {
 		// Generating tasks that will be offloaded during simulation
+		List<Task> tasks = new ArrayList<>();
+		SplittableRandom arrivals = randomStreams.forNode(dev.getId(), Purpose.TASK_ARRIVALS);
+		SplittableRandom attributes = randomStreams.forNode(dev.getId(), Purpose.TASK_ATTRIBUTES);
 		double time = 0;
-		double interarrivalTime = 0;
 		double rate = SimulationParameters.applicationList.get(app).getRate(); // Tasks per second; Poisson arrival rate
+		
 		while (true) {
-			// In Poisson process, interarrival times are exponentially distributed, so we can generate an interarrival time based on the inverse CDF of exponential distribution
-			interarrivalTime = Math.log(1-random.nextDouble())/(-rate); 
-			time += interarrivalTime; // Get the arrival time of a task by adding the randomly generated interarrival time
+			time = nextArrivalTime(arrivals, time, rate);
 			if (time >= SimulationParameters.simulationDuration) {
 				break;
 			}
-			insert(time, app, dev);
+			tasks.add(generateTask(attributes, 0, time, app, dev));
 		}
 		
 		/** The above generates continuous arrival times for the tasks. 
 		 * To get discrete (integer) arrival times, the rate could refer to the probability of a task arrival in a unit time (Bernoulli process)
 		for (int time = 1; time <= SimulationParameters.simulationDuration; time++) {
-			if (random.nextDouble() <= rate) {
-				insert(time, app, dev);
+			if (arrivals.nextDouble() <= rate) {
+				tasks.add(generateTask(attributes, 0, time, app, dev));
 			}
 		}*/
+		return tasks;
+	}
+	
+	/**
+	 * Creates the task arrival streams of the edge devices for lazy task generation. The number of tasks 
+	 * of each device is counted in parallel by drawing only the arrival times, as the task attributes 
+	 * are drawn from a separate stream. The streams are then added in the device order, so that the task 
+	 * ids are the same as in the eager mode.
+	 * 
+	 * @param devices	The edge devices that generate tasks
+	 * @param apps		The application types of the devices
+	 */
+	protected void generateTaskStreams(List<ComputingNode> devices, int[] apps) {
+		int[] counts = new int[devices.size()];
+		WorkloadPool.forEach(devices.size(), i -> {
+			SplittableRandom arrivals = randomStreams.forNode(devices.get(i).getId(), Purpose.TASK_ARRIVALS);
+			double rate = SimulationParameters.applicationList.get(apps[i]).getRate();
+			double time = 0;
+			while ((time = nextArrivalTime(arrivals, time, rate)) < SimulationParameters.simulationDuration) {
+				counts[i]++;
+			}
+		});
+		
+		for (int i = 0; i < devices.size(); i++) {
+			ComputingNode dev = devices.get(i);
+			lazyTaskList.addStream(new TaskArrivalStream(this, dev, apps[i], 
+					SimulationParameters.applicationList.get(apps[i]).getRate(), 
+					randomStreams.forNode(dev.getId(), Purpose.TASK_ARRIVALS), 
+					randomStreams.forNode(dev.getId(), Purpose.TASK_ATTRIBUTES), id + 1, counts[i]));
+			id += counts[i];
+		}
+	}
+	
+	/**
+	 * Draws the arrival time of the next task in a Poisson process.
+	 * 
+	 * @param rng		The random number generator to draw from
+	 * @param time		The arrival time of the previous task (0 for the first task)
+	 * @param rate		The arrival rate (tasks per second)
+	 * @return double:	The arrival time of the next task
+	 */
+	protected double nextArrivalTime(RandomGenerator rng, double time, double rate) {
+		// In Poisson process, interarrival times are exponentially distributed, so we can generate an interarrival time based on the inverse CDF of exponential distribution
+		double interarrivalTime = Math.log(1-rng.nextDouble())/(-rate); 
+		return time + interarrivalTime; // Get the arrival time of a task by adding the randomly generated interarrival time
 	}
 
-	protected void insert(double time, int app, ComputingNode dev) {
-		// Get the task latency sensitivity (seconds)
-		double maxLatency = SimulationParameters.applicationList.get(app).getLatency();
-
+	/**
+	 * Draws the random attributes of a task of the given application type.
+	 * 
+	 * @param rng	The random number generator to draw from
+	 * @param app	The application type of the task
+	 * @param attrs	The object into which the drawn attributes are saved
+	 */
+	protected void drawTaskAttributes(RandomGenerator rng, int app, TaskAttributes attrs) {
 		// Get the average task length (MI: million instructions)
 		long avgLength = SimulationParameters.applicationList.get(app).getTaskLength();
 		// Sample a task length from an exponential distribution and cast it to long type
-		long taskLength = (long) ((-avgLength) * Math.log(1-random.nextDouble()));
+		attrs.taskLength = (long) ((-avgLength) * Math.log(1-rng.nextDouble()));
 
 		// Get the minimum value for request size in bits
 		long minValueRequest = SimulationParameters.applicationList.get(app).getRequestSizeMin();
 		// Get the maximum value for request size in bits
 		long maxValueRequest = SimulationParameters.applicationList.get(app).getRequestSizeMax();
 		// Draw a random value for offloading request size in bits if min < max
-		long requestSize = minValueRequest < maxValueRequest ?
-				random.nextLong(minValueRequest, (maxValueRequest + 1)) : maxValueRequest;
+		attrs.requestSize = minValueRequest < maxValueRequest ?
+				rng.nextLong(minValueRequest, (maxValueRequest + 1)) : maxValueRequest;
 		
 		// Get the minimum value for container size in bits
 		long minValueContainer = SimulationParameters.applicationList.get(app).getContainerSizeMin();
 		// Get the maximum value for container size in bits
 		long maxValueContainer = SimulationParameters.applicationList.get(app).getContainerSizeMax();
 		
-		long containerSize;
 		if (minValueContainer == 0) {
 			// Set the container size equal to the request size
-			containerSize = requestSize;
+			attrs.containerSize = attrs.requestSize;
 		} else if (minValueContainer < maxValueContainer) {
 			// Draw a random value
-			containerSize = random.nextLong(minValueContainer, (maxValueContainer + 1));
+			attrs.containerSize = rng.nextLong(minValueContainer, (maxValueContainer + 1));
 		} else {
-			containerSize = maxValueContainer;
+			attrs.containerSize = maxValueContainer;
 		}
 				
 		// Get the minimum value for ratio
@@ -130,38 +248,86 @@ public class EisimTaskGenerator extends TaskGenerator {
 		double maxRatio = SimulationParameters.applicationList.get(app).getResultRatioMax();
 		// Draw a random value for ratio size if min < max
 		double ratio = minRatio < maxRatio ?
-				random.nextDouble(minRatio, maxRatio) : maxRatio;
+				rng.nextDouble(minRatio, maxRatio) : maxRatio;
 		// Get the size of the returned results in bits
-		long outputSize = (long) (requestSize * ratio);
+		attrs.outputSize = (long) (attrs.requestSize * ratio);
+	}
+	
+	/**
+	 * Draws the attributes of a task and creates the task. Safe to call from several threads at the 
+	 * same time, as long as each thread uses its own random number generator.
+	 * 
+	 * @param rng		The random number generator to draw from
+	 * @param taskId	The id of the task
+	 * @param time		The arrival time of the task
+	 * @param app		The application type of the task
+	 * @param dev		The edge device that generates the task
+	 * @return Task:	The created task
+	 */
+	protected Task generateTask(RandomGenerator rng, int taskId, double time, int app, ComputingNode dev) {
+		TaskAttributes attributes = new TaskAttributes();
+		drawTaskAttributes(rng, app, attributes);
+		
+		// Get the task latency sensitivity (seconds)
+		double maxLatency = SimulationParameters.applicationList.get(app).getLatency();
 
 		// Create the task
-		id++;
-		Task task = createTask(id);
+		Task task = createTask(taskId);
 		task.setType(SimulationParameters.applicationList.get(app).getType());
 		task.setTime(time);
-		task.setFileSizeInBits(requestSize).setOutputSizeInBits(outputSize);
-		task.setContainerSizeInBits(containerSize);
+		task.setFileSizeInBits(attributes.requestSize).setOutputSizeInBits(attributes.outputSize);
+		task.setContainerSizeInBits(attributes.containerSize);
 		task.setApplicationID(app);
 		task.setMaxLatency(maxLatency);
-		task.setLength(taskLength);
+		task.setLength(attributes.taskLength);
 		task.setEdgeDevice(dev); // the device that generate this task (the origin)
 		// Default registry could be set here, if needed. E.g., to set the cloud as registry
 		//task.setRegistry(getSimulationManager().getDataCentersManager().getComputingNodesGenerator().getCloudOnlyList().get(0));
-					
-		taskList.add(task);
-		getSimulationManager().getSimulationLogger()
-				.deepLog("TaskGenerator - Task " + id + " with an offloading time of " + time + " (s) generated. "
-						+ "Length: " + taskLength + " (MIs) Request size: " + requestSize + " (bits) Output size: " + outputSize + " (bits)");
+		return task;
+	}
+	
+	/**
+	 * Writes the generated task into the deep log. Not thread-safe, so the tasks are logged only after 
+	 * they have been given their final ids.
+	 * 
+	 * @param task The generated task
+	 */
+	protected void logTask(Task task) {
+		// The message is only formed when deep logging is enabled
+		if (SimulationParameters.deepLoggingEnabled) {
+			getSimulationManager().getSimulationLogger()
+					.deepLog("TaskGenerator - Task " + task.getId() + " with an offloading time of " + task.getTime() + " (s) generated. "
+							+ "Length: " + task.getLength() + " (MIs) Request size: " + task.getFileSizeInBits() 
+							+ " (bits) Output size: " + task.getOutputSizeInBits() + " (bits)");
+		}
+	}
+	
+	/**
+	 * Resolves the constructor of the task class before the tasks are generated, possibly in parallel.
+	 */
+	protected void resolveTaskConstructor() {
+		if (taskConstructor == null || taskConstructor.getDeclaringClass() != taskClass) {
+			try {
+				taskConstructor = taskClass.getConstructor(int.class);
+			} catch (Exception e) {
+				e.printStackTrace(SimLog.getOutput());
+			}
+		}
 	}
 
 	protected Task createTask(int id) {
-		Constructor<?> taskConstructor;
+		// When the tasks are generated lazily (on the simulation thread), released tasks are reused
+		if (lazyTaskList != null && taskStore != null) {
+			Task task = taskStore.acquire(id);
+			if (task != null) {
+				return task;
+			}
+		}
 		Task task = null;
 		try {
-			taskConstructor = taskClass.getConstructor(int.class);
 			task = (Task) taskConstructor.newInstance(id);
 		} catch (Exception e) {
-			e.printStackTrace();
+			e.printStackTrace(SimLog.getOutput());
 		}
 		return task;
 	}
@@ -0,0 +1,116 @@
+package com.github.hennas.eisim.defaultclasses;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+import com.github.hennas.eisim.core.simulationengine.FutureQueue;
+import com.github.hennas.eisim.core.simulationmanager.DefaultSimulationManager;
+import com.github.hennas.eisim.core.taskgenerator.Task;
+
+/**
+ * A task list that generates the tasks lazily, merging the task arrival streams of the edge devices.
+ * <p>
+ * The simulation manager uses the task list only through {@link #size()}, {@link #first()} and
+ * {@link #remove(Task)} when it schedules the offloading of the next batch of tasks. This queue keeps
+ * only the next task of every device in memory, in a heap ordered the same way as the eagerly generated
+ * task list. When the first task is removed, the device's stream generates its following task.
+ * Hence, the memory needed for the task list grows with the number of devices instead of the number of
+ * tasks.
+ * <p>
+ * Tasks can also be added to the queue with {@link #add(Task)} and {@link #addFirst(Task)}. They are
+ * kept in the sorted set of the queue as usual, with serials that order them after (or, with
+ * {@code addFirst}, before) the generated tasks of the same arrival time, as in the eagerly generated task
+ * list, and they are merged with the streams when the first task is taken. {@link #iterator()} and
+ * {@link #stream()} cover the added tasks and the next task of each device.
+ *
+ * @see TaskArrivalStream
+ * @see EisimTaskGenerator
+ * @see DefaultSimulationManager
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class LazyTaskQueue extends FutureQueue<Task> {
+
+	protected final PriorityQueue<TaskArrivalStream> streams = new PriorityQueue<>();
+	protected int remaining = 0; // The number of tasks not yet removed from the queue
+
+	/**
+	 * Adds the task arrival stream of an edge device into the queue. Generates the first task
+	 * of the stream.
+	 *
+	 * @param stream The task arrival stream of an edge device
+	 */
+	public void addStream(TaskArrivalStream stream) {
+		// The generated tasks take the serials from 0 up in the order of their ids, and the added tasks the ones after them
+		this.serial = Math.max(this.serial, stream.nextId - 1 + stream.getRemaining());
+		this.remaining += stream.getRemaining();
+		if (stream.advance() != null) {
+			this.streams.add(stream);
+		}
+	}
+
+	/**
+	 * Removes the given task if it was added to the queue, or if it is the next task of the
+	 * first device, in which case the next task of the same device is generated.
+	 *
+	 * @param task		The task to remove
+	 * @return boolean: True if the task was removed
+	 */
+	@Override
+	public boolean remove(final Task task) {
+		if (super.remove(task)) {
+			return true;
+		}
+		TaskArrivalStream head = this.streams.peek();
+		if (head == null || head.getNext() != task) {
+			return false;
+		}
+		this.streams.poll();
+		this.remaining--;
+		if (head.advance() != null) {
+			this.streams.add(head);
+		}
+		return true;
+	}
+
+	@Override
+	public Task first() throws NoSuchElementException {
+		TaskArrivalStream head = this.streams.peek();
+		if (head == null) {
+			return super.first();
+		}
+		Task next = head.getNext();
+		if (!this.sortedSet.isEmpty()) {
+			// The same order as in the sorted set: by time, then by serial
+			Task added = this.sortedSet.first();
+			int res = Double.compare(added.getTime(), next.getTime());
+			if (res < 0 || res == 0 && added.getSerial() < next.getSerial()) {
+				return added;
+			}
+		}
+		return next;
+	}
+
+	@Override
+	public int size() {
+		return this.remaining + this.sortedSet.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.remaining == 0 && this.sortedSet.isEmpty();
+	}
+
+	@Override
+	public Iterator<Task> iterator() {
+		return stream().iterator();
+	}
+
+	@Override
+	public Stream<Task> stream() {
+		return Stream.concat(this.sortedSet.stream(), this.streams.stream().map(TaskArrivalStream::getNext));
+	}
+}
@@ -0,0 +1,47 @@
+package com.github.hennas.eisim.defaultclasses;
+
+/**
+ * The orchestration algorithms (control topologies) supported by EISim.
+ * <p>
+ * The algorithm name given in the simulation_parameters.properties file is resolved into one of these
+ * constants once per simulation scenario, so that the orchestration logic can dispatch on the constant
+ * instead of comparing strings for every task.
+ *
+ * @see EisimOrchestrator
+ * @see EisimComputingNode
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public enum OrchestrationAlgorithm {
+	DECENTRALIZED,
+	HYBRID,
+	CENTRALIZED;
+
+	/**
+	 * Returns true if the edge devices choose the offloading destination among the cluster heads,
+	 * which is the case in the decentralized and hybrid control topologies.
+	 *
+	 * @return boolean: Whether the cluster heads are the offloading candidates
+	 */
+	public boolean offloadsToClusterHeads() {
+		return this == DECENTRALIZED || this == HYBRID;
+	}
+
+	/**
+	 * Resolves the algorithm constant that corresponds to the given algorithm name.
+	 *
+	 * @param algorithmName The name of the algorithm as given in the simulation parameters file
+	 * @return OrchestrationAlgorithm: The corresponding algorithm constant
+	 * @throws IllegalArgumentException If the name does not correspond to any supported algorithm
+	 */
+	public static OrchestrationAlgorithm fromName(String algorithmName) {
+		for (OrchestrationAlgorithm algorithm : values()) {
+			if (algorithm.name().equals(algorithmName)) {
+				return algorithm;
+			}
+		}
+		throw new IllegalArgumentException(OrchestrationAlgorithm.class.getSimpleName() + " - Unknown orchestration algorithm '"
+				+ algorithmName + "', please check the simulation parameters file.");
+	}
+}
@@ -0,0 +1,134 @@
+package com.github.hennas.eisim.defaultclasses;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.github.hennas.eisim.core.datacentersmanager.ComputingNode;
+import com.github.hennas.eisim.core.network.InfrastructureGraph;
+
+/**
+ * A per-scenario orchestration plan that is compiled once when the {@link EisimOrchestrator} is created.
+ * <p>
+ * The plan resolves everything that stays fixed during a simulation run and that the orchestration
+ * logic would otherwise recompute for every task: the orchestration algorithm, the edge servers that
+ * are valid offloading candidates under that algorithm (together with their indices in the orchestrator's
+ * node list), and the MAN delays between the edge nodes and the candidates. With the plan, finding the
+ * execution location for a task does not allocate or compare strings.
+ *
+ * @see EisimOrchestrator
+ * @see DeviceProfile
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class OrchestrationPlan {
+
+	protected final OrchestrationAlgorithm algorithm;
+
+	/**
+	 * The edge servers that can be chosen as offloading destinations. In decentralized and hybrid
+	 * control topologies these are the cluster heads, in centralized control topology all the edge
+	 * servers.
+	 */
+	protected final EisimComputingNode[] candidates;
+
+	/**
+	 * The index of each candidate in the orchestrator's node list.
+	 */
+	protected final int[] candidateIndices;
+
+	/**
+	 * MAN delays of the shortest paths from an edge node to the candidates. The first index is the id
+	 * of the edge node (the access point of an edge device) and the second index is the position of the
+	 * candidate in {@link #candidates}. Rows for ids that do not belong to edge nodes are null.
+	 */
+	protected final double[][] manDelays;
+
+	/**
+	 * Compiles the orchestration plan.
+	 *
+	 * @param algorithm	The orchestration algorithm of the scenario
+	 * @param nodeList	The node list of the orchestrator
+	 * @param edgeList	A list of edge nodes (APs and edge servers)
+	 * @param delayMap	Delays of the shortest paths between the edge nodes, keyed by the unique id of the
+	 * 					node pair
+	 * @param graph		The MAN topology used to form the unique ids of the node pairs
+	 */
+	public OrchestrationPlan(OrchestrationAlgorithm algorithm, List<ComputingNode> nodeList, List<ComputingNode> edgeList,
+			Map<Long, Double> delayMap, InfrastructureGraph graph) {
+		this.algorithm = algorithm;
+
+		List<Integer> indices = new ArrayList<>();
+		for (int i = 0; i < nodeList.size(); i++) {
+			EisimComputingNode server = (EisimComputingNode) nodeList.get(i);
+			if (!server.isAP() && (server.isClusterHead() || !algorithm.offloadsToClusterHeads())) {
+				indices.add(i);
+			}
+		}
+		this.candidates = new EisimComputingNode[indices.size()];
+		this.candidateIndices = new int[indices.size()];
+		for (int c = 0; c < indices.size(); c++) {
+			this.candidateIndices[c] = indices.get(c);
+			this.candidates[c] = (EisimComputingNode) nodeList.get(indices.get(c));
+		}
+
+		int maxId = -1;
+		for (ComputingNode node : edgeList) {
+			maxId = Math.max(maxId, node.getId());
+		}
+		this.manDelays = new double[maxId + 1][];
+		for (ComputingNode from : edgeList) {
+			double[] row = new double[this.candidates.length];
+			for (int c = 0; c < this.candidates.length; c++) {
+				row[c] = delayMap.get(graph.getUniqueId(from.getId(), this.candidates[c].getId()));
+			}
+			this.manDelays[from.getId()] = row;
+		}
+	}
+
+	public OrchestrationAlgorithm getAlgorithm() {
+		return this.algorithm;
+	}
+
+	/**
+	 * Gets the number of offloading candidates.
+	 *
+	 * @return int: The number of candidates
+	 */
+	public int getCandidateCount() {
+		return this.candidates.length;
+	}
+
+	/**
+	 * Gets the candidate at the given position.
+	 *
+	 * @param c 					The position of the candidate
+	 * @return EisimComputingNode:	The candidate edge server
+	 */
+	public EisimComputingNode getCandidate(int c) {
+		return this.candidates[c];
+	}
+
+	/**
+	 * Gets the index of the candidate at the given position in the orchestrator's node list.
+	 *
+	 * @param c 	The position of the candidate
+	 * @return int: The index of the candidate in the node list
+	 */
+	public int getCandidateIndex(int c) {
+		return this.candidateIndices[c];
+	}
+
+	/**
+	 * Gets the MAN delays from the given edge node to every candidate, or null if the node is not an
+	 * edge node known to the plan.
+	 *
+	 * @param edgeNode	 An edge node (typically the access point of an edge device)
+	 * @return double[]: The delays indexed by the candidate position
+	 */
+	public double[] getManDelaysFrom(ComputingNode edgeNode) {
+		int id = edgeNode.getId();
+		return id >= 0 && id < this.manDelays.length ? this.manDelays[id] : null;
+	}
+}
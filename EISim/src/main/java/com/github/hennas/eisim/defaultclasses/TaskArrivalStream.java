@@ -0,0 +1,110 @@
+package com.github.hennas.eisim.defaultclasses;
+
+import java.util.random.RandomGenerator;
+
+import com.github.hennas.eisim.core.datacentersmanager.ComputingNode;
+import com.github.hennas.eisim.core.taskgenerator.Task;
+
+/**
+ * Generates the tasks of one edge device one at a time, in the order of their arrival times.
+ * <p>
+ * Used by {@link EisimTaskGenerator} when the tasks are generated lazily: instead of creating every
+ * task of the device when the simulation starts, the stream only holds the device's next task, and
+ * the task after that is generated when the next one is taken into the simulation. The stream draws
+ * from the same per-device random number streams as the eager generation, so the generated tasks are
+ * the same in both modes.
+ *
+ * @see LazyTaskQueue
+ * @see EisimTaskGenerator
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class TaskArrivalStream implements Comparable<TaskArrivalStream> {
+
+	protected final EisimTaskGenerator generator;
+	protected final ComputingNode device;
+	protected final int app;
+	protected final double rate; // Tasks per second; Poisson arrival rate
+	protected final RandomGenerator arrivals; // Draws the arrival times of the tasks
+	protected final RandomGenerator attributes; // Draws the attributes of the tasks
+	protected double time = 0; // The arrival time of the latest generated task
+	protected int nextId; // The id of the next generated task
+	protected int remaining; // The number of tasks that have not been generated yet
+	protected Task next; // The next task of the device, or null if the device has no more tasks
+
+	/**
+	 * Creates a task arrival stream for an edge device.
+	 *
+	 * @param generator	The task generator that creates the tasks
+	 * @param device	The edge device that generates the tasks
+	 * @param app		The application type of the device
+	 * @param rate		The Poisson arrival rate of the tasks (tasks per second)
+	 * @param arrivals	The random number generator of the device's task arrival times
+	 * @param attributes	The random number generator of the device's task attributes
+	 * @param firstId	The id of the first task of the device
+	 * @param taskCount	The total number of tasks the device generates during the simulation
+	 */
+	public TaskArrivalStream(EisimTaskGenerator generator, ComputingNode device, int app, double rate,
+			RandomGenerator arrivals, RandomGenerator attributes, int firstId, int taskCount) {
+		this.generator = generator;
+		this.device = device;
+		this.app = app;
+		this.rate = rate;
+		this.arrivals = arrivals;
+		this.attributes = attributes;
+		this.nextId = firstId;
+		this.remaining = taskCount;
+	}
+
+	/**
+	 * Generates the next task of the device.
+	 *
+	 * @return Task: The next task, or null if the device has no more tasks
+	 */
+	public Task advance() {
+		if (this.remaining == 0) {
+			this.next = null;
+			return null;
+		}
+		this.time = this.generator.nextArrivalTime(this.arrivals, this.time, this.rate);
+		this.next = this.generator.generateTask(this.attributes, this.nextId, this.time, this.app, this.device);
+		this.generator.logTask(this.next);
+		// The eagerly generated tasks get their serials in the order of their ids (starting from 0)
+		this.next.setSerial(this.nextId - 1);
+		this.nextId++;
+		this.remaining--;
+		return this.next;
+	}
+
+	/**
+	 * Gets the next task of the device without generating a new one.
+	 *
+	 * @return Task: The next task, or null if the device has no more tasks
+	 */
+	public Task getNext() {
+		return this.next;
+	}
+
+	/**
+	 * Gets the number of tasks that the stream has not generated yet.
+	 *
+	 * @return int: The number of remaining tasks
+	 */
+	public int getRemaining() {
+		return this.remaining;
+	}
+
+	/**
+	 * Orders the streams by the arrival times of their next tasks, and by task ids if the arrival
+	 * times are equal (the same order as in the eagerly generated task list).
+	 */
+	@Override
+	public int compareTo(TaskArrivalStream that) {
+		int res = Double.compare(this.next.getTime(), that.next.getTime());
+		if (res != 0) {
+			return res;
+		}
+		return Integer.compare(this.next.getId(), that.next.getId());
+	}
+}
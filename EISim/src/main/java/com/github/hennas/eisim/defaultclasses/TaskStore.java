@@ -0,0 +1,124 @@
+package com.github.hennas.eisim.defaultclasses;
+
+import java.util.Arrays;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.core.taskgenerator.Task;
+
+/**
+ * A compact store for the tasks of a simulation run, used when {@link EisimSimulationParameters#compactTaskStore}
+ * is enabled.
+ * <p>
+ * By default, the simulation manager keeps every finished task in a list until the end of the run, only to
+ * count them in the simulation log. With the compact store, a finished task is only counted (its delays are
+ * already summed up in the simulation log), and the task is forgotten. When
+ * the tasks are generated lazily, a task whose life cycle has ended (its results were returned or it failed)
+ * is also put into a free list, from which the task generator takes it when it creates a new task. Hence,
+ * the peak memory used by the tasks depends on the number of tasks in flight instead of the length of
+ * the run.
+ * <p>
+ * The free list is an array used as a stack, grown only when more tasks are released at once than
+ * ever before. The number of created task objects and the peak number of tasks in flight are printed
+ * in the simulation log at the end of the run.
+ *
+ * @see EisimSimulationManager
+ * @see EisimTaskGenerator
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class TaskStore {
+
+	protected final boolean recycling;
+	protected EisimTask[] freeTasks = new EisimTask[64];
+	protected int freeCount = 0;
+
+	protected int inFlight = 0; // The number of created tasks that have not been released yet
+	protected int peakInFlight = 0;
+	protected int createdTasks = 0; // The number of tasks created with new objects
+
+	protected int finishedTasks = 0;
+
+	/**
+	 * Creates a compact task store.
+	 *
+	 * @param recycling Whether the released tasks are reused for new tasks. Should only be enabled when
+	 * 					the tasks are created during the simulation, i.e., when they are generated lazily.
+	 */
+	public TaskStore(boolean recycling) {
+		this.recycling = recycling;
+	}
+
+	/**
+	 * Takes a released task from the free list and resets it with the given id.
+	 *
+	 * @param id			The id of the new task
+	 * @return EisimTask:	A reset task, or null if there are no released tasks to reuse
+	 */
+	public EisimTask acquire(int id) {
+		EisimTask task = null;
+		if (this.freeCount > 0) {
+			task = this.freeTasks[--this.freeCount];
+			this.freeTasks[this.freeCount] = null;
+			task.reset(id);
+		} else {
+			this.createdTasks++;
+		}
+		this.inFlight++;
+		this.peakInFlight = Math.max(this.peakInFlight, this.inFlight);
+		return task;
+	}
+
+	/**
+	 * Counts a task whose execution has finished. The task itself is not kept.
+	 *
+	 * @param task The task whose execution has finished
+	 */
+	public void finished(Task task) {
+		this.finishedTasks++;
+	}
+
+	/**
+	 * Releases a task whose life cycle has ended, i.e., no simulation entity will use the task anymore.
+	 * If recycling is enabled, the task is put into the free list.
+	 *
+	 * @param task The task whose life cycle has ended
+	 */
+	public void release(Task task) {
+		if (!this.recycling || !(task instanceof EisimTask)) {
+			return;
+		}
+		this.inFlight--;
+		if (this.freeCount == this.freeTasks.length) {
+			this.freeTasks = Arrays.copyOf(this.freeTasks, this.freeTasks.length * 2);
+		}
+		this.freeTasks[this.freeCount++] = (EisimTask) task;
+	}
+
+	public int getFinishedTasks() {
+		return this.finishedTasks;
+	}
+
+	public boolean isRecycling() {
+		return this.recycling;
+	}
+
+	/**
+	 * Gets the largest number of tasks that have been in flight (created but not yet released) at the same time.
+	 * Only meaningful when recycling is enabled.
+	 *
+	 * @return int: The peak number of tasks in flight
+	 */
+	public int getPeakInFlight() {
+		return this.peakInFlight;
+	}
+
+	/**
+	 * Gets the number of task objects created, i.e., the tasks that could not reuse a released task.
+	 *
+	 * @return int: The number of created task objects
+	 */
+	public int getCreatedTasks() {
+		return this.createdTasks;
+	}
+}
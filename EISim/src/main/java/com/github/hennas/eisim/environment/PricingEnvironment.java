@@ -0,0 +1,281 @@
+package com.github.hennas.eisim.environment;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.agents.PricingAgent;
+import com.github.hennas.eisim.core.datacentersmanager.ComputingNode;
+import com.github.hennas.eisim.core.simulationengine.PureEdgeSim;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
+import com.github.hennas.eisim.core.simulationmanager.Simulation;
+import com.github.hennas.eisim.core.simulationmanager.SimulationManager;
+import com.github.hennas.eisim.core.simulationmanager.SimulationThread;
+import com.github.hennas.eisim.core.scenariomanager.Scenario;
+import com.github.hennas.eisim.defaultclasses.EisimComputingNode;
+import com.github.hennas.eisim.defaultclasses.EisimSimulationManager;
+
+/**
+ * A step/reset environment over the simulation, in the style of the Gym API. The prices of all the cluster 
+ * heads are decided outside the simulation: {@link #reset(long)} starts a new episode and returns the states 
+ * of the cluster heads at the first price update, and {@link #step(float[])} applies the given prices and 
+ * advances the simulation to the next price update, returning the new states and the rewards of the slot.
+ * <p>
+ * The settings are parsed only once, when the environment is created. A reset then only builds the 
+ * simulation modules of the scenario again with the new seed and runs the simulation up to the first price 
+ * update, which takes in the order of a second for the default scenarios rather than milliseconds. The 
+ * simulation state is not restored from a snapshot: the state after the setup depends on the seed (the 
+ * positions of the devices, their links, the generated tasks), and the nodes, links and agents are bound to 
+ * the simulation engine and the simulation manager they were created with, so they cannot be copied into a 
+ * new episode.
+ * <p>
+ * The states, rewards and price ranges are the same as seen by the pricing agents inside the simulation 
+ * (see {@link EisimComputingNode}). The cluster heads use a {@link ExternalPricingAgent}, which does not 
+ * decide prices itself and does not save any state, so the environment does not read or write the model 
+ * folder. The results of each episode and the price logs are written into the output folder as usual.
+ * <p>
+ * An environment instance must only be used from one thread, and only one environment can be used in 
+ * a JVM at a time, as the simulation parameters are static.
+ * 
+ * @author Henna Kokkonen
+ *
+ */
+public class PricingEnvironment {
+	
+	protected Simulation simulation;
+	protected SimulationThread simulationThread;
+	protected Scenario scenario;
+	protected String startTime;
+	protected int episode = 0;
+	
+	protected PureEdgeSim engine;
+	protected EisimSimulationManager simulationManager;
+	protected List<EisimComputingNode> clusterHeads;
+	protected boolean done = true;
+	
+	/**
+	 * The result of a step: the states of the cluster heads at the beginning of the new slot, the rewards 
+	 * of the previous slot, and whether the episode has ended. The states and rewards are in the order of 
+	 * {@link PricingEnvironment#getClusterHeadNames()}.
+	 */
+	public static class Step {
+		public final float[][] states;
+		public final float[] rewards;
+		public final boolean done;
+		
+		public Step(float[][] states, float[] rewards, boolean done) {
+			this.states = states;
+			this.rewards = rewards;
+			this.done = done;
+		}
+	}
+	
+	/**
+	 * Creates the environment for the first scenario in the settings.
+	 * 
+	 * @param settingsFolder	Path to the simulation settings folder
+	 * @param outputFolder		Path to the output folder
+	 */
+	public PricingEnvironment(String settingsFolder, String outputFolder) {
+		this(settingsFolder, outputFolder, 0);
+	}
+	
+	/**
+	 * Creates the environment for the given scenario. The settings are checked and parsed here.
+	 * 
+	 * @param settingsFolder	Path to the simulation settings folder
+	 * @param outputFolder		Path to the output folder
+	 * @param scenarioIndex		Index of the scenario (the combination of the number of devices, the orchestration 
+	 * 							architecture and the algorithm) in the order they are run by the simulation
+	 */
+	public PricingEnvironment(String settingsFolder, String outputFolder, int scenarioIndex) {
+		EisimSimulationParameters.settingFolder = settingsFolder;
+		EisimSimulationParameters.outputFolder = outputFolder;
+		
+		this.simulation = new Simulation();
+		this.simulation.setCustomSettingsFolder(settingsFolder);
+		this.simulation.setCustomOutputFolder(outputFolder);
+		if (!this.simulation.loadSimulation()) {
+			throw new IllegalArgumentException(getClass().getSimpleName() + " - The settings in " + settingsFolder + " are not valid");
+		}
+		this.scenario = this.simulation.getScenarios().get(scenarioIndex);
+		this.simulationThread = new SimulationThread(this.simulation, scenarioIndex, 1);
+		this.startTime = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date());
+	}
+	
+	/**
+	 * Starts a new episode with the given seed, ending the running episode if there is one. 
+	 * 
+	 * @param seed			The seed of the episode
+	 * @return float[][]:	The states of the cluster heads at the first price update
+	 */
+	public float[][] reset(long seed) {
+		this.close();
+		EisimSimulationParameters.useSeed = true;
+		EisimSimulationParameters.seed = seed;
+		
+		SimLog simLog = new SimLog(String.format("%s_episode%05d", this.startTime, this.episode++), true);
+		try {
+			SimulationManager manager = this.simulationThread.createSimulation(this.scenario, simLog, 0, 0);
+			this.simulationManager = (EisimSimulationManager) manager;
+		} catch (Exception e) {
+			throw new IllegalStateException(getClass().getSimpleName() + " - Creating the simulation failed", e);
+		}
+		this.engine = this.simulationManager.getSimulation();
+		// The cluster heads create their agents when the entities are started. The external agent is used only 
+		// for them, so that the other simulations in the JVM keep using the configured agent class.
+		Class<? extends PricingAgent> agentClass = EisimComputingNode.getCustomPricingAgentClass();
+		EisimComputingNode.setCustomPricingAgentClass(ExternalPricingAgent.class);
+		try {
+			this.engine.startEntities();
+		} finally {
+			EisimComputingNode.setCustomPricingAgentClass(agentClass);
+		}
+		this.done = false;
+		
+		if (!this.advance()) {
+			throw new IllegalStateException(getClass().getSimpleName() + " - The scenario has no cluster heads");
+		}
+		this.clusterHeads = new ArrayList<>();
+		for (ComputingNode node : this.simulationManager.getDataCentersManager().getComputingNodesGenerator().getEdgeOnlyList()) {
+			if (node instanceof EisimComputingNode && ((EisimComputingNode) node).isClusterHead()) {
+				this.clusterHeads.add((EisimComputingNode) node);
+			}
+		}
+		return this.observe().states;
+	}
+	
+	/**
+	 * Applies the given prices for the new slot and runs the simulation until the next price update.
+	 * 
+	 * @param prices	The prices of the cluster heads, in the order of {@link #getClusterHeadNames()}. The 
+	 * 					prices are clipped into the price range of the cluster heads.
+	 * @return Step:	The states at the beginning of the next slot and the rewards of the slot
+	 */
+	public Step step(float[] prices) {
+		if (this.done) {
+			throw new IllegalStateException(getClass().getSimpleName() + " - The episode has ended, call reset() first");
+		}
+		if (prices.length != this.clusterHeads.size()) {
+			throw new IllegalArgumentException(getClass().getSimpleName() + " - Expected " + this.clusterHeads.size() 
+					+ " prices, got " + prices.length);
+		}
+		for (int i = 0; i < prices.length; i++) {
+			this.clusterHeads.get(i).setDecidedPrice(prices[i]);
+		}
+		if (!this.advance()) {
+			// The simulation has ended, the states and rewards of the last observed slots are returned
+			this.close();
+			return new Step(this.states(), this.rewards(), true);
+		}
+		return this.observe();
+	}
+	
+	/**
+	 * Ends the running episode, if there is one, so that the price logs are saved. The results of the 
+	 * episode are saved only if the simulation has run to the end.
+	 */
+	public void close() {
+		if (this.engine != null) {
+			this.done = true;
+			this.engine.endSimulation();
+			this.engine = null;
+		}
+	}
+	
+	/**
+	 * Returns the names of the cluster heads in the order of the states, rewards and prices.
+	 * 
+	 * @return String[]: The names of the cluster heads
+	 */
+	public String[] getClusterHeadNames() {
+		return this.clusterHeads.stream().map(EisimComputingNode::getName).toArray(String[]::new);
+	}
+	
+	/**
+	 * Runs the simulation until the next price update that needs a decision.
+	 * 
+	 * @return boolean: False if the simulation ended
+	 */
+	protected boolean advance() {
+		return this.engine.runUntil(EisimComputingNode::awaitsPriceDecision);
+	}
+	
+	/**
+	 * Observes the previous slots of all the cluster heads. The cluster heads update their prices at the same 
+	 * time, so they are all observed when the simulation reaches the first of their price updates.
+	 * 
+	 * @return Step: The states and rewards
+	 */
+	protected Step observe() {
+		for (EisimComputingNode node : this.clusterHeads) {
+			node.observePriceUpdate();
+		}
+		return new Step(this.states(), this.rewards(), false);
+	}
+	
+	protected float[][] states() {
+		float[][] states = new float[this.clusterHeads.size()][];
+		for (int i = 0; i < states.length; i++) {
+			states[i] = this.clusterHeads.get(i).getSlotState().clone();
+		}
+		return states;
+	}
+	
+	protected float[] rewards() {
+		float[] rewards = new float[this.clusterHeads.size()];
+		for (int i = 0; i < rewards.length; i++) {
+			rewards[i] = this.clusterHeads.get(i).getSlotReward();
+		}
+		return rewards;
+	}
+	
+	/**
+	 * The agent of the cluster heads when the prices are decided outside the simulation. It only holds 
+	 * the price range, and does not load or save any state.
+	 * <p>
+	 * The agent is never asked for a price: the environment runs the simulation only up to the next 
+	 * {@code PRICE_UPDATE} event that awaits a decision (see {@link EisimComputingNode#awaitsPriceDecision}), 
+	 * and {@link PricingEnvironment#step(float[])} sets the decided prices of all the cluster heads before the 
+	 * simulation continues, so the cluster heads only apply them. The agent is only created by 
+	 * {@link PricingEnvironment#reset(long)}, so other simulations do not use it.
+	 */
+	public static class ExternalPricingAgent extends PricingAgent {
+		
+		public ExternalPricingAgent(String serverName, int stateSpaceDim, float minPrice, float maxPrice,
+				SimulationManager simulationManager) {
+			super(serverName, stateSpaceDim, minPrice, maxPrice, simulationManager);
+		}
+		
+		@Override
+		protected String createStateDirectoryForAgent() {
+			return null;
+		}
+		
+		/**
+		 * Not used, see the class description.
+		 * 
+		 * @throws IllegalStateException Always, as the prices are decided outside the simulation
+		 */
+		@Override
+		public float act(INDArray state) {
+			throw new IllegalStateException(getClass().getSimpleName() + " - The prices are decided outside the simulation, "
+					+ "so the price update must be prepared with PricingEnvironment.step()");
+		}
+		
+		@Override
+		public void learn(INDArray state, float action, float reward, INDArray nextState) {
+			// The agent is trained outside the simulation
+		}
+		
+		@Override
+		public void saveAgentState() throws IOException {
+			// No state to save
+		}
+	}
+}
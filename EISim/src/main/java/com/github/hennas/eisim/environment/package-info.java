@@ -0,0 +1,7 @@
+/**
+ * Contains a step/reset environment API for deciding the prices of the cluster heads outside the 
+ * simulation, for example, with an external reinforcement learning library.
+ *
+ * @author Henna Kokkonen
+ */
+package com.github.hennas.eisim.environment;
@@ -1,5 +1,12 @@
 package com.github.hennas.eisim.helpers;
 
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Options;
@@ -8,6 +15,8 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.ParseException;
 
 import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.SimulationClient;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
 
 /**
  * Implements a command-line argument parser. Options and corresponding values are parsed 
@@ -20,11 +29,15 @@ import com.github.hennas.eisim.EisimSimulationParameters;
  */
 public class ArgumentParser {
 
+	// The long names of the options whose values are paths
+	protected static final Set<String> PATH_OPTIONS = Set.of("input", "output", "model-folder", "bridge-dir", "record-dir");
+
 	protected DefaultParser parser;
 	protected HelpFormatter formatter;
 	protected Options options;
 	protected Options helpOptions;
 	protected String helpmsg;
+	protected CommandLine commandLine; // The last parsed command line
 	
 	public ArgumentParser() {
 		this.parser = new DefaultParser();
@@ -36,6 +49,16 @@ public class ArgumentParser {
 				+ "-Dexec.args=\"-i <setting_folder> -o <output_folder> -m <model_folder> [OTHER OPTIONS]\"";
 	}
 	
+	/**
+	 * Prints the help of the simulation options into the log of the simulation context.
+	 */
+	protected void printHelp(String cmdLineSyntax, String header, Options options) {
+		PrintWriter writer = new PrintWriter(SimLog.getOutput());
+		formatter.printHelp(writer, formatter.getWidth(), cmdLineSyntax, header, options, formatter.getLeftPadding(), 
+				formatter.getDescPadding(), "");
+		writer.flush();
+	}
+	
 	/**
 	 * Parses the command-line arguments given to the program.
 	 * 
@@ -49,24 +72,172 @@ public class ArgumentParser {
         	CommandLine cmdHelp = parser.parse(helpOptions, args, true);
         	cmdHelp = parser.parse(helpOptions, args, true);
         	if (cmdHelp.hasOption("help")) {
-                formatter.printHelp(helpmsg, "Required options: i, o, m", options, "");
+                printHelp(helpmsg, "Required options: i, o, m", options);
                 return false;
             }
             CommandLine cmd = parser.parse(options, args, false);
             // In case that for some reason user specified the required options and also used help option
             if (cmd.hasOption("help")) {
-                formatter.printHelp(helpmsg, "Required options: i, o, m", options, "");
+                printHelp(helpmsg, "Required options: i, o, m", options);
                 return false;
             }
+            this.commandLine = cmd;
             setParameters(cmd);
         } catch (ParseException e) {
-        	System.out.println(e.getMessage());
-        	formatter.printHelp(helpmsg, "Required options: i, o, m", options, "");
+        	SimLog.getOutput().println(e.getMessage());
+        	printHelp(helpmsg, "Required options: i, o, m", options);
         	return false;
         }
         return true;
     }
 	
+	/**
+	 * Parses the command-line arguments given to the offline trainer, which takes the same options as the 
+	 * simulation, but only requires the folder of the recorded experiences and the model folder.
+	 * 
+	 * @param args String array of command-line arguments.
+	 * @return True if the given arguments were valid and help option was not used.
+	 * 
+	 * @see com.github.hennas.eisim.agents.ddpg.OfflineTrainer
+	 */
+	public boolean parseOfflineArguments(String[] args) {
+		String offlineHelpmsg = "mvn -q exec:java -Dexec.mainClass=\"com.github.hennas.eisim.agents.ddpg.OfflineTrainer\" "
+				+ "-Dexec.args=\"-Y <record_folder> -m <model_folder> [OTHER OPTIONS]\"";
+		Options offlineOptions = new Options();
+		for (Option option : this.options.getOptions()) {
+			Option offlineOption = (Option) option.clone();
+			// Some options only have a long name
+			offlineOption.setRequired("m".equals(option.getOpt()) || "Y".equals(option.getOpt()));
+			offlineOptions.addOption(offlineOption);
+		}
+		try {
+			CommandLine cmd = parser.parse(offlineOptions, args, false);
+			if (cmd.hasOption("help")) {
+				printHelp(offlineHelpmsg, "Required options: Y, m", offlineOptions);
+				return false;
+			}
+			setParameters(cmd);
+		} catch (ParseException e) {
+			SimLog.getOutput().println(e.getMessage());
+			printHelp(offlineHelpmsg, "Required options: Y, m", offlineOptions);
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Parses the command-line arguments given to the simulation daemon.
+	 * 
+	 * @param args String array of command-line arguments.
+	 * @return True if the given arguments were valid and help option was not used.
+	 * 
+	 * @see com.github.hennas.eisim.SimulationDaemon
+	 */
+	public boolean parseDaemonArguments(String[] args) {
+		String daemonHelpmsg = "mvn -q exec:java -Dexec.mainClass=\"com.github.hennas.eisim.Main\" "
+				+ "-Dexec.args=\"--daemon [OPTIONS]\"";
+		Options daemonOptions = new Options();
+		daemonOptions.addOption(Option.builder("h").longOpt("help").desc("Print this message.").build());
+		daemonOptions.addOption(
+				Option.builder()
+						.longOpt("socket")
+						.hasArg()
+						.argName("socket_file")
+						.desc("Path to the Unix domain socket on which the daemon accepts the simulation jobs. The folder of the "
+								+ "socket must only be accessible to the user, and it is created if it does not exist. Default value is "
+								+ "daemon.sock in the folder eisim-<user name> in the temporary folder, or the value of the environment variable "
+								+ SimulationClient.SOCKET_VARIABLE + ".")
+						.build());
+		daemonOptions.addOption(
+				Option.builder()
+						.longOpt("jobs")
+						.hasArg()
+						.argName("jobs")
+						.desc("The number of simulation jobs run concurrently by the daemon. Default value is 1.")
+						.build());
+		try {
+			CommandLine cmd = parser.parse(daemonOptions, args, false);
+			if (cmd.hasOption("help")) {
+				formatter.printHelp(daemonHelpmsg, daemonOptions);
+				return false;
+			}
+			if (cmd.hasOption("socket")) {
+				EisimSimulationParameters.daemonSocket = cmd.getOptionValue("socket");
+			}
+			if (cmd.hasOption("jobs")) {
+				EisimSimulationParameters.daemonJobs = Math.max(1, Integer.parseInt(cmd.getOptionValue("jobs")));
+			}
+		} catch (ParseException e) {
+			System.out.println(e.getMessage());
+			formatter.printHelp(daemonHelpmsg, daemonOptions);
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks the command-line arguments of a simulation run, and returns them in the long form with the relative 
+	 * paths given to the folder options resolved against the given folder, for running the simulations elsewhere 
+	 * than in the working directory of the caller.
+	 * 
+	 * @param args				String array of command-line arguments.
+	 * @param folder			The folder against which the relative paths are resolved
+	 * @return List<String>:	The arguments
+	 * @throws ParseException	If the arguments are not valid
+	 * 
+	 * @see com.github.hennas.eisim.SimulationDaemon
+	 */
+	public List<String> resolvePaths(String[] args, Path folder) throws ParseException {
+		CommandLine cmd = parser.parse(options, args, false);
+		List<String> arguments = new ArrayList<>();
+		for (Option option : cmd.getOptions()) {
+			arguments.add("--" + option.getLongOpt());
+			if (option.hasArg()) {
+				arguments.add(PATH_OPTIONS.contains(option.getLongOpt()) ? resolvePath(option.getValue(), folder) : option.getValue());
+			}
+		}
+		return arguments;
+	}
+	
+	// The folder paths are used as prefixes of the file paths, so the trailing separator is kept
+	private static String resolvePath(String path, Path folder) {
+		String resolved = folder.resolve(path).toString();
+		return path.endsWith("/") || path.endsWith(File.separator) ? resolved + File.separator : resolved;
+	}
+	
+	/**
+	 * Returns the options of the last parsed command line as command-line arguments, in the long form, 
+	 * leaving out the given options. Used for passing the options on to the simulations run in other processes.
+	 * 
+	 * @param excluded			The long names of the options to leave out
+	 * @return List<String>:	The arguments
+	 * 
+	 * @see HyperparameterTuner
+	 */
+	public List<String> getArguments(Set<String> excluded) {
+		List<String> arguments = new ArrayList<>();
+		for (Option option : this.commandLine.getOptions()) {
+			if (!excluded.contains(option.getLongOpt())) {
+				arguments.add("--" + option.getLongOpt());
+				if (option.hasArg()) {
+					arguments.add(option.getValue());
+				}
+			}
+		}
+		return arguments;
+	}
+	
+	/**
+	 * Checks whether the given long option name is an option that takes a value, such as a hyperparameter.
+	 * 
+	 * @param longOpt	The long name of the option
+	 * @return boolean:	True if the option exists and takes a value
+	 */
+	public boolean hasValueOption(String longOpt) {
+		Option option = this.options.getOption(longOpt);
+		return option != null && option.hasArg();
+	}
+	
 	/**
 	 * Creates a collection of Option objects that describe the possible options for a command line.
 	 */
@@ -193,6 +364,238 @@ public class ArgumentParser {
                         .argName("noise_decay")
                         .desc("The rate at which noise is decayed during training. Default value is 1e-6.")
                         .build());
+        options.addOption(
+                Option.builder("Q")
+                        .longOpt("prioritized-replay")
+                        .hasArg(false)
+                        .desc("Sample the training minibatches in proportion to the TD errors of the experiences "
+                        		+ "(prioritized experience replay), instead of uniformly. Not used with stacked training.")
+                        .build());
+        options.addOption(
+                Option.builder("A")
+                        .longOpt("priority-alpha")
+                        .hasArg()
+                        .argName("priority_alpha")
+                        .desc("The exponent of the priorities in the prioritized experience replay. "
+                        		+ "Default value is 0.6.")
+                        .build());
+        options.addOption(
+                Option.builder("B")
+                        .longOpt("priority-beta")
+                        .hasArg()
+                        .argName("priority_beta")
+                        .desc("The exponent of the importance-sampling weights in the prioritized experience replay. "
+                        		+ "Default value is 0.4.")
+                        .build());
+        options.addOption(
+                Option.builder("L")
+                        .longOpt("lazy-tasks")
+                        .hasArg(false)
+                        .desc("Generate the tasks lazily during the simulation instead of generating all of them at the start. "
+                        		+ "Reduces memory usage in long simulations with many devices. The generated tasks are the same.")
+                        .build());
+        options.addOption(
+                Option.builder("C")
+                        .longOpt("compact-tasks")
+                        .hasArg(false)
+                        .desc("Keep only streaming statistics of the finished tasks instead of the tasks themselves. "
+                        		+ "With lazy task generation, the finished tasks are also reused for new tasks.")
+                        .build());
+        options.addOption(
+                Option.builder("g")
+                        .longOpt("generation-threads")
+                        .hasArg()
+                        .argName("generation_threads")
+                        .desc("The number of threads used for generating the tasks and mobility paths of the devices. "
+                        		+ "The generated workload does not depend on the number of threads. "
+                        		+ "Default value is the number of available processors.")
+                        .build());
+        options.addOption(
+                Option.builder("w")
+                        .longOpt("training-threads")
+                        .hasArg()
+                        .argName("training_threads")
+                        .desc("The number of threads used for training the pricing agents of the cluster heads in parallel. "
+                        		+ "The results do not depend on the number of threads. Default value is 1.")
+                        .build());
+        options.addOption(
+                Option.builder("p")
+                        .longOpt("cpu-policy")
+                        .hasArg()
+                        .argName("policy")
+                        .desc("How the CPU cores are split between the parallel simulations and the math threads of ND4J: "
+                        		+ "simulation, math, balanced or auto (chosen from the measured training time of the previous episode). "
+                        		+ "Default value is balanced.")
+                        .build());
+        options.addOption(
+                Option.builder("S")
+                        .longOpt("stacked-training")
+                        .desc("Train the pricing agents of the cluster heads together as one batched computation, "
+                        		+ "instead of training them one by one. Each agent keeps its own parameters.")
+                        .build());
+        options.addOption(
+                Option.builder("P")
+                        .longOpt("shared-agent")
+                        .desc("Use one pricing agent shared by all the cluster heads (parameter sharing), "
+                        		+ "instead of one agent per cluster head.")
+                        .build());
+        options.addOption(
+                Option.builder("E")
+                        .longOpt("shared-agent-embedding")
+                        .hasArg()
+                        .argName("embedding_dim")
+                        .desc("The size of the cluster-id embedding appended to the states in the parameter-shared mode. "
+                        		+ "Default value is 0 (no embedding).")
+                        .build());
+        options.addOption(
+                Option.builder("k")
+                        .longOpt("checkpoint-threads")
+                        .hasArg()
+                        .argName("checkpoint_threads")
+                        .desc("The number of threads that write the agent states and price logs in the background "
+                        		+ "at the end of the simulations. Value 0 writes them on the simulation threads. Default value is 2.")
+                        .build());
+        options.addOption(
+                Option.builder("e")
+                        .longOpt("episodes")
+                        .hasArg()
+                        .argName("episodes")
+                        .desc("The number of training episodes run in one JVM, each with the next seed after the previous one. "
+                        		+ "The pricing agents stay in memory between the episodes. Default value is 1.")
+                        .build());
+        options.addOption(
+                Option.builder("K")
+                        .longOpt("checkpoint-interval")
+                        .hasArg()
+                        .argName("checkpoint_interval")
+                        .desc("Save the agent states every this many episodes (and after the last episode). Default value is 1.")
+                        .build());
+        options.addOption(
+                Option.builder("F")
+                        .longOpt("random-episodes")
+                        .hasArg()
+                        .argName("random_episodes")
+                        .desc("The number of first episodes that use the given number of random decision steps. "
+                        		+ "In the later episodes, only the first decision is random. "
+                        		+ "Default value is 0 (all episodes use the given number of random decision steps).")
+                        .build());
+        options.addOption(
+                Option.builder("G")
+                        .longOpt("convergence-window")
+                        .hasArg()
+                        .argName("convergence_window")
+                        .desc("Stop training early when the mean profits and prices of every cluster head have stayed within "
+                        		+ "the convergence tolerance over this many episodes. Default value is 0 (run all the episodes).")
+                        .build());
+        options.addOption(
+                Option.builder("J")
+                        .longOpt("convergence-tolerance")
+                        .hasArg()
+                        .argName("convergence_tolerance")
+                        .desc("The largest standard deviation of the mean profits and prices over the convergence window, "
+                        		+ "relative to their mean, with which the training is considered converged. Default value is 0.05.")
+                        .build());
+        options.addOption(
+                Option.builder("M")
+                        .longOpt("rollouts")
+                        .hasArg()
+                        .argName("rollouts")
+                        .desc("The number of simulations run concurrently with different seeds in each training episode, "
+                        		+ "all feeding one learner per cluster head. Default value is 1.")
+                        .build());
+        options.addOption(
+                Option.builder("U")
+                        .longOpt("publish-interval")
+                        .hasArg()
+                        .argName("publish_interval")
+                        .desc("With several rollouts, the learners publish the actor weights to the rollouts every this many experiences. "
+                        		+ "Default value is 5.")
+                        .build());
+        options.addOption(
+                Option.builder("X")
+                        .longOpt("bridge-dir")
+                        .hasArg()
+                        .argName("bridge_dir")
+                        .desc("Decide the prices with a pricing agent running in an external process, exchanging the states, "
+                        		+ "rewards and prices through a memory-mapped file in the given directory (e.g., /dev/shm).")
+                        .build());
+        options.addOption(
+                Option.builder("W")
+                        .longOpt("bridge-timeout")
+                        .hasArg()
+                        .argName("bridge_timeout")
+                        .desc("How long (in seconds) to wait for the external pricing agent to answer. Default value is 60.")
+                        .build());
+        options.addOption(
+                Option.builder("Y")
+                        .longOpt("record-dir")
+                        .hasArg()
+                        .argName("record_folder")
+                        .desc("Record the experiences of the cluster heads into the given folder, for training the agents offline. "
+                        		+ "In offline training, the folder from which the experiences are read.")
+                        .build());
+        options.addOption(
+                Option.builder("V")
+                        .longOpt("offline-passes")
+                        .hasArg()
+                        .argName("offline_passes")
+                        .desc("The number of passes over the recorded experiences in offline training. One pass trains the agents "
+                        		+ "as many times as they were trained when the experiences were recorded. Default value is 1.")
+                        .build());
+        options.addOption(
+                Option.builder("Z")
+                        .longOpt("tune")
+                        .hasArg()
+                        .argName("search_space")
+                        .desc("In hyperparameter tuning, the values to try for each hyperparameter, named by the long name of "
+                        		+ "its option, e.g., \"actorlr=0.005,0.001;criticlr=0.005,0.001\".")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("tune-min-episodes")
+                        .hasArg()
+                        .argName("episodes")
+                        .desc("In hyperparameter tuning, the number of training episodes of every trial in the first rung. "
+                        		+ "Default value is 1.")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("tune-max-episodes")
+                        .hasArg()
+                        .argName("episodes")
+                        .desc("In hyperparameter tuning, the number of training episodes of the trials in the last rung. "
+                        		+ "Default value is 10.")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("tune-reduction")
+                        .hasArg()
+                        .argName("reduction_factor")
+                        .desc("In hyperparameter tuning, the top 1 / reduction_factor of the trials of a rung are promoted to the "
+                        		+ "next rung, which trains them reduction_factor times as many episodes. Default value is 3.")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("tune-trials")
+                        .hasArg()
+                        .argName("trials")
+                        .desc("In hyperparameter tuning, the number of trials run concurrently. "
+                        		+ "Default value is the number of available processors.")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("tune-eval-episodes")
+                        .hasArg()
+                        .argName("episodes")
+                        .desc("In hyperparameter tuning, the number of evaluation episodes with which the trials are ranked "
+                        		+ "at the end of each rung. Default value is 1.")
+                        .build());
+        options.addOption(
+                Option.builder()
+                        .longOpt("tune-separate-jvms")
+                        .desc("In hyperparameter tuning, start a new JVM for every run of the trials, instead of running "
+                        		+ "them in this JVM, each in its own simulation context.")
+                        .build());
 	}
 	
 	/**
@@ -201,7 +604,7 @@ public class ArgumentParser {
 	 * @param cmd CommandLine object which represents the list of arguments parsed based on 
 	 * 			  an Options object.
 	 */
-	protected void setParameters(CommandLine cmd) {
+	protected void setParameters(CommandLine cmd) throws ParseException {
 		EisimSimulationParameters.settingFolder = cmd.getOptionValue("input");
 		EisimSimulationParameters.outputFolder = cmd.getOptionValue("output");
 		EisimSimulationParameters.modelFolder = cmd.getOptionValue("model-folder");
@@ -252,6 +655,89 @@ public class ArgumentParser {
         if (cmd.hasOption("noise-decay")) {
         	EisimSimulationParameters.noiseDecay = Math.max(0f, Float.parseFloat(cmd.getOptionValue("noise-decay")));
         }
+        
+        EisimSimulationParameters.prioritizedReplay = cmd.hasOption("prioritized-replay");
+        if (cmd.hasOption("priority-alpha")) {
+        	EisimSimulationParameters.priorityAlpha = Math.max(0f, Float.parseFloat(cmd.getOptionValue("priority-alpha")));
+        }
+        if (cmd.hasOption("priority-beta")) {
+        	EisimSimulationParameters.priorityBeta = Math.min(1f, Math.max(0f, Float.parseFloat(cmd.getOptionValue("priority-beta"))));
+        }
+        
+        EisimSimulationParameters.lazyTaskGeneration = cmd.hasOption("lazy-tasks");
+        EisimSimulationParameters.compactTaskStore = cmd.hasOption("compact-tasks");
+        EisimSimulationParameters.stackedTraining = cmd.hasOption("stacked-training");
+        EisimSimulationParameters.sharedAgent = cmd.hasOption("shared-agent");
+        
+        if (cmd.hasOption("generation-threads")) {
+        	EisimSimulationParameters.generationThreads = Math.max(1, Integer.parseInt(cmd.getOptionValue("generation-threads")));
+        }
+        if (cmd.hasOption("training-threads")) {
+        	EisimSimulationParameters.trainingThreads = Math.max(1, Integer.parseInt(cmd.getOptionValue("training-threads")));
+        }
+        if (cmd.hasOption("cpu-policy")) {
+        	try {
+        		EisimSimulationParameters.cpuPolicy = CpuBudget.Policy.valueOf(cmd.getOptionValue("cpu-policy").toUpperCase());
+        	} catch (IllegalArgumentException e) {
+        		throw new ParseException("Unknown CPU policy: " + cmd.getOptionValue("cpu-policy"));
+        	}
+        }
+        if (cmd.hasOption("checkpoint-threads")) {
+        	EisimSimulationParameters.checkpointThreads = Math.max(0, Integer.parseInt(cmd.getOptionValue("checkpoint-threads")));
+        }
+        if (cmd.hasOption("episodes")) {
+        	EisimSimulationParameters.episodes = Math.max(1, Integer.parseInt(cmd.getOptionValue("episodes")));
+        }
+        if (cmd.hasOption("checkpoint-interval")) {
+        	EisimSimulationParameters.checkpointInterval = Math.max(1, Integer.parseInt(cmd.getOptionValue("checkpoint-interval")));
+        }
+        if (cmd.hasOption("random-episodes")) {
+        	EisimSimulationParameters.randomDecisionEpisodes = Math.max(0, Integer.parseInt(cmd.getOptionValue("random-episodes")));
+        }
+        if (cmd.hasOption("convergence-window")) {
+        	EisimSimulationParameters.convergenceWindow = Math.max(0, Integer.parseInt(cmd.getOptionValue("convergence-window")));
+        }
+        if (cmd.hasOption("convergence-tolerance")) {
+        	EisimSimulationParameters.convergenceTolerance = Math.max(0f, Float.parseFloat(cmd.getOptionValue("convergence-tolerance")));
+        }
+        if (cmd.hasOption("shared-agent-embedding")) {
+        	EisimSimulationParameters.sharedAgentEmbeddingDim = Math.max(0, Integer.parseInt(cmd.getOptionValue("shared-agent-embedding")));
+        }
+        if (cmd.hasOption("rollouts")) {
+        	EisimSimulationParameters.rollouts = Math.max(1, Integer.parseInt(cmd.getOptionValue("rollouts")));
+        }
+        if (cmd.hasOption("publish-interval")) {
+        	EisimSimulationParameters.weightPublishInterval = Math.max(1, Integer.parseInt(cmd.getOptionValue("publish-interval")));
+        }
+        if (cmd.hasOption("bridge-dir")) {
+        	EisimSimulationParameters.bridgeDirectory = cmd.getOptionValue("bridge-dir");
+        }
+        if (cmd.hasOption("bridge-timeout")) {
+        	EisimSimulationParameters.bridgeTimeout = Math.max(1, Integer.parseInt(cmd.getOptionValue("bridge-timeout")));
+        }
+        
+        EisimSimulationParameters.recordFolder = cmd.getOptionValue("record-dir");
+        if (cmd.hasOption("offline-passes")) {
+        	EisimSimulationParameters.offlinePasses = Math.max(1, Integer.parseInt(cmd.getOptionValue("offline-passes")));
+        }
+        
+        EisimSimulationParameters.tuneSpace = cmd.getOptionValue("tune");
+        if (cmd.hasOption("tune-min-episodes")) {
+        	EisimSimulationParameters.tuneMinEpisodes = Math.max(1, Integer.parseInt(cmd.getOptionValue("tune-min-episodes")));
+        }
+        if (cmd.hasOption("tune-max-episodes")) {
+        	EisimSimulationParameters.tuneMaxEpisodes = Math.max(1, Integer.parseInt(cmd.getOptionValue("tune-max-episodes")));
+        }
+        if (cmd.hasOption("tune-reduction")) {
+        	EisimSimulationParameters.tuneReduction = Math.max(2, Integer.parseInt(cmd.getOptionValue("tune-reduction")));
+        }
+        if (cmd.hasOption("tune-trials")) {
+        	EisimSimulationParameters.tuneTrials = Math.max(1, Integer.parseInt(cmd.getOptionValue("tune-trials")));
+        }
+        if (cmd.hasOption("tune-eval-episodes")) {
+        	EisimSimulationParameters.tuneEvalEpisodes = Math.max(1, Integer.parseInt(cmd.getOptionValue("tune-eval-episodes")));
+        }
+        EisimSimulationParameters.tuneInProcess = !cmd.hasOption("tune-separate-jvms");
 		
 	}
 }
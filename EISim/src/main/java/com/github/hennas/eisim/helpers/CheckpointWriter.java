@@ -0,0 +1,125 @@
+package com.github.hennas.eisim.helpers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.SimulationContext;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
+
+/**
+ * A bounded pool of writer threads that save the agent states and the price logs in the background at the end
+ * of the simulations, so that the simulation threads do not wait for the file I/O.
+ * <p>
+ * The caller takes a snapshot of the state to save (copies that are not modified by the simulation anymore),
+ * and submits a write of the snapshot. The writes are run in parallel on {@link EisimSimulationParameters#checkpointThreads}
+ * threads. The number of queued writes is bounded: if the queue is full, the submitting thread runs the write
+ * itself, which also bounds the memory held by the snapshots. With zero threads, every write is run
+ * immediately by the submitting thread.
+ * <p>
+ * {@link #awaitCompletion()} waits until all the submitted writes have been completed, and reports the writes
+ * that failed. It is called before the JVM exits (also from a shutdown hook, in case the simulations were not
+ * started from {@link com.github.hennas.eisim.Main}, or at the end of the run of an isolated
+ * {@link SimulationContext}), and it must be called before the saved files are read again in the same JVM.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class CheckpointWriter {
+
+	/**
+	 * A write of a snapshot into a file.
+	 */
+	@FunctionalInterface
+	public interface Write {
+		void run() throws IOException;
+	}
+
+	private static final int QUEUED_WRITES_PER_THREAD = 4;
+
+	private static ExecutorService pool;
+	private static final List<Future<?>> pending = new ArrayList<>();
+
+	/**
+	 * This class should not be instantiated.
+	 */
+	private CheckpointWriter() {
+		throw new IllegalStateException("CheckpointWriter class cannot be instantiated");
+	}
+
+	/**
+	 * Submits a write to be run in the background.
+	 *
+	 * @param write			The write of a snapshot
+	 * @throws IOException	If the write is run immediately (no writer threads) and fails
+	 */
+	public static void submit(Write write) throws IOException {
+		if (EisimSimulationParameters.checkpointThreads <= 0) {
+			write.run();
+			return;
+		}
+		Future<?> future = getPool().submit(() -> {
+			write.run();
+			return null;
+		});
+		synchronized (pending) {
+			pending.add(future);
+		}
+	}
+
+	/**
+	 * Waits until all the submitted writes have been completed. The writes that failed are reported.
+	 *
+	 * @return boolean: True if all the writes succeeded
+	 */
+	public static boolean awaitCompletion() {
+		boolean succeeded = true;
+		while (true) {
+			List<Future<?>> futures;
+			synchronized (pending) {
+				if (pending.isEmpty()) {
+					return succeeded;
+				}
+				futures = new ArrayList<>(pending);
+				pending.clear();
+			}
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					SimLog.println("%s - Interrupted while waiting for the checkpoints to be written", CheckpointWriter.class.getSimpleName());
+					return false;
+				} catch (ExecutionException e) {
+					succeeded = false;
+					e.getCause().printStackTrace(SimLog.getOutput());
+				}
+			}
+		}
+	}
+
+	private static synchronized ExecutorService getPool() {
+		if (pool == null) {
+			int threads = EisimSimulationParameters.checkpointThreads;
+			pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(QUEUED_WRITES_PER_THREAD * threads), runnable -> {
+						Thread thread = new Thread(runnable, "checkpoint-writer");
+						thread.setDaemon(true); // The writes are waited for in the shutdown hook instead
+						return thread;
+					}, new ThreadPoolExecutor.CallerRunsPolicy());
+			ExecutorService writers = pool;
+			SimulationContext.current().addReleaseAction(() -> {
+				awaitCompletion();
+				writers.shutdown();
+			});
+		}
+		return pool;
+	}
+}
@@ -0,0 +1,177 @@
+package com.github.hennas.eisim.helpers;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
+
+/**
+ * Monitors the training progress over the training episodes, and detects when the training has converged,
+ * so that the remaining episodes can be skipped (see {@link EpisodeRunner}).
+ * <p>
+ * At the end of every simulation, each cluster head reports the mean profit and the mean price of its slots,
+ * as collected by its {@link PriceLogger}. At the end of an episode, the means of each cluster head (averaged
+ * over the simulations of the episode, if there are several rollouts) are added into a rolling window of the
+ * last {@link EisimSimulationParameters#convergenceWindow} episodes. The training has converged when the
+ * window of every cluster head is full, and the standard deviations of the mean profits and the mean prices
+ * in the window are at most {@link EisimSimulationParameters#convergenceTolerance} times their scale, that is,
+ * when the profit and price trajectories have flattened. The scale of the prices is their mean in the window.
+ * The mean profit of a cluster head can be close to zero, so the scale of the profits is the mean absolute
+ * profit of a slot in the window instead. (The reward of a slot is the profit scaled by a constant, so the
+ * criterion applies to the rewards as well.)
+ * <p>
+ * The episodes that use random decision steps (see {@link EisimSimulationParameters#randomDecisionEpisodes})
+ * are not added into the windows, as their prices are not decided by the agents.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class ConvergenceMonitor {
+
+	// The rolling windows, by the scenario and the name of the cluster head
+	private static final Map<String, Window> windows = new TreeMap<>();
+	// The sums of the means reported in the current episode: profit, absolute profit, price and the number of reports
+	private static final Map<String, double[]> episodeSums = new HashMap<>();
+
+	/**
+	 * This class should not be instantiated.
+	 */
+	private ConvergenceMonitor() {
+		throw new IllegalStateException("ConvergenceMonitor class cannot be instantiated");
+	}
+
+	/**
+	 * Checks whether the training progress is monitored, that is, whether several episodes are run in the
+	 * training mode with a convergence window.
+	 *
+	 * @return boolean: True if the training progress is monitored
+	 */
+	public static boolean isEnabled() {
+		return EisimSimulationParameters.convergenceWindow > 0 && EpisodeRunner.keepsAgentsResident();
+	}
+
+	/**
+	 * Reports the statistics of a cluster head at the end of a simulation.
+	 *
+	 * @param key		The scenario and the name of the cluster head
+	 * @param priceLog	The price logger of the cluster head
+	 */
+	public static synchronized void report(String key, PriceLogger priceLog) {
+		if (priceLog.getSlotCount() == 0) {
+			return;
+		}
+		double[] sums = episodeSums.computeIfAbsent(key, k -> new double[4]);
+		sums[0] += priceLog.getMeanProfit();
+		sums[1] += priceLog.getMeanAbsoluteProfit();
+		sums[2] += priceLog.getMeanPrice();
+		sums[3]++;
+	}
+
+	/**
+	 * Ends an episode: adds the means of the episode into the windows, and checks whether the training has converged.
+	 *
+	 * @param counted	Whether the episode is added into the windows
+	 * @return boolean:	True if the training has converged
+	 */
+	public static synchronized boolean endEpisode(boolean counted) {
+		if (!counted || episodeSums.isEmpty()) {
+			episodeSums.clear();
+			return false;
+		}
+		for (Map.Entry<String, double[]> entry : episodeSums.entrySet()) {
+			double[] sums = entry.getValue();
+			windows.computeIfAbsent(entry.getKey(), k -> new Window()).add(sums[0] / sums[3], sums[1] / sums[3], sums[2] / sums[3]);
+		}
+		episodeSums.clear();
+
+		// The largest relative deviations over the cluster heads, or infinity if a window is not full yet
+		double profitDeviation = 0;
+		double priceDeviation = 0;
+		for (Window window : windows.values()) {
+			profitDeviation = Math.max(profitDeviation, window.isFull() 
+					? relativeDeviation(window.profits.deviation(), window.absoluteProfits.mean()) : Double.POSITIVE_INFINITY);
+			priceDeviation = Math.max(priceDeviation, window.isFull() 
+					? relativeDeviation(window.prices.deviation(), window.prices.mean()) : Double.POSITIVE_INFINITY);
+		}
+		if (Double.isFinite(profitDeviation)) {
+			SimLog.println("%s - Relative deviations of the mean profits %.4f and the mean prices %.4f over the last %d episodes (tolerance %.4f)",
+					ConvergenceMonitor.class.getSimpleName(), profitDeviation, priceDeviation,
+					EisimSimulationParameters.convergenceWindow, EisimSimulationParameters.convergenceTolerance);
+		}
+		return profitDeviation <= EisimSimulationParameters.convergenceTolerance
+				&& priceDeviation <= EisimSimulationParameters.convergenceTolerance;
+	}
+
+	/**
+	 * Returns the standard deviation relative to the given scale.
+	 */
+	private static double relativeDeviation(double deviation, double scale) {
+		return deviation == 0 ? 0 : (scale == 0 ? Double.POSITIVE_INFINITY : deviation / Math.abs(scale));
+	}
+	
+	/**
+	 * Removes the monitored windows, for a new training run.
+	 */
+	public static synchronized void reset() {
+		windows.clear();
+		episodeSums.clear();
+	}
+
+	/**
+	 * The rolling windows of the mean profits, absolute profits and prices of a cluster head.
+	 */
+	private static class Window {
+		private final Statistic profits = new Statistic();
+		private final Statistic absoluteProfits = new Statistic();
+		private final Statistic prices = new Statistic();
+
+		private void add(double meanProfit, double meanAbsoluteProfit, double meanPrice) {
+			this.profits.add(meanProfit);
+			this.absoluteProfits.add(meanAbsoluteProfit);
+			this.prices.add(meanPrice);
+		}
+
+		private boolean isFull() {
+			return this.profits.values.size() >= EisimSimulationParameters.convergenceWindow;
+		}
+	}
+
+	/**
+	 * The rolling mean and variance of the last values of a statistic. The windows are short, so the mean and
+	 * the variance are computed from the values, which avoids the rounding errors of running sums.
+	 */
+	private static class Statistic {
+		private final ArrayDeque<Double> values = new ArrayDeque<>();
+
+		private void add(double value) {
+			this.values.addLast(value);
+			if (this.values.size() > EisimSimulationParameters.convergenceWindow) {
+				this.values.removeFirst();
+			}
+		}
+
+		private double mean() {
+			double sum = 0;
+			for (double value : this.values) {
+				sum += value;
+			}
+			return sum / this.values.size();
+		}
+
+		private double variance() {
+			double mean = this.mean();
+			double sum = 0;
+			for (double value : this.values) {
+				sum += (value - mean) * (value - mean);
+			}
+			return sum / this.values.size();
+		}
+
+		private double deviation() {
+			return Math.sqrt(this.variance());
+		}
+	}
+}
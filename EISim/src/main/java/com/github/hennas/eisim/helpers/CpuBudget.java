@@ -0,0 +1,161 @@
+package com.github.hennas.eisim.helpers;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.nd4j.linalg.factory.Nd4j;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
+
+/**
+ * Splits the CPU cores between the simulation threads and the native math threads of ND4J (its OpenMP and
+ * BLAS thread pools), so that parallel simulations do not oversubscribe the cores. By default, ND4J uses all
+ * the cores for every operation, so with one simulation thread per core, up to cores² threads would compete
+ * for the cores while the agents are trained.
+ * <p>
+ * Before the simulations of a run are launched, the number of simulation threads and the number of math threads
+ * per ND4J operation are chosen by the {@link Policy} given by {@link EisimSimulationParameters#cpuPolicy}, and
+ * the split is reported in the log. The math threads can only be set for the whole JVM in ND4J, so they are
+ * shared by all the threads that train agents: the simulation threads, or the threads of the {@link TrainingPool}
+ * if there are more of them. The math threads are only set in the training mode, as the agents do not use
+ * ND4J in the evaluation mode.
+ *
+ * @see com.github.hennas.eisim.core.simulationmanager.Simulation#launchSimulation()
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class CpuBudget {
+
+	/**
+	 * The policies for splitting the cores.
+	 */
+	public enum Policy {
+		/**
+		 * One simulation thread per core (up to the number of scenarios), and one math thread per operation.
+		 */
+		SIMULATION,
+		/**
+		 * One simulation thread, and the cores for the math threads.
+		 */
+		MATH,
+		/**
+		 * One simulation thread per core (up to the number of scenarios), and the remaining cores for the math
+		 * threads, divided between the threads that train agents.
+		 */
+		BALANCED,
+		/**
+		 * The split that minimizes the expected duration of the run, estimated from the share of the training
+		 * time measured in the previous run of the JVM (e.g., the previous episode). The first run uses the
+		 * balanced split.
+		 */
+		AUTO
+	}
+
+	// The assumed parallel fraction of the ND4J operations, which is low as the networks are small
+	private static final double MATH_PARALLEL_FRACTION = 0.5;
+
+	private static final LongAdder trainingNanos = new LongAdder();
+	private static int simulationThreads = 1;
+	private static long runStart;
+	private static double trainingShare = -1; // The share of the training time in the previous run, or -1 if not measured
+
+	/**
+	 * This class should not be instantiated.
+	 */
+	private CpuBudget() {
+		throw new IllegalStateException("CpuBudget class cannot be instantiated");
+	}
+
+	/**
+	 * Chooses the split of the cores for a run, sets the math threads of ND4J, and starts measuring the run.
+	 *
+	 * @param scenarios	The maximum number of simulations that can be run in parallel (1 for sequential execution)
+	 * @return int:		The number of simulation threads
+	 */
+	public static synchronized int allocate(int scenarios) {
+		int cores = Runtime.getRuntime().availableProcessors();
+		int maxSimulationThreads = Math.max(1, Math.min(cores, scenarios));
+		Policy policy = EisimSimulationParameters.cpuPolicy;
+		if (policy == Policy.AUTO && trainingShare < 0) {
+			policy = Policy.BALANCED;
+		}
+
+		switch (policy) {
+		case MATH:
+			simulationThreads = 1;
+			break;
+		case AUTO:
+			simulationThreads = chooseSimulationThreads(cores, scenarios, maxSimulationThreads);
+			break;
+		default:
+			simulationThreads = maxSimulationThreads;
+		}
+		int mathThreads = policy == Policy.SIMULATION ? 1 : getMathThreads(cores, simulationThreads);
+
+		if (EisimSimulationParameters.train) {
+			Nd4j.getEnvironment().setMaxThreads(mathThreads);
+			Nd4j.getEnvironment().setMaxMasterThreads(mathThreads);
+			Nd4j.factory().blas().setMaxThreads(mathThreads);
+			SimLog.println("%s - Policy %s%s: %d simulation threads and %d math threads per operation on %d cores",
+					CpuBudget.class.getSimpleName(), EisimSimulationParameters.cpuPolicy,
+					trainingShare >= 0 ? String.format(" (training share %.2f)", trainingShare) : "",
+					simulationThreads, mathThreads, cores);
+		} else {
+			SimLog.println("%s - Policy %s: %d simulation threads on %d cores", CpuBudget.class.getSimpleName(),
+					EisimSimulationParameters.cpuPolicy, simulationThreads, cores);
+		}
+
+		trainingNanos.reset();
+		runStart = System.nanoTime();
+		return simulationThreads;
+	}
+
+	/**
+	 * Ends the measurement of a run: the share of the training time is the training time of the run divided
+	 * by the thread time of the simulation threads.
+	 */
+	public static synchronized void release() {
+		double threadNanos = (double) (System.nanoTime() - runStart) * simulationThreads;
+		if (threadNanos > 0) {
+			trainingShare = Math.min(1, trainingNanos.sum() / threadNanos);
+		}
+	}
+
+	/**
+	 * Records the time spent in training an agent.
+	 *
+	 * @param nanos	The training time in nanoseconds
+	 */
+	public static void recordTraining(long nanos) {
+		trainingNanos.add(nanos);
+	}
+
+	/**
+	 * Returns the number of math threads per operation, when the cores are divided between the threads that train agents.
+	 */
+	private static int getMathThreads(int cores, int simulationThreads) {
+		int trainingThreads = Math.max(simulationThreads, EisimSimulationParameters.trainingThreads);
+		return Math.max(1, cores / trainingThreads);
+	}
+
+	/**
+	 * Chooses the number of simulation threads with the smallest expected duration of the run. Each simulation
+	 * thread runs its share of the scenarios one after another, and the training part of each simulation is sped
+	 * up by the math threads as by Amdahl's law. Ties are resolved in favour of more simulation threads.
+	 */
+	private static int chooseSimulationThreads(int cores, int scenarios, int maxSimulationThreads) {
+		int best = 1;
+		double bestDuration = Double.POSITIVE_INFINITY;
+		for (int threads = 1; threads <= maxSimulationThreads; threads++) {
+			int mathThreads = getMathThreads(cores, threads);
+			double trainingTime = (1 - MATH_PARALLEL_FRACTION) + MATH_PARALLEL_FRACTION / mathThreads;
+			double duration = Math.ceil((double) scenarios / threads) * ((1 - trainingShare) + trainingShare * trainingTime);
+			if (duration <= bestDuration) {
+				best = threads;
+				bestDuration = duration;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,153 @@
+package com.github.hennas.eisim.helpers;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.agents.PricingAgent;
+import com.github.hennas.eisim.agents.ddpg.RolloutLearner;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
+
+/**
+ * Runs several training episodes (simulation runs) in one JVM, as specified by {@link EisimSimulationParameters#episodes}.
+ * <p>
+ * The episodes are run one after another, and each episode is seeded with the next seed after the seed of the
+ * previous episode, so running N episodes starting from seed S corresponds to N separate training rounds with
+ * the seeds S, S + 1, ..., S + N - 1. Each episode writes its results into its own output folder, as a
+ * separate round would.
+ * <p>
+ * In the training mode, the pricing agents of the cluster heads stay resident in memory between the episodes:
+ * the cluster heads of the next episode continue with the agents (the networks and the experience replays) of the
+ * cluster heads with the same names, instead of loading them from the model folder. The agent states are saved
+ * only every {@link EisimSimulationParameters#checkpointInterval} episodes and after the last episode.
+ * <p>
+ * If {@link EisimSimulationParameters#convergenceWindow} is set, the training progress is monitored by the
+ * {@link ConvergenceMonitor}, and once the training has converged, the agent states are saved and the
+ * remaining episodes are skipped.
+ *
+ * @see com.github.hennas.eisim.defaultclasses.EisimComputingNode#initializeAgent()
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class EpisodeRunner {
+
+	// The resident agents, by the scenario and the name of the cluster head
+	private static final Map<String, PricingAgent> residentAgents = new ConcurrentHashMap<>();
+	private static int episode = 0;
+
+	/**
+	 * This class should not be instantiated.
+	 */
+	private EpisodeRunner() {
+		throw new IllegalStateException("EpisodeRunner class cannot be instantiated");
+	}
+
+	/**
+	 * Runs the episodes. The given action launches the simulations of one episode, and returns when they have finished.
+	 *
+	 * @param launchEpisode		The action that launches the simulations of one episode
+	 */
+	public static void run(Runnable launchEpisode) {
+		long firstSeed = EisimSimulationParameters.seed;
+		int randomDecisionSteps = EisimSimulationParameters.randomDecisionSteps;
+		long previousStart = 0;
+		for (episode = 0; episode < EisimSimulationParameters.episodes; episode++) {
+			// With concurrent rollouts, each episode uses as many consecutive seeds as there are rollouts
+			EisimSimulationParameters.seed = firstSeed + (long) episode * RolloutRunner.getRolloutCount();
+			if (EisimSimulationParameters.randomDecisionEpisodes > 0 && episode >= EisimSimulationParameters.randomDecisionEpisodes) {
+				// After the random exploration episodes, only the first decision is random
+				EisimSimulationParameters.randomDecisionSteps = Math.min(1, randomDecisionSteps);
+			}
+			if (EisimSimulationParameters.episodes > 1) {
+				// The output folders are named after the start time of the episode in seconds, so they must not start within the same second
+				previousStart = waitForNextSecond(previousStart);
+				SimLog.getOutput().println("Starting episode " + (episode + 1) + "/" + EisimSimulationParameters.episodes
+						+ (EisimSimulationParameters.useSeed ? " with seed " + EisimSimulationParameters.seed : ""));
+			}
+			launchEpisode.run();
+			
+			// Skipping the remaining episodes if the training has converged
+			boolean counted = EisimSimulationParameters.randomDecisionEpisodes == 0 || episode >= EisimSimulationParameters.randomDecisionEpisodes;
+			if (ConvergenceMonitor.isEnabled() && ConvergenceMonitor.endEpisode(counted) && episode < EisimSimulationParameters.episodes - 1) {
+				if (!isCheckpointEpisode()) {
+					saveAgents();
+				}
+				SimLog.getOutput().println("Training converged after episode " + (episode + 1) + "/" + EisimSimulationParameters.episodes 
+						+ ", the remaining " + (EisimSimulationParameters.episodes - episode - 1) + " episodes were skipped");
+				break;
+			}
+		}
+		residentAgents.clear();
+		ConvergenceMonitor.reset();
+	}
+	
+	/**
+	 * Saves the states of the resident agents and the learners of the rollouts, as at the end of a checkpoint episode.
+	 */
+	private static void saveAgents() {
+		for (PricingAgent agent : residentAgents.values()) {
+			try {
+				agent.saveAgentState();
+			} catch (IOException e) {
+				e.printStackTrace(SimLog.getOutput());
+			}
+		}
+		RolloutLearner.saveAll();
+	}
+
+	/**
+	 * Checks whether the agents stay resident in memory between the episodes, that is, whether several episodes are
+	 * run in the training mode.
+	 *
+	 * @return boolean: True if the agents stay resident
+	 */
+	public static boolean keepsAgentsResident() {
+		return EisimSimulationParameters.train && EisimSimulationParameters.episodes > 1;
+	}
+
+	/**
+	 * Checks whether the agent states are saved at the end of the current episode.
+	 *
+	 * @return boolean: True if the agent states are saved
+	 */
+	public static boolean isCheckpointEpisode() {
+		return !keepsAgentsResident() || episode == EisimSimulationParameters.episodes - 1
+				|| (episode + 1) % Math.max(1, EisimSimulationParameters.checkpointInterval) == 0;
+	}
+
+	/**
+	 * Returns the resident agent of the given cluster head.
+	 *
+	 * @param key				The scenario and the name of the cluster head
+	 * @return PricingAgent:	The resident agent, or null if there is none
+	 */
+	public static PricingAgent getResidentAgent(String key) {
+		return residentAgents.get(key);
+	}
+
+	/**
+	 * Keeps the agent of the given cluster head resident for the next episodes.
+	 *
+	 * @param key	The scenario and the name of the cluster head
+	 * @param agent	The agent
+	 */
+	public static void addResidentAgent(String key, PricingAgent agent) {
+		residentAgents.put(key, agent);
+	}
+
+	private static long waitForNextSecond(long previousStart) {
+		long second = System.currentTimeMillis() / 1000;
+		while (second == previousStart) {
+			try {
+				Thread.sleep(1000 - System.currentTimeMillis() % 1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			second = System.currentTimeMillis() / 1000;
+		}
+		return second;
+	}
+}
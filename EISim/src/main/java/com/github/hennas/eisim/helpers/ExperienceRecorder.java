@@ -0,0 +1,229 @@
+package com.github.hennas.eisim.helpers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.core.scenariomanager.Scenario;
+import com.github.hennas.eisim.core.simulationmanager.SimulationManager;
+
+/**
+ * Records the experiences of a cluster head, that is, the (state, action, reward, nextState) tuples of its
+ * price slots, into a binary file while the simulation runs, so that the pricing agents can later be trained
+ * from the recorded experiences without running the simulation (see
+ * {@link com.github.hennas.eisim.agents.ddpg.OfflineTrainer}).
+ * <p>
+ * The experiences are recorded under {@link EisimSimulationParameters#recordFolder}, into the folder
+ * {@code scenario_<algorithm>_<architecture>_<devices>/<cluster head>}, which mirrors the layout of the model
+ * folder. Each simulation run writes a new file into the folder. The file consists of a fixed-size header
+ * followed by the experiences, one row per experience, all in little-endian byte order:
+ * <pre>
+ * int   magic       ("EISX")
+ * int   version
+ * int   stateDim    (the dimension of the state space)
+ * float minPrice    (the price range of the cluster head)
+ * float maxPrice
+ * int   reserved
+ * rows: float state[stateDim], float action, float reward, float nextState[stateDim]
+ * </pre>
+ * The number of experiences is not stored, but follows from the length of the file, so the experiences can
+ * be appended as they are observed. The rows are buffered and written through a {@link FileChannel} when
+ * the buffer is full and when the recorder is closed. If a run is aborted, an incomplete last row is ignored.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class ExperienceRecorder {
+
+	public static final int MAGIC = 0x45495358; // "EISX"
+	public static final int VERSION = 1;
+	public static final int HEADER_BYTES = 24;
+	public static final String FILE_EXTENSION = ".eisx";
+
+	private static final int BUFFER_BYTES = 1 << 16;
+
+	protected final int stateDim;
+	protected final FileChannel channel;
+	protected final ByteBuffer buffer;
+
+	protected ExperienceRecorder(FileChannel channel, int stateDim) {
+		this.channel = channel;
+		this.stateDim = stateDim;
+		this.buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_BYTES, getRowBytes(stateDim))).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Creates a new recording file for a cluster head, and writes its header.
+	 *
+	 * @param simulationManager		The simulation manager of the simulation in which the cluster head is
+	 * @param name					The name of the cluster head
+	 * @param stateDim				The dimension of the state space
+	 * @param minPrice				The minimum price of the cluster head
+	 * @param maxPrice				The maximum price of the cluster head
+	 * @return ExperienceRecorder:	The recorder
+	 * @throws IOException			If the file cannot be created
+	 */
+	public static ExperienceRecorder create(SimulationManager simulationManager, String name, int stateDim,
+			float minPrice, float maxPrice) throws IOException {
+		Scenario scenario = simulationManager.getScenario();
+		Path folder = Path.of(EisimSimulationParameters.recordFolder, "scenario_" + scenario.getStringOrchAlgorithm() + "_"
+				+ scenario.getStringOrchArchitecture() + "_" + scenario.getDevicesCount(), name);
+		Files.createDirectories(folder);
+
+		// The file is named after the time and the simulation, with a suffix if a file of the same run already exists
+		String base = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date()) + "_" + simulationManager.getSimulationId();
+		FileChannel channel = null;
+		for (int n = 0; channel == null; n++) {
+			try {
+				channel = FileChannel.open(folder.resolve(base + (n > 0 ? "_" + n : "") + FILE_EXTENSION),
+						StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+			} catch (FileAlreadyExistsException e) {
+				// Try the next suffix
+			}
+		}
+
+		ExperienceRecorder recorder = new ExperienceRecorder(channel, stateDim);
+		recorder.buffer.putInt(MAGIC).putInt(VERSION).putInt(stateDim).putFloat(minPrice).putFloat(maxPrice).putInt(0);
+		return recorder;
+	}
+
+	/**
+	 * Records an experience.
+	 *
+	 * @param state			Initial state
+	 * @param action		The action taken in the initial state
+	 * @param reward		The reward received
+	 * @param nextState		The state that followed from the initial state after taking the action
+	 * @throws IOException	If the buffered experiences cannot be written
+	 */
+	public void record(float[] state, float action, float reward, float[] nextState) throws IOException {
+		if (this.buffer.remaining() < getRowBytes(this.stateDim)) {
+			this.flush();
+		}
+		for (int j = 0; j < this.stateDim; j++) {
+			this.buffer.putFloat(state[j]);
+		}
+		this.buffer.putFloat(action).putFloat(reward);
+		for (int j = 0; j < this.stateDim; j++) {
+			this.buffer.putFloat(nextState[j]);
+		}
+	}
+
+	/**
+	 * Writes the buffered experiences and closes the file.
+	 *
+	 * @throws IOException If the buffered experiences cannot be written
+	 */
+	public void close() throws IOException {
+		try {
+			this.flush();
+		} finally {
+			this.channel.close();
+		}
+	}
+
+	private void flush() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	private static int getRowBytes(int stateDim) {
+		return Float.BYTES * (2 * stateDim + 2);
+	}
+
+	/**
+	 * Reads a recording file by memory-mapping it.
+	 *
+	 * @param path			The path of the file
+	 * @return Recording:	The content of the file
+	 * @throws IOException	If the file cannot be read or is not a recording file
+	 */
+	public static Recording read(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_BYTES) {
+				throw new IOException("The recording file " + path + " is too short");
+			}
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			mapped.order(ByteOrder.LITTLE_ENDIAN);
+			if (mapped.getInt() != MAGIC) {
+				throw new IOException("The file " + path + " is not an experience recording");
+			}
+			int version = mapped.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported version " + version + " of the recording file " + path);
+			}
+			int stateDim = mapped.getInt();
+			float minPrice = mapped.getFloat();
+			float maxPrice = mapped.getFloat();
+			mapped.position(HEADER_BYTES);
+			int size = (int) ((channel.size() - HEADER_BYTES) / getRowBytes(stateDim));
+			FloatBuffer rows = mapped.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+			rows.limit(size * (2 * stateDim + 2));
+			return new Recording(stateDim, minPrice, maxPrice, size, rows);
+		}
+	}
+
+	/**
+	 * The content of a recording file.
+	 */
+	public static class Recording {
+
+		private final int stateDim;
+		private final float minPrice;
+		private final float maxPrice;
+		private final int size;
+		private final FloatBuffer rows;
+
+		protected Recording(int stateDim, float minPrice, float maxPrice, int size, FloatBuffer rows) {
+			this.stateDim = stateDim;
+			this.minPrice = minPrice;
+			this.maxPrice = maxPrice;
+			this.size = size;
+			this.rows = rows;
+		}
+
+		public int getStateDim() {
+			return this.stateDim;
+		}
+
+		public float getMinPrice() {
+			return this.minPrice;
+		}
+
+		public float getMaxPrice() {
+			return this.maxPrice;
+		}
+
+		/**
+		 * Returns the number of complete experiences in the file.
+		 *
+		 * @return int: The number of experiences
+		 */
+		public int getSize() {
+			return this.size;
+		}
+
+		/**
+		 * Returns the experiences, {@code 2 * stateDim + 2} values per row in the order described in
+		 * {@link ExperienceRecorder}.
+		 *
+		 * @return FloatBuffer: The rows of the experiences
+		 */
+		public FloatBuffer getRows() {
+			return this.rows;
+		}
+	}
+}
@@ -0,0 +1,469 @@
+package com.github.hennas.eisim.helpers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.Main;
+import com.github.hennas.eisim.SimulationContext;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
+
+/**
+ * Tunes the hyperparameters of the pricing agents with asynchronous successive halving (ASHA).
+ * <p>
+ * Usage:
+ * <pre>
+ * HyperparameterTuner -i &lt;setting_folder&gt; -o &lt;output_folder&gt; -m &lt;model_folder&gt; -Z &lt;search_space&gt; [OTHER OPTIONS]
+ * </pre>
+ * The search space ({@link EisimSimulationParameters#tuneSpace}) gives the values to try for the hyperparameters,
+ * which are named by the long names of their options, and every combination of the values is a trial. The other
+ * options are passed on to the simulations of the trials as they are.
+ * <p>
+ * The trials are trained in rungs. In the first rung, every trial is trained for
+ * {@link EisimSimulationParameters#tuneMinEpisodes} episodes, and each next rung trains the trial
+ * {@link EisimSimulationParameters#tuneReduction} times as many episodes in total, up to
+ * {@link EisimSimulationParameters#tuneMaxEpisodes} episodes in the last rung. At the end of a rung, the trial is
+ * evaluated for {@link EisimSimulationParameters#tuneEvalEpisodes} episodes, with the same evaluation seeds for every
+ * trial, and ranked against the other trials evaluated in the same rung by the total profit of the cluster heads per
+ * episode and by the task success rate (by the sum of the two ranks, the profit breaking ties). A trial is promoted
+ * to the next rung as soon as it is among the top 1 / tuneReduction of the trials evaluated in its rung, so the
+ * trials do not wait for each other, and the training of a promoted trial continues from its saved agents.
+ * <p>
+ * The hyperparameters are static, so they are shared by all the simulations loaded by the same class loader. Each
+ * training and evaluation run of a trial is therefore run in its own {@link SimulationContext} in this JVM, or, if
+ * {@link EisimSimulationParameters#tuneInProcess} is unset (option {@code --tune-separate-jvms}), in its own JVM with
+ * {@link Main}. The runs use the model folder
+ * {@code <model_folder>/trial_<n>} and output folders under {@code <output_folder>/trial_<n>}.
+ * {@link EisimSimulationParameters#tuneTrials} runs are run concurrently. The evaluation results of all the trials
+ * are written into one table, {@code <output_folder>/tuning_results.csv}, which is updated whenever a rung of a
+ * trial has finished.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class HyperparameterTuner {
+
+	private static final String RESULT_FILE = "tuning_results.csv";
+
+	// The options set by the tuner for every run, which are not passed on as they are
+	private static final Set<String> TUNER_OPTIONS = Set.of("help", "output", "model-folder", "seed", "train", "episodes",
+			"random-steps", "random-episodes", "convergence-window", "tune", "tune-min-episodes", "tune-max-episodes",
+			"tune-reduction", "tune-trials", "tune-eval-episodes", "tune-separate-jvms");
+
+	private final ArgumentParser parser;
+	private final List<String> hyperparameters = new ArrayList<>();
+	private final List<Trial> trials = new ArrayList<>();
+	private final int[] budgets; // The number of training episodes of each rung
+	private final long firstSeed;
+	private int nextTrial = 0; // The next trial to start in the first rung
+	private int running = 0;
+
+	public static void main(String[] args) throws InterruptedException, IOException {
+		ArgumentParser parser = new ArgumentParser();
+		if (!parser.parseArguments(args)) {
+			return;
+		}
+		if (EisimSimulationParameters.tuneSpace == null) {
+			SimLog.getOutput().println("HyperparameterTuner - The search space must be given with the option -Z (--tune)");
+			return;
+		}
+		new HyperparameterTuner(parser).run();
+	}
+
+	/**
+	 * Initializes the trials of the search space and the budgets of the rungs.
+	 *
+	 * @param parser	The parser of the command-line arguments
+	 */
+	public HyperparameterTuner(ArgumentParser parser) {
+		this.parser = parser;
+		this.firstSeed = EisimSimulationParameters.useSeed ? EisimSimulationParameters.seed : 1;
+
+		List<Integer> rungBudgets = new ArrayList<>();
+		int maxEpisodes = EisimSimulationParameters.tuneMaxEpisodes;
+		int budget = Math.min(EisimSimulationParameters.tuneMinEpisodes, maxEpisodes);
+		rungBudgets.add(budget);
+		while (budget < maxEpisodes) {
+			budget = (int) Math.min((long) budget * EisimSimulationParameters.tuneReduction, maxEpisodes);
+			rungBudgets.add(budget);
+		}
+		this.budgets = rungBudgets.stream().mapToInt(Integer::intValue).toArray();
+
+		// Every combination of the values is a trial
+		List<Map<String, String>> combinations = new ArrayList<>();
+		combinations.add(new LinkedHashMap<>());
+		for (String dimension : EisimSimulationParameters.tuneSpace.split(";")) {
+			String[] nameAndValues = dimension.split("=", 2);
+			String name = nameAndValues[0].trim();
+			if (nameAndValues.length < 2 || !parser.hasValueOption(name) || TUNER_OPTIONS.contains(name)) {
+				throw new IllegalArgumentException("HyperparameterTuner - Invalid hyperparameter in the search space: " + dimension);
+			}
+			this.hyperparameters.add(name);
+			List<Map<String, String>> extended = new ArrayList<>();
+			for (Map<String, String> combination : combinations) {
+				for (String value : nameAndValues[1].split(",")) {
+					Map<String, String> values = new LinkedHashMap<>(combination);
+					values.put(name, value.trim());
+					extended.add(values);
+				}
+			}
+			combinations = extended;
+		}
+		for (Map<String, String> values : combinations) {
+			this.trials.add(new Trial(this.trials.size(), values));
+		}
+	}
+
+	/**
+	 * Runs the trials until no trial can be promoted anymore, and writes the result table.
+	 *
+	 * @throws InterruptedException	If interrupted while waiting for the runs
+	 * @throws IOException			If the result table cannot be written
+	 */
+	public void run() throws InterruptedException, IOException {
+		long start = System.currentTimeMillis();
+		SimLog.getOutput().println("HyperparameterTuner - " + this.trials.size() + " trials, rungs of " + Arrays.toString(this.budgets)
+				+ " training episodes, " + EisimSimulationParameters.tuneTrials + " concurrent runs");
+		ExecutorService pool = Executors.newFixedThreadPool(EisimSimulationParameters.tuneTrials);
+		try {
+			synchronized (this) {
+				while (true) {
+					Trial trial = this.running < EisimSimulationParameters.tuneTrials ? this.nextJob() : null;
+					if (trial == null) {
+						if (this.running == 0) {
+							break;
+						}
+						this.wait();
+						continue;
+					}
+					trial.busy = true;
+					this.running++;
+					int rung = trial.rung + 1;
+					pool.submit(() -> this.runRung(trial, rung));
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		this.writeResults();
+
+		Trial best = null;
+		for (int rung = this.budgets.length - 1; rung >= 0 && best == null; rung--) {
+			List<Trial> ranked = this.rank(rung);
+			best = ranked.isEmpty() ? null : ranked.get(0);
+		}
+		SimLog.getOutput().println("HyperparameterTuner - Tuning took " + (System.currentTimeMillis() - start) / 1000 + " seconds, the results "
+				+ "were saved to the file: " + Path.of(EisimSimulationParameters.outputFolder, RESULT_FILE));
+		if (best != null) {
+			SimLog.getOutput().println("HyperparameterTuner - Best trial: " + best.index + " " + best.values + " with profit "
+					+ best.profits[best.rung] + " and task success rate " + best.successRates[best.rung] + " after "
+					+ this.budgets[best.rung] + " training episodes");
+		}
+	}
+
+	/**
+	 * Chooses the next trial to run: a trial that can be promoted from the highest possible rung, or else the next
+	 * trial that has not been started yet.
+	 *
+	 * @return Trial: The trial, or null if there is nothing to run at the moment
+	 */
+	private Trial nextJob() {
+		for (int rung = this.budgets.length - 2; rung >= 0; rung--) {
+			List<Trial> ranked = this.rank(rung);
+			int promoted = ranked.size() / EisimSimulationParameters.tuneReduction;
+			for (int i = 0; i < promoted; i++) {
+				Trial trial = ranked.get(i);
+				if (!trial.busy && trial.rung == rung) {
+					return trial;
+				}
+			}
+		}
+		return this.nextTrial < this.trials.size() ? this.trials.get(this.nextTrial++) : null;
+	}
+
+	/**
+	 * Returns the trials evaluated in the given rung, from the best to the worst.
+	 */
+	private List<Trial> rank(int rung) {
+		List<Trial> evaluated = this.trials.stream().filter(t -> !t.failed && t.rung >= rung).collect(Collectors.toList());
+		Map<Trial, Integer> ranks = new LinkedHashMap<>();
+		evaluated.sort(Comparator.comparingDouble((Trial t) -> -t.successRates[rung]));
+		for (int i = 0; i < evaluated.size(); i++) {
+			ranks.put(evaluated.get(i), i);
+		}
+		evaluated.sort(Comparator.comparingDouble((Trial t) -> -t.profits[rung]));
+		for (int i = 0; i < evaluated.size(); i++) {
+			ranks.merge(evaluated.get(i), i, Integer::sum);
+		}
+		// The sort is stable, so the profit breaks the ties
+		evaluated.sort(Comparator.comparingInt(ranks::get));
+		return evaluated;
+	}
+
+	/**
+	 * Trains the trial up to the budget of the given rung, and evaluates it.
+	 */
+	private void runRung(Trial trial, int rung) {
+		boolean succeeded = false;
+		double[] metrics = null;
+		try {
+			Path output = Path.of(EisimSimulationParameters.outputFolder, "trial_" + trial.index);
+			Files.createDirectories(output);
+			Path log = output.resolve("log.txt");
+			if (this.runSimulations(this.getTrainingArguments(trial, rung), log)
+					&& this.runSimulations(this.getEvaluationArguments(trial, rung), log)) {
+				metrics = readMetrics(output.resolve("evaluation_rung" + rung));
+				succeeded = metrics != null;
+			}
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace(SimLog.getOutput());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			// Whatever happened to the run, the trial is finished, so that run() does not wait for it forever
+			synchronized (this) {
+				if (succeeded) {
+					trial.rung = rung;
+					trial.profits[rung] = metrics[0];
+					trial.successRates[rung] = metrics[1];
+					SimLog.getOutput().println("HyperparameterTuner - Trial " + trial.index + " " + trial.values + " after "
+							+ this.budgets[rung] + " training episodes: profit " + metrics[0] + ", task success rate " + metrics[1]);
+				} else {
+					trial.failed = true;
+					SimLog.getOutput().println("HyperparameterTuner - Trial " + trial.index + " " + trial.values + " failed in rung "
+							+ rung + ", see " + Path.of(EisimSimulationParameters.outputFolder, "trial_" + trial.index, "log.txt"));
+				}
+				trial.busy = false;
+				this.running--;
+				try {
+					this.writeResults();
+				} catch (IOException e) {
+					e.printStackTrace(SimLog.getOutput());
+				}
+				this.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Returns the arguments of the training run that continues the training of the trial up to the budget of the rung.
+	 */
+	private List<String> getTrainingArguments(Trial trial, int rung) {
+		int trained = rung > 0 ? this.budgets[rung - 1] : 0;
+		List<String> arguments = this.getArguments(trial);
+		arguments.addAll(List.of("--train", "--seed", String.valueOf(this.firstSeed + trained),
+				"--episodes", String.valueOf(this.budgets[rung] - trained),
+				"--output", Path.of(EisimSimulationParameters.outputFolder, "trial_" + trial.index, "training").toString()));
+
+		// The random decision steps are only used in the first episodes of the whole training, if so specified
+		int randomSteps = EisimSimulationParameters.randomDecisionSteps;
+		int randomEpisodes = EisimSimulationParameters.randomDecisionEpisodes;
+		if (randomEpisodes == 0) {
+			arguments.addAll(List.of("--random-steps", String.valueOf(randomSteps)));
+		} else if (randomEpisodes > trained) {
+			arguments.addAll(List.of("--random-steps", String.valueOf(randomSteps), "--random-episodes", String.valueOf(randomEpisodes - trained)));
+		} else {
+			arguments.addAll(List.of("--random-steps", String.valueOf(Math.min(1, randomSteps))));
+		}
+		return arguments;
+	}
+
+	/**
+	 * Returns the arguments of the evaluation run of the trial at the end of the rung.
+	 */
+	private List<String> getEvaluationArguments(Trial trial, int rung) {
+		List<String> arguments = this.getArguments(trial);
+		arguments.addAll(List.of("--seed", String.valueOf(this.firstSeed + EisimSimulationParameters.tuneMaxEpisodes),
+				"--episodes", String.valueOf(EisimSimulationParameters.tuneEvalEpisodes),
+				"--output", Path.of(EisimSimulationParameters.outputFolder, "trial_" + trial.index, "evaluation_rung" + rung).toString()));
+		return arguments;
+	}
+
+	/**
+	 * Returns the arguments common to all the runs of the trial: the options passed on as they are, the model folder
+	 * of the trial and the hyperparameters of the trial.
+	 */
+	private List<String> getArguments(Trial trial) {
+		Set<String> excluded = new HashSet<>(TUNER_OPTIONS);
+		excluded.addAll(this.hyperparameters);
+		List<String> arguments = new ArrayList<>(this.parser.getArguments(excluded));
+		arguments.addAll(List.of("--model-folder", Path.of(EisimSimulationParameters.modelFolder, "trial_" + trial.index).toString()));
+		for (Map.Entry<String, String> value : trial.values.entrySet()) {
+			arguments.addAll(List.of("--" + value.getKey(), value.getValue()));
+		}
+		return arguments;
+	}
+
+	/**
+	 * Runs the simulations with the given arguments in a new simulation context or, if requested, in a new JVM,
+	 * appending their output into the given log file.
+	 *
+	 * @return boolean: True if the run succeeded
+	 */
+	private boolean runSimulations(List<String> arguments, Path log) throws IOException, InterruptedException {
+		if (EisimSimulationParameters.tuneInProcess) {
+			return runInContext(arguments, log);
+		}
+		List<String> command = new ArrayList<>();
+		command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+		for (String jvmArgument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			if (!jvmArgument.startsWith("-agentlib") && !jvmArgument.startsWith("-javaagent")) {
+				command.add(jvmArgument);
+			}
+		}
+		command.addAll(List.of("-cp", getClassPath(), Main.class.getName()));
+		command.addAll(arguments);
+
+		ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(Redirect.appendTo(log.toFile()));
+		// The concurrent runs share the processors
+		if (!System.getenv().containsKey("OMP_NUM_THREADS")) {
+			builder.environment().put("OMP_NUM_THREADS",
+					String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors() / EisimSimulationParameters.tuneTrials)));
+		}
+		return builder.start().waitFor() == 0;
+	}
+
+	/**
+	 * Runs the simulations with the given arguments in a new simulation context on the calling thread, appending
+	 * the output of the context into the given log file.
+	 *
+	 * @return boolean: True if the run succeeded
+	 */
+	private static boolean runInContext(List<String> arguments, Path log) throws IOException {
+		try (PrintStream output = new PrintStream(new FileOutputStream(log.toFile(), true), true)) {
+			try {
+				new SimulationContext(output, arguments.toArray(new String[0])).run();
+				return true;
+			} catch (RuntimeException e) {
+				// The failure is written into the log of the trial, next to the output of the context
+				e.printStackTrace(output);
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Returns the class path of the simulator, also when it has been started through Maven.
+	 */
+	private static String getClassPath() {
+		ClassLoader loader = HyperparameterTuner.class.getClassLoader();
+		if (loader instanceof URLClassLoader) {
+			List<String> paths = new ArrayList<>();
+			try {
+				for (URL url : ((URLClassLoader) loader).getURLs()) {
+					paths.add(Path.of(url.toURI()).toString());
+				}
+				return String.join(File.pathSeparator, paths);
+			} catch (URISyntaxException e) {
+				// Fall back to the class path of the JVM
+			}
+		}
+		return System.getProperty("java.class.path");
+	}
+
+	/**
+	 * Reads the total profit of the cluster heads per episode and the task success rate from the outputs of an
+	 * evaluation run: the price logs and the simulation results of each episode folder.
+	 *
+	 * @param output		The output folder of the evaluation run
+	 * @return double[]:	The profit and the task success rate, or null if the outputs were not found
+	 */
+	private static double[] readMetrics(Path output) throws IOException {
+		double profit = 0;
+		double generatedTasks = 0;
+		double successfulTasks = 0;
+		int episodes = 0;
+		try (Stream<Path> episodeFolders = Files.list(output)) {
+			for (Path episodeFolder : (Iterable<Path>) episodeFolders.filter(Files::isDirectory)::iterator) {
+				episodes++;
+				try (Stream<Path> files = Files.walk(episodeFolder)) {
+					for (Path file : (Iterable<Path>) files.filter(f -> f.toString().endsWith(".csv"))::iterator) {
+						List<String> lines = Files.readAllLines(file);
+						if (lines.isEmpty()) {
+							continue;
+						}
+						List<String> header = List.of(lines.get(0).split(",")).stream().map(String::trim).collect(Collectors.toList());
+						int profitColumn = header.indexOf("Profit");
+						int generatedColumn = header.indexOf("Number of generated tasks");
+						int successfulColumn = header.indexOf("Tasks successfully executed");
+						for (String line : lines.subList(1, lines.size())) {
+							String[] values = line.split(",");
+							if (profitColumn >= 0) {
+								profit += Double.parseDouble(values[profitColumn]);
+							} else if (generatedColumn >= 0 && successfulColumn >= 0) {
+								generatedTasks += Double.parseDouble(values[generatedColumn]);
+								successfulTasks += Double.parseDouble(values[successfulColumn]);
+							}
+						}
+					}
+				}
+			}
+		}
+		if (episodes == 0 || generatedTasks == 0) {
+			return null;
+		}
+		return new double[] {profit / episodes, successfulTasks / generatedTasks};
+	}
+
+	/**
+	 * Writes the result table: one row for every rung in which a trial has been evaluated, and one row for every
+	 * failed trial.
+	 */
+	private synchronized void writeResults() throws IOException {
+		List<String> lines = new ArrayList<>();
+		lines.add("Trial," + String.join(",", this.hyperparameters) + ",Rung,Training episodes,Profit,Task success rate,Status");
+		for (Trial trial : this.trials) {
+			String values = trial.index + "," + String.join(",", trial.values.values());
+			for (int rung = 0; rung <= trial.rung; rung++) {
+				String status = rung < trial.rung ? "promoted" : (trial.failed ? "failed in next rung" : (trial.busy ? "running"
+						: (rung == this.budgets.length - 1 ? "completed" : "stopped")));
+				lines.add(values + "," + rung + "," + this.budgets[rung] + "," + trial.profits[rung] + "," + trial.successRates[rung] + "," + status);
+			}
+			if (trial.failed && trial.rung < 0) {
+				lines.add(values + ",0," + this.budgets[0] + ",,,failed");
+			}
+		}
+		Path path = Path.of(EisimSimulationParameters.outputFolder, RESULT_FILE);
+		Files.createDirectories(path.getParent());
+		Files.write(path, lines);
+	}
+
+	/**
+	 * A combination of hyperparameter values and its progress through the rungs.
+	 */
+	private class Trial {
+		private final int index;
+		private final Map<String, String> values;
+		private final double[] profits = new double[budgets.length];
+		private final double[] successRates = new double[budgets.length];
+		private int rung = -1; // The highest rung in which the trial has been evaluated
+		private boolean busy = false;
+		private boolean failed = false;
+
+		private Trial(int index, Map<String, String> values) {
+			this.index = index;
+			this.values = values;
+		}
+	}
+}
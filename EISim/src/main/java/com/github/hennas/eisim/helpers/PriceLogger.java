@@ -11,8 +11,6 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
-import org.nd4j.linalg.api.ndarray.INDArray;
-
 import com.github.hennas.eisim.EisimSimulationParameters;
 import com.github.hennas.eisim.agents.PricingAgent;
 import com.github.hennas.eisim.core.scenariomanager.Scenario;
@@ -37,6 +35,9 @@ public class PriceLogger {
 	protected String simStartTime;
 	protected SimulationManager simulationManager;
 	protected double cumulativeProfit = 0.0;
+	protected int slotCount = 0; // The number of logged slots
+	protected double priceSum = 0.0;
+	protected double absoluteProfitSum = 0.0;
 	
 	/**
 	 * Initialize a price logger.
@@ -66,21 +67,28 @@ public class PriceLogger {
 	 * @param profit	The profit gained during the slot
 	 * @param state		The state at the beginning of the slot
 	 */
-	public void addLine(double simTime, float price, double profit, INDArray state) {
+	public void addLine(double simTime, float price, double profit, float[] state) {
 		if (state != null) {
 			cumulativeProfit += profit;
-			String stateStr = Arrays.toString(state.data().asFloat()).replace(",", ";");
+			slotCount++;
+			priceSum += price;
+			absoluteProfitSum += Math.abs(profit);
+			String stateStr = Arrays.toString(state).replace(",", ";");
 			priceLog.add(decimalFormat.format(simTime) + "," + price + "," + profit + "," + cumulativeProfit + "," + stateStr);
 		}
 	}
 	
 	/**
-	 * Saves the log into a CSV file.
+	 * Saves the log into a CSV file. The lines logged so far are handed over to the {@link CheckpointWriter}, 
+	 * which writes them in the background.
 	 * 
 	 * @throws IOException
 	 */
 	public void saveLog() throws IOException {
-		writeFile(getPathName(".csv"), getPriceLog());
+		String pathName = getPathName(".csv");
+		List<String> lines = new ArrayList<>(getPriceLog());
+		getPriceLog().clear();
+		CheckpointWriter.submit(() -> writeFile(pathName, lines));
 	}
 	
 	/**
@@ -120,6 +128,42 @@ public class PriceLogger {
 		}
 	}
 	
+	/**
+	 * Returns the number of slots logged since the beginning of the simulation.
+	 * 
+	 * @return int: The number of logged slots
+	 */
+	public int getSlotCount() {
+		return this.slotCount;
+	}
+	
+	/**
+	 * Returns the mean profit of the slots logged since the beginning of the simulation.
+	 * 
+	 * @return double: The mean profit, or 0 if no slots have been logged
+	 */
+	public double getMeanProfit() {
+		return this.slotCount > 0 ? this.cumulativeProfit / this.slotCount : 0;
+	}
+	
+	/**
+	 * Returns the mean absolute profit of the slots logged since the beginning of the simulation.
+	 * 
+	 * @return double: The mean absolute profit, or 0 if no slots have been logged
+	 */
+	public double getMeanAbsoluteProfit() {
+		return this.slotCount > 0 ? this.absoluteProfitSum / this.slotCount : 0;
+	}
+	
+	/**
+	 * Returns the mean price of the slots logged since the beginning of the simulation.
+	 * 
+	 * @return double: The mean price, or 0 if no slots have been logged
+	 */
+	public double getMeanPrice() {
+		return this.slotCount > 0 ? this.priceSum / this.slotCount : 0;
+	}
+	
 	protected List<String> getPriceLog() {
 		return this.priceLog;
 	}
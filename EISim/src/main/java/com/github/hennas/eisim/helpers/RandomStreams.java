@@ -0,0 +1,79 @@
+package com.github.hennas.eisim.helpers;
+
+import java.util.SplittableRandom;
+
+import com.github.hennas.eisim.defaultclasses.EisimSimulationManager;
+
+/**
+ * Derives independent random number streams for the computing nodes of a simulation scenario.
+ * <p>
+ * Each stream is a {@link SplittableRandom} whose seed is derived deterministically from the scenario
+ * seed, the id of the computing node and the purpose of the stream. Hence, the random numbers drawn
+ * for a node do not depend on the order in which the nodes are created or processed, nor on how many
+ * numbers the other nodes draw, and the streams of different nodes can be used in parallel threads.
+ *
+ * @see EisimSimulationManager#randomStreams
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class RandomStreams {
+
+	/**
+	 * The purposes for which the random number streams are used. Each purpose of a node gets its
+	 * own stream.
+	 */
+	public enum Purpose {
+		APPLICATION_ASSIGNMENT,
+		TASK_ARRIVALS,
+		TASK_ATTRIBUTES,
+		DEVICE_LOCATION,
+		MOBILITY,
+		DEVICE_WEIGHTS
+	}
+
+	protected final long scenarioSeed;
+
+	/**
+	 * Creates the random number streams of a simulation scenario.
+	 *
+	 * @param scenarioSeed The seed of the scenario
+	 */
+	public RandomStreams(long scenarioSeed) {
+		this.scenarioSeed = scenarioSeed;
+	}
+
+	/**
+	 * Creates the random number stream for the given purpose of the given computing node. Every call
+	 * with the same arguments returns a new stream that produces the same numbers.
+	 *
+	 * @param nodeId			The id of the computing node
+	 * @param purpose			The purpose of the stream
+	 * @return SplittableRandom:	The random number stream
+	 */
+	public SplittableRandom forNode(int nodeId, Purpose purpose) {
+		long key = mix64(((long) nodeId << 8) + purpose.ordinal());
+		return new SplittableRandom(mix64(this.scenarioSeed + key));
+	}
+
+	/**
+	 * Creates the random number stream for the given purpose of the whole scenario, i.e., for draws
+	 * that are not related to any single computing node.
+	 *
+	 * @param purpose			The purpose of the stream
+	 * @return SplittableRandom:	The random number stream
+	 */
+	public SplittableRandom forScenario(Purpose purpose) {
+		return forNode(-1, purpose);
+	}
+
+	/**
+	 * The 64-bit finalizer of MurmurHash3 (variant 13 by David Stafford), which spreads the bits of
+	 * similar inputs, such as consecutive node ids, over the whole seed.
+	 */
+	protected static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
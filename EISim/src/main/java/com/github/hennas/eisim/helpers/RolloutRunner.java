@@ -0,0 +1,124 @@
+package com.github.hennas.eisim.helpers;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.agents.ddpg.RolloutLearner;
+import com.github.hennas.eisim.agents.ddpg.RolloutPricingAgent;
+import com.github.hennas.eisim.core.scenariomanager.Scenario;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
+import com.github.hennas.eisim.core.simulationmanager.Simulation;
+import com.github.hennas.eisim.core.simulationmanager.SimulationManager;
+import com.github.hennas.eisim.core.simulationmanager.SimulationThread;
+
+/**
+ * Runs several rollouts (simulations of the same scenario with different seeds) concurrently in the training mode, 
+ * as specified by {@link EisimSimulationParameters#rollouts}. Each rollout runs on its own thread, and the cluster 
+ * heads of the rollouts push their experiences to one {@link RolloutLearner} per cluster head, which trains the 
+ * agent on its own thread and publishes the updated actor weights back to the rollouts.
+ * <p>
+ * The rollouts of an episode use consecutive seeds starting from the seed of the episode, and each rollout 
+ * writes its results into its own output folder. When all the rollouts have ended, the learners finish 
+ * processing the experiences, and the agents are saved (at the checkpoint episodes, see {@link EpisodeRunner}).
+ *
+ * @see RolloutPricingAgent
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class RolloutRunner {
+
+	/**
+	 * This class should not be instantiated.
+	 */
+	private RolloutRunner() {
+		throw new IllegalStateException("RolloutRunner class cannot be instantiated");
+	}
+
+	/**
+	 * Checks whether the simulations are run as concurrent rollouts, that is, whether more than one rollout is 
+	 * run in the training mode.
+	 *
+	 * @return boolean: True if the rollouts are used
+	 */
+	public static boolean isEnabled() {
+		return EisimSimulationParameters.train && EisimSimulationParameters.rollouts > 1;
+	}
+
+	/**
+	 * Returns the number of simulations run in one episode.
+	 *
+	 * @return int: The number of rollouts, or 1 if the rollouts are not used
+	 */
+	public static int getRolloutCount() {
+		return isEnabled() ? EisimSimulationParameters.rollouts : 1;
+	}
+
+	/**
+	 * Runs the rollouts of every scenario of the given simulation, one scenario at a time.
+	 *
+	 * @param simulation	The simulation, with the settings and custom classes set
+	 */
+	public static void launch(Simulation simulation) {
+		SimLog.println("%s - Loading simulation files...", RolloutRunner.class.getSimpleName());
+		if (!simulation.loadSimulation()) {
+			return;
+		}
+		String startTime = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date());
+		long start = System.currentTimeMillis();
+		for (Scenario scenario : simulation.getScenarios()) {
+			runScenario(simulation, scenario, startTime);
+		}
+		if (EpisodeRunner.isCheckpointEpisode()) {
+			RolloutLearner.saveAll();
+		}
+		SimLog.println("%s - %d rollouts took %d seconds, results were saved to the folder: %s", RolloutRunner.class.getSimpleName(), 
+				EisimSimulationParameters.rollouts, (System.currentTimeMillis() - start) / 1000, EisimSimulationParameters.outputFolder);
+	}
+
+	/**
+	 * Creates the rollouts of the given scenario with consecutive seeds, runs them concurrently, and waits until they 
+	 * and the learners have finished.
+	 */
+	private static void runScenario(Simulation simulation, Scenario scenario, String startTime) {
+		SimulationThread factory = new SimulationThread(simulation, 0, 1);
+		long seed = EisimSimulationParameters.seed;
+		List<SimulationManager> managers = new ArrayList<>();
+		try {
+			for (int r = 0; r < EisimSimulationParameters.rollouts; r++) {
+				// The simulation manager takes its seed from the parameters when it is created
+				EisimSimulationParameters.seed = seed + r;
+				SimLog simLog = new SimLog(startTime + "_rollout" + r, true);
+				managers.add(factory.createSimulation(scenario, simLog, r + 1, 1));
+			}
+		} catch (Exception e) {
+			e.printStackTrace(SimLog.getOutput());
+			SimLog.println("%s - The rollouts could not be created", RolloutRunner.class.getSimpleName());
+			return;
+		} finally {
+			EisimSimulationParameters.seed = seed;
+		}
+
+		// The learners of the previous episodes continue in this one
+		RolloutLearner.resumeAll(RolloutPricingAgent.getLearnerKey(scenario, ""), managers.get(0));
+
+		List<Thread> threads = new ArrayList<>();
+		for (SimulationManager manager : managers) {
+			Thread thread = new Thread(manager::startSimulation, "rollout-" + manager.getSimulationId());
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		RolloutLearner.awaitAll();
+	}
+}
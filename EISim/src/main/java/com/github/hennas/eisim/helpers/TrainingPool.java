@@ -0,0 +1,86 @@
+package com.github.hennas.eisim.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.SimulationContext;
+
+/**
+ * A bounded pool of worker threads on which the pricing agents of the cluster heads are trained in parallel.
+ * <p>
+ * The pool is shared by all the simulations running in the JVM, so the number of training threads stays
+ * bounded by {@link EisimSimulationParameters#trainingThreads} even when several simulations are run in
+ * parallel. The worker threads are created when they are first needed and kept alive for the rest of the
+ * run, so the memory workspaces of the networks, which are bound to threads, are reused between training
+ * rounds.
+ * <p>
+ * The work for each agent must only touch the state of that agent, so that the results are the same
+ * regardless of the number of threads and the order in which the agents are processed.
+ *
+ * @see com.github.hennas.eisim.defaultclasses.EisimSimulationManager#preparePriceUpdates
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class TrainingPool {
+
+	private static ExecutorService pool;
+
+	/**
+	 * This class should not be instantiated.
+	 */
+	private TrainingPool() {
+		throw new IllegalStateException("TrainingPool class cannot be instantiated");
+	}
+
+	/**
+	 * Calls the given action for every item, in parallel if more than one training thread is allowed.
+	 * Returns when the action has been completed for all the items, which acts as a barrier for the
+	 * calling simulation thread.
+	 *
+	 * @param <T>		The type of the items
+	 * @param items		The items (agents) to process
+	 * @param action	The action to perform for each item
+	 */
+	public static <T> void forEach(List<T> items, Consumer<? super T> action) {
+		if (EisimSimulationParameters.trainingThreads <= 1 || items.size() <= 1) {
+			items.forEach(action);
+			return;
+		}
+		ExecutorService executor = getPool();
+		List<Future<?>> futures = new ArrayList<>(items.size());
+		for (T item : items) {
+			futures.add(executor.submit(() -> action.accept(item)));
+		}
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(TrainingPool.class.getSimpleName() + " - Interrupted while training the agents", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(TrainingPool.class.getSimpleName() + " - Training the agents failed", e.getCause());
+		}
+	}
+
+	private static synchronized ExecutorService getPool() {
+		if (pool == null) {
+			pool = Executors.newFixedThreadPool(EisimSimulationParameters.trainingThreads, runnable -> {
+				Thread thread = new Thread(runnable, "agent-training");
+				thread.setDaemon(true); // The pool does not keep the JVM alive after the simulations
+				return thread;
+			});
+			// An isolated simulation context shuts the pool down at the end of its run
+			ExecutorService workers = pool;
+			SimulationContext.current().addReleaseAction(workers::shutdown);
+		}
+		return pool;
+	}
+}
@@ -0,0 +1,72 @@
+package com.github.hennas.eisim.helpers;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.SimulationContext;
+
+/**
+ * Runs per-device workload generation (e.g., task and mobility generation) in parallel on a fork-join
+ * pool.
+ * <p>
+ * The work for each device must only touch the state of that device and write its results into a slot
+ * reserved for the device, so that the results are the same regardless of the number of threads and the
+ * order in which the devices are processed. The number of threads is given by
+ * {@link EisimSimulationParameters#generationThreads}. The pool is created when it is first needed and reused
+ * by every scenario of the run, and it is shut down when the run ends (see
+ * {@link SimulationContext#addReleaseAction(Runnable)}).
+ *
+ * @see RandomStreams
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class WorkloadPool {
+
+	private static ForkJoinPool pool;
+
+	/**
+	 * This class should not be instantiated.
+	 */
+	private WorkloadPool() {
+		throw new IllegalStateException("WorkloadPool class cannot be instantiated");
+	}
+
+	/**
+	 * Calls the given action for every index in [0, count), in parallel if more than one thread is
+	 * allowed. Returns when the action has been completed for all the indices.
+	 *
+	 * @param count		The number of indices (devices)
+	 * @param action	The action to perform for each index
+	 */
+	public static void forEach(int count, IntConsumer action) {
+		int threads = Math.min(EisimSimulationParameters.generationThreads, count);
+		if (threads <= 1) {
+			for (int i = 0; i < count; i++) {
+				action.accept(i);
+			}
+			return;
+		}
+		try {
+			// The parallel stream uses the parallelism of the pool it runs in
+			getPool().submit(() -> IntStream.range(0, count).parallel().forEach(action)).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(WorkloadPool.class.getSimpleName() + " - Interrupted while generating the workload", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(WorkloadPool.class.getSimpleName() + " - Generating the workload failed", e.getCause());
+		}
+	}
+
+	private static synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(EisimSimulationParameters.generationThreads);
+			ForkJoinPool generators = pool;
+			SimulationContext.current().addReleaseAction(generators::shutdown);
+		}
+		return pool;
+	}
+}
@@ -0,0 +1,114 @@
+package com.github.hennas.eisim;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that simulations with different configurations give the same results when run concurrently in their own
+ * {@link SimulationContext}s as when run one at a time, and that each context writes its console output into its
+ * own log instead of the standard output.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class SimulationContextTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@After
+	public void tearDown() {
+		SimulationTestSupport.resetParameters();
+	}
+
+	@Test
+	public void concurrentContextsKeepTheirOwnConfigurationAndLog() throws Exception {
+		Path root = this.folder.getRoot().toPath();
+		Path hybrid = SimulationTestSupport.createSettings("settings_H_20servers", root.resolve("settings_H"));
+		Path decentralized = SimulationTestSupport.createSettings("settings_D_20servers", root.resolve("settings_D"),
+				"max_number_of_edge_devices=150", "min_number_of_edge_devices=150");
+
+		List<String> hybridAlone = this.runAlone(hybrid, root.resolve("hybrid_alone"), "7");
+		List<String> decentralizedAlone = this.runAlone(decentralized, root.resolve("decentralized_alone"), "8");
+
+		ByteArrayOutputStream hybridLog = new ByteArrayOutputStream();
+		ByteArrayOutputStream decentralizedLog = new ByteArrayOutputStream();
+		ByteArrayOutputStream standardOutput = new ByteArrayOutputStream();
+		PrintStream original = System.out;
+		System.setOut(new PrintStream(standardOutput, true));
+		ExecutorService threads = Executors.newFixedThreadPool(2);
+		try {
+			SimulationContext hybridContext = this.createContext(hybridLog, hybrid, root.resolve("hybrid"), "7");
+			SimulationContext decentralizedContext = this.createContext(decentralizedLog, decentralized, root.resolve("decentralized"), "8");
+			Future<?> first = threads.submit(hybridContext::run);
+			Future<?> second = threads.submit(decentralizedContext::run);
+			first.get();
+			second.get();
+			assertArrayEquals(new String[] { "-i", hybrid + "/", "-o", root.resolve("hybrid") + "/", "-m",
+					root.resolve("models_7") + "/", "-T", "-b", "8", "-s", "7" }, hybridContext.getArguments());
+			// The class loader of the context was closed at the end of its run
+			try {
+				hybridContext.run();
+				fail("The context was run twice");
+			} catch (IllegalStateException e) {
+				assertEquals("SimulationContext - The context has already been run", e.getMessage());
+			}
+		} finally {
+			threads.shutdown();
+			System.setOut(original);
+		}
+
+		assertEquals(hybridAlone, SimulationTestSupport.readResults(root.resolve("hybrid")));
+		assertEquals(decentralizedAlone, SimulationTestSupport.readResults(root.resolve("decentralized")));
+
+		String hybridOutput = hybridLog.toString(StandardCharsets.UTF_8);
+		String decentralizedOutput = decentralizedLog.toString(StandardCharsets.UTF_8);
+		assertTrue(hybridOutput, hybridOutput.contains("results were saved to the folder: " + root.resolve("hybrid")));
+		assertFalse(hybridOutput.contains(root.resolve("decentralized").toString()));
+		assertTrue(decentralizedOutput, decentralizedOutput.contains("results were saved to the folder: " + root.resolve("decentralized")));
+		assertFalse(decentralizedOutput.contains(root.resolve("hybrid").toString()));
+		assertEquals("", standardOutput.toString(StandardCharsets.UTF_8));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidArgumentsAreReportedIntoTheLog() {
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		try {
+			new SimulationContext(new PrintStream(log, true), "-i", "settings/");
+		} finally {
+			assertTrue(log.toString(StandardCharsets.UTF_8).contains("Missing required options"));
+		}
+	}
+
+	private SimulationContext createContext(ByteArrayOutputStream log, Path settings, Path output, String seed) {
+		return new SimulationContext(new PrintStream(log, true), "-i", settings + "/", "-o", output + "/",
+				"-m", output.getParent().resolve("models_" + seed) + "/", "-T", "-b", "8", "-s", seed);
+	}
+
+	/**
+	 * Runs the simulations in a context of their own, with nothing else running in the JVM, and returns the results.
+	 */
+	private List<String> runAlone(Path settings, Path output, String seed) throws IOException {
+		this.createContext(new ByteArrayOutputStream(), settings, output, seed).run();
+		SimulationTestSupport.delete(output.getParent().resolve("models_" + seed));
+		return SimulationTestSupport.readResults(output);
+	}
+}
@@ -0,0 +1,88 @@
+package com.github.hennas.eisim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the {@link SimulationDaemon} binds its socket only in a folder that is private to the user, and
+ * that it reports the jobs with invalid arguments with the status 2.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class SimulationDaemonTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@After
+	public void tearDown() {
+		SimulationTestSupport.resetParameters();
+	}
+
+	@Test
+	public void socketFolderMustBePrivate() throws IOException {
+		Path created = this.folder.getRoot().toPath().resolve("created");
+		SimulationDaemon.createPrivateFolder(created);
+		assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(created)));
+
+		Path shared = this.folder.getRoot().toPath().resolve("shared");
+		Files.createDirectory(shared);
+		Files.setPosixFilePermissions(shared, PosixFilePermissions.fromString("rwxr-xr-x"));
+		try {
+			new SimulationDaemon(shared.resolve("daemon.sock"), 1).serve();
+			fail("The daemon must not bind its socket in a folder that the others can access");
+		} catch (IOException e) {
+			// Expected
+		}
+		assertFalse(Files.exists(shared.resolve("daemon.sock")));
+	}
+
+	@Test
+	public void invalidArgumentsHaveStatusTwo() throws Exception {
+		Path socket = this.folder.getRoot().toPath().resolve("daemon").resolve("daemon.sock");
+		SimulationDaemon daemon = new SimulationDaemon(socket, 1);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread thread = new Thread(() -> {
+			try {
+				daemon.serve();
+			} catch (Throwable e) {
+				failure.set(e);
+			}
+		});
+		thread.start();
+		for (int i = 0; i < 600 && !Files.exists(socket) && thread.isAlive(); i++) {
+			Thread.sleep(100);
+		}
+		assertTrue("The daemon did not start listening", Files.exists(socket));
+
+		// An unknown option is rejected before the job is started, and a number option that is not a number when
+		// the job parses its arguments in its simulation context
+		String settings = this.folder.getRoot() + "/settings/";
+		String output = this.folder.getRoot() + "/output/";
+		assertEquals(2, SimulationClient.run(socket, new String[] { "-i", settings, "-o", output, "-m",
+				SimulationTestSupport.MODEL_FOLDER, "--no-such-option" }));
+		assertEquals(2, SimulationClient.run(socket, new String[] { "-i", settings, "-o", output, "-m",
+				SimulationTestSupport.MODEL_FOLDER, "-b", "abc" }));
+
+		assertEquals(0, SimulationClient.run(socket, new String[] { SimulationClient.STOP_OPTION }));
+		thread.join(60000);
+		assertFalse(thread.isAlive());
+		assertNull(failure.get());
+		assertFalse(Files.exists(socket));
+	}
+}
@@ -0,0 +1,260 @@
+package com.github.hennas.eisim;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.nd4j.linalg.factory.Nd4j;
+
+import com.github.hennas.eisim.agents.PricingAgent;
+import com.github.hennas.eisim.agents.ddpg.DdpgPricingAgent;
+import com.github.hennas.eisim.core.scenariomanager.SimulationParameters;
+import com.github.hennas.eisim.core.simulationmanager.Simulation;
+import com.github.hennas.eisim.defaultclasses.EisimComputingNode;
+import com.github.hennas.eisim.helpers.ArgumentParser;
+import com.github.hennas.eisim.helpers.CheckpointWriter;
+
+/**
+ * Runs short seeded simulations inside the test JVM.
+ * <p>
+ * The settings of a test are copied from one of the folders in {@code EISim_settings} into a temporary
+ * folder, with a short simulation time and the given properties overridden. As the simulation parameters
+ * are static, every run first restores them to the values they had when this class was loaded, so that
+ * the runs of different tests do not affect each other. The pricing agents copy the hyperparameters when their
+ * class is loaded, so the copies are updated with {@link PricingAgent#copyHyperparameters()} before every run, 
+ * and all the runs use {@link #MODEL_FOLDER}, which is emptied before every run.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public final class SimulationTestSupport {
+
+	/**
+	 * The model folder of every run.
+	 */
+	public static final String MODEL_FOLDER = "target/test_models/";
+	
+	private static final Path SETTINGS_ROOT = Paths.get("EISim_settings");
+	private static final String PROPERTIES_FILE = "simulation_parameters.properties";
+	private static final Map<Field, Object> DEFAULTS = snapshot(EisimSimulationParameters.class, SimulationParameters.class);
+
+	private SimulationTestSupport() {
+		throw new IllegalStateException("SimulationTestSupport class cannot be instantiated");
+	}
+
+	/**
+	 * Creates a settings folder for a short simulation from one of the folders in {@code EISim_settings}.
+	 * The simulation lasts two minutes with 100 devices, unless the given properties say otherwise.
+	 *
+	 * @param base			The name of the settings folder to copy, e.g. {@code settings_H_20servers}
+	 * @param target		The folder into which the settings are written
+	 * @param overrides		The overridden properties, as {@code key=value} strings
+	 * @return Path:		The settings folder
+	 */
+	public static Path createSettings(String base, Path target, String... overrides) throws IOException {
+		Map<String, String> properties = new LinkedHashMap<>();
+		properties.put("simulation_time", "2");
+		properties.put("pause_length", "0");
+		properties.put("save_charts", "false");
+		properties.put("display_real_time_charts", "false");
+		properties.put("min_number_of_edge_devices", "100");
+		properties.put("max_number_of_edge_devices", "100");
+		for (String override : overrides) {
+			int separator = override.indexOf('=');
+			properties.put(override.substring(0, separator), override.substring(separator + 1));
+		}
+
+		Files.createDirectories(target);
+		try (Stream<Path> files = Files.list(SETTINGS_ROOT.resolve(base))) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.copy(file, target.resolve(file.getFileName()));
+			}
+		}
+		List<String> lines = new ArrayList<>();
+		for (String line : Files.readAllLines(target.resolve(PROPERTIES_FILE))) {
+			int separator = line.indexOf('=');
+			String key = separator > 0 && !line.startsWith("#") ? line.substring(0, separator).trim() : null;
+			lines.add(key != null && properties.containsKey(key) ? key + "=" + properties.get(key) : line);
+		}
+		Files.write(target.resolve(PROPERTIES_FILE), lines);
+		return target;
+	}
+
+	/**
+	 * Restores the static simulation parameters and the pricing agent class to their defaults, and removes the
+	 * models saved by the previous run.
+	 */
+	public static void resetParameters() {
+		delete(Paths.get(MODEL_FOLDER));
+		for (Map.Entry<Field, Object> entry : DEFAULTS.entrySet()) {
+			try {
+				entry.getKey().set(null, entry.getValue());
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		EisimComputingNode.setCustomPricingAgentClass(DdpgPricingAgent.class);
+	}
+
+	/**
+	 * Runs the simulations with the given command-line arguments, as {@link Main} does.
+	 *
+	 * @param args The command-line arguments
+	 */
+	public static void runMain(String... args) {
+		resetParameters();
+		Main.main(args);
+	}
+
+	/**
+	 * Runs the simulations with the given command-line arguments, with custom classes set on the simulation.
+	 * Only one episode is run.
+	 *
+	 * @param customization	Sets the custom classes on the simulation
+	 * @param args			The command-line arguments
+	 */
+	public static void run(Consumer<Simulation> customization, String... args) {
+		run(customization, Simulation::launchSimulation, args);
+	}
+
+	/**
+	 * Runs the simulations with the given command-line arguments, with custom classes set on the simulation, and
+	 * launches them in the given way, e.g. with a custom scheduler for the scenarios. Only one episode is run.
+	 *
+	 * @param customization	Sets the custom classes on the simulation
+	 * @param launcher		Launches the simulations
+	 * @param args			The command-line arguments
+	 */
+	public static void run(Consumer<Simulation> customization, Consumer<Simulation> launcher, String... args) {
+		resetParameters();
+		assertTrue("Invalid arguments", new ArgumentParser().parseArguments(args));
+		PricingAgent.copyHyperparameters();
+		if (EisimSimulationParameters.train) {
+			Nd4j.getBackend();
+		}
+		Simulation sim = new Simulation();
+		sim.setCustomSettingsFolder(EisimSimulationParameters.settingFolder);
+		sim.setCustomOutputFolder(EisimSimulationParameters.outputFolder);
+		customization.accept(sim);
+		launcher.accept(sim);
+		assertTrue("The agent states were not saved", CheckpointWriter.awaitCompletion());
+	}
+
+	/**
+	 * Runs the simulations in the training mode with the given settings and options, and returns their results 
+	 * (see {@link #readResults(Path)}).
+	 *
+	 * @param settings			The settings folder
+	 * @param output			The output folder of the run
+	 * @param options			The options besides the settings, output and model folders and the training mode, 
+	 * 							e.g. the seed
+	 * @return List<String>:	The lines of all the result files
+	 */
+	public static List<String> runAndRead(Path settings, Path output, String... options) throws IOException {
+		return runAndRead(settings, output, sim -> {}, Simulation::launchSimulation, options);
+	}
+
+	/**
+	 * Runs the simulations in the training mode with the given settings and options, with custom classes set on 
+	 * the simulation, and returns their results (see {@link #readResults(Path)}).
+	 *
+	 * @param settings			The settings folder
+	 * @param output			The output folder of the run
+	 * @param customization		Sets the custom classes on the simulation
+	 * @param options			The options besides the settings, output and model folders and the training mode
+	 * @return List<String>:	The lines of all the result files
+	 */
+	public static List<String> runAndRead(Path settings, Path output, Consumer<Simulation> customization,
+			String... options) throws IOException {
+		return runAndRead(settings, output, customization, Simulation::launchSimulation, options);
+	}
+
+	/**
+	 * Runs the simulations in the training mode with the given settings and options, with custom classes set on 
+	 * the simulation, launches them in the given way, and returns their results (see {@link #readResults(Path)}).
+	 *
+	 * @param settings			The settings folder
+	 * @param output			The output folder of the run
+	 * @param customization		Sets the custom classes on the simulation
+	 * @param launcher			Launches the simulations
+	 * @param options			The options besides the settings, output and model folders and the training mode
+	 * @return List<String>:	The lines of all the result files
+	 */
+	public static List<String> runAndRead(Path settings, Path output, Consumer<Simulation> customization,
+			Consumer<Simulation> launcher, String... options) throws IOException {
+		List<String> args = new ArrayList<>(List.of("-i", settings + "/", "-o", output + "/", "-m", MODEL_FOLDER, "-T"));
+		args.addAll(List.of(options));
+		run(customization, launcher, args.toArray(new String[0]));
+		return readResults(output);
+	}
+
+	/**
+	 * Reads the result files and the price logs in the given output folder, in the order of their paths.
+	 * The file names contain the start time of the run, so only the contents are compared.
+	 *
+	 * @param output			The output folder
+	 * @return List<String>:	The lines of all the files
+	 */
+	public static List<String> readResults(Path output) throws IOException {
+		List<Path> files;
+		try (Stream<Path> paths = Files.walk(output)) {
+			files = paths.filter(p -> p.toString().endsWith(".csv")).sorted().collect(Collectors.toList());
+		}
+		List<String> lines = new ArrayList<>();
+		for (Path file : files) {
+			lines.addAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+		}
+		assertTrue("No results in " + output, !lines.isEmpty());
+		return lines;
+	}
+
+	/**
+	 * Deletes a folder and its contents.
+	 *
+	 * @param folder The folder
+	 */
+	public static void delete(Path folder) {
+		if (folder == null || !Files.exists(folder)) {
+			return;
+		}
+		try (Stream<Path> paths = Files.walk(folder)) {
+			for (Path p : (Iterable<Path>) paths.sorted((a, b) -> b.compareTo(a))::iterator) {
+				Files.delete(p);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static Map<Field, Object> snapshot(Class<?>... classes) {
+		Map<Field, Object> values = new HashMap<>();
+		for (Class<?> c : classes) {
+			for (Field field : c.getFields()) {
+				int modifiers = field.getModifiers();
+				if (Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers)) {
+					try {
+						values.put(field, field.get(null));
+					} catch (IllegalAccessException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			}
+		}
+		return values;
+	}
+}
@@ -0,0 +1,210 @@
+package com.github.hennas.eisim.agents.bridge;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.hennas.eisim.SimulationTestSupport;
+
+/**
+ * Checks the exchange of the states, rewards and prices between the simulation side of the
+ * {@link SharedMemoryBridge} and the {@link SharedMemoryPeer} running in another thread, both directly
+ * through the bridge and in a seeded simulation that uses the {@link SharedMemoryPricingAgent}, and that
+ * the peer stops when the bridge is closed.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class SharedMemoryBridgeTest {
+
+	private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@After
+	public void tearDown() {
+		SharedMemoryPricingAgent.closeAll();
+		SimulationTestSupport.resetParameters();
+	}
+
+	@Test
+	public void pricesAreExchangedWithThePeer() throws Exception {
+		Path path = this.folder.getRoot().toPath().resolve("bridge");
+		try (SharedMemoryBridge bridge = SharedMemoryBridge.create(path, 4, 3, 0f, 1f, true)) {
+			RecordingPeer peer = new RecordingPeer(path, (name, reward, state) -> state[0] + state[2]);
+			peer.start();
+			assertEquals(0, bridge.register("dc1"));
+			assertEquals(1, bridge.register("dc2"));
+			assertEquals(0, bridge.register("dc1"));
+
+			float[] prices = bridge.decide(new int[] {1, 0}, new float[] {Float.NaN, 2.5f},
+					new float[][] {{0.25f, 0f, 0.5f}, {0.125f, 9f, 0f}}, 5, TIMEOUT_NANOS);
+			assertArrayEquals(new float[] {0.75f, 0.125f}, prices, 0f);
+			prices = bridge.decide(new int[] {0}, new float[] {-1f}, new float[][] {{0.5f, 0f, 0.25f}}, 10, TIMEOUT_NANOS);
+			assertArrayEquals(new float[] {0.75f}, prices, 0f);
+			bridge.notify(SharedMemoryBridge.EPISODE_END, 10, TIMEOUT_NANOS);
+
+			assertEquals(List.of("dc2 NaN [0.25, 0.0, 0.5]", "dc1 2.5 [0.125, 9.0, 0.0]", "dc1 -1.0 [0.5, 0.0, 0.25]"),
+					peer.entries);
+
+			bridge.notify(SharedMemoryBridge.CLOSE, 0, 0);
+			peer.join(TimeUnit.NANOSECONDS.toMillis(TIMEOUT_NANOS));
+			assertFalse("The peer did not stop on CLOSE", peer.isAlive());
+			assertNull(peer.failure);
+			assertEquals(List.of("2 requests, 3 decisions, total reward 1.5"), peer.episodes);
+		}
+	}
+
+	@Test
+	public void existingFilesAndTooLongNamesAreRejected() throws Exception {
+		Path path = this.folder.getRoot().toPath().resolve("bridge");
+		try (SharedMemoryBridge bridge = SharedMemoryBridge.create(path, 2, 3, 0f, 1f, true)) {
+			// The file of the open bridge is left as it is
+			try {
+				SharedMemoryBridge.create(path, 2, 3, 0f, 1f, true).close();
+				fail("An existing bridge file was replaced");
+			} catch (IOException e) {
+				assertEquals(SharedMemoryBridge.fileSize(2, 3), Files.size(path));
+			}
+
+			// 63 bytes fit, but 64 bytes (the last character taking two bytes) do not
+			String longest = "dc" + "ä".repeat(30) + "1";
+			assertEquals(0, bridge.register(longest));
+			assertEquals(0, bridge.register(longest));
+			try {
+				bridge.register("dc" + "ä".repeat(31));
+				fail("A name longer than the name field was registered");
+			} catch (IllegalArgumentException e) {
+				assertEquals(1, bridge.register("dc2"));
+			}
+		}
+	}
+
+	@Test
+	public void simulationExchangesPricesAndClosesTheBridge() throws Exception {
+		Path settings = SimulationTestSupport.createSettings("settings_H_20servers", this.folder.getRoot().toPath().resolve("settings"));
+		Path directory = this.folder.newFolder("bridge").toPath();
+		Path output = this.folder.getRoot().toPath().resolve("output");
+		// The prices are above the price range, so the simulation clips them to the maximum price
+		RecordingPeer peer = new RecordingPeer(directory, (name, reward, state) -> 1.5f);
+		peer.start();
+
+		SimulationTestSupport.run(sim -> {}, "-i", settings + "/", "-o", output + "/", "-m", SimulationTestSupport.MODEL_FOLDER,
+				"-T", "-s", "13", "--bridge-dir", directory + "/");
+		assertTrue("The peer was still waiting for requests after the simulation ended", peer.isAlive());
+		SharedMemoryPricingAgent.closeAll();
+		peer.join(TimeUnit.NANOSECONDS.toMillis(TIMEOUT_NANOS));
+		assertFalse("The peer did not stop when the bridges were closed", peer.isAlive());
+		assertNull(peer.failure);
+		assertEquals(1, peer.episodes.size());
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals("The bridge file was not removed", 0, files.count());
+		}
+
+		// Every cluster head sent its states and, after the first slot, its rewards
+		Map<String, List<String>> entries = new TreeMap<>(peer.entries.stream()
+				.collect(Collectors.groupingBy(e -> e.substring(0, e.indexOf(' ')))));
+		assertFalse(entries.isEmpty());
+		for (Map.Entry<String, List<String>> head : entries.entrySet()) {
+			List<String> sent = head.getValue();
+			assertTrue(head.getKey() + " sent only " + sent.size() + " states", sent.size() > 1);
+			assertTrue(sent.get(0), sent.get(0).contains(" NaN "));
+			for (String entry : sent.subList(1, sent.size())) {
+				assertFalse(entry, entry.contains(" NaN "));
+			}
+		}
+
+		// The prices of the slots decided by the peer were applied to the cluster heads
+		List<Path> logs;
+		try (Stream<Path> files = Files.walk(output)) {
+			logs = files.filter(p -> p.getFileName().toString().endsWith("_log.csv")).sorted().collect(Collectors.toList());
+		}
+		assertEquals(entries.keySet(), logs.stream().map(p -> p.getFileName().toString().replace("_log.csv", ""))
+				.collect(Collectors.toCollection(TreeSet::new)));
+		for (Path log : logs) {
+			List<String> lines = Files.readAllLines(log);
+			// The header and the slot of the initial price are skipped
+			for (String line : lines.subList(2, lines.size())) {
+				assertEquals(log + ": " + line, 1.0, Double.parseDouble(line.split(",")[1]), 0);
+			}
+		}
+	}
+
+	/**
+	 * Runs a {@link SharedMemoryPeer} in its own thread, recording the request entries and the simulations
+	 * that have ended. If the given path is a folder, the peer opens the first bridge file created in it.
+	 */
+	public static class RecordingPeer extends Thread {
+
+		final List<String> entries = new ArrayList<>();
+		final List<String> episodes = new ArrayList<>();
+		volatile Throwable failure;
+		private final Path path;
+		private final SharedMemoryPeer.Policy policy;
+
+		RecordingPeer(Path path, SharedMemoryPeer.Policy policy) {
+			this.path = path;
+			this.policy = policy;
+			this.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try (SharedMemoryBridge bridge = SharedMemoryBridge.open(this.findFile(), TIMEOUT_NANOS)) {
+				new SharedMemoryPeer(bridge, (name, reward, state) -> {
+					synchronized (this.entries) {
+						this.entries.add(name + " " + reward + " " + Arrays.toString(state));
+					}
+					return this.policy.decide(name, reward, state);
+				}) {
+					@Override
+					protected void onEpisodeEnd() {
+						synchronized (RecordingPeer.this.episodes) {
+							RecordingPeer.this.episodes.add(String.format("%d requests, %d decisions, total reward %s",
+									this.requests, this.decisions, this.totalReward));
+						}
+						super.onEpisodeEnd();
+					}
+				}.serve(TIMEOUT_NANOS);
+			} catch (Throwable e) {
+				this.failure = e;
+			}
+		}
+
+		private Path findFile() throws IOException, InterruptedException {
+			long deadline = System.nanoTime() + TIMEOUT_NANOS;
+			while (Files.isDirectory(this.path) && System.nanoTime() < deadline) {
+				try (Stream<Path> files = Files.list(this.path)) {
+					Path file = files.findFirst().orElse(null);
+					if (file != null) {
+						return file;
+					}
+				}
+				Thread.sleep(1);
+			}
+			return this.path;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package com.github.hennas.eisim.agents.ddpg;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nd4j.linalg.factory.Nd4j;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.SimulationTestSupport;
+import com.github.hennas.eisim.agents.PricingAgent;
+
+/**
+ * Checks that the pure-Java forward pass of {@link ActorInference} gives the same outputs as the DL4J actor
+ * network, both when extracted from the network and when read back from the actor weights file.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class ActorInferenceTest {
+
+	private static final int STATE_DIM = 5;
+	private static final int STATES = 500;
+	private static final float TOLERANCE = 1e-6f;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void setUp() {
+		SimulationTestSupport.resetParameters();
+		EisimSimulationParameters.train = true;
+		EisimSimulationParameters.modelFolder = this.folder.getRoot().toString();
+		PricingAgent.copyHyperparameters();
+	}
+
+	@After
+	public void tearDown() {
+		SimulationTestSupport.resetParameters();
+		PricingAgent.copyHyperparameters();
+	}
+
+	@Test
+	public void sameOutputsAsTheActorNetwork() throws IOException {
+		MultiLayerNetwork actor = new OfflineTrainer.OfflineAgent("agent", STATE_DIM, 0, 1, new Random(1)).actor;
+		ActorInference inference = ActorInference.fromNetwork(actor);
+		Path file = this.folder.getRoot().toPath().resolve("actor_weights.bin");
+		inference.write(file);
+		ActorInference read = ActorInference.read(file);
+
+		Random random = new Random(2);
+		float[] state = new float[STATE_DIM];
+		for (int s = 0; s < STATES; s++) {
+			// States also outside [0, 1], so that the hidden units are both active and inactive
+			for (int i = 0; i < STATE_DIM; i++) {
+				state[i] = (random.nextFloat() - 0.5f) * 4;
+			}
+			float expected = actor.output(Nd4j.create(new float[][] {state})).getFloat(0);
+			assertEquals(expected, inference.output(state)[0], TOLERANCE);
+			assertEquals(expected, read.output(state)[0], TOLERANCE);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.github.hennas.eisim.agents.ddpg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.EisimSimulationParameters.AgentFileTypes;
+import com.github.hennas.eisim.SimulationTestSupport;
+import com.github.hennas.eisim.agents.PricingAgent;
+import com.github.hennas.eisim.helpers.CheckpointWriter;
+
+/**
+ * Checks that a DDPG pricing agent saved into its state folder is loaded back as it was: the networks with the
+ * optimizer states, the experience replay in the same order from the oldest experience, and the noise coefficient.
+ * The replay has wrapped around before saving, so the oldest experience is not in the first slot of the
+ * {@link AgentStateFile}.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class AgentStateFileTest {
+
+	private static final int STATE_DIM = 2;
+	private static final int REPLAY_SIZE = 50;
+	private static final int EXPERIENCES = 80;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void setUp() {
+		SimulationTestSupport.resetParameters();
+		EisimSimulationParameters.train = true;
+		EisimSimulationParameters.modelFolder = this.folder.getRoot().toString();
+		EisimSimulationParameters.batchSize = 16;
+		EisimSimulationParameters.replayBufferSize = REPLAY_SIZE;
+		PricingAgent.copyHyperparameters();
+	}
+
+	@After
+	public void tearDown() {
+		SimulationTestSupport.resetParameters();
+		PricingAgent.copyHyperparameters();
+	}
+
+	@Test
+	public void savedAgentIsLoadedAsItWas() throws IOException {
+		DdpgPricingAgent saved = new OfflineTrainer.OfflineAgent("agent", STATE_DIM, 0, 1, new Random(1));
+		Random random = new Random(2);
+		for (int i = 0; i < EXPERIENCES; i++) {
+			saved.learn(new float[] {random.nextFloat(), random.nextFloat()}, random.nextFloat(), random.nextFloat(),
+					new float[] {random.nextFloat(), random.nextFloat()});
+		}
+		saved.saveAgentState();
+		assertTrue(CheckpointWriter.awaitCompletion());
+
+		AgentStateFile file = AgentStateFile.read(Path.of(this.folder.getRoot().toString(), "agent",
+				AgentFileTypes.AGENT_STATE.getFileName()));
+		assertEquals(STATE_DIM, file.getStateDim());
+		assertEquals(REPLAY_SIZE, file.getSize());
+		assertEquals(EXPERIENCES % REPLAY_SIZE, file.getOldest());
+		assertEquals(saved.noiseCoeff, file.getNoiseCoeff(), 0f);
+
+		DdpgPricingAgent loaded = new OfflineTrainer.OfflineAgent("agent", STATE_DIM, 0, 1, new Random(1));
+		assertSameNetwork(saved.actor, loaded.actor, true);
+		assertSameNetwork(saved.critic, loaded.critic, true);
+		assertSameNetwork(saved.actorTarget, loaded.actorTarget, false);
+		assertSameNetwork(saved.criticTarget, loaded.criticTarget, false);
+		assertTrue(saved.noiseCoeff < 1);
+		assertEquals(saved.noiseCoeff, loaded.noiseCoeff, 0f);
+
+		assertEquals(REPLAY_SIZE, loaded.memory.size());
+		List<ExperienceTuple> expected = saved.memory.getMemoryContent();
+		List<ExperienceTuple> actual = loaded.memory.getMemoryContent();
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals(expected.get(i).getState().toFloatVector(), actual.get(i).getState().toFloatVector(), 0f);
+			assertEquals(expected.get(i).getAction().getFloat(0), actual.get(i).getAction().getFloat(0), 0f);
+			assertEquals(expected.get(i).getReward().getFloat(0), actual.get(i).getReward().getFloat(0), 0f);
+			assertArrayEquals(expected.get(i).getNextState().toFloatVector(), actual.get(i).getNextState().toFloatVector(), 0f);
+		}
+	}
+
+	private static void assertSameNetwork(MultiLayerNetwork expected, MultiLayerNetwork actual, boolean trained) {
+		assertArrayEquals(expected.params().toFloatVector(), actual.params().toFloatVector(), 0f);
+		if (trained) {
+			assertArrayEquals(expected.getUpdater(true).getStateViewArray().toFloatVector(),
+					actual.getUpdater(true).getStateViewArray().toFloatVector(), 0f);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.github.hennas.eisim.agents.ddpg;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.core.scenariomanager.Scenario;
+import com.github.hennas.eisim.core.scenariomanager.SimulationParameters;
+import com.github.hennas.eisim.core.simulationengine.PureEdgeSim;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
+import com.github.hennas.eisim.defaultclasses.EisimSimulationManager;
+
+/**
+ * A command-line benchmark for one training step of a DDPG pricing agent.
+ * <p>
+ * Usage:
+ * <pre>
+ * DdpgTrainingBenchmark [steps] [warmup_steps]
+ * </pre>
+ * The benchmark creates a new agent in the training mode (with its state folder under a temporary model folder),
+ * fills its experience replay with random experiences, and times the given number of training steps (by default
+ * 2000) after the given number of warm-up steps (by default 500). Each step samples a minibatch and trains the
+ * networks with it, as in {@link DdpgPricingAgent#learn(float[], float, float, float[])}. Besides the average
+ * time of a step, the benchmark reports the average number of bytes allocated from the JVM heap per step by
+ * the benchmark thread. The off-heap memory used by the ND4J arrays is not included.
+ *
+ * @see DdpgPricingAgent#train(ExperienceBatch)
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class DdpgTrainingBenchmark {
+
+	private static final int STATE_DIM = 2;
+
+	public static void main(String[] args) throws IOException {
+		int steps = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int warmupSteps = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+		Path modelFolder = Files.createTempDirectory("ddpg_training_benchmark");
+		// The pricing agents copy the parameters when their class is loaded, so these must be set first
+		EisimSimulationParameters.train = true;
+		EisimSimulationParameters.modelFolder = modelFolder.toString();
+		SimulationParameters.orchestrationAlgorithms = new String[] {"BENCHMARK"};
+		SimulationParameters.orchestrationArchitectures = new String[] {"BENCHMARK"};
+		try {
+			run(steps, warmupSteps);
+		} finally {
+			try (Stream<Path> paths = Files.walk(modelFolder)) {
+				for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+					Files.delete(p);
+				}
+			}
+		}
+	}
+
+	private static void run(int steps, int warmupSteps) {
+		EisimSimulationManager simulationManager = new EisimSimulationManager(new SimLog("", false), new PureEdgeSim(),
+				0, 0, new Scenario(0, 0, 0));
+		DdpgPricingAgent agent = new DdpgPricingAgent("benchmark", STATE_DIM, 0, 1, simulationManager);
+
+		Random random = new Random(0);
+		for (int i = 0; i < EisimSimulationParameters.replayBufferSize; i++) {
+			INDArray state = Nd4j.create(new float[][] {{random.nextFloat(), random.nextFloat()}});
+			INDArray nextState = Nd4j.create(new float[][] {{random.nextFloat(), random.nextFloat()}});
+			agent.memory.addExperience(state, random.nextFloat(), random.nextFloat(), nextState);
+		}
+
+		for (int i = 0; i < warmupSteps; i++) {
+			agent.train(agent.memory.getBatch());
+		}
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long startBytes = threads.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < steps; i++) {
+			agent.train(agent.memory.getBatch());
+		}
+		long time = System.nanoTime() - start;
+		long bytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+
+		System.out.println("Batch size: " + EisimSimulationParameters.batchSize + ", steps: " + steps
+				+ ", warm-up steps: " + warmupSteps);
+		System.out.printf("Training step: %.1f us, %d heap bytes allocated per step%n", time / 1e3 / steps, bytes / steps);
+	}
+}
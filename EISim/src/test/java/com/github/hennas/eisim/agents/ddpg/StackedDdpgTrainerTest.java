@@ -0,0 +1,146 @@
+package com.github.hennas.eisim.agents.ddpg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.SimulationTestSupport;
+import com.github.hennas.eisim.agents.PricingAgent;
+
+/**
+ * Checks that the {@link StackedDdpgTrainer} trains the agents exactly as they are trained one by one:
+ * the agents trained together and the agents trained alone from the same seeds end up with the same
+ * parameters, optimizer states and noise coefficients, and so do the agents trained alone with the trainer
+ * and with DL4J.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class StackedDdpgTrainerTest {
+
+	private static final int AGENTS = 3;
+	private static final int STATE_DIM = 2;
+	private static final int TRAINING_STEPS = 40;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Before
+	public void setUp() {
+		SimulationTestSupport.resetParameters();
+		EisimSimulationParameters.train = true;
+		EisimSimulationParameters.modelFolder = this.folder.getRoot().toString();
+		EisimSimulationParameters.batchSize = 16;
+		EisimSimulationParameters.replayBufferSize = 200;
+		PricingAgent.copyHyperparameters();
+	}
+
+	@After
+	public void tearDown() {
+		SimulationTestSupport.resetParameters();
+		PricingAgent.copyHyperparameters();
+	}
+
+	@Test
+	public void stackedTrainingMatchesTrainingOneByOne() {
+		List<DdpgPricingAgent> stacked = this.createAgents(AGENTS);
+		List<DdpgPricingAgent> alone = this.createAgents(AGENTS);
+		StackedDdpgTrainer trainer = new StackedDdpgTrainer(stacked);
+
+		Random random = new Random(3);
+		float[][] states = new float[AGENTS][STATE_DIM];
+		float[] actions = new float[AGENTS];
+		float[] rewards = new float[AGENTS];
+		float[][] nextStates = new float[AGENTS][STATE_DIM];
+		for (int step = 0; step < EisimSimulationParameters.batchSize + TRAINING_STEPS; step++) {
+			for (int a = 0; a < AGENTS; a++) {
+				this.randomExperience(random, states[a], nextStates[a]);
+				actions[a] = random.nextFloat();
+				rewards[a] = random.nextFloat();
+			}
+			trainer.learn(states, actions, rewards, nextStates);
+			for (int a = 0; a < AGENTS; a++) {
+				alone.get(a).learn(states[a], actions[a], rewards[a], nextStates[a]);
+			}
+		}
+
+		trainer.release();
+		assertTrue(alone.get(0).noiseCoeff < 1);
+		for (int a = 0; a < AGENTS; a++) {
+			assertNull(stacked.get(a).stackedTrainer);
+			this.assertSameState(alone.get(a), stacked.get(a));
+		}
+	}
+
+	@Test
+	public void trainingInPlaceMatchesDl4jTraining() {
+		DdpgPricingAgent inPlace = this.createAgents(1).get(0);
+		DdpgPricingAgent dl4j = this.createAgents(1).get(0);
+		dl4j.dl4jTraining = true;
+
+		Random random = new Random(4);
+		float[] state = new float[STATE_DIM];
+		float[] nextState = new float[STATE_DIM];
+		for (int step = 0; step < EisimSimulationParameters.batchSize + TRAINING_STEPS; step++) {
+			this.randomExperience(random, state, nextState);
+			float action = random.nextFloat();
+			float reward = random.nextFloat();
+			inPlace.learn(state, action, reward, nextState);
+			dl4j.learn(state, action, reward, nextState);
+		}
+
+		assertTrue(dl4j.noiseCoeff < 1);
+		assertNotNull(inPlace.trainer);
+		assertNull(dl4j.trainer);
+		this.assertSameState(dl4j, inPlace);
+	}
+
+	/**
+	 * Creates the given number of agents, each seeded by its index, so that the agents created by each call are
+	 * the same.
+	 */
+	private List<DdpgPricingAgent> createAgents(int count) {
+		List<DdpgPricingAgent> agents = new ArrayList<>();
+		for (int a = 0; a < count; a++) {
+			agents.add(new OfflineTrainer.OfflineAgent("agent" + a, STATE_DIM, 0, 1, new Random(a)));
+		}
+		return agents;
+	}
+
+	private void randomExperience(Random random, float[] state, float[] nextState) {
+		for (int i = 0; i < STATE_DIM; i++) {
+			state[i] = random.nextFloat();
+			nextState[i] = random.nextFloat();
+		}
+	}
+
+	private void assertSameState(DdpgPricingAgent expected, DdpgPricingAgent actual) {
+		assertSameNetwork(expected.actor, actual.actor, true);
+		assertSameNetwork(expected.critic, actual.critic, true);
+		assertSameNetwork(expected.actorTarget, actual.actorTarget, false);
+		assertSameNetwork(expected.criticTarget, actual.criticTarget, false);
+		assertEquals(expected.noiseCoeff, actual.noiseCoeff, 0f);
+	}
+
+	private static void assertSameNetwork(MultiLayerNetwork expected, MultiLayerNetwork actual, boolean trained) {
+		assertArrayEquals(expected.params().toFloatVector(), actual.params().toFloatVector(), 0f);
+		if (trained) {
+			assertArrayEquals(expected.getUpdater(true).getStateViewArray().toFloatVector(),
+					actual.getUpdater(true).getStateViewArray().toFloatVector(), 0f);
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package com.github.hennas.eisim.core.simulationmanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.hennas.eisim.SimulationTestSupport;
+
+/**
+ * Checks that the results of the scenarios of a seeded parallel simulation do not depend on the order in which
+ * the {@link ScenarioScheduler} runs them, nor on the number of threads.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class ScenarioSchedulerTest {
+
+	private static final String RESULTS_HEADER = "Orchestration architecture,";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@After
+	public void tearDown() {
+		SimulationTestSupport.resetParameters();
+	}
+
+	@Test
+	public void sameResultsInAnyOrderAndWithAnyNumberOfThreads() throws IOException {
+		// Four scenarios with 40, 80, 120 and 160 devices
+		Path settings = SimulationTestSupport.createSettings("settings_H_20servers", this.folder.getRoot().toPath().resolve("settings"),
+				"parallel_simulation=true", "min_number_of_edge_devices=40", "max_number_of_edge_devices=160",
+				"edge_device_counter_size=40");
+
+		List<String> longestFirst = this.runAndRead(settings, "longest_first", 3, false);
+		List<Integer> firstOrder = RecordingScheduler.order;
+		assertEquals(List.of(3, 2, 1, 0), firstOrder);
+		List<String> shortestFirst = this.runAndRead(settings, "shortest_first", 3, true);
+		assertNotEquals(firstOrder, RecordingScheduler.order);
+		assertEquals(longestFirst, shortestFirst);
+
+		// With another number of threads, the scenarios are saved into other result files, each with its own header
+		List<String> oneThread = this.runAndRead(settings, "one_thread", 1, false);
+		assertNotEquals(longestFirst, oneThread);
+		longestFirst.removeIf(line -> line.startsWith(RESULTS_HEADER));
+		oneThread.removeIf(line -> line.startsWith(RESULTS_HEADER));
+		Collections.sort(longestFirst);
+		Collections.sort(oneThread);
+		assertEquals(longestFirst, oneThread);
+	}
+
+	/**
+	 * Runs the scenarios with the {@link RecordingScheduler} and returns their results.
+	 */
+	private List<String> runAndRead(Path settings, String name, int threads, boolean reversed) throws IOException {
+		return SimulationTestSupport.runAndRead(settings, this.folder.getRoot().toPath().resolve(name), sim -> {}, sim -> {
+			assertTrue(sim.loadSimulation());
+			new RecordingScheduler(sim, threads, reversed).run();
+		}, "-b", "8", "-s", "9");
+	}
+
+	/**
+	 * A scheduler that records the order in which the scenarios are run, and can run them in the reverse of its
+	 * order, i.e., shortest expected first.
+	 */
+	public static class RecordingScheduler extends ScenarioScheduler {
+
+		static List<Integer> order;
+		private final boolean reversed;
+
+		public RecordingScheduler(Simulation simulation, int threads, boolean reversed) {
+			super(simulation, threads);
+			this.reversed = reversed;
+		}
+
+		@Override
+		protected List<Integer> getExecutionOrder() {
+			List<Integer> order = super.getExecutionOrder();
+			if (this.reversed) {
+				Collections.reverse(order);
+			}
+			RecordingScheduler.order = new ArrayList<>(order);
+			return order;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.github.hennas.eisim.defaultclasses;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.hennas.eisim.SimulationTestSupport;
+import com.github.hennas.eisim.core.scenariomanager.Scenario;
+import com.github.hennas.eisim.core.simulationengine.PureEdgeSim;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
+import com.github.hennas.eisim.core.simulationmanager.Simulation;
+
+/**
+ * Checks that a seeded simulation gives the same results with the compact task store as with the default
+ * task list, both when the tasks are generated up front and when they are generated lazily and reused.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class CompactTaskStoreTest {
+
+	private static final Consumer<Simulation> RECORDING = sim -> sim.setCustomSimulationManager(RecordingSimulationManager.class);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@After
+	public void tearDown() {
+		SimulationTestSupport.resetParameters();
+	}
+
+	@Test
+	public void sameResultsWithCompactTaskStore() throws IOException {
+		Path root = this.folder.getRoot().toPath();
+		Path settings = SimulationTestSupport.createSettings("settings_H_20servers", root.resolve("settings"));
+		assertEquals(SimulationTestSupport.runAndRead(settings, root.resolve("default"), RECORDING, "-s", "5"),
+				SimulationTestSupport.runAndRead(settings, root.resolve("compact"), RECORDING, "-s", "5", "-C"));
+	}
+
+	@Test
+	public void sameResultsWhenLazyTasksAreReused() throws IOException {
+		Path root = this.folder.getRoot().toPath();
+		Path settings = SimulationTestSupport.createSettings("settings_H_20servers", root.resolve("settings"));
+		List<String> lazy = SimulationTestSupport.runAndRead(settings, root.resolve("lazy"), RECORDING, "-s", "5", "-L");
+		List<String> reused = SimulationTestSupport.runAndRead(settings, root.resolve("reused"), RECORDING, "-s", "5", "-L", "-C");
+		assertEquals(lazy, reused);
+		TaskStore store = RecordingSimulationManager.last.taskStore;
+		assertTrue(store.getCreatedTasks() + " task objects were created for " + store.getFinishedTasks()
+				+ " finished tasks", store.getCreatedTasks() < store.getFinishedTasks());
+		assertTrue(store.getPeakInFlight() <= store.getCreatedTasks());
+	}
+
+	/**
+	 * The default simulation manager, which keeps the last created instance so that its task store can be 
+	 * checked after the run.
+	 */
+	public static class RecordingSimulationManager extends EisimSimulationManager {
+
+		static RecordingSimulationManager last;
+
+		public RecordingSimulationManager(SimLog simLog, PureEdgeSim pureEdgeSim, int simulationId, int iteration,
+				Scenario scenario) {
+			super(simLog, pureEdgeSim, simulationId, iteration, scenario);
+			last = this;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.github.hennas.eisim.defaultclasses;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.nd4j.linalg.factory.Nd4j;
+
+import com.github.hennas.eisim.EisimSimulationParameters;
+import com.github.hennas.eisim.core.scenariomanager.Scenario;
+import com.github.hennas.eisim.core.simulationengine.PureEdgeSim;
+import com.github.hennas.eisim.core.simulationmanager.SimLog;
+import com.github.hennas.eisim.core.simulationmanager.Simulation;
+import com.github.hennas.eisim.core.taskgenerator.Task;
+
+/**
+ * A command-line benchmark for the offloading decisions of the {@link EisimOrchestrator}.
+ * <p>
+ * Usage:
+ * <pre>
+ * OrchestrationBenchmark &lt;settings folder&gt; &lt;output folder&gt; [rounds] [warmup_rounds]
+ * </pre>
+ * The benchmark runs the first scenario of the settings once with the seed 0 (in the training mode, with the
+ * agent states under a temporary model folder), and then times the offloading decisions of its orchestrator for
+ * all the tasks of the run, repeated for the given number of rounds (by default 200) after the given number of
+ * warm-up rounds (by default 50). The devices keep their state from the end of the run, so every round makes
+ * the same decisions. Besides the decisions per second, the benchmark reports the average number of bytes
+ * allocated from the JVM heap per decision.
+ *
+ * @see EisimOrchestrator#findComputingNode(String[], Task)
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class OrchestrationBenchmark {
+
+	private static final String[] ARCHITECTURE_LAYERS = { "Edge" };
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: OrchestrationBenchmark <settings folder> <output folder> [rounds] [warmup_rounds]");
+			return;
+		}
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+		int warmupRounds = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+
+		Path modelFolder = Files.createTempDirectory("orchestration_benchmark");
+		EisimSimulationParameters.settingFolder = args[0];
+		EisimSimulationParameters.outputFolder = args[1];
+		EisimSimulationParameters.modelFolder = modelFolder.toString();
+		EisimSimulationParameters.train = true;
+		EisimSimulationParameters.useSeed = true;
+		EisimSimulationParameters.seed = 0;
+		try {
+			run(args[0], args[1], rounds, warmupRounds);
+		} finally {
+			try (Stream<Path> paths = Files.walk(modelFolder)) {
+				for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+					Files.delete(p);
+				}
+			}
+		}
+	}
+
+	private static void run(String settingsFolder, String outputFolder, int rounds, int warmupRounds) {
+		// Loading Nd4j here, as in Main, before the simulation threads use it
+		Nd4j.getBackend();
+		Simulation sim = new Simulation();
+		sim.setCustomSettingsFolder(settingsFolder);
+		sim.setCustomOutputFolder(outputFolder);
+		sim.setCustomSimulationManager(RecordingSimulationManager.class);
+		sim.launchSimulation();
+
+		RecordingSimulationManager simulationManager = RecordingSimulationManager.last;
+		EisimOrchestrator orchestrator = simulationManager.getEisimOrchestrator();
+		List<Task> tasks = simulationManager.getFinishedTaskList();
+
+		long checksum = 0;
+		for (int i = 0; i < warmupRounds; i++) {
+			checksum += decideAll(orchestrator, tasks);
+		}
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long startBytes = threads.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			checksum += decideAll(orchestrator, tasks);
+		}
+		long time = System.nanoTime() - start;
+		long bytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+		long decisions = (long) rounds * tasks.size();
+
+		System.out.println("Tasks: " + tasks.size() + ", rounds: " + rounds + ", warm-up rounds: " + warmupRounds
+				+ " (checksum " + checksum + ")");
+		System.out.printf("Offloading decisions: %.0f per second, %.1f heap bytes allocated per decision%n",
+				decisions / (time / 1e9), bytes / (double) decisions);
+	}
+
+	private static long decideAll(EisimOrchestrator orchestrator, List<Task> tasks) {
+		long sum = 0;
+		for (int t = 0; t < tasks.size(); t++) {
+			sum += orchestrator.findComputingNode(ARCHITECTURE_LAYERS, tasks.get(t));
+		}
+		return sum;
+	}
+
+	/**
+	 * The default simulation manager, which keeps the last created instance so that its orchestrator and tasks
+	 * can be reached after the run.
+	 */
+	public static class RecordingSimulationManager extends EisimSimulationManager {
+
+		private static volatile RecordingSimulationManager last;
+
+		public RecordingSimulationManager(SimLog simLog, PureEdgeSim pureEdgeSim, int simulationId, int iteration,
+				Scenario scenario) {
+			super(simLog, pureEdgeSim, simulationId, iteration, scenario);
+			last = this;
+		}
+
+		EisimOrchestrator getEisimOrchestrator() {
+			return (EisimOrchestrator) this.edgeOrchestrator;
+		}
+	}
+}
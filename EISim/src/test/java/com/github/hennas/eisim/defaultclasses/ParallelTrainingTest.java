@@ -0,0 +1,41 @@
+package com.github.hennas.eisim.defaultclasses;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.hennas.eisim.SimulationTestSupport;
+
+/**
+ * Checks that training the agents of the cluster heads in parallel gives the same prices and results as
+ * training them one by one in a seeded simulation.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class ParallelTrainingTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@After
+	public void tearDown() {
+		SimulationTestSupport.resetParameters();
+	}
+
+	@Test
+	public void parallelTrainingMatchesSerialTraining() throws IOException {
+		Path root = this.folder.getRoot().toPath();
+		Path settings = SimulationTestSupport.createSettings("settings_H_20servers", root.resolve("settings"));
+		List<String> serial = SimulationTestSupport.runAndRead(settings, root.resolve("serial"), "-b", "8", "-s", "11", "-w", "1");
+		List<String> parallel = SimulationTestSupport.runAndRead(settings, root.resolve("parallel"), "-b", "8", "-s", "11", "-w", "4");
+		assertEquals(serial, parallel);
+	}
+}
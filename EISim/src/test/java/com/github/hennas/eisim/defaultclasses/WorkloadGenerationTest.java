@@ -0,0 +1,165 @@
+package com.github.hennas.eisim.defaultclasses;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.hennas.eisim.SimulationTestSupport;
+import com.github.hennas.eisim.core.datacentersmanager.ComputingNode;
+import com.github.hennas.eisim.core.locationmanager.DefaultMobilityModel;
+import com.github.hennas.eisim.core.locationmanager.Location;
+import com.github.hennas.eisim.core.locationmanager.MobilityModel;
+import com.github.hennas.eisim.core.scenariomanager.SimulationParameters;
+import com.github.hennas.eisim.core.simulationengine.FutureQueue;
+import com.github.hennas.eisim.core.simulationmanager.SimulationManager;
+import com.github.hennas.eisim.core.taskgenerator.Task;
+import com.github.hennas.eisim.core.taskgenerator.TaskGenerator;
+
+/**
+ * Checks that the workload of a seeded simulation, i.e., the tasks and the mobility paths of the devices,
+ * does not depend on the number of generation threads nor on whether the tasks are generated lazily.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class WorkloadGenerationTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@After
+	public void tearDown() {
+		SimulationTestSupport.resetParameters();
+	}
+
+	@Test
+	public void sameResultsForAnyNumberOfGenerationThreads() throws IOException {
+		Path settings = this.createSettings();
+		assertEquals(this.runAndRead(settings, "one_thread", "-g", "1"), this.runAndRead(settings, "four_threads", "-g", "4"));
+	}
+
+	@Test
+	public void sameResultsWithLazyTaskGeneration() throws IOException {
+		Path settings = this.createSettings();
+		assertEquals(this.runAndRead(settings, "eager", "-g", "2"), this.runAndRead(settings, "lazy", "-g", "2", "-L"));
+	}
+
+	@Test
+	public void sameResultsWithTasksAddedToTheLazyTaskList() throws IOException {
+		Path settings = this.createSettings();
+		assertEquals(this.runAndRead(settings, "eager_added", TaskAddingGenerator.class, "-g", "2"),
+				this.runAndRead(settings, "lazy_added", TaskAddingGenerator.class, "-g", "2", "-L"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void mobileNodeWithoutRandomStreamFails() {
+		DefaultMobilityModel model = new DefaultMobilityModel(null, new Location(0, 0));
+		model.setMobile(true);
+		model.generatePath();
+	}
+
+	/**
+	 * Creates the settings of a short simulation, where the mobile devices pause only briefly, so that they 
+	 * move during the simulation.
+	 */
+	private Path createSettings() throws IOException {
+		Path settings = SimulationTestSupport.createSettings("settings_H_20servers", this.folder.getRoot().toPath().resolve("settings"));
+		Path devices = settings.resolve("edge_devices.xml");
+		String xml = Files.readString(devices)
+				.replaceAll("<minPauseDuration>[^<]*</minPauseDuration>", "<minPauseDuration>1</minPauseDuration>")
+				.replaceAll("<maxPauseDuration>[^<]*</maxPauseDuration>", "<maxPauseDuration>5</maxPauseDuration>")
+				.replaceAll("<minMobilityDuration>[^<]*</minMobilityDuration>", "<minMobilityDuration>2</minMobilityDuration>")
+				.replaceAll("<maxMobilityDuration>[^<]*</maxMobilityDuration>", "<maxMobilityDuration>10</maxMobilityDuration>");
+		Files.writeString(devices, xml);
+		return settings;
+	}
+
+	private List<String> runAndRead(Path settings, String name, String... options) throws IOException {
+		return this.runAndRead(settings, name, EisimTaskGenerator.class, options);
+	}
+
+	/**
+	 * Runs the simulation with the given task generator and returns the recorded mobility paths followed by the results.
+	 */
+	private List<String> runAndRead(Path settings, String name, Class<? extends TaskGenerator> taskGenerator,
+			String... options) throws IOException {
+		List<String> args = new ArrayList<>(List.of("-s", "3"));
+		args.addAll(List.of(options));
+		PathRecordingGenerator.paths.clear();
+		List<String> results = SimulationTestSupport.runAndRead(settings, this.folder.getRoot().toPath().resolve(name), sim -> {
+			sim.setCustomComputingNodesGenerator(PathRecordingGenerator.class);
+			sim.setCustomTaskGenerator(taskGenerator);
+		}, args.toArray(new String[0]));
+		results.addAll(0, PathRecordingGenerator.paths);
+		return results;
+	}
+
+	/**
+	 * The default computing nodes generator, which records the mobility paths of the edge devices, as the 
+	 * results of a short simulation hardly depend on them.
+	 */
+	public static class PathRecordingGenerator extends EisimComputingNodesGenerator {
+
+		static final List<String> paths = new ArrayList<>();
+
+		public PathRecordingGenerator(SimulationManager simulationManager, Class<? extends MobilityModel> mobilityModelClass,
+				Class<? extends ComputingNode> computingNodeClass) {
+			super(simulationManager, mobilityModelClass, computingNodeClass);
+		}
+
+		@Override
+		protected void generateMobilityPaths() {
+			super.generateMobilityPaths();
+			for (ComputingNode device : this.mistOnlyList) {
+				MobilityModel model = device.getMobilityModel();
+				if (!model.isMobile()) {
+					continue;
+				}
+				StringBuilder path = new StringBuilder("Device " + device.getId() + ":");
+				for (int time = 0; time <= SimulationParameters.simulationDuration; time += 10) {
+					Location location = model.updateLocation(time);
+					path.append(' ').append(location.getXPos()).append(',').append(location.getYPos());
+				}
+				paths.add(path.toString());
+				// Moving the device back to its starting point
+				model.updateLocation(0);
+			}
+		}
+	}
+
+	/**
+	 * The default task generator, which adds a few more tasks to the generated task list, some of them at the 
+	 * same time as the first generated task.
+	 */
+	public static class TaskAddingGenerator extends EisimTaskGenerator {
+
+		public TaskAddingGenerator(SimulationManager simulationManager) {
+			super(simulationManager);
+		}
+
+		@Override
+		public FutureQueue<Task> generate() {
+			FutureQueue<Task> tasks = super.generate();
+			int size = tasks.size();
+			ComputingNode device = this.simulationManager.getDataCentersManager().getComputingNodesGenerator().getMistOnlyList().get(0);
+			SplittableRandom random = new SplittableRandom(5);
+			double firstTime = tasks.first().getTime();
+			tasks.add(this.generateTask(random, 1_000_001, firstTime, device.getApplicationType(), device));
+			tasks.addFirst(this.generateTask(random, 1_000_002, firstTime, device.getApplicationType(), device));
+			tasks.add(this.generateTask(random, 1_000_003, 30, device.getApplicationType(), device));
+			assertEquals(size + 3, tasks.size());
+			assertEquals(1_000_002, tasks.first().getId());
+			return tasks;
+		}
+	}
+}
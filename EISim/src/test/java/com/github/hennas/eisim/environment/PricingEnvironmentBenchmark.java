@@ -0,0 +1,55 @@
+package com.github.hennas.eisim.environment;
+
+import java.util.Random;
+
+/**
+ * Measures the time taken by the resets and steps of the {@link PricingEnvironment}, by running episodes 
+ * with uniformly random prices.
+ * <p>
+ * Usage: {@code PricingEnvironmentBenchmark <settings folder> <output folder> [episodes] [first seed]}
+ * 
+ * @author Henna Kokkonen
+ *
+ */
+public class PricingEnvironmentBenchmark {
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Usage: PricingEnvironmentBenchmark <settings folder> <output folder> [episodes] [first seed]");
+			return;
+		}
+		int episodes = args.length > 2 ? Math.max(1, Integer.parseInt(args[2])) : 3;
+		long firstSeed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+		
+		PricingEnvironment environment = new PricingEnvironment(args[0], args[1]);
+		Random random = new Random(firstSeed);
+		long resetNanos = 0;
+		long stepNanos = 0;
+		int steps = 0;
+		for (int episode = 0; episode < episodes; episode++) {
+			long start = System.nanoTime();
+			float[][] states = environment.reset(firstSeed + episode);
+			resetNanos += System.nanoTime() - start;
+			
+			float[] prices = new float[states.length];
+			double totalReward = 0;
+			PricingEnvironment.Step step;
+			do {
+				for (int i = 0; i < prices.length; i++) {
+					prices[i] = random.nextFloat();
+				}
+				start = System.nanoTime();
+				step = environment.step(prices);
+				stepNanos += System.nanoTime() - start;
+				steps++;
+				for (float reward : step.rewards) {
+					totalReward += reward;
+				}
+			} while (!step.done);
+			System.out.printf("Episode %d: %d cluster heads, total reward %.4f%n", episode + 1, states.length, totalReward);
+		}
+		
+		System.out.printf("Average reset time: %.2f ms%n", resetNanos / 1e6 / episodes);
+		System.out.printf("Average step time: %.3f ms (%d steps)%n", stepNanos / 1e6 / steps, steps);
+	}
+}
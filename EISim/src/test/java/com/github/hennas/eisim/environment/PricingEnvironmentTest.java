@@ -0,0 +1,104 @@
+package com.github.hennas.eisim.environment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.hennas.eisim.SimulationTestSupport;
+import com.github.hennas.eisim.agents.ddpg.DdpgPricingAgent;
+import com.github.hennas.eisim.defaultclasses.EisimComputingNode;
+
+/**
+ * Checks that the {@link PricingEnvironment} runs seeded episodes reproducibly with the prices decided by the
+ * caller, and that it does not change the pricing agent class used by the other simulations.
+ *
+ * @author Henna Kokkonen
+ *
+ */
+public class PricingEnvironmentTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@After
+	public void tearDown() {
+		SimulationTestSupport.resetParameters();
+	}
+
+	@Test
+	public void sameEpisodeWithTheSameSeedAndPrices() throws IOException {
+		SimulationTestSupport.resetParameters();
+		Path settings = SimulationTestSupport.createSettings("settings_H_20servers", this.folder.getRoot().toPath().resolve("settings"));
+		PricingEnvironment environment = new PricingEnvironment(settings + "/", this.folder.getRoot().toPath().resolve("output") + "/");
+
+		List<float[]> first = this.runEpisode(environment, 7);
+		List<float[]> second = this.runEpisode(environment, 7);
+		assertEquals(first.size(), second.size());
+		for (int i = 0; i < first.size(); i++) {
+			assertArrayEquals(first.get(i), second.get(i), 0f);
+		}
+		assertEquals(DdpgPricingAgent.class, EisimComputingNode.getCustomPricingAgentClass());
+
+		try {
+			environment.step(new float[environment.getClusterHeadNames().length]);
+			fail("A step after the end of the episode must fail");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Runs an episode with random prices from the given seed, and returns the observed states and rewards in order.
+	 */
+	private List<float[]> runEpisode(PricingEnvironment environment, long seed) {
+		List<float[]> observations = new ArrayList<>();
+		float[][] states = environment.reset(seed);
+		int clusterHeads = environment.getClusterHeadNames().length;
+		assertTrue(clusterHeads > 0);
+		assertEquals(clusterHeads, states.length);
+		for (float[] state : states) {
+			observations.add(state);
+		}
+
+		try {
+			environment.step(new float[clusterHeads + 1]);
+			fail("A step with a wrong number of prices must fail");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+
+		Random random = new Random(seed);
+		float[] prices = new float[clusterHeads];
+		PricingEnvironment.Step step;
+		int steps = 0;
+		do {
+			for (int i = 0; i < prices.length; i++) {
+				prices[i] = random.nextFloat();
+			}
+			step = environment.step(prices);
+			steps++;
+			assertEquals(clusterHeads, step.states.length);
+			assertEquals(clusterHeads, step.rewards.length);
+			for (float[] state : step.states) {
+				observations.add(state);
+			}
+			observations.add(step.rewards);
+		} while (!step.done);
+		assertTrue(steps > 1);
+		assertFalse(observations.isEmpty());
+		return observations;
+	}
+}